@@ -5,11 +5,27 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.PathMatcher;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -23,9 +39,11 @@ import com.infiniteautomation.asciifile.AsciiFileSystemSettingsDefinition;
 import com.infiniteautomation.asciifile.vo.AsciiFileDataSourceVO;
 import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
 import com.infiniteautomation.mango.regex.MatchCallback;
+import com.infiniteautomation.mango.rest.v2.util.ModuleThreadPools;
 import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
 import com.serotonin.m2m2.db.dao.SystemSettingsDao;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.dataImage.DataPointRT;
@@ -48,9 +66,15 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 	public static final int POINT_READ_PATTERN_MISMATCH_EVENT = 4;
 	public static final int POLL_ABORTED_EVENT = 5;
 
-	private File file; // File
+	private File file; // File or directory
 	private FileAlterationObserver fobs;
+	private PathMatcher fileNameMatcher; //Files to read when the path is a directory
 	private boolean restrictedPath;
+	private final AsciiFileTailReader tailReader = new AsciiFileTailReader();
+	//Where the last read of each file stopped when tailing, keyed by path
+	private Map<String, AsciiFileTailReader.Position> tailPositions;
+	//Parses the files of a directory when more than one is parsed at once
+	private volatile ExecutorService parserExecutor;
 
 	public AsciiFileDataSourceRT(AsciiFileDataSourceVO vo) {
 		super(vo);
@@ -75,6 +99,14 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 			raiseEvent(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis(), true,
 					new TranslatableMessage("file.event.readFailed", vo.getFilePath()));
 			return false;
+		} else if (vo.isDirectory()) {
+			if (!file.isDirectory()) {
+				raiseEvent(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis(), true,
+						new TranslatableMessage("file.event.notDirectory", vo.getFilePath()));
+				return false;
+			}
+			this.fileNameMatcher = FileSystems.getDefault().getPathMatcher("glob:" + vo.getFileNameGlob());
+			return true;
 		} else {
 			this.fobs = new FileAlterationObserver(this.file);
 			this.fobs.initialize();
@@ -103,6 +135,11 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 		if (connected) {
 			returnToNormal(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis());
 		}
+		if (vo.isTailFile() || vo.isDirectory())
+			this.tailPositions = loadTailPositions();
+		if (vo.isDirectory() && vo.getFileParseThreads() > 1)
+			this.parserExecutor = ModuleThreadPools.newFixedThreadPool("ASCII file parser " + vo.getXid(),
+					vo.getFileParseThreads(), vo.getFileParseThreads());
 		super.initialize();
 
 	}
@@ -110,7 +147,11 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 	@Override
 	public void terminate() {
 		super.terminate();
-		if (this.file != null) {
+		if (this.parserExecutor != null) {
+			this.parserExecutor.shutdownNow();
+			this.parserExecutor = null;
+		}
+		if (this.fobs != null) {
 			try {
 				this.fobs.destroy();
 			} catch (Exception e) {
@@ -118,8 +159,9 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 				raiseEvent(DATA_SOURCE_EXCEPTION_EVENT, System.currentTimeMillis(), true,
 						new TranslatableMessage("file.event.obsDestroy", e.getMessage()));
 			}
-			this.file = null;
+			this.fobs = null;
 		}
+		this.file = null;
 		SystemSettingsEventDispatcher.removeListener(this);
 	}
 
@@ -131,7 +173,7 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 
 	@Override
 	public void onDirectoryChange(File dir) {
-		fileEvent(dataPoints);
+		fileEvent(dataPoints, vo.isTailFile());
 	}
 
 	@Override
@@ -156,12 +198,12 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 
 	@Override
 	public void onFileChange(File f) {
-		fileEvent(dataPoints);
+		fileEvent(dataPoints, vo.isTailFile());
 	}
 
 	@Override
 	public void onStart(FileAlterationObserver obs) {
-		fileEvent(dataPoints);
+		fileEvent(dataPoints, vo.isTailFile());
 	}
 
 	@Override
@@ -173,10 +215,15 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 	public void forcePointRead(DataPointRT dataPoint) {
 		List<DataPointRT> dataPoints = new ArrayList<>(1);
 		dataPoints.add(dataPoint);
-		fileEvent(dataPoints);
+		fileEvent(dataPoints, false);
 	}
 
-	private void fileEvent(List<DataPointRT> dataPoints) {
+	/**
+	 * Read the file and deliver the values to the points
+	 * @param dataPoints
+	 * @param tail only read the lines appended since the last tailed read
+	 */
+	private void fileEvent(List<DataPointRT> dataPoints, boolean tail) {
 		// Should never happen
 		if (this.file == null) {
 			raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
@@ -190,73 +237,33 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 			return;
 		}
 
+		if (dataPoints.isEmpty())
+			return;
+
 		// The file is modified or we've just started, so read it.
-		try {
-			BufferedReader reader = new BufferedReader(new FileReader(this.file));
+		AsciiFileLineDispatcher dispatcher = new AsciiFileLineDispatcher(dataPoints, this::createMatchCallback);
+		if (tail) {
+			tailEvent(dispatcher);
+			return;
+		}
+
+		File source = this.file;
+		if (vo.isDirectory()) {
+			// Refresh from the most recently modified file in the directory
+			File[] files = this.file.listFiles(f -> f.isFile() && fileNameMatcher.matches(f.toPath().getFileName()));
+			if (files == null || files.length == 0)
+				return;
+			source = files[0];
+			for (File f : files)
+				if (f.lastModified() > source.lastModified())
+					source = f;
+		}
 
+		try (BufferedReader reader = new BufferedReader(new FileReader(source))) {
 			String msg;
-			if (!dataPoints.isEmpty()) {
-
-				// TODO optimize to be better than numLines*numPoints
-				while ((msg = reader.readLine()) != null) {
-					// Give all points the chance to find their data
-					for (final DataPointRT dp : dataPoints) {
-						AsciiFilePointLocatorRT pl = dp.getPointLocator();
-						final AsciiFilePointLocatorVO plVo = pl.getVo();
-
-						MatchCallback callback = new MatchCallback() {
-
-							@Override
-							public void onMatch(String pointIdentifier, PointValueTime value) {
-								if (!plVo.getHasTimestamp())
-									dp.updatePointValue(value);
-								else
-									dp.savePointValueDirectToCache(value, null, true, true);
-							}
-
-							@Override
-							public void pointPatternMismatch(String message, String pointValueRegex) {
-								//N/A
-							}
-
-							@Override
-							public void messagePatternMismatch(String message, String messageRegex) {
-								//N/A
-							}
-
-							@Override
-							public void pointNotIdentified(String message, String messageRegex,
-									int pointIdentifierIndex) {
-								raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), false,
-										new TranslatableMessage("file.event.insufficientGroups",
-												dp.getVO().getExtendedName()));
-							}
-
-							@Override
-							public void matchGeneralFailure(Exception e) {
-								if (e instanceof ParseException)
-									raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
-											new TranslatableMessage("file.event.dateParseFailed", e.getMessage()));
-								else if (e instanceof NumberFormatException) {
-									raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
-											new TranslatableMessage("file.event.notNumber", e.getMessage()));
-								} else
-									raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
-											new TranslatableMessage("file.event.readFailed", e.getMessage()));
-							}
-
-						};
-
-						matchPointValueTime(msg, pl.getValuePattern(), plVo.getPointIdentifier(),
-								plVo.getPointIdentifierIndex(), plVo.getDataTypeId(),
-								plVo.getValueIndex(), plVo.getHasTimestamp(), plVo.getTimestampIndex(),
-								plVo.getTimestampFormat(), callback);
-
-					}
-				}
-				reader.close();
-				returnToNormal(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis());
-			}
+			while ((msg = reader.readLine()) != null)
+				dispatcher.dispatch(msg);
+			returnToNormal(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis());
 		} catch (FileNotFoundException e) {
 			raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
 					new TranslatableMessage("file.event.fileNotFound", e.getMessage()));
@@ -270,6 +277,342 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 
 	}
 
+	/**
+	 * Read the region of the file appended since the last read and save the new position
+	 * @param dispatcher
+	 */
+	private void tailEvent(AsciiFileLineDispatcher dispatcher) {
+		try {
+			if (tailFile(this.file, dispatcher))
+				saveTailPositions();
+			returnToNormal(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis());
+		} catch (IOException e) {
+			raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+					new TranslatableMessage("file.event.readFailed", e.getMessage()));
+		}
+	}
+
+	/**
+	 * Read the lines appended to a file and record where the read stopped
+	 * @param f
+	 * @param dispatcher
+	 * @return true if the position of the file changed
+	 * @throws IOException
+	 */
+	private boolean tailFile(File f, AsciiFileLineDispatcher dispatcher) throws IOException {
+		String key = f.getPath();
+		AsciiFileTailReader.Position last;
+		synchronized (tailPositions) {
+			last = tailPositions.get(key);
+		}
+		AsciiFileTailReader.Position next = tailReader.read(f, last, dispatcher);
+		if (last != null && last.getOffset() == next.getOffset() && last.isSameFile(next.getFileKey()))
+			return false;
+		synchronized (tailPositions) {
+			tailPositions.put(key, next);
+		}
+		return true;
+	}
+
+	private void saveTailPositions() {
+		synchronized (tailPositions) {
+			DataSourceDao.getInstance().savePersistentData(vo.getId(), tailPositions);
+		}
+	}
+
+	/**
+	 * Read the lines added to each file in the directory matching the glob since it was last read,
+	 * oldest first. Up to fileParseThreads files are parsed at the same time and their values are
+	 * delivered in the order of the files. A file that has not changed for an update period is
+	 * complete, its last line is read even without a terminator and it is moved to the archive
+	 * directory once read.
+	 * 
+	 * @param time
+	 */
+	private void directoryEvent(long time) {
+		if (this.file == null) {
+			raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+					new TranslatableMessage("file.event.readFailedFileNotSetup"));
+			return;
+		}
+
+		File[] files = this.file.listFiles(f -> f.isFile() && fileNameMatcher.matches(f.toPath().getFileName()));
+		if (files == null) {
+			raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+					new TranslatableMessage("file.event.readFailed", vo.getFilePath()));
+			return;
+		}
+		//Oldest first so the values of each point are delivered in order
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified).thenComparing(File::getName));
+
+		boolean archive = !StringUtils.isEmpty(vo.getArchivePath());
+		long quietBefore = time - Common.getMillis(vo.getUpdatePeriodType(), vo.getUpdatePeriods());
+		List<File> pending = new ArrayList<>();
+		List<File> consumed = new ArrayList<>();
+		boolean changed;
+		synchronized (tailPositions) {
+			Set<String> present = new HashSet<>();
+			for (File f : files) {
+				present.add(f.getPath());
+				boolean read;
+				try {
+					//A file replaced by one of the same length is read again
+					read = AsciiFileTailReader.isRead(f, tailPositions.get(f.getPath()));
+				} catch (IOException e) {
+					//Gone since it was listed
+					continue;
+				}
+				if (!read)
+					pending.add(f);
+				else if (archive && f.lastModified() < quietBefore)
+					consumed.add(f);
+			}
+			//Forget the files that are gone
+			changed = tailPositions.keySet().retainAll(present);
+		}
+
+		if (!pending.isEmpty() && !dataPoints.isEmpty()) {
+			if (parseFiles(pending, quietBefore))
+				changed = true;
+		}
+
+		for (File f : consumed) {
+			try {
+				Files.move(f.toPath(), archiveTarget(f).toPath());
+				synchronized (tailPositions) {
+					tailPositions.remove(f.getPath());
+				}
+				changed = true;
+			} catch (IOException e) {
+				raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+						new TranslatableMessage("file.event.archiveFailed", f.getPath(), e.getMessage()));
+			}
+		}
+
+		if (changed)
+			saveTailPositions();
+	}
+
+	/**
+	 * Where to archive a file, a number is added to the name if a file with the same name was
+	 * archived before so it is not overwritten
+	 * @param f
+	 * @return
+	 */
+	private File archiveTarget(File f) {
+		String name = f.getName();
+		int dot = name.lastIndexOf('.');
+		String base = dot > 0 ? name.substring(0, dot) : name;
+		String extension = dot > 0 ? name.substring(dot) : "";
+		File target = new File(vo.getArchivePath(), name);
+		for (int i = 1; target.exists(); i++)
+			target = new File(vo.getArchivePath(), base + "-" + i + extension);
+		return target;
+	}
+
+	/**
+	 * Parse the files on the parser executor, at most fileParseThreads files are parsed ahead of the
+	 * one being delivered. The values are delivered on the poll thread one file at a time in order.
+	 * 
+	 * @param pending files in the order to deliver their values
+	 * @param quietBefore files not modified since are complete
+	 * @return true if any file position changed
+	 */
+	private boolean parseFiles(List<File> pending, long quietBefore) {
+		boolean changed = false;
+		Deque<Future<ParsedFile>> parsing = new ArrayDeque<>();
+		Iterator<File> it = pending.iterator();
+		while (it.hasNext() || !parsing.isEmpty()) {
+			while (parsing.size() < vo.getFileParseThreads() && it.hasNext()) {
+				File f = it.next();
+				parsing.add(parseFile(f, f.lastModified() < quietBefore));
+			}
+			ParsedFile parsed;
+			try {
+				parsed = parsing.poll().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				for (Future<ParsedFile> f : parsing)
+					f.cancel(true);
+				break;
+			} catch (ExecutionException e) {
+				//Only if the parser failed unexpectedly, the file will be read again next poll
+				LOG.error("Failed to parse file", e.getCause());
+				continue;
+			}
+			if (parsed != null && parsed.deliver())
+				changed = true;
+		}
+		return changed;
+	}
+
+	/**
+	 * Start parsing a file on the parser executor or on this thread if there isn't one
+	 * @param f
+	 * @param complete read the last line even without a terminator
+	 * @return
+	 */
+	private Future<ParsedFile> parseFile(File f, boolean complete) {
+		FutureTask<ParsedFile> task = new FutureTask<>(() -> {
+			try {
+				return new ParsedFile(f, complete);
+			} catch (IOException e) {
+				raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+						new TranslatableMessage("file.event.readFailed", f.getPath() + ": " + e.getMessage()));
+				return null;
+			}
+		});
+		ExecutorService executor = this.parserExecutor;
+		try {
+			if (executor != null) {
+				executor.execute(task);
+				return task;
+			}
+		} catch (RejectedExecutionException e) {
+			//Terminating
+		}
+		task.run();
+		return task;
+	}
+
+	/**
+	 * The values read from a file held until the values of the files before it have been delivered
+	 */
+	private class ParsedFile {
+		private final File file;
+		private final AsciiFileTailReader.Position last;
+		private final AsciiFileTailReader.Position next;
+		private final List<Runnable> values = new ArrayList<>();
+
+		ParsedFile(File file, boolean complete) throws IOException {
+			this.file = file;
+			synchronized (tailPositions) {
+				this.last = tailPositions.get(file.getPath());
+			}
+			AsciiFileLineDispatcher dispatcher = new AsciiFileLineDispatcher(dataPoints, this::createMatchCallback);
+			this.next = tailReader.read(file, last, dispatcher, complete);
+		}
+
+		/**
+		 * Collect the matched values, failures are raised straight away. Values without a timestamp
+		 * in the file are given the time they are delivered as files are parsed out of order.
+		 */
+		private MatchCallback createMatchCallback(DataPointRT dp) {
+			MatchCallback callback = AsciiFileDataSourceRT.this.createMatchCallback(dp);
+			AsciiFilePointLocatorRT pl = dp.getPointLocator();
+			boolean hasTimestamp = pl.getVo().getHasTimestamp();
+			return new MatchCallback() {
+				@Override
+				public void onMatch(String pointIdentifier, PointValueTime value) {
+					if (hasTimestamp)
+						values.add(() -> callback.onMatch(pointIdentifier, value));
+					else
+						values.add(() -> callback.onMatch(pointIdentifier,
+								new PointValueTime(value.getValue(), Common.timer.currentTimeMillis())));
+				}
+
+				@Override
+				public void pointPatternMismatch(String message, String pointValueRegex) {
+					callback.pointPatternMismatch(message, pointValueRegex);
+				}
+
+				@Override
+				public void messagePatternMismatch(String message, String messageRegex) {
+					callback.messagePatternMismatch(message, messageRegex);
+				}
+
+				@Override
+				public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
+					callback.pointNotIdentified(message, messageRegex, pointIdentifierIndex);
+				}
+
+				@Override
+				public void matchGeneralFailure(Exception e) {
+					callback.matchGeneralFailure(e);
+				}
+			};
+		}
+
+		/**
+		 * Deliver the values to the points and record where the read stopped
+		 * @return true if the position of the file changed
+		 */
+		boolean deliver() {
+			for (Runnable value : values)
+				value.run();
+			if (last != null && last.getOffset() == next.getOffset() && last.isSameFile(next.getFileKey()))
+				return false;
+			synchronized (tailPositions) {
+				tailPositions.put(file.getPath(), next);
+			}
+			return true;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, AsciiFileTailReader.Position> loadTailPositions() {
+		try {
+			Object data = DataSourceDao.getInstance().getPersistentData(vo.getId());
+			if (data instanceof HashMap)
+				return (HashMap<String, AsciiFileTailReader.Position>) data;
+		} catch (Exception e) {
+			LOG.warn("Unable to load file positions for data source " + vo.getName() + ", files will be read from the beginning", e);
+		}
+		return new HashMap<>();
+	}
+
+	/**
+	 * Create the callback that delivers matched values to a point, one is created per point per read
+	 * @param dp
+	 * @return
+	 */
+	MatchCallback createMatchCallback(final DataPointRT dp) {
+		AsciiFilePointLocatorRT pl = dp.getPointLocator();
+		final AsciiFilePointLocatorVO plVo = pl.getVo();
+		return new MatchCallback() {
+
+			@Override
+			public void onMatch(String pointIdentifier, PointValueTime value) {
+				if (!plVo.getHasTimestamp())
+					dp.updatePointValue(value);
+				else
+					dp.savePointValueDirectToCache(value, null, true, true);
+			}
+
+			@Override
+			public void pointPatternMismatch(String message, String pointValueRegex) {
+				//N/A
+			}
+
+			@Override
+			public void messagePatternMismatch(String message, String messageRegex) {
+				//N/A
+			}
+
+			@Override
+			public void pointNotIdentified(String message, String messageRegex,
+					int pointIdentifierIndex) {
+				raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), false,
+						new TranslatableMessage("file.event.insufficientGroups",
+								dp.getVO().getExtendedName()));
+			}
+
+			@Override
+			public void matchGeneralFailure(Exception e) {
+				if (e instanceof ParseException)
+					raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+							new TranslatableMessage("file.event.dateParseFailed", e.getMessage()));
+				else if (e instanceof NumberFormatException) {
+					raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+							new TranslatableMessage("file.event.notNumber", e.getMessage()));
+				} else
+					raiseEvent(POINT_READ_EXCEPTION_EVENT, Common.timer.currentTimeMillis(), true,
+							new TranslatableMessage("file.event.readFailed", e.getMessage()));
+			}
+
+		};
+	}
+
 	@Override
 	protected void doPoll(long time) {
 		if (restrictedPath) {
@@ -277,7 +620,9 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 					new TranslatableMessage("dsEdit.file.pathRestrictedBy", vo.getFilePath()));
 			return;
 		}
-		if (fobs != null)
+		if (vo.isDirectory())
+			directoryEvent(time);
+		else if (fobs != null)
 			fobs.checkAndNotify();
 
 	}
@@ -291,7 +636,6 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 				LOG.debug("Message matched regex: " + pattern.pattern());
 
 			// Parse out the Identifier
-			//String matchedPointIdentifier = null;
 			try {
 				if (pointIdentifierIndex > messageMatcher.groupCount() || valueIndex > messageMatcher.groupCount()) {
 					callback.pointNotIdentified(message, pattern.pattern(), pointIdentifierIndex);
@@ -299,35 +643,8 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 					if (LOG.isDebugEnabled())
 						LOG.debug("Point Identified: " + messageMatcher.group(pointIdentifierIndex));
 
-					String value = messageMatcher.group(valueIndex);
-					PointValueTime newValue;
-					Date dt;
-					if (hasTimestamp && !timestampFormat.equals(".")) {
-						SimpleDateFormat fmt = new SimpleDateFormat(timestampFormat);
-						dt = fmt.parse(messageMatcher.group(timestampIndex));
-					} else if (hasTimestamp) {
-						dt = new Date(Long.parseLong(messageMatcher.group(timestampIndex)));
-					} else {
-						dt = new Date();
-					}
-
-					// Switch on the type
-					switch (dataTypeId) {
-					case DataTypes.ALPHANUMERIC:
-						newValue = new PointValueTime(value, dt.getTime());
-						break;
-					case DataTypes.NUMERIC:
-						newValue = new PointValueTime(Double.parseDouble(value), dt.getTime());
-						break;
-					case DataTypes.MULTISTATE:
-						newValue = new PointValueTime(Integer.parseInt(value), dt.getTime());
-						break;
-					case DataTypes.BINARY:
-						newValue = new PointValueTime(Boolean.parseBoolean(value), dt.getTime());
-						break;
-					default:
-						throw new ShouldNeverHappenException("Uknown Data type for point");
-					}
+					SimpleDateFormat fmt = usesTimestampFormat(hasTimestamp, timestampFormat) ? new SimpleDateFormat(timestampFormat) : null;
+					PointValueTime newValue = createPointValueTime(messageMatcher, dataTypeId, valueIndex, hasTimestamp, timestampIndex, fmt);
 					callback.onMatch(messageMatcher.group(pointIdentifierIndex), newValue);
 				}
 			} catch (Exception e) {
@@ -337,6 +654,48 @@ public class AsciiFileDataSourceRT extends PollingDataSource<AsciiFileDataSource
 		}
 	}
 
+	/**
+	 * Does this timestamp configuration need a date format, "." denotes epoch milliseconds
+	 */
+	static boolean usesTimestampFormat(boolean hasTimestamp, String timestampFormat) {
+		return hasTimestamp && !timestampFormat.equals(".");
+	}
+
+	/**
+	 * Build the value from a successful match
+	 * 
+	 * @param messageMatcher matcher positioned on the match
+	 * @param timestampFormat compiled format of the timestamp group, null for epoch millis or no timestamp
+	 * @return
+	 * @throws ParseException
+	 */
+	static PointValueTime createPointValueTime(Matcher messageMatcher, int dataTypeId, int valueIndex,
+			boolean hasTimestamp, int timestampIndex, SimpleDateFormat timestampFormat) throws ParseException {
+		String value = messageMatcher.group(valueIndex);
+		long time;
+		if (hasTimestamp && timestampFormat != null) {
+			time = timestampFormat.parse(messageMatcher.group(timestampIndex)).getTime();
+		} else if (hasTimestamp) {
+			time = Long.parseLong(messageMatcher.group(timestampIndex));
+		} else {
+			time = Common.timer.currentTimeMillis();
+		}
+
+		// Switch on the type
+		switch (dataTypeId) {
+		case DataTypes.ALPHANUMERIC:
+			return new PointValueTime(value, time);
+		case DataTypes.NUMERIC:
+			return new PointValueTime(Double.parseDouble(value), time);
+		case DataTypes.MULTISTATE:
+			return new PointValueTime(Integer.parseInt(value), time);
+		case DataTypes.BINARY:
+			return new PointValueTime(Boolean.parseBoolean(value), time);
+		default:
+			throw new ShouldNeverHappenException("Uknown Data type for point");
+		}
+	}
+
 	@Override
 	public void systemSettingsSaved(String key, String oldValue, String newValue) {
 		this.restrictedPath = isPathRestricted(newValue);
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.infiniteautomation.asciifile.vo.AsciiFilePointLocatorVO;
+import com.infiniteautomation.mango.regex.MatchCallback;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+/**
+ * Routes the lines of a file to the points that are interested in them.
+ *
+ * Points that share a value regex and identifier group are matched once per line,
+ * the identifier is extracted from the match and used to look up the points in a hash index.
+ * This makes the cost per line proportional to the number of distinct patterns
+ * instead of the number of points.
+ *
+ * Instances hold per point state (callbacks and date formats) and are not thread safe.
+ *
+ * @author Phillip Dunlap
+ */
+public class AsciiFileLineDispatcher {
+	private static final Log LOG = LogFactory.getLog(AsciiFileLineDispatcher.class);
+
+	private final List<PatternGroup> groups;
+
+	/**
+	 * @param dataPoints points to dispatch to
+	 * @param callbackFactory creates the callback used for all matches of a point
+	 */
+	public AsciiFileLineDispatcher(List<DataPointRT> dataPoints, MatchCallbackFactory callbackFactory) {
+		Map<String, PatternGroup> byPattern = new LinkedHashMap<>();
+		for(DataPointRT dp : dataPoints) {
+			AsciiFilePointLocatorRT pl = dp.getPointLocator();
+			AsciiFilePointLocatorVO plVo = pl.getVo();
+			String key = plVo.getPointIdentifierIndex() + ":" + pl.getValuePattern().pattern();
+			PatternGroup group = byPattern.get(key);
+			if(group == null) {
+				group = new PatternGroup(pl.getValuePattern(), plVo.getPointIdentifierIndex());
+				byPattern.put(key, group);
+			}
+			group.add(new PointEntry(plVo, callbackFactory.create(dp)));
+		}
+		this.groups = new ArrayList<>(byPattern.values());
+	}
+
+	/**
+	 * Match one line against every distinct pattern and deliver values to the identified points
+	 * @param line
+	 */
+	public void dispatch(String line) {
+		for(PatternGroup group : groups)
+			group.dispatch(line);
+	}
+
+	/**
+	 * @return the number of distinct patterns each line is matched against
+	 */
+	public int getPatternCount() {
+		return groups.size();
+	}
+
+	/**
+	 * Creates the callback to use for a point's matches
+	 */
+	public interface MatchCallbackFactory {
+		MatchCallback create(DataPointRT dp);
+	}
+
+	private static class PatternGroup {
+		private final Pattern pattern;
+		private final int pointIdentifierIndex;
+		private final int groupCount;
+		private final Map<String, List<PointEntry>> byIdentifier = new HashMap<>();
+		//Points that can never be identified with this pattern
+		private final List<PointEntry> unidentifiable = new ArrayList<>();
+
+		PatternGroup(Pattern pattern, int pointIdentifierIndex) {
+			this.pattern = pattern;
+			this.pointIdentifierIndex = pointIdentifierIndex;
+			this.groupCount = pattern.matcher("").groupCount();
+		}
+
+		void add(PointEntry entry) {
+			if(pointIdentifierIndex > groupCount || entry.vo.getValueIndex() > groupCount) {
+				unidentifiable.add(entry);
+				return;
+			}
+			List<PointEntry> entries = byIdentifier.get(entry.vo.getPointIdentifier());
+			if(entries == null) {
+				entries = new ArrayList<>(1);
+				byIdentifier.put(entry.vo.getPointIdentifier(), entries);
+			}
+			entries.add(entry);
+		}
+
+		void dispatch(String line) {
+			Matcher matcher = pattern.matcher(line);
+			if(!matcher.find())
+				return;
+			if(LOG.isDebugEnabled())
+				LOG.debug("Message matched regex: " + pattern.pattern());
+
+			for(PointEntry entry : unidentifiable)
+				entry.callback.pointNotIdentified(line, pattern.pattern(), pointIdentifierIndex);
+
+			if(byIdentifier.isEmpty())
+				return;
+
+			String identifier = matcher.group(pointIdentifierIndex);
+			List<PointEntry> entries = byIdentifier.get(identifier);
+			if(entries == null)
+				return;
+
+			if(LOG.isDebugEnabled())
+				LOG.debug("Point Identified: " + identifier);
+
+			for(PointEntry entry : entries) {
+				try {
+					PointValueTime value = AsciiFileDataSourceRT.createPointValueTime(matcher, entry.vo.getDataTypeId(),
+							entry.vo.getValueIndex(), entry.vo.getHasTimestamp(), entry.vo.getTimestampIndex(),
+							entry.getTimestampFormat());
+					entry.callback.onMatch(identifier, value);
+				} catch(Exception e) {
+					entry.callback.matchGeneralFailure(e);
+				}
+			}
+		}
+	}
+
+	private static class PointEntry {
+		private final AsciiFilePointLocatorVO vo;
+		private final MatchCallback callback;
+		private SimpleDateFormat timestampFormat;
+
+		PointEntry(AsciiFilePointLocatorVO vo, MatchCallback callback) {
+			this.vo = vo;
+			this.callback = callback;
+		}
+
+		/**
+		 * Lazily compile the locator's format, null if timestamps are epoch millis or absent
+		 */
+		SimpleDateFormat getTimestampFormat() {
+			if(timestampFormat == null && AsciiFileDataSourceRT.usesTimestampFormat(vo.getHasTimestamp(), vo.getTimestampFormat()))
+				timestampFormat = new SimpleDateFormat(vo.getTimestampFormat());
+			return timestampFormat;
+		}
+	}
+}
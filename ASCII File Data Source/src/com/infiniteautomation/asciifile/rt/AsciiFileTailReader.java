@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.asciifile.rt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Reads only the region of a file that was appended since the last read.
+ *
+ * The position of the last complete line read is tracked along with the file key (inode on
+ * most platforms) so that a rotated or truncated file is read again from the beginning.  The
+ * creation time is not used as many file systems report the modification time instead.  A
+ * trailing line without a terminator is left for the next read unless the caller knows the file
+ * is complete and asks for it to be flushed.
+ *
+ * @author Phillip Dunlap
+ */
+public class AsciiFileTailReader {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Charset charset;
+
+	public AsciiFileTailReader() {
+		this(Charset.defaultCharset());
+	}
+
+	public AsciiFileTailReader(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Read the lines appended to the file since the last position
+	 *
+	 * @param file
+	 * @param last position returned by the previous read of this file, null to read it all
+	 * @param dispatcher
+	 * @return the position to resume from next time
+	 * @throws IOException
+	 */
+	public Position read(File file, Position last, AsciiFileLineDispatcher dispatcher) throws IOException {
+		return read(file, last, dispatcher, false);
+	}
+
+	/**
+	 * Read the lines appended to the file since the last position
+	 *
+	 * @param file
+	 * @param last position returned by the previous read of this file, null to read it all
+	 * @param dispatcher
+	 * @param flushPartial dispatch a trailing line without a terminator, for files that are no longer written
+	 * @return the position to resume from next time
+	 * @throws IOException
+	 */
+	public Position read(File file, Position last, AsciiFileLineDispatcher dispatcher, boolean flushPartial) throws IOException {
+		Path path = file.toPath();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		String fileKey = getFileKey(attributes);
+		long size = attributes.size();
+
+		//Rotated if the file has been replaced or truncated
+		long start = 0;
+		if(last != null && last.isSameFile(fileKey) && size >= last.getOffset())
+			start = last.getOffset();
+
+		if(start == size)
+			return new Position(fileKey, start);
+
+		long consumed = start;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			channel.position(start);
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			byte[] pending = new byte[256];
+			int pendingLength = 0;
+			long position = start;
+
+			while(position < size) {
+				buffer.clear();
+				if(size - position < buffer.capacity())
+					buffer.limit((int)(size - position));
+				int read = channel.read(buffer);
+				if(read < 0)
+					break;
+
+				byte[] bytes = buffer.array();
+				int lineStart = 0;
+				for(int i = 0; i < read; i++) {
+					if(bytes[i] != '\n')
+						continue;
+					if(pendingLength > 0) {
+						pending = append(pending, pendingLength, bytes, lineStart, i - lineStart);
+						pendingLength += i - lineStart;
+						dispatcher.dispatch(decode(pending, 0, pendingLength));
+						pendingLength = 0;
+					}else {
+						dispatcher.dispatch(decode(bytes, lineStart, i - lineStart));
+					}
+					lineStart = i + 1;
+					consumed = position + lineStart;
+				}
+
+				//Carry the partial line over to the next buffer
+				if(lineStart < read) {
+					pending = append(pending, pendingLength, bytes, lineStart, read - lineStart);
+					pendingLength += read - lineStart;
+				}
+				position += read;
+			}
+
+			if(flushPartial && pendingLength > 0) {
+				dispatcher.dispatch(decode(pending, 0, pendingLength));
+				consumed = position;
+			}
+		}
+		return new Position(fileKey, consumed);
+	}
+
+	/**
+	 * Has the file been read to its end since it was last replaced or truncated
+	 *
+	 * @param file
+	 * @param last position returned by the previous read of this file, null if it has not been read
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isRead(File file, Position last) throws IOException {
+		if(last == null)
+			return false;
+		BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		return last.isSameFile(getFileKey(attributes)) && last.getOffset() == attributes.size();
+	}
+
+	private static String getFileKey(BasicFileAttributes attributes) {
+		return attributes.fileKey() == null ? null : attributes.fileKey().toString();
+	}
+
+	private String decode(byte[] bytes, int offset, int length) {
+		if(length > 0 && bytes[offset + length - 1] == '\r')
+			length--;
+		return new String(bytes, offset, length, charset);
+	}
+
+	private static byte[] append(byte[] pending, int pendingLength, byte[] bytes, int offset, int length) {
+		if(pendingLength + length > pending.length)
+			pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + length));
+		System.arraycopy(bytes, offset, pending, pendingLength, length);
+		return pending;
+	}
+
+	/**
+	 * Where the last read of a file stopped, saved with the data source's persistent data
+	 */
+	public static class Position implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final String fileKey;
+		private final long offset;
+
+		public Position(String fileKey, long offset) {
+			this.fileKey = fileKey;
+			this.offset = offset;
+		}
+
+		/**
+		 * Is this position for the file with the given key, if not the file has been
+		 * rotated.  Always true where the file system has no file keys.
+		 */
+		public boolean isSameFile(String fileKey) {
+			return Objects.equals(this.fileKey, fileKey);
+		}
+
+		public String getFileKey() {
+			return fileKey;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+	}
+}
@@ -35,6 +35,46 @@ public class AsciiFileDataSourceModel extends AbstractPollingDataSourceModel<Asc
 	    this.data.setFilePath(filePath);
 	}
 
+	@JsonGetter("tailFile")
+	public boolean isTailFile() {
+	    return this.data.isTailFile();
+	}
+
+	@JsonSetter("tailFile")
+	public void setTailFile(boolean tailFile) {
+	    this.data.setTailFile(tailFile);
+	}
+
+	@JsonGetter("fileNameGlob")
+	public String getFileNameGlob() {
+	    return this.data.getFileNameGlob();
+	}
+
+	@JsonSetter("fileNameGlob")
+	public void setFileNameGlob(String fileNameGlob) {
+	    this.data.setFileNameGlob(fileNameGlob);
+	}
+
+	@JsonGetter("fileParseThreads")
+	public int getFileParseThreads() {
+	    return this.data.getFileParseThreads();
+	}
+
+	@JsonSetter("fileParseThreads")
+	public void setFileParseThreads(int fileParseThreads) {
+	    this.data.setFileParseThreads(fileParseThreads);
+	}
+
+	@JsonGetter("archivePath")
+	public String getArchivePath() {
+	    return this.data.getArchivePath();
+	}
+
+	@JsonSetter("archivePath")
+	public void setArchivePath(String archivePath) {
+	    this.data.setArchivePath(archivePath);
+	}
+
     @Override
     public String getModelType() {
         return AsciiFileDataSourceDefinition.DATA_SOURCE_TYPE;
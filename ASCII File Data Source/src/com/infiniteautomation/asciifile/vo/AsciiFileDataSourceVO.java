@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.file.FileSystems;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
@@ -37,6 +38,14 @@ public class AsciiFileDataSourceVO extends PollingDataSourceVO<AsciiFileDataSour
     
     @JsonProperty
     private String filePath;
+    @JsonProperty
+    private boolean tailFile;
+    @JsonProperty
+    private String fileNameGlob; //When set the file path is a directory and matching files are read
+    @JsonProperty
+    private int fileParseThreads = 1;
+    @JsonProperty
+    private String archivePath; //Directory to move consumed files to
     
 	@Override
 	public TranslatableMessage getConnectionDescription() {
@@ -80,6 +89,46 @@ public class AsciiFileDataSourceVO extends PollingDataSourceVO<AsciiFileDataSour
 		this.filePath = filePath;
 	}
 	
+	public boolean isTailFile() {
+		return this.tailFile;
+	}
+	
+	public void setTailFile(boolean tailFile) {
+		this.tailFile = tailFile;
+	}
+	
+	/**
+	 * Is the file path a directory of files to ingest
+	 * @return
+	 */
+	public boolean isDirectory() {
+		return !StringUtils.isEmpty(this.fileNameGlob);
+	}
+	
+	public String getFileNameGlob() {
+		return this.fileNameGlob;
+	}
+	
+	public void setFileNameGlob(String fileNameGlob) {
+		this.fileNameGlob = fileNameGlob;
+	}
+	
+	public int getFileParseThreads() {
+		return this.fileParseThreads;
+	}
+	
+	public void setFileParseThreads(int fileParseThreads) {
+		this.fileParseThreads = fileParseThreads;
+	}
+	
+	public String getArchivePath() {
+		return this.archivePath;
+	}
+	
+	public void setArchivePath(String archivePath) {
+		this.archivePath = archivePath;
+	}
+	
 	public int getUpdatePeriods() {
 		return this.updatePeriods;
 	}
@@ -117,6 +166,32 @@ public class AsciiFileDataSourceVO extends PollingDataSourceVO<AsciiFileDataSour
 		        		response.addContextualMessage("filePath", "dsEdit.file.pathRestrictedBy", filePath);
 		        }
         }
+        
+        if(isDirectory()) {
+        	try {
+        		FileSystems.getDefault().getPathMatcher("glob:" + fileNameGlob);
+        	} catch(IllegalArgumentException e) {
+        		response.addContextualMessage("fileNameGlob", "file.validate.invalidGlob", fileNameGlob, e.getMessage());
+        	}
+        	if(fileParseThreads < 1)
+        		response.addContextualMessage("fileParseThreads", "validate.greaterThanZero");
+        	if(!StringUtils.isEmpty(archivePath)) {
+        		try {
+        			this.archivePath = new File(archivePath).getCanonicalPath();
+        		} catch(IOException e) {
+        			response.addContextualMessage("archivePath", "dsEdit.file.ioexceptionCanonical", archivePath);
+        			return;
+        		}
+        		if(archivePath.equals(filePath))
+        			response.addContextualMessage("archivePath", "file.validate.archiveIsSource");
+        		String restrictedPaths = SystemSettingsDao.instance.getValue(AsciiFileSystemSettingsDefinition.RESTRICTED_PATH);
+        		if(!StringUtils.isEmpty(restrictedPaths))
+        			for(String rPath : restrictedPaths.split(";")) {
+        				if(this.archivePath.startsWith(rPath))
+        					response.addContextualMessage("archivePath", "dsEdit.file.pathRestrictedBy", archivePath);
+        			}
+        	}
+        }
      }
 
     //
@@ -125,11 +200,15 @@ public class AsciiFileDataSourceVO extends PollingDataSourceVO<AsciiFileDataSour
     // /
     //
     private static final long serialVersionUID = -1;
-    private static final int version = 2;
+    private static final int version = 4;
 
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.writeInt(version);
         SerializationHelper.writeSafeUTF(out, this.filePath);
+        out.writeBoolean(tailFile);
+        SerializationHelper.writeSafeUTF(out, fileNameGlob);
+        out.writeInt(fileParseThreads);
+        SerializationHelper.writeSafeUTF(out, archivePath);
     }
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
@@ -140,8 +219,20 @@ public class AsciiFileDataSourceVO extends PollingDataSourceVO<AsciiFileDataSour
             this.filePath = SerializationHelper.readSafeUTF(in);
             updatePeriodType = in.readInt();
             updatePeriods = in.readInt();
+            fileParseThreads = 1;
         }else if(ver == 2) {
             filePath = SerializationHelper.readSafeUTF(in);
+            fileParseThreads = 1;
+        }else if(ver == 3) {
+            filePath = SerializationHelper.readSafeUTF(in);
+            tailFile = in.readBoolean();
+            fileParseThreads = 1;
+        }else if(ver == 4) {
+            filePath = SerializationHelper.readSafeUTF(in);
+            tailFile = in.readBoolean();
+            fileNameGlob = SerializationHelper.readSafeUTF(in);
+            fileParseThreads = in.readInt();
+            archivePath = SerializationHelper.readSafeUTF(in);
         }
     }
 	
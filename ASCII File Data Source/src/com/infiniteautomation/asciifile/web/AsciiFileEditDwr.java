@@ -38,12 +38,16 @@ public class AsciiFileEditDwr extends DataSourceEditDwr {
 
 	@DwrPermission(custom = SystemSettingsDao.PERMISSION_DATASOURCE)
 	public ProcessResult saveFileDataSource(BasicDataSourceVO basic, int updatePeriods, int updatePeriodType,
-			String filePath) {
+			String filePath, boolean tailFile, String fileNameGlob, int fileParseThreads, String archivePath) {
 		AsciiFileDataSourceVO ds = (AsciiFileDataSourceVO) Common.getHttpUser().getEditDataSource();
 
 		setBasicProps(ds, basic);
 		ds.setUpdatePeriods(updatePeriods);
 		ds.setUpdatePeriodType(updatePeriodType);
+		ds.setTailFile(tailFile);
+		ds.setFileNameGlob(fileNameGlob);
+		ds.setFileParseThreads(fileParseThreads);
+		ds.setArchivePath(archivePath);
 		try {
 			ds.setFilePath(new File(filePath).getCanonicalPath());
 		} catch(IOException e) {
@@ -17,6 +17,10 @@ import io.swagger.annotations.ApiModel;
 public class AsciiFileDataSourceModel extends AbstractPollingDataSourceModel<AsciiFileDataSourceVO>{
     
     private String filePath;
+    private boolean tailFile;
+    private String fileNameGlob;
+    private int fileParseThreads = 1;
+    private String archivePath;
     
     public AsciiFileDataSourceModel() {
 
@@ -35,6 +39,10 @@ public class AsciiFileDataSourceModel extends AbstractPollingDataSourceModel<Asc
     public AsciiFileDataSourceVO toVO() {
         AsciiFileDataSourceVO vo = super.toVO();
         vo.setFilePath(filePath);
+        vo.setTailFile(tailFile);
+        vo.setFileNameGlob(fileNameGlob);
+        vo.setFileParseThreads(fileParseThreads);
+        vo.setArchivePath(archivePath);
         return vo;
     }
     
@@ -42,6 +50,10 @@ public class AsciiFileDataSourceModel extends AbstractPollingDataSourceModel<Asc
     public void fromVO(AsciiFileDataSourceVO vo) {
         super.fromVO(vo);
         this.filePath = vo.getFilePath();
+        this.tailFile = vo.isTailFile();
+        this.fileNameGlob = vo.getFileNameGlob();
+        this.fileParseThreads = vo.getFileParseThreads();
+        this.archivePath = vo.getArchivePath();
     }
     
     /**
@@ -57,4 +69,56 @@ public class AsciiFileDataSourceModel extends AbstractPollingDataSourceModel<Asc
         return filePath;
     }
     
+    /**
+     * @param tailFile read only the lines appended since the last read
+     */
+    public void setTailFile(boolean tailFile) {
+        this.tailFile = tailFile;
+    }
+    /**
+     * @return the tailFile
+     */
+    public boolean isTailFile() {
+        return tailFile;
+    }
+    
+    /**
+     * @param fileNameGlob glob of the file names to read when the file path is a directory
+     */
+    public void setFileNameGlob(String fileNameGlob) {
+        this.fileNameGlob = fileNameGlob;
+    }
+    /**
+     * @return the fileNameGlob
+     */
+    public String getFileNameGlob() {
+        return fileNameGlob;
+    }
+    
+    /**
+     * @param fileParseThreads maximum number of files to parse at once
+     */
+    public void setFileParseThreads(int fileParseThreads) {
+        this.fileParseThreads = fileParseThreads;
+    }
+    /**
+     * @return the fileParseThreads
+     */
+    public int getFileParseThreads() {
+        return fileParseThreads;
+    }
+    
+    /**
+     * @param archivePath directory to move consumed files into
+     */
+    public void setArchivePath(String archivePath) {
+        this.archivePath = archivePath;
+    }
+    /**
+     * @return the archivePath
+     */
+    public String getArchivePath() {
+        return archivePath;
+    }
+    
 }
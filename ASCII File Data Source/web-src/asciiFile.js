@@ -49,6 +49,10 @@ const asciiFileDataSourceModule = angular.module('maAsciiFileDataSource', ['maUi
                 }
             ],
             filePath: '',
+            tailFile: false,
+            fileNameGlob: '',
+            fileParseThreads: 1,
+            archivePath: '',
             modelType: 'ASCII FILE',
             pollPeriod: {periods: 5, type: 'MINUTES'},
             purgeSettings: {override: false, frequency: {periods: 1, type: 'YEARS'}},
@@ -10,7 +10,8 @@
 	 */
 	function saveDataSourceImpl(basic){
 
-		AsciiFileEditDwr.saveFileDataSource(basic, $get("updatePeriods"), $get("updatePeriodType"), $get("filePath"), saveDataSourceCB);
+		AsciiFileEditDwr.saveFileDataSource(basic, $get("updatePeriods"), $get("updatePeriodType"), $get("filePath"), $get("tailFile"),
+				$get("fileNameGlob"), $get("fileParseThreads"), $get("archivePath"), saveDataSourceCB);
 	}
 	
 	function hideTSindex() {
@@ -176,6 +177,22 @@
  <td class="formLabelRequired"><fmt:message key="dsEdit.file.path"/></td>
  <td><input id="filePath" type="text" value="${dataSource.filePath}"></input></td>
 </tr>
+<tr>
+ <td class="formLabelRequired"><fmt:message key="dsEdit.file.tailFile"/></td>
+ <td class="formField"><sst:checkbox id="tailFile" selectedValue="${dataSource.tailFile}"/></td>
+</tr>
+<tr>
+ <td class="formLabel"><fmt:message key="dsEdit.file.fileNameGlob"/></td>
+ <td class="formField"><input id="fileNameGlob" type="text" value="${dataSource.fileNameGlob}"></input></td>
+</tr>
+<tr>
+ <td class="formLabel"><fmt:message key="dsEdit.file.fileParseThreads"/></td>
+ <td class="formField"><input id="fileParseThreads" type="text" value="${dataSource.fileParseThreads}" class="formShort"/></td>
+</tr>
+<tr>
+ <td class="formLabel"><fmt:message key="dsEdit.file.archivePath"/></td>
+ <td class="formField"><input id="archivePath" type="text" value="${dataSource.archivePath}"></input></td>
+</tr>
 <tr>
  <td align="right"><input id="fileTestButton" type="button" value="<fmt:message key="dsEdit.file.check"/>" onclick="checkFile();"></input></td>
  <td class="formError" id="fileTestMessage"></td>
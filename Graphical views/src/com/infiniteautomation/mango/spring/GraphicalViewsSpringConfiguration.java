@@ -0,0 +1,16 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.spring;
+
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author Terry Packer
+ */
+@Configuration
+@ComponentScan(basePackages= {"com.serotonin.m2m2.gviews"})
+public class GraphicalViewsSpringConfiguration {
+
+}
@@ -0,0 +1,88 @@
+/*
+    Copyright (C) 2019 Infinite Automation Systems Inc. All rights reserved.
+    @author Terry Packer
+ */
+package com.serotonin.m2m2.gviews;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * Holds the views without their components for permission checks and lists, and the serialized
+ * components of the most recently used views so they are not read from the database again.
+ *
+ * The components are kept serialized because views are changed by the pages that use them, each
+ * request deserializes its own copy of only the view it shows.  Each change to the table increments
+ * the version, anything read before a change is not cached.
+ *
+ * @author Terry Packer
+ */
+class GraphicalViewCache {
+
+    private long version;
+    //Views by id without their components, null until read
+    private Map<Integer, GraphicalView> summaries;
+    private final Map<Integer, byte[]> data;
+
+    GraphicalViewCache() {
+        final int maxViews = Common.envProps.getInt("graphicalViews.cache.maxViews", 500);
+        this.data = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > maxViews;
+            }
+        };
+    }
+
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the views without components by id, null if they must be read. The map must not be modified.
+     */
+    synchronized Map<Integer, GraphicalView> getSummaries() {
+        return summaries;
+    }
+
+    synchronized void putSummaries(Map<Integer, GraphicalView> summaries, long version) {
+        if (this.version == version)
+            this.summaries = summaries;
+    }
+
+    /**
+     * @param id
+     * @return the serialized view, an empty array if the view has no data, null if not cached
+     */
+    synchronized byte[] getData(int id) {
+        return data.get(id);
+    }
+
+    synchronized void putData(int id, byte[] bytes, long version) {
+        if (this.version == version)
+            data.put(id, bytes);
+    }
+
+    /**
+     * A view was added, changed or removed
+     * @param id
+     */
+    synchronized void invalidate(int id) {
+        version++;
+        summaries = null;
+        data.remove(id);
+    }
+
+    /**
+     * Views were removed without their ids being known, e.g. by deleting their owner
+     */
+    synchronized void invalidateAll() {
+        version++;
+        summaries = null;
+        data.clear();
+    }
+}
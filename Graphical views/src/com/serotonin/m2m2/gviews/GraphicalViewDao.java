@@ -4,13 +4,18 @@
  */
 package com.serotonin.m2m2.gviews;
 
+import java.io.ByteArrayInputStream;
 import java.sql.Blob;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
@@ -27,10 +32,17 @@ public class GraphicalViewDao extends BaseDao {
     // Views
     //
     private static final String VIEW_SELECT = //
-    "select data, id, xid, name, background, userId, readPermission, setPermission, editPermission, anonymousAccess from graphicalViews";
+    "select id, xid, name, background, userId, readPermission, setPermission, editPermission, anonymousAccess from graphicalViews";
+
+    private static final GraphicalViewCache CACHE = new GraphicalViewCache();
 
     public List<GraphicalView> getViews() {
-        List<GraphicalView> views = query(VIEW_SELECT, new ViewRowMapper());
+        List<GraphicalView> views = new ArrayList<GraphicalView>();
+        for (GraphicalView summary : getSummaries().values()) {
+            GraphicalView view = materialize(summary);
+            if (view != null)
+                views.add(view);
+        }
         return views;
     }
 
@@ -40,12 +52,14 @@ public class GraphicalViewDao extends BaseDao {
      * @return
      */
     public List<GraphicalView> getViews(User user) {
-        List<GraphicalView> views = query(VIEW_SELECT, new ViewRowMapper());
         List<GraphicalView> userViews = new ArrayList<GraphicalView>();
-        //Filtering on user
-        for(GraphicalView view : views){
-        	if(view.isReader(user)||view.isSetter(user))
-        		userViews.add(view);
+        //Filtering on user, only the allowed views are read
+        for(GraphicalView summary : getSummaries().values()){
+        	if(summary.isReader(user)||summary.isSetter(user)) {
+        	    GraphicalView view = materialize(summary);
+        	    if (view != null)
+        	        userViews.add(view);
+        	}
         }
         return userViews;
     }
@@ -56,10 +70,9 @@ public class GraphicalViewDao extends BaseDao {
      * @return
      */
     public List<IntStringPair> getViewNames(User user) {
-        List<GraphicalView> views = query(VIEW_SELECT, new ViewRowMapper());
         List<IntStringPair> userViews = new ArrayList<IntStringPair>();
         //Filtering on user
-        for(GraphicalView view : views){
+        for(GraphicalView view : getSummaries().values()){
         	if(view.isReader(user)||view.isSetter(user)){
         		userViews.add(new IntStringPair(view.getId(), view.getName()));
         	}
@@ -69,58 +82,108 @@ public class GraphicalViewDao extends BaseDao {
 
 
     public GraphicalView getView(int id) {
-        return getSingleView(VIEW_SELECT + " where id=?", new Object[] { id });
+        return materialize(getSummaries().get(id));
     }
 
     public GraphicalView getViewByXid(String xid) {
-        return getSingleView(VIEW_SELECT + " where xid=?", new Object[] { xid });
+        for (GraphicalView summary : getSummaries().values()) {
+            if (StringUtils.equals(xid, summary.getXid()))
+                return materialize(summary);
+        }
+        return null;
     }
 
     public GraphicalView getView(String name) {
-        return getSingleView(VIEW_SELECT + " where name=?", new Object[] { name });
+        for (GraphicalView summary : getSummaries().values()) {
+            if (StringUtils.equals(name, summary.getName()))
+                return materialize(summary);
+        }
+        return null;
     }
 
-    private GraphicalView getSingleView(String sql, Object[] params) {
-        return queryForObject(sql, params, new ViewRowMapper(), null);
+    /**
+     * Get the views without their components
+     * @return views by id
+     */
+    private Map<Integer, GraphicalView> getSummaries() {
+        Map<Integer, GraphicalView> summaries = CACHE.getSummaries();
+        if (summaries == null) {
+            long version = CACHE.getVersion();
+            summaries = new LinkedHashMap<Integer, GraphicalView>();
+            for (GraphicalView view : query(VIEW_SELECT, new ViewRowMapper()))
+                summaries.put(view.getId(), view);
+            summaries = Collections.unmodifiableMap(summaries);
+            CACHE.putSummaries(summaries, version);
+        }
+        return summaries;
     }
 
-    class ViewRowMapper implements RowMapper<GraphicalView> {
-        @Override
-        public GraphicalView mapRow(ResultSet rs, int rowNum) throws SQLException {
-            GraphicalView v;
-            Blob blob = rs.getBlob(1);
-            if (blob == null)
-                // This can happen during upgrade
-                v = new GraphicalView();
-            else
-                v = (GraphicalView) SerializationHelper.readObjectInContext(blob.getBinaryStream());
-
-            v.setId(rs.getInt(2));
-            v.setXid(rs.getString(3));
-            v.setName(rs.getString(4));
-            v.setBackgroundFilename(rs.getString(5));
-            v.setUserId(rs.getInt(6));
-            v.setReadPermission(rs.getString(7));
-            v.setSetPermission(rs.getString(8));
-            v.setEditPermission(rs.getString(9));
-            v.setAnonymousAccess(rs.getInt(10));
-
-            return v;
+    /**
+     * Deserialize a copy of a view with its components
+     * @param summary
+     * @return the view, null if the summary is null or the view has been deleted
+     */
+    private GraphicalView materialize(GraphicalView summary) {
+        if (summary == null)
+            return null;
+
+        byte[] data = CACHE.getData(summary.getId());
+        if (data == null) {
+            long version = CACHE.getVersion();
+            data = queryForObject("select data from graphicalViews where id=?", new Object[] { summary.getId() },
+                    new ViewDataRowMapper(), null);
+            if (data == null)
+                return null;
+            CACHE.putData(summary.getId(), data, version);
         }
+
+        GraphicalView v;
+        if (data.length == 0)
+            // This can happen during upgrade
+            v = new GraphicalView();
+        else
+            v = (GraphicalView) SerializationHelper.readObjectInContext(new ByteArrayInputStream(data));
+
+        v.setId(summary.getId());
+        v.setXid(summary.getXid());
+        v.setName(summary.getName());
+        v.setBackgroundFilename(summary.getBackgroundFilename());
+        v.setUserId(summary.getUserId());
+        v.setReadPermission(summary.getReadPermission());
+        v.setSetPermission(summary.getSetPermission());
+        v.setEditPermission(summary.getEditPermission());
+        v.setAnonymousAccess(summary.getAnonymousAccess());
+        return v;
     }
 
-    class ViewNameRowMapper implements RowMapper<GraphicalView> {
+    class ViewRowMapper implements RowMapper<GraphicalView> {
         @Override
         public GraphicalView mapRow(ResultSet rs, int rowNum) throws SQLException {
             GraphicalView v = new GraphicalView();
             v.setId(rs.getInt(1));
-            v.setName(rs.getString(2));
-            v.setUserId(rs.getInt(3));
+            v.setXid(rs.getString(2));
+            v.setName(rs.getString(3));
+            v.setBackgroundFilename(rs.getString(4));
+            v.setUserId(rs.getInt(5));
+            v.setReadPermission(rs.getString(6));
+            v.setSetPermission(rs.getString(7));
+            v.setEditPermission(rs.getString(8));
+            v.setAnonymousAccess(rs.getInt(9));
 
             return v;
         }
     }
 
+    class ViewDataRowMapper implements RowMapper<byte[]> {
+        @Override
+        public byte[] mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Blob blob = rs.getBlob(1);
+            if (blob == null)
+                return new byte[0];
+            return blob.getBytes(1, (int) blob.length());
+        }
+    }
+
     public String generateUniqueXid() {
         return generateUniqueXid(GraphicalView.XID_PREFIX, "graphicalViews");
     }
@@ -140,6 +203,7 @@ public class GraphicalViewDao extends BaseDao {
                     updateView(view);
             }
         });
+        CACHE.invalidate(view.getId());
     }
 
     void insertView(GraphicalView view) {
@@ -160,6 +224,15 @@ public class GraphicalViewDao extends BaseDao {
 
     public void removeView(final int viewId) {
         ejt.update("delete from graphicalViews where id=?", new Object[] { viewId });
+        CACHE.invalidate(viewId);
+    }
+
+    /**
+     * The user's views were deleted by the database when the user was
+     * @param userId
+     */
+    public void userDeleted(int userId) {
+        CACHE.invalidateAll();
     }
 
 
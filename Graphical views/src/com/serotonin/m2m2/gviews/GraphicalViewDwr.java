@@ -5,8 +5,11 @@
 package com.serotonin.m2m2.gviews;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
@@ -40,6 +43,7 @@ import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.RuntimeManager;
 import com.serotonin.m2m2.rt.dataImage.DataPointRT;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.event.EventInstance;
 import com.serotonin.m2m2.view.DynamicImage;
 import com.serotonin.m2m2.view.ImageSet;
 import com.serotonin.m2m2.view.ImplDefinition;
@@ -61,6 +65,10 @@ import com.serotonin.m2m2.web.dwr.util.DwrPermission;
 public class GraphicalViewDwr extends ModuleDwr {
 	
 	private static final int pointEventsLimit = 10; //10 most recent events
+	private static final String CHANGE_TRACKER = "changeTracker";
+
+	//States are built again after this long, or the component's update period if that is shorter, even if their points and events have not changed
+	private final long maxStateAge = Common.envProps.getLong("graphicalViews.poll.maxStateAge", 30000);
 	
     //
     //
@@ -113,20 +121,49 @@ public class GraphicalViewDwr extends ModuleDwr {
         HttpServletRequest request = webContext.getHttpServletRequest();
         List<ViewComponentState> states = new ArrayList<ViewComponentState>();
         Map<String, Object> model = new HashMap<String, Object>();
+        Locale locale = Common.getLocale();
+        Map<Integer, String> eventStates = edit ? Collections.emptyMap() : getEventStates(user);
 
         for (ViewComponent viewComponent : view.getViewComponents()) {
-        	
+            long now = System.currentTimeMillis();
+
         	//Are we to update this component
-            boolean update = System.currentTimeMillis() >= (viewComponent.getLastUpdated() + Common.getMillis(viewComponent.getUpdatePeriodType(), viewComponent.getUpdatePeriods()));
+            long updatePeriod = Common.getMillis(viewComponent.getUpdatePeriodType(), viewComponent.getUpdatePeriods());
+            boolean update = now >= (viewComponent.getLastUpdated() + updatePeriod);
+
+            //Use the states from the last poll if none of the component's points have changed
+            ChangeTracker tracker = null;
+            boolean expired = true;
+            String inputs = null;
+            if (!edit) {
+                tracker = ChangeTracker.get(viewComponent);
+                inputs = getInputs(viewComponent, locale, eventStates);
+                expired = now >= tracker.built + Math.min(updatePeriod, maxStateAge);
+                if (!expired && tracker.states != null && inputs.equals(tracker.inputs)) {
+                    states.addAll(tracker.states);
+                    continue;
+                }
+            }
+            int first = states.size();
+
             if (viewComponent.isCompoundComponent() && (edit || viewComponent.isVisible())) {
                 CompoundComponent compoundComponent = (CompoundComponent) viewComponent;
 
                 boolean imageChart = compoundComponent instanceof ImageChartComponent;
 
-                // Add states for each of the children
-                for (CompoundChild child : compoundComponent.getChildComponents())
-                    addPointComponentState(child.getViewComponent(), update, Common.runtimeManager, model, request, view, user,
+                // Add states for each of the children, only rendering the children that have changed
+                for (CompoundChild child : compoundComponent.getChildComponents()) {
+                    boolean childUpdate = update;
+                    if (!edit) {
+                        ChangeTracker childTracker = ChangeTracker.get(child.getViewComponent());
+                        String childInputs = getInputs(child.getViewComponent(), locale, eventStates);
+                        if (!expired)
+                            childUpdate = update && !childInputs.equals(childTracker.inputs);
+                        childTracker.inputs = childInputs;
+                    }
+                    addPointComponentState(child.getViewComponent(), childUpdate, Common.runtimeManager, model, request, view, user,
                             states, edit, !imageChart);
+                }
 
                 // Add a state for the compound component.
                 ViewComponentState state = new ViewComponentState();
@@ -168,16 +205,104 @@ public class GraphicalViewDwr extends ModuleDwr {
             }
             else
                 addPointComponentState(viewComponent, update, Common.runtimeManager, model, request, view, user, states, edit, true);
-        
+
+            if (tracker != null) {
+                tracker.inputs = inputs;
+                tracker.built = now;
+                tracker.states = new ArrayList<ViewComponentState>(states.subList(first, states.size()));
+            }
+
             //Save the last time we updated
             if(update)
-            	viewComponent.setLastUpdated(System.currentTimeMillis());
+            	viewComponent.setLastUpdated(now);
 
         }
 
         return states;
     }
 
+    /**
+     * Describe the active events of each point the user can see, the ids of the events and
+     * whether they are acknowledged
+     * @param user null for anonymous views, which don't show events
+     * @return by point id
+     */
+    private Map<Integer, String> getEventStates(User user) {
+        if (user == null)
+            return Collections.emptyMap();
+        List<EventInstance> events = new ArrayList<EventInstance>(Common.eventManager.getAllActiveUserEvents(user.getId()));
+        events.sort(Comparator.comparingInt(EventInstance::getId));
+        Map<Integer, StringBuilder> states = new HashMap<Integer, StringBuilder>();
+        for (EventInstance event : events) {
+            int dataPointId = event.getEventType().getDataPointId();
+            if (dataPointId == -1)
+                continue;
+            states.computeIfAbsent(dataPointId, k -> new StringBuilder())
+                .append(":e").append(event.getId()).append(event.isAcknowledged() ? 'a' : 'u');
+        }
+        Map<Integer, String> result = new HashMap<Integer, String>(states.size() * 2);
+        for (Map.Entry<Integer, StringBuilder> entry : states.entrySet())
+            result.put(entry.getKey(), entry.getValue().toString());
+        return result;
+    }
+
+    /**
+     * Describe what the states of a component are built from, the values and events of its points and the locale
+     * @param viewComponent
+     * @param locale
+     * @param eventStates from {@link #getEventStates(User)}
+     * @return
+     */
+    private String getInputs(ViewComponent viewComponent, Locale locale, Map<Integer, String> eventStates) {
+        StringBuilder inputs = new StringBuilder(locale.toLanguageTag());
+        if (viewComponent.isCompoundComponent()) {
+            for (CompoundChild child : ((CompoundComponent) viewComponent).getChildComponents())
+                appendInputs(child.getViewComponent(), inputs, eventStates);
+        }
+        else
+            appendInputs(viewComponent, inputs, eventStates);
+        return inputs.toString();
+    }
+
+    private void appendInputs(ViewComponent viewComponent, StringBuilder inputs, Map<Integer, String> eventStates) {
+        inputs.append('|');
+        if (!viewComponent.isPointComponent())
+            return;
+        DataPointVO point = ((PointComponent) viewComponent).tgetDataPoint();
+        if (point == null)
+            return;
+        inputs.append(point.getId());
+        String events = eventStates.get(point.getId());
+        if (events != null)
+            inputs.append(events);
+        DataPointRT rt = Common.runtimeManager.getDataPoint(point.getId());
+        if (rt == null) {
+            inputs.append(":disabled");
+            return;
+        }
+        PointValueTime pvt = rt.getPointValue();
+        if (pvt != null)
+            inputs.append(':').append(pvt.getTime()).append(':').append(pvt.getValue());
+    }
+
+    /**
+     * The inputs a component's states were last built from, and the states
+     */
+    private static class ChangeTracker {
+        private String inputs;
+        private long built;
+        private List<ViewComponentState> states;
+
+        static ChangeTracker get(ViewComponent viewComponent) {
+            ChangeTracker tracker = (ChangeTracker) viewComponent.getCachedContent(CHANGE_TRACKER);
+            if (tracker == null) {
+                tracker = new ChangeTracker();
+                viewComponent.putCachedContent(CHANGE_TRACKER, tracker);
+            }
+            return tracker;
+        }
+    }
+
     private void addPointComponentState(ViewComponent viewComponent, boolean update, RuntimeManager rtm, Map<String, Object> model,
             HttpServletRequest request, GraphicalView view, User user, List<ViewComponentState> states, boolean edit,
             boolean add) {
@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.gviews;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.infiniteautomation.mango.spring.events.DaoEvent;
+import com.infiniteautomation.mango.spring.events.DaoEventType;
+import com.serotonin.m2m2.vo.User;
+
+/**
+ * Deleting a user deletes their views through the foreign key of the views table, which
+ * the view cache can't see, so the cache is cleared when a user is deleted.
+ *
+ * @author Terry Packer
+ */
+@Component
+public class GraphicalViewUserListener {
+
+    @EventListener
+    protected void handleUserEvent(DaoEvent<? extends User> event) {
+        if (event.getType() == DaoEventType.DELETE)
+            new GraphicalViewDao().userDeleted(event.getVo().getId());
+    }
+}
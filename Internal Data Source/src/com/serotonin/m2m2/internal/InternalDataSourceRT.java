@@ -6,7 +6,10 @@ package com.serotonin.m2m2.internal;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -42,6 +45,13 @@ public class InternalDataSourceRT extends PollingDataSource<InternalDataSourceVO
     private final boolean createsPoints;
     private final Pattern createPointsPattern;
     private final Map<String, Boolean> monitorMap;
+    //Monitor ids that have been matched against the create points pattern
+    private final Set<String> checkedMonitorIds;
+
+    //Readers of the points' monitors by point id, resolved when a point starts and when its monitor is replaced
+    private final Map<Integer, MonitorReader> readers = new ConcurrentHashMap<Integer, MonitorReader>();
+    private final long resolvePeriod;
+    private long resolved;
 	
     public InternalDataSourceRT(InternalDataSourceVO vo) {
         super(vo);
@@ -50,6 +60,7 @@ public class InternalDataSourceRT extends PollingDataSource<InternalDataSourceVO
             try {
                 createPointsPattern = Pattern.compile(vo.getCreatePointsPattern());
                 monitorMap = new HashMap<String, Boolean>();
+                checkedMonitorIds = new HashSet<String>();
                 for(DataPointVO dpvo : DataPointDao.getInstance().getDataPoints(vo.getId(), null)) {
                     InternalPointLocatorVO plvo = dpvo.getPointLocator();
                     monitorMap.put(plvo.getMonitorId(), true);
@@ -60,7 +71,9 @@ public class InternalDataSourceRT extends PollingDataSource<InternalDataSourceVO
         else {
             createPointsPattern = null;
             monitorMap = null;
+            checkedMonitorIds = null;
         }
+        resolvePeriod = Common.envProps.getLong("internal.monitors.resolvePeriod", 10000);
     }
 
 
@@ -78,51 +91,86 @@ public class InternalDataSourceRT extends PollingDataSource<InternalDataSourceVO
     	super.beginPolling();
     }
     
+    @Override
+    public void addDataPoint(DataPointRT dataPoint) {
+        super.addDataPoint(dataPoint);
+        resolve(dataPoint);
+    }
+
+    @Override
+    public void removeDataPoint(DataPointRT dataPoint) {
+        super.removeDataPoint(dataPoint);
+        readers.remove(dataPoint.getId());
+    }
+
     @Override
     public void forcePointRead(DataPointRT dataPoint) {
-    	InternalPointLocatorRT locator = dataPoint.getPointLocator();
-        ValueMonitor<?> m = Common.MONITORED_VALUES.getValueMonitor(locator.getPointLocatorVO().getMonitorId());        
-        if (m != null){
-            Object value = m.getValue();
-            if(value == null)
-                return;
-            if(m instanceof IntegerMonitor)
-                dataPoint.updatePointValue(new PointValueTime(((IntegerMonitor)m).getValue().doubleValue(), Common.timer.currentTimeMillis()));
-            else if(m instanceof LongMonitor)
-                dataPoint.updatePointValue(new PointValueTime(((LongMonitor)m).getValue().doubleValue(), Common.timer.currentTimeMillis()));
-            else if(m instanceof DoubleMonitor)
-                dataPoint.updatePointValue(new PointValueTime(((DoubleMonitor)m).getValue().doubleValue(), Common.timer.currentTimeMillis()));
-            else if(m instanceof AtomicIntegerMonitor)
-                dataPoint.updatePointValue(new PointValueTime(((AtomicIntegerMonitor)m).getValue().doubleValue(), Common.timer.currentTimeMillis()));
-        }
+        MonitorReader reader = readers.get(dataPoint.getId());
+        if (reader != null)
+            reader.update(dataPoint, Common.timer.currentTimeMillis());
     }
     
     @Override
     public void doPoll(long time) {
-        if(createsPoints) {
-            for(ValueMonitor<?> m : Common.MONITORED_VALUES.getMonitors()) {
-                if(createPointsPattern.matcher(m.getId()).matches() && !monitorMap.containsKey(m.getId()))
-                    createMonitorPoint(m);
+        //Only look at the registered monitors once every resolve period
+        if (time - resolved >= resolvePeriod) {
+            resolved = time;
+            for (DataPointRT dataPoint : dataPoints)
+                resolve(dataPoint);
+            if(createsPoints) {
+                for(ValueMonitor<?> m : Common.MONITORED_VALUES.getMonitors()) {
+                    if(checkedMonitorIds.add(m.getId()) && createPointsPattern.matcher(m.getId()).matches() && !monitorMap.containsKey(m.getId()))
+                        createMonitorPoint(m);
+                }
             }
         }
         
         for (DataPointRT dataPoint : dataPoints) {
-            InternalPointLocatorRT locator = dataPoint.getPointLocator();
-            ValueMonitor<?> m = Common.MONITORED_VALUES.getValueMonitor(locator.getPointLocatorVO().getMonitorId());
-            
-            if (m != null){
-                Object value = m.getValue();
-                if(value == null)
-                    continue;
-                if(m instanceof IntegerMonitor)
-                    dataPoint.updatePointValue(new PointValueTime(((IntegerMonitor)m).getValue().doubleValue(), Common.timer.currentTimeMillis()));
-                else if(m instanceof LongMonitor)
-                    dataPoint.updatePointValue(new PointValueTime(((LongMonitor)m).getValue().doubleValue(), Common.timer.currentTimeMillis()));
-                else if(m instanceof DoubleMonitor)
-                    dataPoint.updatePointValue(new PointValueTime(((DoubleMonitor)m).getValue().doubleValue(), Common.timer.currentTimeMillis()));
-                else if(m instanceof AtomicIntegerMonitor)
-                    dataPoint.updatePointValue(new PointValueTime(((AtomicIntegerMonitor)m).getValue().doubleValue(), Common.timer.currentTimeMillis()));
-            }
+            MonitorReader reader = readers.get(dataPoint.getId());
+            if (reader != null)
+                reader.update(dataPoint, time);
+        }
+    }
+
+    /**
+     * Look up a point's monitor, the reader is only replaced when the monitor registered under
+     * its id is a different monitor
+     * @param dataPoint
+     */
+    private void resolve(DataPointRT dataPoint) {
+        InternalPointLocatorRT locator = dataPoint.getPointLocator();
+        ValueMonitor<?> m = Common.MONITORED_VALUES.getValueMonitor(locator.getPointLocatorVO().getMonitorId());
+        if (m == null) {
+            readers.remove(dataPoint.getId());
+            return;
+        }
+        MonitorReader reader = readers.get(dataPoint.getId());
+        if (reader == null || reader.monitor != m)
+            readers.put(dataPoint.getId(), new MonitorReader(m));
+    }
+
+    /**
+     * Reads a monitor, whether it has a numeric value is found once when the monitor is resolved
+     */
+    private static final class MonitorReader {
+        private final ValueMonitor<?> monitor;
+        private final boolean numeric;
+
+        MonitorReader(ValueMonitor<?> monitor) {
+            this.monitor = monitor;
+            this.numeric = monitor instanceof IntegerMonitor || monitor instanceof LongMonitor
+                    || monitor instanceof DoubleMonitor || monitor instanceof AtomicIntegerMonitor;
+        }
+
+        /**
+         * Set the point to the value of the monitor, if it has one
+         */
+        void update(DataPointRT dataPoint, long time) {
+            if (!numeric)
+                return;
+            Number value = (Number) monitor.getValue();
+            if (value != null)
+                dataPoint.updatePointValue(new PointValueTime(value.doubleValue(), time));
         }
     }
     
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.mbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.mbus.MBusPollPlan.Device;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+
+/**
+ * Test the order devices are polled in, backing off from devices that don't respond
+ * and the poll deadline
+ *
+ * @author Terry Packer
+ */
+public class MBusPollPlanTest {
+
+    private final MBusPollPlan plan = new MBusPollPlan("DS_TEST", 1000);
+
+    @After
+    public void terminate() {
+        plan.terminate();
+    }
+
+    @Test
+    public void testResumeFrom() {
+        List<Device> devices = plan.plan(devices("a", "b", "c", "d"));
+        assertEquals(keys("a", "b", "c", "d"), keys(devices));
+
+        //Ran out of time at c, the next poll starts there
+        plan.resumeFrom(devices.get(2));
+        assertEquals(keys("c", "d", "a", "b"), keys(plan.plan(devices("a", "b", "c", "d"))));
+        assertEquals(keys("a", "b", "c", "d"), keys(plan.plan(devices("a", "b", "c", "d"))));
+    }
+
+    @Test
+    public void testRemovedDevice() {
+        List<Device> devices = plan.plan(devices("a", "b"));
+        devices.get(0).failure();
+        String monitorId = MBusPollPlan.LATENCY_MONITOR_PREFIX + "DS_TEST.b";
+        assertTrue(Common.MONITORED_VALUES.getValueMonitor(monitorId) != null);
+
+        //b has no points any more, a keeps its state
+        devices = plan.plan(devices("a"));
+        assertEquals(keys("a"), keys(devices));
+        assertEquals(1, devices.get(0).getFailures());
+        assertNull(Common.MONITORED_VALUES.getValueMonitor(monitorId));
+    }
+
+    @Test
+    public void testBackoff() {
+        Device device = plan.plan(devices("a")).get(0);
+        int[] expected = {1, 2, 4, 8, 16, 32, 32};
+        for (int skip : expected) {
+            assertFalse(device.isBackingOff());
+            device.failure();
+            for (int i = 0; i < skip; i++)
+                assertTrue(device.isBackingOff());
+        }
+
+        //Responding resets the backoff
+        device.responded(10);
+        assertEquals(0, device.getFailures());
+        assertFalse(device.isBackingOff());
+    }
+
+    @Test
+    public void testSlowDevice() {
+        Device device = plan.plan(devices("a")).get(0);
+        device.responded(1500);
+        assertEquals(1, device.getFailures());
+        assertTrue(device.isBackingOff());
+        assertFalse(device.isBackingOff());
+
+        device.responded(500);
+        assertEquals(0, device.getFailures());
+    }
+
+    @Test
+    public void testDeadline() {
+        Device device = plan.plan(devices("a")).get(0);
+        assertTrue(device.fitsBefore(0, 100));
+
+        device.responded(200);
+        assertTrue(device.fitsBefore(0, 300));
+        assertFalse(device.fitsBefore(200, 300));
+    }
+
+    private static Map<String, List<DataPointRT>> devices(String... keys) {
+        Map<String, List<DataPointRT>> devices = new LinkedHashMap<>();
+        for (String key : keys)
+            devices.put(key, Collections.emptyList());
+        return devices;
+    }
+
+    private static List<String> keys(String... keys) {
+        List<String> list = new ArrayList<>();
+        Collections.addAll(list, keys);
+        return list;
+    }
+
+    private static List<String> keys(List<Device> devices) {
+        List<String> keys = new ArrayList<>();
+        for (Device device : devices)
+            keys.add(device.getKey());
+        return keys;
+    }
+}
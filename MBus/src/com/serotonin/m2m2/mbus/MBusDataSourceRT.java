@@ -18,6 +18,7 @@
  */
 package com.serotonin.m2m2.mbus;
 
+import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.dataImage.DataPointRT;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
@@ -37,7 +38,6 @@ import net.sf.mbus4j.master.MBusMaster;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 import net.sf.mbus4j.MBusUtils;
@@ -58,9 +58,11 @@ public class MBusDataSourceRT extends PollingDataSource<MBusDataSourceVO> {
     public static final int POINT_WRITE_EXCEPTION_EVENT = 3;
     public static final int POLL_ABORTED_EVENT = 4;
     private final MBusMaster master = new MBusMaster();
+    private final MBusPollPlan plan;
 
     public MBusDataSourceRT(MBusDataSourceVO vo) {
         super(vo);
+        this.plan = new MBusPollPlan(vo.getXid());
     }
 
     @Override
@@ -71,103 +73,63 @@ public class MBusDataSourceRT extends PollingDataSource<MBusDataSourceVO> {
     @Override
     public void terminate() {
         super.terminate();
+        synchronized (this) {
+            plan.terminate();
+        }
     }
 
     @Override
     protected synchronized void doPoll(long time) {
         boolean pointError = false;
 
-        final List<UserDataResponse> udrs = new LinkedList<>();
+        //One request per device, the points of the device are read from its response
+        final List<MBusPollPlan.Device> devices = plan.plan(dataPoints);
+        final long deadline = Common.timer.currentTimeMillis() + Common.getMillis(vo.getUpdatePeriodType(), vo.getUpdatePeriods());
 
         if (openConnection()) {
             try {
-                for (DataPointRT point : dataPoints) {
-                    final MBusPointLocatorRT locatorRT = point.getPointLocator();
-                    final MBusPointLocatorVO locatorVo = locatorRT.getVo();
+                int requested = 0;
+                for (MBusPollPlan.Device device : devices) {
+                    //The first device is always requested so a slow device can't be put off forever
+                    if (requested > 0 && !device.fitsBefore(Common.timer.currentTimeMillis(), deadline)) {
+                        //Out of time, start with the remaining devices next poll
+                        LOG.warn("MBus poll of " + vo.getXid() + " ran out of time at device " + device.getKey());
+                        plan.resumeFrom(device);
+                        pointError = true;
+                        break;
+                    }
+                    if (device.isBackingOff()) {
+                        pointError = true;
+                        continue;
+                    }
+
+                    requested++;
 
-                    UserDataResponse udr = getUdr(udrs, locatorVo);
+                    final MBusPointLocatorVO deviceVo = device.getLocator();
+                    final long start = Common.timer.currentTimeMillis();
+                    UserDataResponse udr;
+                    if (deviceVo.isPrimaryAddressing()) {
+                        udr = master.readResponse(deviceVo.getAddress());
+                    } else {
+                        udr = master.readResponseBySecondary(MBusUtils.int2Bcd(deviceVo.getIdentNumber()), deviceVo.getManufacturer(), deviceVo.getVersion(), deviceVo.getMedium());
+                    }
                     if (udr == null) {
-                        if (locatorVo.isPrimaryAddressing()) {
-                            udr = master.readResponse(locatorVo.getAddress());
-                        } else {
-                            udr = master.readResponseBySecondary(MBusUtils.int2Bcd(locatorVo.getIdentNumber()), locatorVo.getManufacturer(), locatorVo.getVersion(), locatorVo.getMedium());
-                        }
-                        if (udr == null) {
-                            //insert empty UDR to prevent rurter tries in this polling round
+                        device.failure();
+                        for (DataPointRT point : device.getPoints()) {
+                            final MBusPointLocatorRT locatorRT = point.getPointLocator();
                             locatorRT.needCheckDifAndVif = true;
-                            udr = new UserDataResponse();
-                            udr.setIdentNumber(locatorVo.getIdentNumber());
-                            udr.setMedium(locatorVo.getMedium());
-                            udr.setManufacturer(locatorVo.getManufacturer());
-                            udr.setVersion(locatorVo.getVersion());
-                            udrs.add(udr);
-                            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
-                                    new TranslatableMessage("event.exception2", locatorVo.getDeviceName(), "Can't read device"));
-                            pointError = true;
-                        } else {
-                            udrs.add(udr);
                         }
-                    }
-                    try {
-                        if ((locatorVo.getDbIndex() == -1) || locatorRT.needCheckDifAndVif) {
-                            int[] idx = findDataBlocks(udr, locatorVo);
-                            switch (idx.length) {
-                                case 0:
-                                    LOG.fatal("DataBlock not found: " + locatorVo.toString());
-                                    LOG.fatal(udr.toString());
-                                    raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
-                                            new TranslatableMessage("event.exception2", locatorVo.toString() + "Can't find datablock"));
-                                    pointError = true;
-                                    return;
-                                case 1:
-                                    if (locatorVo.getDbIndex() == idx[0]) {
-                                        locatorRT.needCheckDifAndVif = false;
-                                    } else if (locatorVo.getDbIndex() == -1) {
-                                        LOG.info("Set DB Index: " + locatorVo.toString());
-                                        locatorVo.setDbIndex(idx[0]);
-                                        locatorRT.needCheckDifAndVif = false;
-                                    } else {
-                                        LOG.fatal("Index changed of datablock: " + locatorVo.toString());
-                                        LOG.fatal(udr.toString());
-                                        raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
-                                                new TranslatableMessage("event.exception2", locatorVo.toString() + "Index changed of datablock Please maually correct the dbIndex"));
-                                        return;
-                                    }
-                                    break;
-                                default:
-                                    if (locatorVo.getDbIndex() == -1) {
-                                        LOG.fatal("too many dataBlocks found: " + locatorVo.toString());
-                                        LOG.fatal(udr.toString());
-                                        raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
-                                                new TranslatableMessage("event.exception2", locatorVo.toString() + "Found more then one datablock! Please specify dbIndex manually!"));
-                                        return;
-                                    } else {
-                                        for (int i : idx) {
-                                            if (i == locatorVo.getDbIndex()) {
-                                                locatorRT.needCheckDifAndVif = false;
-                                                break;
-                                            }
-                                        }
-                                        if (locatorRT.needCheckDifAndVif) {
-                                            LOG.fatal("Matching dataBlock not found: " + locatorVo.toString());
-                                            LOG.fatal(udr.toString());
-                                            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
-                                                    new TranslatableMessage("event.exception2", locatorVo.toString() + "Can't find matching datablock! Please specify dbIndex manually!"));
-                                            pointError = true;
-                                            return;
-                                        }
-                                    }
-                            }
-                        }
-                        final DataBlock db = udr.getDataBlock(locatorVo.getDbIndex());
-                        pointError = setValue(db, pointError, time, point, locatorRT, locatorVo);
-
-                    } catch (IndexOutOfBoundsException ex) {
-                        // Handle if datablock is not there...
                         raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
-                                new TranslatableMessage("event.exception2", point.getVO().getExtendedName(),
-                                        "No Data"));
+                                new TranslatableMessage("event.exception2", deviceVo.getDeviceName(), "Can't read device"));
                         pointError = true;
+                        continue;
+                    }
+                    device.responded(Common.timer.currentTimeMillis() - start);
+
+                    for (DataPointRT point : device.getPoints()) {
+                        if (readPoint(udr, point, time)) {
+                            pointError = true;
+                        }
                     }
                 }
 
@@ -190,6 +152,77 @@ public class MBusDataSourceRT extends PollingDataSource<MBusDataSourceVO> {
         }
     }
 
+    /**
+     * Find the data block of a point in the response of its device and save its value
+     * @param udr
+     * @param point
+     * @param time
+     * @return true if there was an error
+     */
+    private boolean readPoint(UserDataResponse udr, DataPointRT point, long time) {
+        final MBusPointLocatorRT locatorRT = point.getPointLocator();
+        final MBusPointLocatorVO locatorVo = locatorRT.getVo();
+        try {
+            if ((locatorVo.getDbIndex() == -1) || locatorRT.needCheckDifAndVif) {
+                int[] idx = findDataBlocks(udr, locatorVo);
+                switch (idx.length) {
+                    case 0:
+                        LOG.fatal("DataBlock not found: " + locatorVo.toString());
+                        LOG.fatal(udr.toString());
+                        raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
+                                new TranslatableMessage("event.exception2", locatorVo.toString() + "Can't find datablock"));
+                        return true;
+                    case 1:
+                        if (locatorVo.getDbIndex() == idx[0]) {
+                            locatorRT.needCheckDifAndVif = false;
+                        } else if (locatorVo.getDbIndex() == -1) {
+                            LOG.info("Set DB Index: " + locatorVo.toString());
+                            locatorVo.setDbIndex(idx[0]);
+                            locatorRT.needCheckDifAndVif = false;
+                        } else {
+                            LOG.fatal("Index changed of datablock: " + locatorVo.toString());
+                            LOG.fatal(udr.toString());
+                            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
+                                    new TranslatableMessage("event.exception2", locatorVo.toString() + "Index changed of datablock Please maually correct the dbIndex"));
+                            return true;
+                        }
+                        break;
+                    default:
+                        if (locatorVo.getDbIndex() == -1) {
+                            LOG.fatal("too many dataBlocks found: " + locatorVo.toString());
+                            LOG.fatal(udr.toString());
+                            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
+                                    new TranslatableMessage("event.exception2", locatorVo.toString() + "Found more then one datablock! Please specify dbIndex manually!"));
+                            return true;
+                        } else {
+                            for (int i : idx) {
+                                if (i == locatorVo.getDbIndex()) {
+                                    locatorRT.needCheckDifAndVif = false;
+                                    break;
+                                }
+                            }
+                            if (locatorRT.needCheckDifAndVif) {
+                                LOG.fatal("Matching dataBlock not found: " + locatorVo.toString());
+                                LOG.fatal(udr.toString());
+                                raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
+                                        new TranslatableMessage("event.exception2", locatorVo.toString() + "Can't find matching datablock! Please specify dbIndex manually!"));
+                                return true;
+                            }
+                        }
+                }
+            }
+            final DataBlock db = udr.getDataBlock(locatorVo.getDbIndex());
+            return setValue(db, false, time, point, locatorRT, locatorVo);
+
+        } catch (IndexOutOfBoundsException ex) {
+            // Handle if datablock is not there...
+            raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true,
+                    new TranslatableMessage("event.exception2", point.getVO().getExtendedName(),
+                            "No Data"));
+            return true;
+        }
+    }
+
     protected boolean setValue(DataBlock db, boolean pointError, long time, DataPointRT point, final MBusPointLocatorRT locatorRT, final MBusPointLocatorVO locatorVo) {
         try {
             if ((db instanceof BcdValue) && ((BcdValue) db).isBcdError()) {
@@ -277,18 +310,6 @@ public class MBusDataSourceRT extends PollingDataSource<MBusDataSourceVO> {
         }
     }
 
-    private UserDataResponse getUdr(List<UserDataResponse> udrs, MBusPointLocatorVO locatorVo) {
-        for (UserDataResponse udr : udrs) {
-            if ((udr.getIdentNumber() == locatorVo.getIdentNumber())
-                    && Objects.equals(udr.getManufacturer(), locatorVo.getManufacturer())
-                    && Objects.equals(udr.getMedium(), locatorVo.getMedium())
-                    && (udr.getVersion() == locatorVo.getVersion())) {
-                return udr;
-            }
-        }
-        return null;
-    }
-
     private int[] findDataBlocks(UserDataResponse userDataResponse, MBusPointLocatorVO locatorVo) {
         int[] result = new int[0];
         for (int i = 0; i < userDataResponse.getDataBlockCount(); i++) {
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.mbus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.infiniteautomation.mango.monitor.AtomicIntegerMonitor;
+import com.infiniteautomation.mango.monitor.ValueMonitorOwner;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+
+/**
+ * Groups the points of a data source by the device they are read from so each
+ * device is requested once per poll, and keeps the state of each device between polls.
+ *
+ * A device that does not respond, or responds slower than mbus.poll.slowDeviceThreshold ms, is
+ * skipped for an exponentially growing number of polls so a few dead or slow meters can't use up
+ * the poll period of the whole bus.  The threshold is judged from the response time once the
+ * device has responded, it does not cut a request short, the connection's own timeout does that.
+ *
+ * A device is not requested if its last response time would take the poll past its deadline,
+ * the devices that could not be reached before the poll period ran out are polled first next time.
+ *
+ * The response time of every device is published as a monitor that can be read
+ * by the Internal data source.
+ *
+ * @author Terry Packer
+ */
+public class MBusPollPlan {
+
+    public static final String LATENCY_MONITOR_PREFIX = "com.serotonin.m2m2.mbus.MBusDataSourceRT.LATENCY.";
+    static final int MAX_BACKOFF_POLLS = 32;
+
+    private final String xid;
+    private final long slowDeviceThreshold;
+    private final Map<String, Device> devices = new ConcurrentHashMap<>();
+    //Key of the first device to poll, set when a poll runs out of time
+    private String resumeFrom;
+
+    public MBusPollPlan(String xid) {
+        this(xid, Common.envProps.getLong("mbus.poll.slowDeviceThreshold", 10000));
+    }
+
+    /**
+     * @param xid of the data source
+     * @param slowDeviceThreshold response time in ms above which a device is backed off from, 0 for no limit
+     */
+    MBusPollPlan(String xid, long slowDeviceThreshold) {
+        this.xid = xid;
+        this.slowDeviceThreshold = slowDeviceThreshold;
+    }
+
+    /**
+     * Group the points by device, keeping the state of devices that are still in use
+     * @param points
+     * @return the devices in poll order
+     */
+    public List<Device> plan(Collection<DataPointRT> points) {
+        Map<String, List<DataPointRT>> byDevice = new LinkedHashMap<>();
+        for(DataPointRT point : points) {
+            MBusPointLocatorRT locatorRT = point.getPointLocator();
+            byDevice.computeIfAbsent(getDeviceKey(locatorRT.getVo()), k -> new ArrayList<>()).add(point);
+        }
+        return plan(byDevice);
+    }
+
+    /**
+     * Order the devices for a poll
+     * @param byDevice the points of each device by device key
+     * @return the devices in poll order
+     */
+    List<Device> plan(Map<String, List<DataPointRT>> byDevice) {
+        //Forget devices that no longer have points
+        Iterator<Device> it = devices.values().iterator();
+        while(it.hasNext()) {
+            Device device = it.next();
+            if(!byDevice.containsKey(device.key)) {
+                removeMonitor(device);
+                it.remove();
+            }
+        }
+
+        List<Device> ordered = new ArrayList<>(byDevice.size());
+        int start = 0;
+        for(Map.Entry<String, List<DataPointRT>> entry : byDevice.entrySet()) {
+            Device device = devices.get(entry.getKey());
+            if(device == null) {
+                device = new Device(entry.getKey(), createLatencyMonitor(entry.getKey()), slowDeviceThreshold);
+                devices.put(entry.getKey(), device);
+            }
+            device.points = entry.getValue();
+            if(entry.getKey().equals(resumeFrom))
+                start = ordered.size();
+            ordered.add(device);
+        }
+        resumeFrom = null;
+
+        //Rotate so the devices that were missed last time go first
+        if(start > 0) {
+            List<Device> rotated = new ArrayList<>(ordered.subList(start, ordered.size()));
+            rotated.addAll(ordered.subList(0, start));
+            return rotated;
+        }
+        return ordered;
+    }
+
+    /**
+     * The poll ran out of time before reaching this device
+     * @param device
+     */
+    public void resumeFrom(Device device) {
+        this.resumeFrom = device.key;
+    }
+
+    /**
+     * Remove the state and monitors of all devices, called when the data source is terminated
+     */
+    public void terminate() {
+        for(Device device : devices.values())
+            removeMonitor(device);
+        devices.clear();
+        resumeFrom = null;
+    }
+
+    private AtomicIntegerMonitor createLatencyMonitor(String deviceKey) {
+        AtomicIntegerMonitor monitor = new AtomicIntegerMonitor(LATENCY_MONITOR_PREFIX + xid + "." + deviceKey,
+                new TranslatableMessage("internal.monitor.MBUS_DEVICE_LATENCY", xid, deviceKey), monitorOwner, false);
+        Common.MONITORED_VALUES.addIfMissingStatMonitor(monitor);
+        return monitor;
+    }
+
+    private void removeMonitor(Device device) {
+        Common.MONITORED_VALUES.removeStatMonitor(device.latencyMonitor.getId());
+    }
+
+    /**
+     * The latency of a device is its last response time
+     */
+    private final ValueMonitorOwner monitorOwner = new ValueMonitorOwner() {
+        @Override
+        public void reset(String monitorId) {
+            for(Device device : devices.values()) {
+                if(device.latencyMonitor.getId().equals(monitorId))
+                    device.latencyMonitor.setValue((int)Math.min(Integer.MAX_VALUE, device.lastResponseTime));
+            }
+        }
+    };
+
+    /**
+     * Key that identifies the device a point is read from
+     * @param locatorVo
+     * @return
+     */
+    public static String getDeviceKey(MBusPointLocatorVO locatorVo) {
+        if(locatorVo.isPrimaryAddressing())
+            return "primary-" + locatorVo.getAddressHex();
+        return "secondary-" + locatorVo.getIdentNumber() + "-" + locatorVo.getManufacturer() + "-"
+                + locatorVo.getMedium() + "-" + locatorVo.getVersionHex();
+    }
+
+    /**
+     * A device and the points read from it
+     */
+    public static class Device {
+        private final String key;
+        private final AtomicIntegerMonitor latencyMonitor;
+        private final long slowThreshold;
+        private List<DataPointRT> points;
+        private int failures;
+        private int skipPolls;
+        private volatile long lastResponseTime;
+
+        private Device(String key, AtomicIntegerMonitor latencyMonitor, long slowThreshold) {
+            this.key = key;
+            this.latencyMonitor = latencyMonitor;
+            this.slowThreshold = slowThreshold;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public List<DataPointRT> getPoints() {
+            return points;
+        }
+
+        /**
+         * @return the locator used to address the device
+         */
+        public MBusPointLocatorVO getLocator() {
+            MBusPointLocatorRT locatorRT = points.get(0).getPointLocator();
+            return locatorRT.getVo();
+        }
+
+        /**
+         * Should the device be skipped this poll because it has not been responding,
+         *  counts down the polls to skip
+         * @return
+         */
+        public boolean isBackingOff() {
+            if(skipPolls > 0) {
+                skipPolls--;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Is there time to request the device before the deadline, judged by its last response time
+         * @param now
+         * @param deadline
+         * @return
+         */
+        public boolean fitsBefore(long now, long deadline) {
+            return now + lastResponseTime < deadline;
+        }
+
+        /**
+         * The device responded, a response that took longer than the slow device threshold
+         * counts as a failure
+         * @param responseTime
+         */
+        public void responded(long responseTime) {
+            lastResponseTime = responseTime;
+            latencyMonitor.setValue((int)Math.min(Integer.MAX_VALUE, responseTime));
+            if(slowThreshold > 0 && responseTime > slowThreshold) {
+                failure();
+            }else {
+                failures = 0;
+                skipPolls = 0;
+            }
+        }
+
+        /**
+         * The device did not respond, skip 1, 2, 4... polls up to the maximum
+         */
+        public void failure() {
+            skipPolls = Math.min(1 << Math.min(failures, 30), MAX_BACKOFF_POLLS);
+            failures++;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+    }
+}
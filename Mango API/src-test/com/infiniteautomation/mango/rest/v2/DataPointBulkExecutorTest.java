@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.rest.v2.DataPointBulkExecutor.DataPointBatch;
+import com.infiniteautomation.mango.rest.v2.DataPointRestController.DataPointIndividualResponse;
+import com.infiniteautomation.mango.rest.v2.model.dataPoint.DataPointModel;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+
+/**
+ * Save a batch of points where one of them fails
+ *
+ * @author Jared Wiltshire
+ */
+public class DataPointBulkExecutorTest extends MangoTestBase {
+
+    @Test
+    public void testFailedPointInBatch() {
+        MockDataSourceVO ds = new MockDataSourceVO();
+        ds.setXid(DataSourceDao.getInstance().generateUniqueXid());
+        ds.setName("Test DS");
+        DataSourceDao.getInstance().save(ds);
+
+        DataPointVO existing = newPoint(ds, "DP_existing");
+        DataPointDao.getInstance().saveDataPoint(existing);
+
+        Map<Integer, DataPointIndividualResponse> responses = new HashMap<>();
+        DataPointBatch batch = new DataPointBatch(ds, 50, vo -> new DataPointModel(), responses::put);
+        DataPointVO created = newPoint(ds, "DP_created");
+        //The xid is already used so the insert fails and the transaction is rolled back
+        DataPointVO duplicate = newPoint(ds, "DP_existing");
+        batch.add(0, created, new DataPointIndividualResponse());
+        batch.add(1, duplicate, new DataPointIndividualResponse());
+        batch.flush();
+
+        assertEquals(2, responses.size());
+        assertNotNull(responses.get(0).getBody());
+        assertNull(responses.get(0).getError());
+        assertNotNull(responses.get(1).getError());
+
+        //The point reported as created must exist with the id it was given
+        DataPointVO saved = DataPointDao.getInstance().getByXid("DP_created");
+        assertNotNull(saved);
+        assertEquals(saved.getId(), created.getId());
+        assertEquals(2, DataPointDao.getInstance().getDataPoints(ds.getId(), null).size());
+    }
+
+    private DataPointVO newPoint(MockDataSourceVO ds, String xid) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(Common.NEW_ID);
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        vo.setXid(xid);
+        vo.setName(xid);
+        vo.setDataSourceId(ds.getId());
+        return vo;
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.rest.v2.exception.AbstractRestV2Exception;
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.StreamingPointValueImport.Format;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.TemporaryResourceStatus;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceManager;
+import com.infiniteautomation.mango.rest.v2.util.RestExceptionMapper;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.module.definitions.permissions.SuperadminPermissionDefinition;
+import com.serotonin.m2m2.rt.dataImage.AnnotatedPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+
+/**
+ * Import JSON and CSV files of values for several points, some of which can't be saved
+ *
+ * @author Terry Packer
+ */
+public class StreamingPointValueImportTest extends MangoTestBase {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    //Values saved by point id in the order they were saved
+    private final Map<Integer, List<PointValueTime>> saved = new HashMap<>();
+    private PointValueDao dao;
+    private User user;
+    private DataPointVO numeric;
+    private DataPointVO binary;
+    private File file;
+
+    @Before
+    public void createPoints() throws IOException {
+        MockDataSourceVO ds = new MockDataSourceVO();
+        ds.setXid(DataSourceDao.getInstance().generateUniqueXid());
+        ds.setName("Test DS");
+        DataSourceDao.getInstance().save(ds);
+        numeric = newPoint(ds, "DP_numeric", DataTypes.NUMERIC);
+        binary = newPoint(ds, "DP_binary", DataTypes.BINARY);
+
+        user = new User();
+        user.setId(1);
+        user.setUsername("admin");
+        user.setPermissions(SuperadminPermissionDefinition.GROUP_NAME);
+
+        dao = (PointValueDao) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {PointValueDao.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("savePointValueAsync"))
+                        saved.computeIfAbsent((Integer) args[0], k -> new ArrayList<>()).add((PointValueTime) args[1]);
+                    return null;
+                });
+        file = File.createTempFile("pointValueImport", ".tmp");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        write("[",
+                "{\"xid\":\"DP_numeric\",\"dataType\":\"NUMERIC\",\"value\":3,\"timestamp\":3000},",
+                "{\"xid\":\"DP_numeric\",\"dataType\":\"NUMERIC\",\"value\":1.5,\"timestamp\":1000},",
+                "{\"xid\":\"DP_binary\",\"dataType\":\"BINARY\",\"value\":true,\"timestamp\":1000},",
+                //Wrong data type, unknown point and a timestamp that isn't a number
+                "{\"xid\":\"DP_numeric\",\"dataType\":\"BINARY\",\"value\":true,\"timestamp\":2000},",
+                "{\"xid\":\"DP_missing\",\"dataType\":\"NUMERIC\",\"value\":1,\"timestamp\":1000},",
+                "{\"xid\":\"DP_numeric\",\"dataType\":\"NUMERIC\",\"value\":2,\"timestamp\":\"later\"}",
+                "]");
+
+        TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> resource = run(Format.JSON);
+        assertEquals(TemporaryResourceStatus.SUCCESS, resource.getStatus());
+        PointValueImportResponseModel response = resource.getResult();
+        assertEquals(3, response.getImported());
+        assertEquals(3, response.getRejected());
+
+        List<String> xids = new ArrayList<>();
+        for (PointValueImportResult result : response.getResults())
+            xids.add(result.getXid());
+        assertEquals(3, xids.size());
+        assertEquals("DP_numeric", xids.get(0));
+        assertEquals("DP_missing", xids.get(2));
+
+        //Saved in time order
+        List<PointValueTime> values = saved.get(numeric.getId());
+        assertEquals(2, values.size());
+        assertEquals(1000, values.get(0).getTime());
+        assertEquals(1.5, values.get(0).getDoubleValue(), 0);
+        assertEquals(3000, values.get(1).getTime());
+        assertEquals(true, saved.get(binary.getId()).get(0).getBooleanValue());
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        write("xid,dataType,value,timestamp,annotation",
+                "DP_numeric,NUMERIC,2.5,2019-01-01T00:00:00Z,note",
+                "DP_numeric,NUMERIC,1.5,2000,",
+                "DP_binary,BINARY,0,1000,",
+                "DP_binary,UNKNOWN,1,1000,");
+
+        TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> resource = run(Format.CSV);
+        assertEquals(TemporaryResourceStatus.SUCCESS, resource.getStatus());
+        assertEquals(3, resource.getResult().getImported());
+        assertEquals(1, resource.getResult().getRejected());
+
+        List<PointValueTime> values = saved.get(numeric.getId());
+        assertEquals(2000, values.get(0).getTime());
+        assertEquals(1546300800000L, values.get(1).getTime());
+        assertTrue(values.get(1) instanceof AnnotatedPointValueTime);
+        assertEquals(false, saved.get(binary.getId()).get(0).getBooleanValue());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testCsvMissingColumns() throws IOException {
+        write("xid,value", "DP_numeric,1");
+        run(Format.CSV);
+    }
+
+    private TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> run(Format format) throws IOException {
+        TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> resource = new TestResourceManager()
+                .newTemporaryResource("POINT_VALUE_IMPORT", null, user.getId(), null, null, (r, u) -> null);
+        new StreamingPointValueImport(file, format, mapper, dao, user).run(resource);
+        return resource;
+    }
+
+    private void write(String... lines) throws IOException {
+        Files.write(file.toPath(), String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private DataPointVO newPoint(MockDataSourceVO ds, String xid, int dataType) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(Common.NEW_ID);
+        vo.setPointLocator(new MockPointLocatorVO(dataType, true));
+        vo.setXid(xid);
+        vo.setName(xid);
+        vo.setDataSourceId(ds.getId());
+        DataPointDao.getInstance().saveDataPoint(vo);
+        return vo;
+    }
+
+    /**
+     * Holds the resource, the test runs the import itself
+     */
+    private static class TestResourceManager extends TemporaryResourceManager<PointValueImportResponseModel, AbstractRestV2Exception>
+            implements RestExceptionMapper {
+        @Override
+        protected void resourceAdded(TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> resource) { }
+
+        @Override
+        protected void resourceRemoved(TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> resource) { }
+
+        @Override
+        protected void resourceUpdated(TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> resource) { }
+
+        @Override
+        protected void resourceCompleted(TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> resource) { }
+    }
+}
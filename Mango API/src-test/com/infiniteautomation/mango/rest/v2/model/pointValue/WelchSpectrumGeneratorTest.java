@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+/**
+ * Estimate the spectrum of a sine wave sampled once a second
+ *
+ * @author Terry Packer
+ */
+public class WelchSpectrumGeneratorTest {
+
+    private static final int WINDOW_SIZE = 64;
+
+    @Test
+    public void testSegments() {
+        WelchSpectrumGenerator generator = generate(256, 0.5, 8);
+        //Windows start every 32 values
+        assertEquals(7, generator.getSegments());
+        assertEquals(256, generator.getCount());
+        assertEquals(1000d, generator.getAverageSamplePeriodMs(), 0);
+
+        generator = generate(256, 0, 8);
+        assertEquals(4, generator.getSegments());
+    }
+
+    @Test
+    public void testPeak() {
+        double[] density = generate(256, 0.5, 8).getPowerSpectralDensity(1);
+        assertEquals(WINDOW_SIZE / 2 + 1, density.length);
+
+        int peak = 0;
+        for (int i = 1; i < density.length; i++) {
+            if (density[i] > density[peak])
+                peak = i;
+        }
+        assertEquals(8, peak);
+    }
+
+    @Test
+    public void testTotalPower() {
+        //The density summed over the bins is the power of the signal, 1/2 for a sine of amplitude 1
+        double[] density = generate(1024, 0.5, 8).getPowerSpectralDensity(1);
+        double total = 0;
+        for (double d : density)
+            total += d / WINDOW_SIZE;
+        assertEquals(0.5, total, 0.05);
+    }
+
+    @Test
+    public void testTooFewValues() {
+        WelchSpectrumGenerator generator = generate(WINDOW_SIZE - 1, 0.5, 8);
+        assertEquals(0, generator.getSegments());
+        for (double d : generator.getPowerSpectralDensity(1))
+            assertEquals(0, d, 0);
+    }
+
+    /**
+     * A sine wave with a whole number of cycles in each window
+     * @param count values
+     * @param overlap
+     * @param cycles per window
+     */
+    private static WelchSpectrumGenerator generate(int count, double overlap, int cycles) {
+        WelchSpectrumGenerator generator = new WelchSpectrumGenerator(WINDOW_SIZE, overlap);
+        for (int i = 0; i < count; i++) {
+            double value = Math.sin(2 * Math.PI * cycles * i / WINDOW_SIZE);
+            generator.row(new PointValueTime(value, i * 1000L), i);
+        }
+        return generator;
+    }
+}
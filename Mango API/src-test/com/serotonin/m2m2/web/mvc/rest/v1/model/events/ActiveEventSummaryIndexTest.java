@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockEventManager;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.EventManager;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.UserEventListener;
+import com.serotonin.m2m2.rt.event.type.EventType;
+import com.serotonin.m2m2.rt.event.type.SystemEventType;
+import com.serotonin.m2m2.vo.User;
+
+/**
+ * Keep the summary up to date as events are raised and acknowledged
+ *
+ * @author Terry Packer
+ */
+public class ActiveEventSummaryIndexTest extends MangoTestBase {
+
+    private EventManager previous;
+    private TestEventManager eventManager;
+
+    @Before
+    public void setEventManager() {
+        previous = Common.eventManager;
+        eventManager = new TestEventManager();
+        Common.eventManager = eventManager;
+    }
+
+    @After
+    public void restoreEventManager() {
+        Common.eventManager = previous;
+    }
+
+    @Test
+    public void testSharedByPermissions() {
+        User first = user(1, "summaryA,summaryB");
+        User second = user(2, "summaryB,summaryA");
+        User other = user(3, "summaryC");
+        assertSame(ActiveEventSummaryIndex.get(first), ActiveEventSummaryIndex.get(second));
+        assertNotSame(ActiveEventSummaryIndex.get(first), ActiveEventSummaryIndex.get(other));
+    }
+
+    @Test
+    public void testLoad() {
+        EventInstance older = event(1, 1000, AlarmLevels.CRITICAL);
+        EventInstance newer = event(2, 2000, AlarmLevels.CRITICAL);
+        EventInstance acknowledged = event(3, 3000, AlarmLevels.CRITICAL);
+        acknowledged.setAcknowledgedTimestamp(4000);
+        eventManager.active.add(newer);
+        eventManager.active.add(older);
+        eventManager.active.add(acknowledged);
+
+        User user = user(1, "summaryLoad");
+        EventLevelSummaryModel critical = level(ActiveEventSummaryIndex.get(user).getSummary(user), AlarmLevels.CRITICAL);
+        assertEquals(2, critical.getUnsilencedCount());
+        assertEquals(2, critical.getMostRecentUnsilenced().getId());
+        assertEquals(0, level(ActiveEventSummaryIndex.get(user).getSummary(user), AlarmLevels.URGENT).getUnsilencedCount());
+    }
+
+    @Test
+    public void testEvents() {
+        User user = user(1, "summaryEvents");
+        ActiveEventSummaryIndex index = ActiveEventSummaryIndex.get(user);
+        List<EventLevelSummaryModel> summary = index.getSummary(user);
+        assertEquals(8, summary.size());
+        assertEquals(AlarmLevels.LIFE_SAFETY, summary.get(0).getLevel());
+        assertEquals(0, level(summary, AlarmLevels.URGENT).getUnsilencedCount());
+        UserEventListener listener = eventManager.listeners.get(0);
+
+        EventInstance first = event(1, 1000, AlarmLevels.URGENT);
+        EventInstance second = event(2, 2000, AlarmLevels.URGENT);
+        listener.raised(second);
+        listener.raised(first);
+        EventLevelSummaryModel urgent = level(index.getSummary(user), AlarmLevels.URGENT);
+        assertEquals(2, urgent.getUnsilencedCount());
+        assertEquals(2, urgent.getMostRecentUnsilenced().getId());
+
+        //Returning to normal keeps the event until it is acknowledged
+        listener.returnToNormal(second);
+        assertEquals(2, level(index.getSummary(user), AlarmLevels.URGENT).getUnsilencedCount());
+        listener.acknowledged(second);
+        urgent = level(index.getSummary(user), AlarmLevels.URGENT);
+        assertEquals(1, urgent.getUnsilencedCount());
+        assertEquals(1, urgent.getMostRecentUnsilenced().getId());
+
+        //An acknowledged event that returns to normal is not added again
+        listener.returnToNormal(second);
+        listener.acknowledged(first);
+        urgent = level(index.getSummary(user), AlarmLevels.URGENT);
+        assertEquals(0, urgent.getUnsilencedCount());
+        assertNull(urgent.getMostRecentUnsilenced());
+    }
+
+    private static EventLevelSummaryModel level(List<EventLevelSummaryModel> summary, AlarmLevels level) {
+        for (EventLevelSummaryModel model : summary) {
+            if (model.getLevel() == level)
+                return model;
+        }
+        return null;
+    }
+
+    private static User user(int id, String permissions) {
+        User user = new User();
+        user.setId(id);
+        user.setPermissions(permissions);
+        return user;
+    }
+
+    private static EventInstance event(int id, long time, AlarmLevels level) {
+        EventType type = new SystemEventType(SystemEventType.TYPE_SYSTEM_STARTUP);
+        EventInstance event = new EventInstance(type, time, true, level, new TranslatableMessage("common.default", "testing"), null);
+        event.setId(id);
+        return event;
+    }
+
+    /**
+     * Records the listeners and returns the events set by the test as the active events
+     */
+    private static class TestEventManager extends MockEventManager {
+        private final List<UserEventListener> listeners = new ArrayList<>();
+        private final List<EventInstance> active = new ArrayList<>();
+
+        @Override
+        public void addUserEventListener(UserEventListener l) {
+            listeners.add(l);
+        }
+
+        @Override
+        public void removeUserEventListener(UserEventListener l) {
+            listeners.remove(l);
+        }
+
+        @Override
+        public List<EventInstance> getAllActiveUserEvents(int userId) {
+            return new ArrayList<>(active);
+        }
+    }
+}
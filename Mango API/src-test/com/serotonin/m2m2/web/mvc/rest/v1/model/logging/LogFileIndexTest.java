@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.logging.LogFileIndex.Segment;
+
+/**
+ * Index a log file that is bigger than the index interval, as it grows and when it is rolled over
+ *
+ * @author Terry Packer
+ */
+public class LogFileIndexTest extends MangoTestBase {
+
+    private static final LocalDateTime START = LocalDateTime.of(2019, 1, 1, 10, 0);
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss,SSS");
+    //About 500kB, several times the default index interval
+    private static final int EVENTS = 5000;
+
+    private File file;
+    private final List<Long> offsets = new ArrayList<>();
+    private final List<Long> times = new ArrayList<>();
+    private long length;
+
+    @Before
+    public void writeLog() throws IOException {
+        file = File.createTempFile("ma", ".log");
+        append(0, EVENTS, "first");
+    }
+
+    @After
+    public void deleteLog() {
+        file.delete();
+    }
+
+    @Test
+    public void testSegments() throws IOException {
+        LogFileIndex index = LogFileIndex.get(file);
+        assertEquals(length, index.getIndexedLength());
+
+        Segment[] segments = index.getSegments();
+        assertTrue(segments.length > 1);
+        assertEquals(0, segments[0].getStart());
+        for (int i = 0; i < segments.length; i++) {
+            Segment segment = segments[i];
+            if (i > 0) {
+                assertEquals(segments[i - 1].getEnd(), segment.getStart());
+                //Each entry is at the start of an event
+                int event = offsets.indexOf(segment.getStart());
+                assertTrue(event >= 0);
+                assertEquals((long) times.get(event), segment.getStartTime());
+            }
+        }
+        assertEquals(length, segments[segments.length - 1].getEnd());
+    }
+
+    @Test
+    public void testSeek() throws IOException {
+        LogFileIndex index = LogFileIndex.get(file);
+        assertEquals(0, index.seek(times.get(0)));
+
+        for (int event = 1; event < EVENTS; event += 97) {
+            long offset = index.seek(times.get(event));
+            int found = offsets.indexOf(offset);
+            assertTrue(found >= 0);
+            //An event before the time but not more than an interval before it
+            assertTrue(found < event);
+            assertTrue(offsets.get(event) - offset < 64 * 1024 + 200);
+        }
+    }
+
+    @Test
+    public void testGrowing() throws IOException {
+        LogFileIndex index = LogFileIndex.get(file);
+        int entries = index.getSegments().length;
+
+        //A line that is still being written is left for the next update
+        long complete = length;
+        Files.write(file.toPath(), line(EVENTS, "second").substring(0, 20).getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.APPEND);
+        assertEquals(complete, LogFileIndex.get(file).getIndexedLength());
+
+        Files.write(file.toPath(), line(EVENTS, "second").substring(20).getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.APPEND);
+        offsets.add(complete);
+        times.add(time(EVENTS));
+        length = file.length();
+        append(EVENTS + 1, EVENTS, "second");
+
+        index = LogFileIndex.get(file);
+        assertEquals(length, index.getIndexedLength());
+        Segment[] segments = index.getSegments();
+        assertTrue(segments.length > entries);
+        for (int i = entries; i < segments.length; i++)
+            assertEquals((long) times.get(offsets.indexOf(segments[i].getStart())), segments[i].getStartTime());
+        assertEquals(length, segments[segments.length - 1].getEnd());
+    }
+
+    @Test
+    public void testRolledOver() throws IOException {
+        LogFileIndex index = LogFileIndex.get(file);
+        assertTrue(index.getSegments().length > 1);
+
+        //A new file with the same name and fewer events
+        offsets.clear();
+        times.clear();
+        length = 0;
+        Files.write(file.toPath(), new byte[0]);
+        append(EVENTS, 10, "rolled");
+
+        index = LogFileIndex.get(file);
+        assertEquals(length, index.getIndexedLength());
+        assertEquals(1, index.getSegments().length);
+        assertEquals(0, index.seek(times.get(9)));
+    }
+
+    /**
+     * Append events to the file and record where they start
+     */
+    private void append(int first, int count, String message) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = first; i < first + count; i++) {
+            offsets.add(length + builder.length());
+            times.add(time(i));
+            builder.append(line(i, message));
+        }
+        Files.write(file.toPath(), builder.toString().getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.APPEND);
+        length += builder.length();
+    }
+
+    private static long time(int event) {
+        return START.plusSeconds(event).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static String line(int event, String message) {
+        return "INFO  " + FORMAT.format(START.plusSeconds(event))
+                + " (com.serotonin.m2m2.Lifecycle.run:10) - " + message + " event number " + event
+                + " with some text to make the line longer\n";
+    }
+}
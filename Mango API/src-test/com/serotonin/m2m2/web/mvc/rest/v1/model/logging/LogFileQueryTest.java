@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serotonin.m2m2.MangoTestBase;
+
+import net.jazdw.rql.parser.RQLParser;
+
+/**
+ * Query log files forwards and backwards
+ *
+ * @author Terry Packer
+ */
+public class LogFileQueryTest extends MangoTestBase {
+
+    private static final List<String> LINES = Arrays.asList(
+            "INFO  2019-01-01T10:00:00,000 (com.serotonin.m2m2.Lifecycle.start:10) - first",
+            "WARN  2019-01-01T10:00:01,000 (com.serotonin.m2m2.Lifecycle.start:20) - second",
+            "ERROR 2019-01-01T10:00:02,000 (com.serotonin.m2m2.Lifecycle.stop:30) - third",
+            "java.lang.RuntimeException: failed",
+            "\tat com.serotonin.m2m2.Lifecycle.stop(Lifecycle.java:30)",
+            "INFO  2019-01-01T10:00:03,000 (com.serotonin.m2m2.Lifecycle.stop:40) - fourth");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private File file;
+
+    @Before
+    public void writeLog() throws IOException {
+        file = File.createTempFile("ma", ".log");
+        Files.write(file.toPath(), LINES, Charset.defaultCharset());
+    }
+
+    @After
+    public void deleteLog() {
+        file.delete();
+    }
+
+    @Test
+    public void testForwards() throws IOException {
+        JsonNode events = query("limit(10)");
+        assertEquals(Arrays.asList("first", "second", "third", "fourth"), messages(events));
+        assertEquals("ERROR", events.get(2).get("level").asText());
+        assertEquals("com.serotonin.m2m2.Lifecycle", events.get(2).get("classname").asText());
+        assertEquals("stop", events.get(2).get("method").asText());
+    }
+
+    @Test
+    public void testForwardsLimit() throws IOException {
+        assertEquals(Arrays.asList("first", "second"), messages(query("limit(2)")));
+    }
+
+    @Test
+    public void testBackwards() throws IOException {
+        assertEquals(Arrays.asList("fourth", "third", "second", "first"), messages(query("sort(-time)&limit(10)")));
+        assertEquals(Arrays.asList("fourth", "third"), messages(query("sort(-time)&limit(2)")));
+    }
+
+    @Test
+    public void testBackwardsAcrossChunks() throws IOException {
+        //Several chunks of events, some with stack traces that span the chunk boundaries
+        List<String> lines = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            lines.add(String.format("INFO  2019-01-01T10:%02d:%02d,%03d (com.serotonin.m2m2.Lifecycle.run:10) - event %d",
+                    i / 600, (i / 10) % 60, (i % 10) * 100, i));
+            if (i % 7 == 0) {
+                lines.add("\tat com.serotonin.m2m2.Lifecycle.run(Lifecycle.java:10)");
+                lines.add("\tat java.lang.Thread.run(Thread.java:748)");
+            }
+            expected.add(0, "event " + i);
+        }
+        Files.write(file.toPath(), lines, Charset.defaultCharset());
+        assertTrue(file.length() > 3 * LogFileQuery.CHUNK_SIZE);
+
+        JsonNode events = query("sort(-time)&limit(5000)");
+        assertEquals(expected, messages(events));
+        for (JsonNode event : events) {
+            int i = Integer.parseInt(event.get("message").asText().trim().substring(6));
+            assertEquals(i % 7 == 0, event.get("stackTrace").get(0).asText().contains("Lifecycle.java"));
+        }
+        assertEquals(expected.subList(0, 10), messages(query("sort(-time)&limit(10)")));
+    }
+
+    @Test
+    public void testLevel() throws IOException {
+        assertEquals(Arrays.asList("second", "third"), messages(query("ge(level,WARN)&limit(10)")));
+    }
+
+    private JsonNode query(String rql) throws IOException {
+        LogQueryFilter filter = new LogQueryFilter(new RQLParser().parse(rql));
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator jgen = mapper.getFactory().createGenerator(writer)) {
+            jgen.writeStartArray();
+            new LogFileQuery(file, filter).streamData(jgen);
+            jgen.writeEndArray();
+        }
+        return mapper.readTree(writer.toString());
+    }
+
+    private static List<String> messages(JsonNode events) {
+        List<String> messages = new ArrayList<>();
+        for (JsonNode event : events)
+            messages.add(event.get("message").asText().trim());
+        return messages;
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.websockets.pointValue;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.web.mvc.rest.v1.websockets.pointValue.PointValueBroadcastHub.BroadcastEvent;
+
+/**
+ * Test the frames sent for a period of point value events
+ *
+ * @author Terry Packer
+ */
+public class PointValueBatcherTest extends MangoTestBase {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<Object> frames = new ArrayList<>();
+    private final PointValueBatcher.Sender sender = new PointValueBatcher.Sender() {
+        @Override
+        public void sendText(String message) {
+            frames.add(message);
+        }
+
+        @Override
+        public void sendBinary(ByteBuffer message) {
+            frames.add(message);
+        }
+    };
+
+    @Test
+    public void testJsonFrame() throws IOException {
+        PointValueBroadcastHub hub = new PointValueBroadcastHub(mapper);
+        PointValueBatcher batcher = new PointValueBatcher(60000, PointValueBatchFormat.JSON, sender);
+        DataPointVO first = newPoint(1, DataTypes.NUMERIC);
+        DataPointVO second = newPoint(2, DataTypes.NUMERIC);
+
+        batcher.add(event(hub, first, PointValueEventType.UPDATE, 1.0, 1000), 0);
+        batcher.add(event(hub, second, PointValueEventType.UPDATE, 2.0, 1000), 1);
+        //Replaces the first update of the first point
+        batcher.add(event(hub, first, PointValueEventType.UPDATE, 3.0, 2000), 0);
+        batcher.add(event(hub, first, PointValueEventType.TERMINATE, null, 0), 0);
+        batcher.flush();
+
+        assertEquals(1, frames.size());
+        JsonNode events = mapper.readTree((String) frames.get(0));
+        assertEquals(3, events.size());
+        assertPayload(events.get(0), "DP_2", PointValueEventType.UPDATE);
+        assertPayload(events.get(1), "DP_1", PointValueEventType.UPDATE);
+        assertPayload(events.get(2), "DP_1", PointValueEventType.TERMINATE);
+
+        //Nothing collected since
+        batcher.flush();
+        assertEquals(1, frames.size());
+    }
+
+    @Test
+    public void testBinaryFrame() throws IOException {
+        PointValueBroadcastHub hub = new PointValueBroadcastHub(mapper);
+        PointValueBatcher batcher = new PointValueBatcher(60000, PointValueBatchFormat.BINARY, sender);
+        DataPointVO first = newPoint(1, DataTypes.NUMERIC);
+        DataPointVO second = newPoint(2, DataTypes.MULTISTATE);
+        DataPointVO text = newPoint(3, DataTypes.ALPHANUMERIC);
+
+        batcher.add(event(hub, first, PointValueEventType.UPDATE, 1.5, 1000), 3);
+        batcher.add(event(hub, second, PointValueEventType.CHANGE, 2, 2000), 5);
+        batcher.add(event(hub, text, PointValueEventType.UPDATE, "text", 3000), 7);
+        batcher.flush();
+
+        //Values that can't be sent as binary go in a JSON frame first
+        assertEquals(2, frames.size());
+        JsonNode events = mapper.readTree((String) frames.get(0));
+        assertEquals(1, events.size());
+        assertPayload(events.get(0), "DP_3", PointValueEventType.UPDATE);
+
+        ByteBuffer buffer = (ByteBuffer) frames.get(1);
+        assertEquals(4 + 2 * (4 + 8 + 8 + 1), buffer.remaining());
+        assertEquals(2, buffer.getInt());
+        assertEquals(3, buffer.getInt());
+        assertEquals(5, buffer.getInt());
+        assertEquals(1000, buffer.getLong());
+        assertEquals(2000, buffer.getLong());
+        assertEquals(1.5, buffer.getDouble(), 0);
+        assertEquals(2, buffer.getDouble(), 0);
+        assertEquals(PointValueEventType.UPDATE.ordinal(), buffer.get());
+        assertEquals(PointValueEventType.CHANGE.ordinal(), buffer.get());
+    }
+
+    @Test
+    public void testBinaryEventTypes() throws IOException {
+        PointValueBroadcastHub hub = new PointValueBroadcastHub(mapper);
+        PointValueBatcher batcher = new PointValueBatcher(60000, PointValueBatchFormat.BINARY, sender);
+        DataPointVO point = newPoint(1, DataTypes.NUMERIC);
+
+        //The latest value of each event type of a point is sent
+        batcher.add(event(hub, point, PointValueEventType.UPDATE, 1.0, 1000), 0);
+        batcher.add(event(hub, point, PointValueEventType.CHANGE, 1.0, 1000), 0);
+        batcher.add(event(hub, point, PointValueEventType.UPDATE, 2.0, 2000), 0);
+        batcher.flush();
+
+        assertEquals(1, frames.size());
+        ByteBuffer buffer = (ByteBuffer) frames.get(0);
+        assertEquals(2, buffer.getInt());
+        buffer.position(4 + 2 * (4 + 8));
+        assertEquals(2.0, buffer.getDouble(), 0);
+        assertEquals(1.0, buffer.getDouble(), 0);
+        assertEquals(PointValueEventType.UPDATE.ordinal(), buffer.get());
+        assertEquals(PointValueEventType.CHANGE.ordinal(), buffer.get());
+    }
+
+    @Test
+    public void testBinaryOrder() throws IOException {
+        PointValueBroadcastHub hub = new PointValueBroadcastHub(mapper);
+        PointValueBatcher batcher = new PointValueBatcher(60000, PointValueBatchFormat.BINARY, sender);
+        DataPointVO point = newPoint(1, DataTypes.NUMERIC);
+
+        batcher.add(event(hub, point, PointValueEventType.UPDATE, 1.0, 1000), 0);
+        batcher.add(event(hub, point, PointValueEventType.TERMINATE, null, 0), 0);
+        batcher.add(event(hub, point, PointValueEventType.INITIALIZE, null, 0), 0);
+        batcher.add(event(hub, point, PointValueEventType.UPDATE, 2.0, 2000), 0);
+        batcher.flush();
+
+        //The value before the restart is sent before the life cycle events
+        assertEquals(3, frames.size());
+        ByteBuffer before = (ByteBuffer) frames.get(0);
+        assertEquals(1, before.getInt());
+        assertEquals(0, before.getInt());
+        assertEquals(1000, before.getLong());
+
+        JsonNode events = mapper.readTree((String) frames.get(1));
+        assertEquals(2, events.size());
+        assertPayload(events.get(0), "DP_1", PointValueEventType.TERMINATE);
+        assertPayload(events.get(1), "DP_1", PointValueEventType.INITIALIZE);
+
+        ByteBuffer after = (ByteBuffer) frames.get(2);
+        assertEquals(1, after.getInt());
+        assertEquals(0, after.getInt());
+        assertEquals(2000, after.getLong());
+    }
+
+    private static void assertPayload(JsonNode message, String xid, PointValueEventType eventType) {
+        assertEquals(xid, message.get("payload").get("xid").asText());
+        assertEquals(eventType.name(), message.get("payload").get("event").asText());
+    }
+
+    private static BroadcastEvent event(PointValueBroadcastHub hub, DataPointVO vo, PointValueEventType eventType, Object value, long time) {
+        PointValueTime pvt = null;
+        if (value instanceof Double)
+            pvt = new PointValueTime((Double) value, time);
+        else if (value instanceof Integer)
+            pvt = new PointValueTime((Integer) value, time);
+        else if (value instanceof String)
+            pvt = new PointValueTime((String) value, time);
+        return hub.new BroadcastEvent(vo, eventType, pvt,
+                () -> new PointValueEventModel(vo.getXid(), true, true, null, eventType, null, null, null));
+    }
+
+    private static DataPointVO newPoint(int id, int dataTypeId) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        vo.setXid("DP_" + id);
+        vo.setName("DP_" + id);
+        vo.setPointLocator(new MockPointLocatorVO(dataTypeId, true));
+        return vo;
+    }
+}
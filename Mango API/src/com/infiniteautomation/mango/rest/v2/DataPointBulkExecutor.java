@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.infiniteautomation.mango.rest.v2.DataPointRestController.DataPointBulkResponse;
+import com.infiniteautomation.mango.rest.v2.DataPointRestController.DataPointIndividualRequest;
+import com.infiniteautomation.mango.rest.v2.DataPointRestController.DataPointIndividualResponse;
+import com.infiniteautomation.mango.rest.v2.bulk.VoAction;
+import com.infiniteautomation.mango.rest.v2.exception.AbstractRestV2Exception;
+import com.infiniteautomation.mango.rest.v2.model.dataPoint.DataPointModel;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
+import com.serotonin.m2m2.vo.event.detector.AbstractPointEventDetectorVO;
+
+/**
+ * Runs a bulk data point request grouped by data source.  The requests for a data source are run
+ * in order and their points are saved in transactions of rest.dataPoint.bulk.batchSize points
+ * without being started one at a time.  Once they are all saved the saved points are restarted
+ * one at a time if there are no more than rest.dataPoint.bulk.restartThreshold of them, otherwise
+ * the data source is restarted once to load them all.  Data sources are processed in parallel.
+ *
+ * Requests whose data source can't be found are run one at a time like a single request so they
+ * get the same errors.
+ *
+ * @author Jared Wiltshire
+ */
+class DataPointBulkExecutor {
+
+    private static final Log LOG = LogFactory.getLog(DataPointBulkExecutor.class);
+
+    private final DataPointRestController controller;
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final int restartThreshold;
+
+    private final List<DataPointIndividualRequest> requests;
+    private final VoAction defaultAction;
+    private final DataPointModel defaultBody;
+    private final User user;
+
+    private final DataPointIndividualResponse[] responses;
+    private final AtomicInteger completed = new AtomicInteger();
+    private volatile boolean cancelled;
+
+    DataPointBulkExecutor(DataPointRestController controller, ExecutorService executor, int batchSize, int restartThreshold,
+            List<DataPointIndividualRequest> requests, VoAction defaultAction, DataPointModel defaultBody, User user) {
+        this.controller = controller;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.restartThreshold = restartThreshold;
+        this.requests = requests;
+        this.defaultAction = defaultAction;
+        this.defaultBody = defaultBody;
+        this.user = user;
+        this.responses = new DataPointIndividualResponse[requests.size()];
+    }
+
+    /**
+     * Run the requests, reporting the responses to the resource in order as they complete
+     * @param resource
+     * @throws Exception
+     */
+    void run(TemporaryResource<DataPointBulkResponse, AbstractRestV2Exception> resource) throws Exception {
+        DataPointBulkResponse bulkResponse = new DataPointBulkResponse();
+        resource.progress(bulkResponse, 0, requests.size());
+
+        List<Integer> ungrouped = new ArrayList<>();
+        Map<Integer, List<Integer>> groups = group(ungrouped);
+
+        List<Future<?>> futures = new ArrayList<>(groups.size() + 1);
+        for (Map.Entry<Integer, List<Integer>> group : groups.entrySet())
+            futures.add(executor.submit(() -> runGroup(group.getKey(), group.getValue())));
+        futures.add(executor.submit(() -> {
+            for (Integer index : ungrouped) {
+                if (cancelled)
+                    return;
+                setResponse(index, doIndividualRequest(index));
+            }
+        }));
+
+        int reported = 0;
+        try {
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get(1, TimeUnit.SECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        if (resource.isComplete())
+                            return;
+                        reported = report(bulkResponse, reported);
+                        resource.progress(bulkResponse, completed.get(), requests.size());
+                    }
+                }
+            }
+        } finally {
+            cancelled = true;
+        }
+        report(bulkResponse, reported);
+        resource.success(bulkResponse);
+    }
+
+    /**
+     * Add the responses that are complete and follow the ones already reported
+     */
+    private int report(DataPointBulkResponse bulkResponse, int reported) {
+        while (reported < responses.length) {
+            DataPointIndividualResponse response;
+            synchronized (responses) {
+                response = responses[reported];
+            }
+            if (response == null)
+                break;
+            bulkResponse.addResponse(response);
+            reported++;
+        }
+        return reported;
+    }
+
+    private void setResponse(int index, DataPointIndividualResponse response) {
+        synchronized (responses) {
+            responses[index] = response;
+        }
+        completed.incrementAndGet();
+    }
+
+    /**
+     * Group the requests by the id of their data source
+     * @param ungrouped requests that can't be grouped
+     * @return the indexes of the requests in each group in request order
+     */
+    private Map<Integer, List<Integer>> group(List<Integer> ungrouped) {
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        Map<String, Integer> dataSourceIdsByXid = new HashMap<>();
+        //Points created earlier in the request that aren't in the database yet
+        Map<String, Integer> createdPoints = new HashMap<>();
+
+        for (int i = 0; i < requests.size(); i++) {
+            DataPointIndividualRequest request = requests.get(i);
+            VoAction action = request.getAction() == null ? defaultAction : request.getAction();
+            DataPointModel body = request.getBody() == null ? defaultBody : request.getBody();
+            Integer dataSourceId = null;
+
+            if (action == VoAction.CREATE) {
+                if (body != null && body.getDataSourceXid() != null) {
+                    dataSourceId = dataSourceIdsByXid.computeIfAbsent(body.getDataSourceXid(), xid -> {
+                        DataSourceVO<?> ds = DataSourceDao.getInstance().getByXid(xid);
+                        return ds == null ? null : ds.getId();
+                    });
+                    if (dataSourceId != null && body.getXid() != null)
+                        createdPoints.put(body.getXid(), dataSourceId);
+                }
+            } else if (action != null && request.getXid() != null) {
+                dataSourceId = createdPoints.get(request.getXid());
+                if (dataSourceId == null) {
+                    DataPointVO existing = DataPointDao.getInstance().getByXid(request.getXid());
+                    if (existing != null)
+                        dataSourceId = existing.getDataSourceId();
+                }
+            }
+
+            if (dataSourceId == null)
+                ungrouped.add(i);
+            else
+                groups.computeIfAbsent(dataSourceId, k -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    private void runGroup(int dataSourceId, List<Integer> group) {
+        DataSourceVO<?> dataSource = DataSourceDao.getInstance().get(dataSourceId);
+        if (dataSource == null) {
+            //Deleted since the requests were grouped
+            for (Integer index : group)
+                setResponse(index, doIndividualRequest(index));
+            return;
+        }
+
+        DataPointBatch batch = new DataPointBatch(dataSource, restartThreshold, vo -> controller.toModel(vo, user), this::setResponse);
+        try {
+            for (Integer index : group) {
+                if (cancelled)
+                    break;
+                DataPointIndividualRequest request = requests.get(index);
+                VoAction action = request.getAction() == null ? defaultAction : request.getAction();
+                DataPointModel body = request.getBody() == null ? defaultBody : request.getBody();
+
+                if ((action == VoAction.CREATE || action == VoAction.UPDATE) && body != null) {
+                    String xid = action == VoAction.CREATE ? body.getXid() : request.getXid();
+                    //Validation reads the database, so it must see the points waiting to be saved
+                    if (xid == null || batch.contains(xid))
+                        batch.flush();
+                    DataPointIndividualResponse response = newResponse(index, action);
+                    try {
+                        DataPointVO vo = action == VoAction.CREATE ?
+                                controller.prepareCreate(body, dataSource, user) :
+                                controller.prepareUpdate(request.getXid(), body, user);
+                        batch.add(index, vo, response);
+                    } catch (Exception e) {
+                        response.setBody(body);
+                        response.exceptionCaught(e);
+                        setResponse(index, response);
+                    }
+                    if (batch.size() >= batchSize)
+                        batch.flush();
+                } else {
+                    batch.flush();
+                    setResponse(index, doIndividualRequest(index));
+                }
+            }
+            batch.flush();
+        } finally {
+            batch.restart();
+        }
+    }
+
+    private DataPointIndividualResponse newResponse(int index, VoAction action) {
+        DataPointIndividualResponse response = new DataPointIndividualResponse();
+        response.setXid(requests.get(index).getXid());
+        response.setAction(action);
+        return response;
+    }
+
+    private DataPointIndividualResponse doIndividualRequest(int index) {
+        return controller.doIndividualRequest(requests.get(index), defaultAction, defaultBody, user, UriComponentsBuilder.newInstance());
+    }
+
+    /**
+     * Points of one data source waiting to be saved
+     */
+    static class DataPointBatch {
+        private final DataSourceVO<?> dataSource;
+        private final int restartThreshold;
+        private final Function<DataPointVO, DataPointModel> toModel;
+        private final BiConsumer<Integer, DataPointIndividualResponse> completed;
+        private final List<Integer> indexes = new ArrayList<>();
+        private final List<DataPointVO> points = new ArrayList<>();
+        private final List<DataPointIndividualResponse> pending = new ArrayList<>();
+        private final Set<String> xids = new HashSet<>();
+        private boolean saved;
+        //The saved points to restart, null once there are too many and the data source is restarted instead
+        private List<DataPointVO> savedPoints = new ArrayList<>();
+
+        /**
+         * @param dataSource
+         * @param restartThreshold the most saved points that are restarted one at a time
+         * @param toModel the body of the response for a saved point
+         * @param completed receives the response of each request once its point is saved or has failed
+         */
+        DataPointBatch(DataSourceVO<?> dataSource, int restartThreshold, Function<DataPointVO, DataPointModel> toModel,
+                BiConsumer<Integer, DataPointIndividualResponse> completed) {
+            this.dataSource = dataSource;
+            this.restartThreshold = restartThreshold;
+            this.toModel = toModel;
+            this.completed = completed;
+        }
+
+        void add(int index, DataPointVO vo, DataPointIndividualResponse response) {
+            indexes.add(index);
+            points.add(vo);
+            pending.add(response);
+            xids.add(vo.getXid());
+        }
+
+        boolean contains(String xid) {
+            return xids.contains(xid);
+        }
+
+        int size() {
+            return points.size();
+        }
+
+        void flush() {
+            if (points.isEmpty())
+                return;
+            //Saving sets the ids of new points and detectors, they must be put back if the transaction is rolled back
+            List<int[]> ids = new ArrayList<>(points.size());
+            for (DataPointVO vo : points)
+                ids.add(getIds(vo));
+            try {
+                DataPointDao.getInstance().doInTransaction(txStatus -> {
+                    for (DataPointVO vo : points)
+                        DataPointDao.getInstance().saveDataPoint(vo);
+                });
+                for (int i = 0; i < points.size(); i++) {
+                    pending.get(i).setBody(toModel.apply(points.get(i)));
+                    saved(points.get(i));
+                }
+            } catch (Exception e) {
+                //Save them one at a time to find the ones that failed
+                for (int i = 0; i < points.size(); i++) {
+                    DataPointVO vo = points.get(i);
+                    setIds(vo, ids.get(i));
+                    try {
+                        DataPointDao.getInstance().saveDataPoint(vo);
+                        pending.get(i).setBody(toModel.apply(vo));
+                        saved(vo);
+                    } catch (Exception e2) {
+                        pending.get(i).exceptionCaught(e2);
+                    }
+                }
+            }
+            for (int i = 0; i < points.size(); i++)
+                completed.accept(indexes.get(i), pending.get(i));
+
+            indexes.clear();
+            points.clear();
+            pending.clear();
+            xids.clear();
+        }
+
+        private void saved(DataPointVO vo) {
+            saved = true;
+            if (savedPoints != null) {
+                savedPoints.add(vo);
+                if (savedPoints.size() > restartThreshold)
+                    savedPoints = null;
+            }
+        }
+
+        /**
+         * @return the id of the point followed by the ids of its detectors
+         */
+        private static int[] getIds(DataPointVO vo) {
+            List<AbstractPointEventDetectorVO<?>> detectors = vo.getEventDetectors();
+            int[] ids = new int[detectors.size() + 1];
+            ids[0] = vo.getId();
+            for (int i = 0; i < detectors.size(); i++)
+                ids[i + 1] = detectors.get(i).getId();
+            return ids;
+        }
+
+        private static void setIds(DataPointVO vo, int[] ids) {
+            vo.setId(ids[0]);
+            List<AbstractPointEventDetectorVO<?>> detectors = vo.getEventDetectors();
+            for (int i = 0; i < detectors.size() && i + 1 < ids.length; i++)
+                detectors.get(i).setId(ids[i + 1]);
+        }
+
+        /**
+         * Restart the saved points, or the data source if there are too many of them
+         */
+        void restart() {
+            if (!saved || !Common.runtimeManager.isDataSourceRunning(dataSource.getId()))
+                return;
+            if (savedPoints != null) {
+                for (DataPointVO vo : savedPoints) {
+                    try {
+                        Common.runtimeManager.saveDataPoint(vo);
+                    } catch (Exception e) {
+                        LOG.error("Failed to restart data point " + vo.getXid() + " after bulk data point operation", e);
+                    }
+                }
+            } else {
+                try {
+                    //Reload in case it was edited while the points were saved
+                    DataSourceVO<?> current = DataSourceDao.getInstance().get(dataSource.getId());
+                    if (current != null && current.isEnabled())
+                        Common.runtimeManager.saveDataSource(current);
+                } catch (Exception e) {
+                    LOG.error("Failed to restart data source " + dataSource.getXid() + " after bulk data point operation", e);
+                }
+            }
+        }
+    }
+}
@@ -8,10 +8,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -51,6 +53,7 @@ import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceManager;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceStatusUpdate;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceWebSocketHandler;
+import com.infiniteautomation.mango.rest.v2.util.ModuleThreadPools;
 import com.infiniteautomation.mango.util.RQLUtils;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.DataPointDao;
@@ -97,12 +100,27 @@ public class DataPointRestController {
 
     private final BiFunction<DataPointVO, User, DataPointModel> map;
 
+    //Runs the data source groups of bulk requests
+    private final ExecutorService bulkExecutor;
+    private final int bulkBatchSize;
+    private final int bulkRestartThreshold;
+
     @Autowired
     public DataPointRestController(TemporaryResourceWebSocketHandler websocket, final RestModelMapper modelMapper) {
         this.bulkResourceManager = new MangoTaskTemporaryResourceManager<DataPointBulkResponse>(websocket);
         this.map = (vo, user) -> {
             return modelMapper.map(vo, DataPointModel.class, user);
         };
+
+        this.bulkBatchSize = Math.max(1, Common.envProps.getInt("rest.dataPoint.bulk.batchSize", 500));
+        this.bulkRestartThreshold = Math.max(0, Common.envProps.getInt("rest.dataPoint.bulk.restartThreshold", 50));
+        int threads = Math.max(1, Common.envProps.getInt("rest.dataPoint.bulk.threads", Runtime.getRuntime().availableProcessors()));
+        this.bulkExecutor = ModuleThreadPools.newFixedThreadPool("Bulk data point", threads);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        bulkExecutor.shutdownNow();
     }
 
     @ApiOperation(
@@ -242,6 +260,44 @@ public class DataPointRestController {
             @AuthenticationPrincipal User user,
             UriComponentsBuilder builder) {
 
+        DataPointVO dataPoint = prepareUpdate(xid, model, user);
+        Common.runtimeManager.saveDataPoint(dataPoint);
+
+        URI location = builder.path("/data-points/{xid}").buildAndExpand(dataPoint.getXid()).toUri();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(location);
+
+        return new ResponseEntity<>(map.apply(dataPoint, user), headers, HttpStatus.OK);
+    }
+
+    @ApiOperation(value = "Create a new data point")
+    @RequestMapping(method = RequestMethod.POST)
+    public ResponseEntity<DataPointModel> createDataPoint(
+            @ApiParam(value = "Data point model", required = true)
+            @RequestBody(required=true) DataPointModel model,
+
+            @AuthenticationPrincipal User user,
+            UriComponentsBuilder builder) {
+
+        DataSourceVO<?> dataSource = DataSourceDao.getInstance().getByXid(model.getDataSourceXid());
+        if (dataSource == null) {
+            throw new BadRequestException(new TranslatableMessage("rest.error.invalidDataSourceXid"));
+        }
+
+        DataPointVO dataPoint = prepareCreate(model, dataSource, user);
+        Common.runtimeManager.saveDataPoint(dataPoint);
+
+        URI location = builder.path("/data-points/{xid}").buildAndExpand(dataPoint.getXid()).toUri();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(location);
+
+        return new ResponseEntity<>(map.apply(dataPoint, user), headers, HttpStatus.CREATED);
+    }
+
+    /**
+     * Copy the model to the existing point and validate it, ready to be saved
+     */
+    DataPointVO prepareUpdate(String xid, DataPointModel model, User user) {
         DataPointVO dataPoint = DataPointDao.getInstance().getByXid(xid);
         if (dataPoint == null) {
             throw new NotFoundRestException();
@@ -279,29 +335,13 @@ public class DataPointRestController {
 
         // have to load any existing event detectors for the data point as we are about to replace the VO in the runtime manager
         DataPointDao.getInstance().setEventDetectors(dataPoint);
-        Common.runtimeManager.saveDataPoint(dataPoint);
-
-        URI location = builder.path("/data-points/{xid}").buildAndExpand(dataPoint.getXid()).toUri();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setLocation(location);
-
-        return new ResponseEntity<>(map.apply(dataPoint, user), headers, HttpStatus.OK);
+        return dataPoint;
     }
 
-    @ApiOperation(value = "Create a new data point")
-    @RequestMapping(method = RequestMethod.POST)
-    public ResponseEntity<DataPointModel> createDataPoint(
-            @ApiParam(value = "Data point model", required = true)
-            @RequestBody(required=true) DataPointModel model,
-
-            @AuthenticationPrincipal User user,
-            UriComponentsBuilder builder) {
-
-        DataSourceVO<?> dataSource = DataSourceDao.getInstance().getByXid(model.getDataSourceXid());
-        if (dataSource == null) {
-            throw new BadRequestException(new TranslatableMessage("rest.error.invalidDataSourceXid"));
-        }
-
+    /**
+     * Create a point from the model and validate it, ready to be saved
+     */
+    DataPointVO prepareCreate(DataPointModel model, DataSourceVO<?> dataSource, User user) {
         Permissions.ensureDataSourcePermission(user, dataSource);
 
         DataPointVO dataPoint = new DataPointVO(dataSource);
@@ -316,13 +356,7 @@ public class DataPointRestController {
         }
 
         dataPoint.ensureValid();
-        Common.runtimeManager.saveDataPoint(dataPoint);
-
-        URI location = builder.path("/data-points/{xid}").buildAndExpand(dataPoint.getXid()).toUri();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setLocation(location);
-
-        return new ResponseEntity<>(map.apply(dataPoint, user), headers, HttpStatus.CREATED);
+        return dataPoint;
     }
 
     @ApiOperation(value = "Delete a data point")
@@ -376,7 +410,8 @@ public class DataPointRestController {
         return this.bulkDataPointOperation(bulkRequest, user, builder);
     }
 
-    @ApiOperation(value = "Bulk get/create/update/delete data points", notes = "User must have read/edit permission for the data point")
+    @ApiOperation(value = "Bulk get/create/update/delete data points", notes = "User must have read/edit permission for the data point. " +
+            "Requests are grouped by data source, each data source is restarted once after its points are saved and data sources are processed in parallel.")
     @RequestMapping(method = RequestMethod.POST, value="/bulk")
     public ResponseEntity<TemporaryResource<DataPointBulkResponse, AbstractRestV2Exception>> bulkDataPointOperation(
             @RequestBody
@@ -401,20 +436,7 @@ public class DataPointRestController {
 
         TemporaryResource<DataPointBulkResponse, AbstractRestV2Exception> responseBody = bulkResourceManager.newTemporaryResource(
                 RESOURCE_TYPE_BULK_DATA_POINT, resourceId, user.getId(), expiration, timeout, (resource, taskUser) -> {
-
-                    DataPointBulkResponse bulkResponse = new DataPointBulkResponse();
-                    int i = 0;
-
-                    resource.progress(bulkResponse, i++, requests.size());
-
-                    for (DataPointIndividualRequest request : requests) {
-                        UriComponentsBuilder reqBuilder = UriComponentsBuilder.newInstance();
-                        DataPointIndividualResponse individualResponse = doIndividualRequest(request, defaultAction, defaultBody, taskUser, reqBuilder);
-                        bulkResponse.addResponse(individualResponse);
-
-                        resource.progressOrSuccess(bulkResponse, i++, requests.size());
-                    }
-
+                    new DataPointBulkExecutor(this, bulkExecutor, bulkBatchSize, bulkRestartThreshold, requests, defaultAction, defaultBody, taskUser).run(resource);
                     return null;
                 });
 
@@ -519,7 +541,11 @@ public class DataPointRestController {
         resource.remove();
     }
 
-    private DataPointIndividualResponse doIndividualRequest(DataPointIndividualRequest request, VoAction defaultAction, DataPointModel defaultBody, User user, UriComponentsBuilder builder) {
+    DataPointModel toModel(DataPointVO vo, User user) {
+        return map.apply(vo, user);
+    }
+
+    DataPointIndividualResponse doIndividualRequest(DataPointIndividualRequest request, VoAction defaultAction, DataPointModel defaultBody, User user, UriComponentsBuilder builder) {
         DataPointIndividualResponse result = new DataPointIndividualResponse();
 
         try {
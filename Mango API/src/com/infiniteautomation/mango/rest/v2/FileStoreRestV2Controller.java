@@ -12,8 +12,16 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -23,6 +31,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -31,8 +41,9 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.io.FileUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.MediaTypeFactory;
@@ -49,6 +60,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MultipartHttpServletRequest;
 import org.springframework.web.multipart.commons.CommonsMultipartFile;
@@ -416,13 +429,16 @@ public class FileStoreRestV2Controller extends AbstractMangoRestV2Controller {
         return new ResponseEntity<>(fs, HttpStatus.OK);
     }
 
-    @ApiOperation(value = "List a directory or download a file from a store")
+    @ApiOperation(value = "List a directory or download a file from a store",
+            notes = "Files support Range requests and conditional requests using ETag and Last-Modified, directories can be downloaded as a zip")
     @RequestMapping(method = RequestMethod.GET, value="/{name}/**")
     public ResponseEntity<?> download(
             @ApiParam(value = "Valid File Store name", required = true, allowMultiple = false)
             @PathVariable("name") String name,
             @ApiParam(value = "Set content disposition to attachment", required = false, defaultValue="true", allowMultiple = false)
             @RequestParam(required=false, defaultValue="true") boolean download,
+            @ApiParam(value = "Download a directory and its contents as a zip", required = false, defaultValue="false", allowMultiple = false)
+            @RequestParam(required=false, defaultValue="false") boolean zip,
             @AuthenticationPrincipal User user,
             HttpServletRequest request,
             HttpServletResponse response) throws IOException, HttpMediaTypeNotAcceptableException {
@@ -442,9 +458,10 @@ public class FileStoreRestV2Controller extends AbstractMangoRestV2Controller {
             throw new AccessDeniedException("Path is below file store root");
         }
 
-        // TODO Allow downloading directory as a zip
         if (file.isFile()) {
             return getFile(file, download, request, response);
+        } else if (zip && file.isDirectory()) {
+            return getZip(file, request, response);
         } else {
             return listStoreContents(file, root, request);
         }
@@ -472,32 +489,135 @@ public class FileStoreRestV2Controller extends AbstractMangoRestV2Controller {
         return new ResponseEntity<>(found, responseHeaders, HttpStatus.OK);
     }
 
-    protected ResponseEntity<FileSystemResource> getFile(File file, boolean download, HttpServletRequest request, HttpServletResponse response)
-            throws HttpMediaTypeNotAcceptableException {
+    /**
+     * Write a file, or the part of it requested by a Range header, straight from its channel to the response.
+     * Conditional requests are answered from the ETag and Last-Modified of the file.
+     *
+     * @return null as the response has been written
+     */
+    protected ResponseEntity<Void> getFile(File file, boolean download, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
 
-        HttpHeaders responseHeaders = new HttpHeaders();
-        responseHeaders.set(HttpHeaders.CONTENT_DISPOSITION, download ? "attachment" : "inline");
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
 
-        Set<MediaType> mediaTypes = Sets.newHashSet(MediaType.APPLICATION_OCTET_STREAM);
-        request.setAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, mediaTypes);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControlHeader);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified))
+            return null;
 
-        // dynamically set the producible media types to whatever the detected file type is
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, download ? "attachment" : "inline");
+        // force the content type to application/octet for unknown file types
         Optional<MediaType> fileMediaType = MediaTypeFactory.getMediaType(file.getName());
-        if (fileMediaType.isPresent()) {
-            mediaTypes.add(fileMediaType.get());
-        } else {
-            mediaTypes.add(MediaType.ALL);
+        response.setContentType(fileMediaType.orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+
+        long start = 0;
+        long end = length;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && isIfRangeMatched(request, etag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = Collections.emptyList();
+            }
+            // multiple ranges are answered with the whole file
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                if (length == 0 || range.getRangeStart(length) >= length) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return null;
+                }
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length) + 1;
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+        }
+        response.setContentLengthLong(end - start);
+
+        if (HttpMethod.HEAD.matches(request.getMethod()))
+            return null;
+
+        // don't let the ETag filter buffer the whole file
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position < end) {
+                long written = channel.transferTo(position, end - position, out);
+                if (written <= 0)
+                    break;
+                position += written;
+            }
+        }
+        return null;
+    }
 
-            // force the content type to application/octet for unknown file types
-            responseHeaders.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+    /**
+     * A Range header only applies if the If-Range header matches the current file
+     */
+    private boolean isIfRangeMatched(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null)
+            return true;
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return ifRange.equals(etag);
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
         }
+    }
 
-        // this doesn't work as a header from ResponseEntity won't be set if it is already set in the response
-        //responseHeaders.setCacheControl(cacheControlHeader);
-        // set header directly on response instead
-        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControlHeader);
+    /**
+     * Write a directory and its contents to the response as a zip, each file is compressed as it is read
+     * so the archive is never held on disk or in memory.
+     *
+     * @return null as the response has been written
+     */
+    protected ResponseEntity<Void> getZip(File directory, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + directory.getName() + ".zip\"");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+
+        // don't let the ETag filter buffer the whole archive
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+
+        Path base = directory.toPath();
+        try (ZipOutputStream zip = new ZipOutputStream(response.getOutputStream(), StandardCharsets.UTF_8)) {
+            Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    // keep empty directories
+                    if (!dir.equals(base)) {
+                        zip.putNextEntry(new ZipEntry(entryName(base, dir) + "/"));
+                        zip.closeEntry();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+                    // links are not followed so the zip can't contain files outside the store
+                    if (attrs.isRegularFile()) {
+                        ZipEntry entry = new ZipEntry(entryName(base, path));
+                        entry.setTime(attrs.lastModifiedTime().toMillis());
+                        zip.putNextEntry(entry);
+                        Files.copy(path, zip);
+                        zip.closeEntry();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return null;
+    }
 
-        return new ResponseEntity<>(new FileSystemResource(file), responseHeaders, HttpStatus.OK);
+    private static String entryName(Path base, Path path) {
+        return base.relativize(path).toString().replace(File.separatorChar, '/');
     }
 
     /**
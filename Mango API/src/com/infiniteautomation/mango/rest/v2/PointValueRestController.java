@@ -4,6 +4,10 @@
  */
 package com.infiniteautomation.mango.rest.v2;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -18,12 +22,15 @@ import java.util.TimeZone;
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.format.annotation.DateTimeFormat.ISO;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -32,15 +39,18 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.infiniteautomation.mango.rest.v2.exception.AbstractRestV2Exception;
 import com.infiniteautomation.mango.rest.v2.exception.AccessDeniedException;
 import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
 import com.infiniteautomation.mango.rest.v2.exception.NotFoundRestException;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueField;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueImportResponseModel;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueImportResult;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PointValueTimeStream;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PurgeDataPointValuesModel;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.PurgePointValuesResponseModel;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.StreamingPointValueImport;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.quantize.MultiDataPointDefaultRollupStatisticsQuantizerStream;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.quantize.MultiDataPointStatisticsQuantizerStream;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.LatestQueryInfo;
@@ -62,6 +72,7 @@ import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.TemporaryResourceStatus;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceStatusUpdate;
 import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceWebSocketHandler;
+import com.infiniteautomation.mango.spring.MangoRuntimeContextConfiguration;
 import com.infiniteautomation.mango.util.exception.NotFoundException;
 import com.infiniteautomation.mango.util.exception.ValidationException;
 import com.serotonin.m2m2.Common;
@@ -78,6 +89,7 @@ import com.serotonin.m2m2.vo.User;
 import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
 import com.serotonin.m2m2.vo.permission.PermissionException;
 import com.serotonin.m2m2.vo.permission.Permissions;
+import com.serotonin.m2m2.web.MediaTypes;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeModel;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.XidPointValueTimeModel;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.time.RollupEnum;
@@ -97,10 +109,15 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
 
     private final PointValueDao dao = Common.databaseProxy.newPointValueDao();
     private final MangoTaskTemporaryResourceManager<PurgePointValuesResponseModel> resourceManager;
+    private final MangoTaskTemporaryResourceManager<PointValueImportResponseModel> importResourceManager;
+    private final ObjectMapper mapper;
 
     @Autowired
-    public PointValueRestController(TemporaryResourceWebSocketHandler websocket) {
+    public PointValueRestController(TemporaryResourceWebSocketHandler websocket,
+            @Qualifier(MangoRuntimeContextConfiguration.REST_OBJECT_MAPPER_NAME) ObjectMapper mapper) {
         this.resourceManager = new MangoTaskTemporaryResourceManager<>(websocket);
+        this.importResourceManager = new MangoTaskTemporaryResourceManager<>(websocket);
+        this.mapper = mapper;
     }
 
     @ApiOperation(
@@ -840,6 +857,127 @@ public class PointValueRestController extends AbstractMangoRestV2Controller{
         return ResponseEntity.ok(results.values());
     }
 
+    @ApiOperation(
+            value = "Import a large number of Point Values for one or many Data Points",
+            notes = "Body is a JSON array or CSV with the columns xid, dataType, value, timestamp, annotation. " +
+                    "Values are imported in the background, use created header to track progress/cancel. " +
+                    "Data Points must exist and user must have write access"
+            )
+    @RequestMapping(method = RequestMethod.POST, value="/import", consumes={MediaType.APPLICATION_JSON_VALUE, MediaTypes.CSV_VALUE})
+    public ResponseEntity<TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception>> importPointValues(
+            HttpServletRequest request,
+
+            @ApiParam(value = "Time to keep the result after the import completes (ms)", required = false, allowMultiple = false)
+            @RequestParam(value = "expiration", required = false)
+            Long expiration,
+
+            @ApiParam(value = "Time to allow the import to run for (ms)", required = false, allowMultiple = false)
+            @RequestParam(value = "timeout", required = false)
+            Long timeout,
+
+            @AuthenticationPrincipal User user,
+            UriComponentsBuilder builder) throws IOException {
+
+        StreamingPointValueImport.Format format = StreamingPointValueImport.Format.JSON;
+        String contentType = request.getContentType();
+        if(contentType != null && MediaType.parseMediaType(contentType).getSubtype().contains("csv"))
+            format = StreamingPointValueImport.Format.CSV;
+
+        //Keep the body on disk so the request can return and the import can run for as long as it needs to
+        File file = File.createTempFile("pointValueImport", format == StreamingPointValueImport.Format.CSV ? ".csv" : ".json");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            StreamUtils.copy(request.getInputStream(), out);
+        } catch(IOException e) {
+            file.delete();
+            throw e;
+        }
+
+        StreamingPointValueImport importer = new StreamingPointValueImport(file, format, mapper, dao, user);
+        TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> response = importResourceManager.newTemporaryResource(
+                "POINT_VALUE_IMPORT", null, user.getId(), expiration, timeout,
+                (resource, taskUser) -> {
+                    try {
+                        importer.run(resource);
+                    } finally {
+                        file.delete();
+                    }
+                    return null;
+                });
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(builder.path("/point-values/import/{id}").buildAndExpand(response.getId()).toUri());
+        return new ResponseEntity<>(response, headers, HttpStatus.CREATED);
+    }
+
+    @ApiOperation(value = "Update an import task using its id",
+            notes = "Only allowed operation is to change the status to CANCELLED. " +
+            "User can only update their own import task unless they are an admin.")
+    @RequestMapping(method = RequestMethod.PUT, value="/import/{id}")
+    public TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> updatePointValueImport(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+
+            @RequestBody
+            TemporaryResourceStatusUpdate body,
+
+            @AuthenticationPrincipal
+            User user) {
+
+        TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> resource = importResourceManager.get(id);
+
+        if (!user.hasAdminPermission() && user.getId() != resource.getUserId()) {
+            throw new AccessDeniedException();
+        }
+
+        if (body.getStatus() == TemporaryResourceStatus.CANCELLED) {
+            resource.cancel();
+        } else {
+            throw new BadRequestException(new TranslatableMessage("rest.error.onlyCancel"));
+        }
+
+        return resource;
+    }
+
+    @ApiOperation(value = "Get the status of an import using its id",
+            notes = "User can only get their own status unless they are an admin")
+    @RequestMapping(method = RequestMethod.GET, value="/import/{id}")
+    public TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> getPointValueImportStatus(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+
+            @AuthenticationPrincipal
+            User user) {
+
+        TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> resource = importResourceManager.get(id);
+
+        if (!user.hasAdminPermission() && user.getId() != resource.getUserId()) {
+            throw new AccessDeniedException();
+        }
+
+        return resource;
+    }
+
+    @ApiOperation(value = "Remove an import task using its id",
+            notes = "Will only remove a task if it is complete. " +
+            "User can only remove their own import task unless they are an admin.")
+    @RequestMapping(method = RequestMethod.DELETE, value="/import/{id}")
+    public void removePointValueImportTask(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+
+            @AuthenticationPrincipal
+            User user) {
+
+        TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> resource = importResourceManager.get(id);
+
+        if (!user.hasAdminPermission() && user.getId() != resource.getUserId()) {
+            throw new AccessDeniedException();
+        }
+
+        resource.remove();
+    }
+
     @ApiOperation(
             value = "Delete point values >= from  and < to",
             notes = "The user must have set permission to the data point. If date is not supplied it defaults to now."
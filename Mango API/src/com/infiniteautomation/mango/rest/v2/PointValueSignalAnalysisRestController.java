@@ -5,8 +5,15 @@ package com.infiniteautomation.mango.rest.v2;
 
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.math3.complex.Complex;
@@ -21,13 +28,19 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.infiniteautomation.mango.rest.v2.exception.AccessDeniedException;
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
 import com.infiniteautomation.mango.rest.v2.exception.NotFoundRestException;
+import com.infiniteautomation.mango.rest.v2.exception.ServerErrorException;
+import com.infiniteautomation.mango.rest.v2.model.pointValue.WelchSpectrumGenerator;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.PointValueTimeCacheControl;
 import com.infiniteautomation.mango.rest.v2.model.pointValue.query.ZonedDateTimeRangeQueryInfo;
+import com.infiniteautomation.mango.rest.v2.util.ModuleThreadPools;
 import com.serotonin.db.MappedRowCallback;
 import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
 import com.serotonin.m2m2.db.dao.DataPointDao;
 import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.view.quantize2.FftGenerator;
 import com.serotonin.m2m2.vo.DataPointVO;
@@ -53,6 +66,25 @@ public class PointValueSignalAnalysisRestController {
     //TODO Highpass filter
     //TODO Lowpass filter
     //TODO Bandpass filter
+
+    //Bytes of values held in memory by all analyses at once
+    private final long maxMemory;
+    private final Semaphore memory;
+    private final ExecutorService executor;
+
+    public PointValueSignalAnalysisRestController() {
+        this.maxMemory = Common.envProps.getLong("rest.pointValue.analysis.maxMemory", 256 * 1024 * 1024);
+        //Permits are in kB so large limits fit in an int
+        this.memory = new Semaphore((int) Math.max(1, Math.min(Integer.MAX_VALUE, maxMemory / 1024)));
+
+        int threads = Math.max(1, Common.envProps.getInt("rest.pointValue.analysis.threads", Runtime.getRuntime().availableProcessors()));
+        this.executor = ModuleThreadPools.newFixedThreadPool("Point value analysis", threads);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
     
     @ApiOperation(
             value = "Perform the FFT on a data point's values for the given time range", 
@@ -102,18 +134,7 @@ public class PointValueSignalAnalysisRestController {
         ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(
                 from, to, null, timezone, RollupEnum.NONE, null, limit, 
                 true, false, true, PointValueTimeCacheControl.NONE, null, null, false, null);
-        FftGenerator generator = buildFFT(vo, info);
-        
-        double sampleRateHz;
-        if(pollPeriod != null)
-           sampleRateHz = 1000d / pollPeriod;
-        else
-           sampleRateHz = 1000d / generator.getAverageSamplePeriodMs();
-        
-        if(generator.getValues().length == 0)
-            return ResponseEntity.ok(new ArrayList<>());
-        else
-            return ResponseEntity.ok(generate(generator, sampleRateHz, true));
+        return ResponseEntity.ok(transform(vo, info, pollPeriod, true));
     }
     
     @ApiOperation(
@@ -164,43 +185,201 @@ public class PointValueSignalAnalysisRestController {
         ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(
                 from, to, null, timezone, RollupEnum.NONE, null, limit, 
                 true, false, true, PointValueTimeCacheControl.NONE, null, null, false, null);
-        FftGenerator generator = buildFFT(vo, info);
-        
-        double sampleRateHz;
-        if(pollPeriod != null)
-           sampleRateHz = 1000d / pollPeriod;
-        else
-           sampleRateHz = 1000d / generator.getAverageSamplePeriodMs();
-        
-        if(generator.getValues().length == 0)
-            return ResponseEntity.ok(new ArrayList<>());
-        else
-            return ResponseEntity.ok(generate(generator, sampleRateHz, false));
+        return ResponseEntity.ok(transform(vo, info, pollPeriod, false));
     }
     
+    @ApiOperation(
+            value = "Estimate the power spectral density of data points' values for the given time range using Welch's method",
+            notes = "From time inclusive, To time exclusive. Numeric,Multistate,Binary types supported. " +
+                    "The values are read in overlapping windows of windowSize values which are averaged so any length of time range can be analyzed. " +
+                    "Points are analyzed in parallel, the result is keyed by xid and each value is the density at a frequency in units squared per Hz.",
+            response = FftValue.class,
+            responseContainer = "Map"
+            )
+    @RequestMapping(method = RequestMethod.GET, value = "/welch/{xids}")
+    public ResponseEntity<Map<String, List<FftValue>>> welch(
+            HttpServletRequest request,
+            @ApiParam(value = "Point xids", required = true, allowMultiple = true)
+            @PathVariable String[] xids,
+
+            @ApiParam(value = "From time", required = false, allowMultiple = false)
+            @RequestParam(value = "from", required = false)
+            @DateTimeFormat(iso = ISO.DATE_TIME)
+            ZonedDateTime from,
+
+            @ApiParam(value = "To time", required = false, allowMultiple = false)
+            @RequestParam(value = "to", required = false)
+            @DateTimeFormat(iso = ISO.DATE_TIME)
+            ZonedDateTime to,
+
+            @ApiParam(value = "Time zone", required = false, allowMultiple = false)
+            @RequestParam(value = "timezone", required = false)
+            String timezone,
+
+            @ApiParam(value = "Point poll period ms, if not supplied will be autodected", required = false, allowMultiple = false)
+            @RequestParam(value = "pollPeriod", required = false)
+            Long pollPeriod,
+
+            @ApiParam(value = "Values in each window, a power of 2", required = false, allowMultiple = false)
+            @RequestParam(value = "windowSize", required = false, defaultValue = "1024")
+            int windowSize,
+
+            @ApiParam(value = "Fraction of each window that overlaps the next, 0 to less than 1", required = false, allowMultiple = false)
+            @RequestParam(value = "overlap", required = false, defaultValue = "0.5")
+            double overlap,
+
+            @AuthenticationPrincipal User user
+            ) {
+
+        if (windowSize < 2 || Integer.bitCount(windowSize) != 1)
+            throw new BadRequestException(new TranslatableMessage("rest.error.windowSizePowerOf2"));
+        if (overlap < 0 || overlap >= 1)
+            throw new BadRequestException(new TranslatableMessage("rest.error.invalidOverlap"));
+        long required = WelchSpectrumGenerator.estimateMemory(windowSize);
+        if (required > maxMemory)
+            throw new BadRequestException(new TranslatableMessage("rest.error.analysisTooLarge"));
+
+        List<DataPointVO> points = new ArrayList<>(xids.length);
+        for (String xid : xids) {
+            DataPointVO vo = DataPointDao.getInstance().getByXid(xid);
+            if (vo == null)
+                throw new NotFoundRestException();
+            if(!Permissions.hasDataPointReadPermission(user, vo))
+                throw new AccessDeniedException();
+            int dataType = vo.getPointLocator().getDataTypeId();
+            if (dataType == DataTypes.ALPHANUMERIC || dataType == DataTypes.IMAGE)
+                throw new BadRequestException(new TranslatableMessage("rest.error.unsupportedDataType", xid));
+            points.add(vo);
+        }
+        int permits = toPermits(required);
+
+        ZonedDateTimeRangeQueryInfo info = new ZonedDateTimeRangeQueryInfo(
+                from, to, null, timezone, RollupEnum.NONE, null, null,
+                true, false, true, PointValueTimeCacheControl.NONE, null, null, false, null);
+
+        Map<String, Future<List<FftValue>>> futures = new LinkedHashMap<>();
+        for (DataPointVO vo : points) {
+            futures.put(vo.getXid(), executor.submit(() -> {
+                //Wait for memory used by other analyses to be freed
+                memory.acquire(permits);
+                try {
+                    WelchSpectrumGenerator generator = new WelchSpectrumGenerator(windowSize, overlap);
+                    Common.databaseProxy.newPointValueDao().getPointValuesBetween(vo.getId(), info.getFromMillis(), info.getToMillis(), generator);
+                    return generate(generator, pollPeriod);
+                } finally {
+                    memory.release(permits);
+                }
+            }));
+        }
+
+        Map<String, List<FftValue>> results = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, Future<List<FftValue>>> entry : futures.entrySet())
+                results.put(entry.getKey(), entry.getValue().get());
+        } catch (InterruptedException e) {
+            throw new ServerErrorException(e);
+        } catch (ExecutionException e) {
+            throw new ServerErrorException(e.getCause());
+        } finally {
+            for (Future<List<FftValue>> future : futures.values())
+                future.cancel(true);
+        }
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Transform all the values of a point in the time range at once, the memory they use is
+     * reserved while the values are read and transformed
+     * @param vo
+     * @param info
+     * @param pollPeriod sample period, if null the average time between values is used
+     * @param fft true for the FFT, false for the inverse
+     * @return
+     */
+    protected List<FftValue> transform(DataPointVO vo, ZonedDateTimeRangeQueryInfo info, Long pollPeriod, boolean fft) {
+        PointValueDao pvd = Common.databaseProxy.newPointValueDao();
+        long count = pvd.dateRangeCount(vo.getId(), info.getFromMillis(), info.getToMillis());
+        //The whole range is transformed at once, the Welch endpoint handles larger ranges
+        long required = count * 16;
+        if(required > maxMemory)
+            throw new BadRequestException(new TranslatableMessage("rest.error.analysisTooLarge"));
+
+        int permits = toPermits(required);
+        try {
+            //Wait for memory used by other analyses to be freed
+            memory.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServerErrorException(e);
+        }
+        try {
+            FftGenerator generator = buildFFT(vo, info, count);
+            if(generator.getValues().length == 0)
+                return new ArrayList<>();
+
+            double sampleRateHz;
+            if(pollPeriod != null)
+                sampleRateHz = 1000d / pollPeriod;
+            else
+                sampleRateHz = 1000d / generator.getAverageSamplePeriodMs();
+            return generate(generator, sampleRateHz, fft);
+        } finally {
+            memory.release(permits);
+        }
+    }
+
+    /**
+     * Permits of the memory semaphore for a number of bytes
+     */
+    private static int toPermits(long bytes) {
+        return (int) Math.max(1, bytes / 1024);
+    }
+
     /**
      * Fill the FFT generator with data
      * @param vo
      * @param info
-     * @param pollPeriod
+     * @param count number of values in the time range
      * @return
      */
-    protected FftGenerator buildFFT(DataPointVO vo, ZonedDateTimeRangeQueryInfo info){
+    protected FftGenerator buildFFT(DataPointVO vo, ZonedDateTimeRangeQueryInfo info, long count){
         PointValueDao pvd = Common.databaseProxy.newPointValueDao();
-        List<PointValueTime> data = new ArrayList<>();
+        FftGenerator generator = new FftGenerator(count);
         //Make the call to get the data and quantize it
         pvd.getPointValuesBetween(vo.getId(), info.getFromMillis(), info.getToMillis(),
                 new MappedRowCallback<PointValueTime>() {
                     @Override
                     public void row(PointValueTime pvt, int row) {
-                        data.add(pvt);
+                        generator.data(pvt);
                     }
                 });
-        FftGenerator generator = new FftGenerator(data.size());
-        for(PointValueTime pvt : data)
-            generator.data(pvt);
         return generator;
     }
+
+    /**
+     * Convert the density of a Welch generator to values
+     * @param generator
+     * @param pollPeriod sample period, if null the average time between values is used
+     * @return
+     */
+    protected List<FftValue> generate(WelchSpectrumGenerator generator, Long pollPeriod) {
+        List<FftValue> values = new ArrayList<>();
+        double samplePeriodMs = pollPeriod != null ? pollPeriod : generator.getAverageSamplePeriodMs();
+        if(generator.getSegments() == 0 || samplePeriodMs <= 0)
+            return values;
+
+        double sampleRateHz = 1000d / samplePeriodMs;
+        double[] density = generator.getPowerSpectralDensity(sampleRateHz);
+        for(int i=0; i<density.length; i++){
+            FftValue value = new FftValue();
+            double frequency = (double)i * sampleRateHz / generator.getWindowSize();
+            value.setValue(density[i]);
+            value.setFrequency(frequency);
+            value.setPeriod(i == 0 ? 0 : 1d/frequency);
+            values.add(value);
+        }
+        return values;
+    }
     /**
      * 
      * Depending on if fftData.length is even or odd we need to pull out 
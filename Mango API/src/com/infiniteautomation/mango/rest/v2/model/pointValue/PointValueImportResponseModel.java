@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2019  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue;
+
+import java.util.Collection;
+
+/**
+ * Progress and results of a streaming point value import
+ *
+ * @author Terry Packer
+ */
+public class PointValueImportResponseModel {
+
+    private long imported;
+    private long rejected;
+    private long valuesPerSecond;
+    private Collection<PointValueImportResult> results;
+
+    /**
+     * @return the number of values saved
+     */
+    public long getImported() {
+        return imported;
+    }
+    /**
+     * @param imported the imported to set
+     */
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+    /**
+     * @return the number of values that could not be read or saved
+     */
+    public long getRejected() {
+        return rejected;
+    }
+    /**
+     * @param rejected the rejected to set
+     */
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+    /**
+     * @return the valuesPerSecond
+     */
+    public long getValuesPerSecond() {
+        return valuesPerSecond;
+    }
+    /**
+     * @param valuesPerSecond the valuesPerSecond to set
+     */
+    public void setValuesPerSecond(long valuesPerSecond) {
+        this.valuesPerSecond = valuesPerSecond;
+    }
+    /**
+     * @return the results for each xid
+     */
+    public Collection<PointValueImportResult> getResults() {
+        return results;
+    }
+    /**
+     * @param results the results to set
+     */
+    public void setResults(Collection<PointValueImportResult> results) {
+        this.results = results;
+    }
+
+}
@@ -4,6 +4,8 @@
  */
 package com.infiniteautomation.mango.rest.v2.model.pointValue;
 
+import java.util.List;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.DataPointDao;
@@ -45,6 +47,8 @@ public class PointValueImportResult {
     private DataPointRT rt;
     @JsonIgnore
     private DataPointVO vo;
+    @JsonIgnore
+    private int messageLimit = -1;
     
     public PointValueImportResult(String xid, PointValueDao dao, User user) {
         this.xid = xid;
@@ -113,18 +117,41 @@ public class PointValueImportResult {
     }
     
     public void saveValue(XidPointValueTimeModel model) {
-        if(valid) {
-            
-            //Validate the model against our point
-            long timestamp = model.getTimestamp();
-            if(timestamp == 0)
-                timestamp = Common.timer.currentTimeMillis();
-            if ((model.getType() == null ) || (DataTypeEnum.convertFrom(model.getType()) != vo.getPointLocator().getDataTypeId())) {
-                result.addContextualMessage("dataType", "event.ds.dataType");
-                return;
-            }
-            
-            DataValue value;
+        PointValueTime pvt = createPointValueTime(model);
+        if(pvt != null)
+            savePointValue(pvt);
+    }
+    
+    /**
+     * Save values that were created by createPointValueTime, in time order
+     * @param values
+     */
+    public void saveValues(List<PointValueTime> values) {
+        values.sort((a, b) -> Long.compare(a.getTime(), b.getTime()));
+        for(PointValueTime pvt : values)
+            savePointValue(pvt);
+    }
+    
+    /**
+     * Validate the model against our point and create its value
+     * @param model
+     * @return null if the point is not valid or the model can't be converted
+     */
+    public PointValueTime createPointValueTime(XidPointValueTimeModel model) {
+        if(!valid)
+            return null;
+        
+        //Validate the model against our point
+        long timestamp = model.getTimestamp();
+        if(timestamp == 0)
+            timestamp = Common.timer.currentTimeMillis();
+        if ((model.getType() == null ) || (DataTypeEnum.convertFrom(model.getType()) != vo.getPointLocator().getDataTypeId())) {
+            addMessage("dataType", "event.ds.dataType");
+            return null;
+        }
+        
+        DataValue value;
+        try {
             switch(model.getType()) {
                 case ALPHANUMERIC:
                     value = new AlphanumericValue((String) model.getValue());
@@ -139,8 +166,8 @@ public class PointValueImportResult {
                             value = vo.getTextRenderer().parseText((String) model.getValue(), dataTypeId);
                         } catch (Exception e) {
                             // Lots can go wrong here so let the user know
-                            result.addContextualMessage("value", "event.valueParse.textParse", e.getMessage());
-                            return;
+                            addMessage("value", "event.valueParse.textParse", e.getMessage());
+                            return null;
                         }
                     }else {
                         value = new MultistateValue(((Number)model.getValue()).intValue());
@@ -151,22 +178,41 @@ public class PointValueImportResult {
                     break;
                 case IMAGE:
                 default:
-                    result.addContextualMessage("dataType", "common.default", model.getType() + " data type not supported yet");
-                    return;
-            }
-            
-            PointValueTime pvt;
-            if(model.getAnnotation() == null) {
-                pvt = new PointValueTime(value, timestamp);
-            }else {
-                pvt = new AnnotatedPointValueTime(value, timestamp, new TranslatableMessage("common.default", model.getAnnotation()));
+                    addMessage("dataType", "common.default", model.getType() + " data type not supported yet");
+                    return null;
             }
-            if(rt == null) {
-                dao.savePointValueAsync(vo.getId(), pvt, null);
-            }else {
-                rt.savePointValueDirectToCache(pvt, null, true, true);
-            }
-            total++;
+        }catch(ClassCastException | NullPointerException e) {
+            addMessage("value", "event.valueParse.textParse", String.valueOf(model.getValue()));
+            return null;
+        }
+        
+        if(model.getAnnotation() == null) {
+            return new PointValueTime(value, timestamp);
+        }else {
+            return new AnnotatedPointValueTime(value, timestamp, new TranslatableMessage("common.default", model.getAnnotation()));
+        }
+    }
+    
+    private void savePointValue(PointValueTime pvt) {
+        if(rt == null) {
+            dao.savePointValueAsync(vo.getId(), pvt, null);
+        }else {
+            rt.savePointValueDirectToCache(pvt, null, true, true);
         }
+        total++;
+    }
+    
+    /**
+     * Limit the messages kept for values that can't be saved, so a large import of bad
+     * values doesn't fill the memory with messages
+     * @param messageLimit -1 for no limit
+     */
+    public void setMessageLimit(int messageLimit) {
+        this.messageLimit = messageLimit;
+    }
+    
+    private void addMessage(String contextKey, String key, Object... params) {
+        if(messageLimit < 0 || result.getMessages().size() < messageLimit)
+            result.addContextualMessage(contextKey, key, params);
     }
 }
@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2019  Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.rest.v2.exception.AbstractRestV2Exception;
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.DataTypeEnum;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.XidPointValueTimeModel;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Imports point values from a file one value at a time so the size of an import is
+ * not limited by the memory.  The file is a JSON array of point values or a CSV file
+ * with the columns xid, dataType, value, timestamp and annotation.
+ *
+ * Values are collected per point and saved in time order once a point has
+ * rest.pointValue.import.batchSize values waiting, or once
+ * rest.pointValue.import.maxWaiting values are waiting for all points.
+ *
+ * @author Terry Packer
+ */
+public class StreamingPointValueImport {
+
+    public enum Format {
+        JSON, CSV
+    }
+
+    //How often to update the progress of the resource
+    private static final long PROGRESS_PERIOD = 1000;
+    //Messages kept for each xid
+    private static final int MESSAGE_LIMIT = 100;
+
+    private final File file;
+    private final Format format;
+    private final ObjectMapper mapper;
+    private final PointValueDao dao;
+    private final User user;
+    private final int batchSize;
+    private final int maxWaiting;
+
+    private final Map<String, PointValueImportResult> results = new LinkedHashMap<>();
+    private final Map<String, List<PointValueTime>> waiting = new HashMap<>();
+    private int waitingCount;
+    private long imported;
+    private long rejected;
+
+    private TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> resource;
+    private CountingInputStream counter;
+    private int maximum;
+    private long started;
+    private long lastProgress;
+
+    public StreamingPointValueImport(File file, Format format, ObjectMapper mapper, PointValueDao dao, User user) {
+        this.file = file;
+        this.format = format;
+        this.mapper = mapper;
+        this.dao = dao;
+        this.user = user;
+        this.batchSize = Common.envProps.getInt("rest.pointValue.import.batchSize", 1000);
+        this.maxWaiting = Common.envProps.getInt("rest.pointValue.import.maxWaiting", 100000);
+    }
+
+    /**
+     * Import the file, stops when the resource is cancelled or timed out
+     * @param resource
+     * @throws IOException
+     */
+    public void run(TemporaryResource<PointValueImportResponseModel, AbstractRestV2Exception> resource) throws IOException {
+        this.resource = resource;
+        //Progress is in kB so large files fit
+        this.maximum = (int) Math.max(1, file.length() / 1024);
+        this.started = Common.timer.currentTimeMillis();
+        resource.progress(createResponse(), 0, maximum);
+
+        try (InputStream in = new FileInputStream(file)) {
+            counter = new CountingInputStream(new BufferedInputStream(in));
+            if (format == Format.CSV)
+                readCsv();
+            else
+                readJson();
+        }
+
+        if (resource.isComplete())
+            return;
+        flushAll();
+        resource.success(createResponse());
+    }
+
+    private void readJson() throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(counter)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                throw new BadRequestException(new TranslatableMessage("common.default", "Expected an array of point values"));
+
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                if (resource.isComplete())
+                    return;
+                JsonNode node = mapper.readTree(parser);
+                XidPointValueTimeModel model;
+                try {
+                    model = mapper.treeToValue(node, XidPointValueTimeModel.class);
+                } catch (JsonProcessingException e) {
+                    rejected++;
+                    continue;
+                }
+                add(model);
+            }
+        }
+    }
+
+    private void readCsv() throws IOException {
+        try (CSVReader reader = new CSVReader(new InputStreamReader(counter, Common.UTF8_CS))) {
+            String[] headers = reader.readNext();
+            if (headers == null)
+                return;
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < headers.length; i++)
+                columns.put(headers[i].trim(), i);
+            Integer xidColumn = columns.get("xid");
+            Integer typeColumn = columns.get("dataType");
+            Integer valueColumn = columns.get("value");
+            Integer timestampColumn = columns.get("timestamp");
+            Integer annotationColumn = columns.get("annotation");
+            if (xidColumn == null || typeColumn == null || valueColumn == null)
+                throw new BadRequestException(new TranslatableMessage("common.default", "CSV must have xid, dataType and value columns"));
+
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                if (resource.isComplete())
+                    return;
+                XidPointValueTimeModel model;
+                try {
+                    model = new XidPointValueTimeModel();
+                    model.setXid(column(row, xidColumn));
+                    DataTypeEnum type = DataTypeEnum.valueOf(column(row, typeColumn));
+                    model.setType(type);
+                    model.setValue(parseValue(type, column(row, valueColumn)));
+                    String timestamp = column(row, timestampColumn);
+                    if (timestamp != null && !timestamp.isEmpty())
+                        model.setTimestamp(parseTimestamp(timestamp));
+                    String annotation = column(row, annotationColumn);
+                    if (annotation != null && !annotation.isEmpty())
+                        model.setAnnotation(annotation);
+                } catch (RuntimeException e) {
+                    rejected++;
+                    continue;
+                }
+                add(model);
+            }
+        }
+    }
+
+    private static String column(String[] row, Integer column) {
+        if (column == null || column >= row.length)
+            return null;
+        return row[column];
+    }
+
+    private static Object parseValue(DataTypeEnum type, String value) {
+        switch (type) {
+            case NUMERIC:
+                return Double.parseDouble(value);
+            case BINARY:
+                if ("1".equals(value) || "0".equals(value))
+                    return "1".equals(value);
+                return Boolean.parseBoolean(value);
+            case MULTISTATE:
+                try {
+                    return Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    //Parsed by the text renderer
+                    return value;
+                }
+            default:
+                return value;
+        }
+    }
+
+    private static long parseTimestamp(String timestamp) {
+        try {
+            return Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            return ZonedDateTime.parse(timestamp).toInstant().toEpochMilli();
+        }
+    }
+
+    private void add(XidPointValueTimeModel model) {
+        String xid = model.getXid();
+        if (xid == null) {
+            rejected++;
+            return;
+        }
+        PointValueImportResult result = results.computeIfAbsent(xid, k -> {
+            PointValueImportResult r = new PointValueImportResult(k, dao, user);
+            r.setMessageLimit(MESSAGE_LIMIT);
+            return r;
+        });
+        PointValueTime pvt = result.createPointValueTime(model);
+        if (pvt == null) {
+            rejected++;
+        } else {
+            List<PointValueTime> values = waiting.computeIfAbsent(xid, k -> new ArrayList<>());
+            values.add(pvt);
+            waitingCount++;
+            if (values.size() >= batchSize)
+                flush(xid);
+            else if (waitingCount >= maxWaiting)
+                flushAll();
+        }
+        updateProgress();
+    }
+
+    private void flush(String xid) {
+        List<PointValueTime> values = waiting.remove(xid);
+        if (values == null)
+            return;
+        waitingCount -= values.size();
+        results.get(xid).saveValues(values);
+        imported += values.size();
+    }
+
+    private void flushAll() {
+        for (String xid : new ArrayList<>(waiting.keySet()))
+            flush(xid);
+    }
+
+    private void updateProgress() {
+        long now = Common.timer.currentTimeMillis();
+        if (now - lastProgress < PROGRESS_PERIOD)
+            return;
+        lastProgress = now;
+        int position = (int) Math.min(maximum, counter.getByteCount() / 1024);
+        if (!resource.isComplete())
+            resource.progress(createResponse(), position, maximum);
+    }
+
+    private PointValueImportResponseModel createResponse() {
+        PointValueImportResponseModel response = new PointValueImportResponseModel();
+        response.setImported(imported);
+        response.setRejected(rejected);
+        long elapsed = Common.timer.currentTimeMillis() - started;
+        response.setValuesPerSecond(elapsed > 0 ? imported * 1000 / elapsed : 0);
+        response.setResults(new ArrayList<>(results.values()));
+        return response;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.model.pointValue;
+
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+
+import com.serotonin.db.MappedRowCallback;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+/**
+ * Estimates the power spectral density of a point's values with Welch's method.  The
+ * values are split into overlapping windows, each window is multiplied by a Hann window
+ * and transformed and the power of each frequency is averaged over the windows.
+ *
+ * Values are consumed as they are read from the database, only one window of values is
+ * held in memory no matter how long the time range is.
+ *
+ * @author Terry Packer
+ */
+public class WelchSpectrumGenerator implements MappedRowCallback<PointValueTime> {
+
+    private final int windowSize;
+    private final int step;
+    private final double[] window;
+    private final double windowPower;
+    private final double[] buffer;
+    private final double[] power;
+    private final FastFourierTransformer transformer = new FastFourierTransformer(DftNormalization.STANDARD);
+
+    private int filled;
+    private int segments;
+    private long count;
+    private long firstTime;
+    private long lastTime;
+
+    /**
+     * @param windowSize values in each window, must be a power of 2
+     * @param overlap fraction of each window shared with the next one, 0 to less than 1
+     */
+    public WelchSpectrumGenerator(int windowSize, double overlap) {
+        this.windowSize = windowSize;
+        this.step = Math.max(1, (int) Math.round(windowSize * (1 - overlap)));
+        this.buffer = new double[windowSize];
+        this.power = new double[windowSize / 2 + 1];
+
+        this.window = new double[windowSize];
+        double sum = 0;
+        for (int i = 0; i < windowSize; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (windowSize - 1));
+            sum += window[i] * window[i];
+        }
+        this.windowPower = sum;
+    }
+
+    /**
+     * Approximate memory used by a generator
+     * @param windowSize
+     * @return bytes
+     */
+    public static long estimateMemory(int windowSize) {
+        //Values, window, power and the complex transform of a window
+        return (long) windowSize * (8 + 8 + 4 + 48);
+    }
+
+    @Override
+    public void row(PointValueTime pvt, int row) {
+        if (count == 0)
+            firstTime = pvt.getTime();
+        lastTime = pvt.getTime();
+        count++;
+
+        buffer[filled++] = pvt.getDoubleValue();
+        if (filled == windowSize) {
+            addSegment();
+            System.arraycopy(buffer, step, buffer, 0, windowSize - step);
+            filled = windowSize - step;
+        }
+    }
+
+    private void addSegment() {
+        double[] segment = new double[windowSize];
+        for (int i = 0; i < windowSize; i++)
+            segment[i] = buffer[i] * window[i];
+        Complex[] transform = transformer.transform(segment, TransformType.FORWARD);
+        for (int i = 0; i < power.length; i++) {
+            double re = transform[i].getReal();
+            double im = transform[i].getImaginary();
+            power[i] += re * re + im * im;
+        }
+        segments++;
+    }
+
+    /**
+     * @return number of windows averaged, 0 if there were fewer values than the window size
+     */
+    public int getSegments() {
+        return segments;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return average time between values, 0 if there are less than 2 values
+     */
+    public double getAverageSamplePeriodMs() {
+        if (count < 2)
+            return 0;
+        return (double) (lastTime - firstTime) / (count - 1);
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * One sided power spectral density, the power of bin i is at frequency i * sampleRateHz / windowSize
+     * @param sampleRateHz
+     * @return density in units squared per Hz for each bin from 0 to sampleRateHz / 2
+     */
+    public double[] getPowerSpectralDensity(double sampleRateHz) {
+        double[] density = new double[power.length];
+        if (segments == 0)
+            return density;
+        double scale = 1d / (sampleRateHz * windowPower * segments);
+        for (int i = 0; i < power.length; i++) {
+            density[i] = power[i] * scale;
+            //Fold the negative frequencies into the positive ones
+            if (i != 0 && i != power.length - 1)
+                density[i] *= 2;
+        }
+        return density;
+    }
+}
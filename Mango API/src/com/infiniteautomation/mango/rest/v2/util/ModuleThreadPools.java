@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2.util;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the thread pools that modules use for work that should not hold up the shared background
+ * processing threads.  The threads are daemons named after the pool and stop after a minute without
+ * work, so an idle pool costs nothing.
+ *
+ * The owner of a pool must shut it down when it stops.
+ *
+ * @author Terry Packer
+ */
+public class ModuleThreadPools {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private ModuleThreadPools() { }
+
+    /**
+     * Create a pool with a fixed number of threads and an unbounded queue
+     * @param name the threads are named "name 1", "name 2"...
+     * @param threads
+     * @return
+     */
+    public static ThreadPoolExecutor newFixedThreadPool(String name, int threads) {
+        return create(name, threads, new LinkedBlockingQueue<Runnable>());
+    }
+
+    /**
+     * Create a pool with a fixed number of threads that rejects tasks once queueSize are waiting
+     * @param name the threads are named "name 1", "name 2"...
+     * @param threads
+     * @param queueSize
+     * @return
+     */
+    public static ThreadPoolExecutor newFixedThreadPool(String name, int threads, int queueSize) {
+        return create(name, threads, new LinkedBlockingQueue<Runnable>(queueSize));
+    }
+
+    private static ThreadPoolExecutor create(String name, int threads, BlockingQueue<Runnable> queue) {
+        ThreadFactory factory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue, factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
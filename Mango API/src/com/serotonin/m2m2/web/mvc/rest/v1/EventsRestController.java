@@ -53,6 +53,7 @@ import com.serotonin.m2m2.web.mvc.rest.v1.model.QueryDataPageStream;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.QueryObjectStream;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.QueryStreamCallback;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.TranslatableMessageModel;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.events.ActiveEventSummaryIndex;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.events.EventInstanceModel;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.events.EventLevelSummaryModel;
 
@@ -356,7 +357,7 @@ public class EventsRestController extends MangoVoRestController<EventInstanceVO,
 
     @ApiOperation(
             value = "Get the active events summary",
-            notes = "List of counts for all active events by type and the most recent active alarm for each."
+            notes = "List of counts for all active events by type and the most recent active alarm for each. Also available over the /websocket/event-summary websocket."
             )
     @RequestMapping(method = RequestMethod.GET, value = "/active-summary")
     public ResponseEntity<List<EventLevelSummaryModel>> getActiveSummary(
@@ -367,125 +368,8 @@ public class EventsRestController extends MangoVoRestController<EventInstanceVO,
 
         User user = this.checkUser(request, result);
         if (result.isOk()) {
-            List<EventLevelSummaryModel> list = new ArrayList<EventLevelSummaryModel>();
-
-            //This query is slow the first time as it must fill the UserEventCache
-            List<EventInstance> events = Common.eventManager.getAllActiveUserEvents(user.getId());
-            int lifeSafetyTotal = 0;
-            EventInstance lifeSafetyEvent = null;
-            int criticalTotal = 0;
-            EventInstance criticalEvent = null;
-            int urgentTotal = 0;
-            EventInstance urgentEvent = null;
-            int warningTotal = 0;
-            EventInstance warningEvent = null;
-            int importantTotal = 0;
-            EventInstance importantEvent = null;
-            int informationTotal = 0;
-            EventInstance informationEvent = null;
-            int noneTotal = 0;
-            EventInstance noneEvent = null;
-            int doNotLogTotal = 0;
-            EventInstance doNotLogEvent = null;
-
-            for (EventInstance event : events) {
-                switch (event.getAlarmLevel()) {
-                    case LIFE_SAFETY:
-                        lifeSafetyTotal++;
-                        lifeSafetyEvent = event;
-                        break;
-                    case CRITICAL:
-                        criticalTotal++;
-                        criticalEvent = event;
-                        break;
-                    case URGENT:
-                        urgentTotal++;
-                        urgentEvent = event;
-                        break;
-                    case WARNING:
-                        warningTotal++;
-                        warningEvent = event;
-                        break;
-                    case IMPORTANT:
-                        importantTotal++;
-                        importantEvent = event;
-                        break;
-                    case INFORMATION:
-                        informationTotal++;
-                        informationEvent = event;
-                        break;
-                    case NONE:
-                        noneTotal++;
-                        noneEvent = event;
-                        break;
-                    case DO_NOT_LOG:
-                        doNotLogTotal++;
-                        doNotLogEvent = event;
-                        break;
-                    case IGNORE:
-                        break;
-                    default:
-                        break;
-                }
-            }
-            EventInstanceModel model;
-            // Life Safety
-            if (lifeSafetyEvent != null)
-                model = new EventInstanceModel(lifeSafetyEvent);
-            else
-                model = null;
-            list.add(new EventLevelSummaryModel(AlarmLevels.LIFE_SAFETY,
-                    lifeSafetyTotal, model));
-            // Critical Events
-            if (criticalEvent != null)
-                model = new EventInstanceModel(criticalEvent);
-            else
-                model = null;
-            list.add(new EventLevelSummaryModel(AlarmLevels.CRITICAL,
-                    criticalTotal, model));
-            // Urgent Events
-            if (urgentEvent != null)
-                model = new EventInstanceModel(urgentEvent);
-            else
-                model = null;
-            list.add(new EventLevelSummaryModel(AlarmLevels.URGENT,
-                    urgentTotal, model));
-            // Warning Events
-            if (warningEvent != null)
-                model = new EventInstanceModel(warningEvent);
-            else
-                model = null;
-            list.add(new EventLevelSummaryModel(AlarmLevels.WARNING,
-                    warningTotal, model));
-            // Important Events
-            if (importantEvent != null)
-                model = new EventInstanceModel(importantEvent);
-            else
-                model = null;
-            list.add(new EventLevelSummaryModel(AlarmLevels.IMPORTANT,
-                    importantTotal, model));
-            // Information Events
-            if (informationEvent != null)
-                model = new EventInstanceModel(informationEvent);
-            else
-                model = null;
-            list.add(new EventLevelSummaryModel(AlarmLevels.INFORMATION,
-                    informationTotal, model));
-            // None Events
-            if (noneEvent != null)
-                model = new EventInstanceModel(noneEvent);
-            else
-                model = null;
-            list.add(new EventLevelSummaryModel(AlarmLevels.NONE,
-                    noneTotal, model));
-            // Do Not Log Events
-            if (doNotLogEvent != null)
-                model = new EventInstanceModel(doNotLogEvent);
-            else
-                model = null;
-            list.add(new EventLevelSummaryModel(AlarmLevels.DO_NOT_LOG,
-                    doNotLogTotal, model));
-
+            //Kept up to date as events change so the events are not walked for each request
+            List<EventLevelSummaryModel> list = ActiveEventSummaryIndex.get(user).getSummary(user);
             return result.createResponseEntity(list);
         }
         return result.createResponseEntity();
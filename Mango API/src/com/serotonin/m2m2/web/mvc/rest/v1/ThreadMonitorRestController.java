@@ -4,9 +4,13 @@
  */
 package com.serotonin.m2m2.web.mvc.rest.v1;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -14,8 +18,15 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -23,10 +34,17 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
 
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.permission.Permissions;
 import com.serotonin.m2m2.web.mvc.rest.v1.message.RestProcessResult;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.thread.ThreadModel;
 import com.serotonin.m2m2.web.mvc.rest.v1.model.thread.ThreadModelProperty;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.thread.ThreadSampler;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.thread.ThreadSamplerModel;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -41,7 +59,10 @@ import io.swagger.annotations.ApiParam;
 @RequestMapping("/threads")
 public class ThreadMonitorRestController extends MangoRestController {
 
+	private static Log LOG = LogFactory.getLog(ThreadMonitorRestController.class);
+
 	private final ThreadGroup root; //The root group, always will be there
+	private final ThreadSampler sampler = new ThreadSampler();
 	
 	public ThreadMonitorRestController(){
 		
@@ -74,8 +95,14 @@ public class ThreadMonitorRestController extends MangoRestController {
 			
     		Thread[] allThreads = this.getAllThreads();
 			ThreadMXBean manager = ManagementFactory.getThreadMXBean();
-			for(Thread t : allThreads){
-				ThreadInfo info = manager.getThreadInfo(t.getId(), stackDepth);
+			//Get the info of all the threads in one call
+			long[] ids = new long[allThreads.length];
+			for(int i=0; i<allThreads.length; i++)
+				ids[i] = allThreads[i].getId();
+			ThreadInfo[] infos = manager.getThreadInfo(ids, stackDepth);
+			for(int i=0; i<allThreads.length; i++){
+				Thread t = allThreads[i];
+				ThreadInfo info = infos[i];
 				ThreadModel model;
 				if(info != null)
 				    model = new ThreadModel(t.getId(), t.getPriority(), t.getName(), info, manager.getThreadCpuTime(t.getId()), manager.getThreadUserTime(t.getId()));
@@ -136,7 +163,91 @@ public class ThreadMonitorRestController extends MangoRestController {
     	return result.createResponseEntity();
 	}
 
-	
+	@ApiOperation(value = "Start the thread sampler", notes = "Samples the stacks of the runnable threads and the CPU time of each thread pool, restarts the sampler if it is running. Admin only.")
+	@RequestMapping(method = RequestMethod.POST, value = "/sampler")
+	public ResponseEntity<ThreadSamplerModel> startSampler(HttpServletRequest request,
+			@ApiParam(value = "Milliseconds between samples, at least 10", allowMultiple = false, defaultValue="100")
+			@RequestParam(value="period", defaultValue="100") long period,
+			@ApiParam(value = "Limit size of stack trace", allowMultiple = false, defaultValue="64")
+			@RequestParam(value="stackDepth", defaultValue="64") int stackDepth){
+
+		RestProcessResult<ThreadSamplerModel> result = new RestProcessResult<ThreadSamplerModel>(HttpStatus.OK);
+		if(checkAdmin(request, result)){
+			if(period < ThreadSampler.MIN_PERIOD)
+				throw new BadRequestException(new TranslatableMessage("validate.greaterThanOrEqualTo", ThreadSampler.MIN_PERIOD));
+			if(stackDepth <= 0)
+				throw new BadRequestException(new TranslatableMessage("validate.greaterThanZero"));
+			sampler.start(period, stackDepth);
+			return result.createResponseEntity(sampler.getSummary(Long.MAX_VALUE, Long.MAX_VALUE));
+		}
+		return result.createResponseEntity();
+	}
+
+	@ApiOperation(value = "Stop the thread sampler", notes = "The samples are kept until it is started again. Admin only.")
+	@RequestMapping(method = RequestMethod.DELETE, value = "/sampler")
+	public ResponseEntity<ThreadSamplerModel> stopSampler(HttpServletRequest request){
+
+		RestProcessResult<ThreadSamplerModel> result = new RestProcessResult<ThreadSamplerModel>(HttpStatus.OK);
+		if(checkAdmin(request, result)){
+			sampler.stop();
+			return result.createResponseEntity(sampler.getSummary(Long.MAX_VALUE, Long.MAX_VALUE));
+		}
+		return result.createResponseEntity();
+	}
+
+	@ApiOperation(value = "Get the thread sampler state", notes = "Number of samples and CPU time in nanoseconds of each thread pool in a time range. Admin only.")
+	@RequestMapping(method = RequestMethod.GET, value = "/sampler")
+	public ResponseEntity<ThreadSamplerModel> getSampler(HttpServletRequest request,
+			@ApiParam(value = "From time", required = false, allowMultiple = false)
+			@RequestParam(value = "from", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) DateTime from,
+			@ApiParam(value = "To time", required = false, allowMultiple = false)
+			@RequestParam(value = "to", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) DateTime to){
+
+		RestProcessResult<ThreadSamplerModel> result = new RestProcessResult<ThreadSamplerModel>(HttpStatus.OK);
+		if(checkAdmin(request, result))
+			return result.createResponseEntity(sampler.getSummary(from == null ? Long.MIN_VALUE : from.getMillis(), to == null ? Long.MAX_VALUE : to.getMillis()));
+		return result.createResponseEntity();
+	}
+
+	@ApiOperation(value = "Get the sampled stacks", notes = "Collapsed stack format for flame graphs, one line per stack of the form pool;frame;...;frame count. Admin only.")
+	@RequestMapping(method = RequestMethod.GET, value = "/sampler/collapsed", produces={"text/plain"})
+	public ResponseEntity<Void> getCollapsedStacks(HttpServletRequest request, HttpServletResponse response,
+			@ApiParam(value = "From time", required = false, allowMultiple = false)
+			@RequestParam(value = "from", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) DateTime from,
+			@ApiParam(value = "To time", required = false, allowMultiple = false)
+			@RequestParam(value = "to", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) DateTime to,
+			@ApiParam(value = "Only the stacks of this thread pool", required = false, allowMultiple = false)
+			@RequestParam(value = "pool", required = false) String pool) throws IOException {
+
+		RestProcessResult<Void> result = new RestProcessResult<Void>(HttpStatus.OK);
+		if(checkAdmin(request, result)){
+			// don't let the ETag filter buffer the whole response
+			ShallowEtagHeaderFilter.disableContentCaching(request);
+			response.setContentType("text/plain;charset=UTF-8");
+			Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+			sampler.writeCollapsed(from == null ? Long.MIN_VALUE : from.getMillis(), to == null ? Long.MAX_VALUE : to.getMillis(), pool, writer);
+			return null;
+		}
+		return result.createResponseEntity();
+	}
+
+	@PreDestroy
+	public void destroy(){
+		sampler.stop();
+	}
+
+	private boolean checkAdmin(HttpServletRequest request, RestProcessResult<?> result){
+		User user = this.checkUser(request, result);
+		if(!result.isOk())
+			return false;
+		if(!Permissions.hasAdminPermission(user)){
+			LOG.warn("Non admin user: " + user.getUsername() + " attempted to access the thread sampler.");
+			result.addRestMessage(this.getUnauthorizedMessage());
+			return false;
+		}
+		return true;
+	}
+
 	private Thread[] getAllThreads( ) {
 	    final ThreadMXBean thbean = ManagementFactory.getThreadMXBean( );
 	    int nAlloc = thbean.getThreadCount( );
@@ -0,0 +1,303 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.UserDao;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.UserEventListener;
+import com.serotonin.m2m2.util.timeout.TimeoutClient;
+import com.serotonin.m2m2.util.timeout.TimeoutTask;
+import com.serotonin.m2m2.vo.User;
+
+/**
+ * The active events summary for all users with the same permissions, kept up to date as events are
+ * raised, return to normal and are acknowledged so the summary is answered without walking the events.
+ *
+ * The events are loaded once from the user event cache and again every rest.events.summary.refreshPeriod ms
+ * when the summary is read, in case a notification was missed.  Indexes that have no subscribers and have
+ * not been read for rest.events.summary.idleTimeout ms are removed.
+ *
+ * @author Terry Packer
+ */
+public class ActiveEventSummaryIndex {
+
+    private static final Map<String, ActiveEventSummaryIndex> INDEXES = new ConcurrentHashMap<>();
+
+    /**
+     * The levels in the summary in order
+     */
+    private static final AlarmLevels[] LEVELS = {AlarmLevels.LIFE_SAFETY, AlarmLevels.CRITICAL,
+            AlarmLevels.URGENT, AlarmLevels.WARNING, AlarmLevels.IMPORTANT, AlarmLevels.INFORMATION,
+            AlarmLevels.NONE, AlarmLevels.DO_NOT_LOG};
+
+    private static final Comparator<EventInstance> MOST_RECENT_LAST =
+            Comparator.comparingLong(EventInstance::getActiveTimestamp).thenComparingInt(EventInstance::getId);
+
+    private final String key;
+    private final long refreshPeriod;
+    private final long pushDelay;
+
+    private final Map<Integer, EventInstance> events = new HashMap<>();
+    private final Map<AlarmLevels, TreeSet<EventInstance>> byLevel = new EnumMap<>(AlarmLevels.class);
+    private final Set<Consumer<List<EventLevelSummaryModel>>> subscribers = new CopyOnWriteArraySet<>();
+
+    private Listener listener;
+    private long loaded;
+    private volatile long lastRead = Common.timer.currentTimeMillis();
+    //Cleared when an event changes
+    private List<EventLevelSummaryModel> summary;
+    private TimeoutTask pushTask;
+
+    private ActiveEventSummaryIndex(String key) {
+        this.key = key;
+        this.refreshPeriod = Common.envProps.getLong("rest.events.summary.refreshPeriod", 300000);
+        this.pushDelay = Common.envProps.getLong("rest.events.summary.pushDelay", 500);
+        for (AlarmLevels level : LEVELS)
+            byLevel.put(level, new TreeSet<>(MOST_RECENT_LAST));
+    }
+
+    /**
+     * Get the index shared by the users with the same permissions as this user
+     * @param user
+     * @return
+     */
+    public static ActiveEventSummaryIndex get(User user) {
+        long idleTimeout = Common.envProps.getLong("rest.events.summary.idleTimeout", 600000);
+        long now = Common.timer.currentTimeMillis();
+        String key = key(user);
+        //Each index is expired and handed out atomically so an index that is being returned can't be removed
+        for (String other : INDEXES.keySet()) {
+            if (!other.equals(key))
+                INDEXES.computeIfPresent(other, (k, index) -> index.expire(now - idleTimeout) ? null : index);
+        }
+        return INDEXES.compute(key, (k, index) -> {
+            if (index == null)
+                index = new ActiveEventSummaryIndex(k);
+            index.lastRead = now;
+            return index;
+        });
+    }
+
+    private static String key(User user) {
+        if (user.hasAdminPermission())
+            return "superadmin";
+        return new TreeSet<>(user.getPermissionsSet()).toString();
+    }
+
+    /**
+     * Get the summary of the active events, one entry per alarm level from life safety to do not log
+     * @param user a user with the permissions of this index
+     * @return
+     */
+    public List<EventLevelSummaryModel> getSummary(User user) {
+        lastRead = Common.timer.currentTimeMillis();
+        synchronized (this) {
+            if (listener == null || lastRead - loaded > refreshPeriod)
+                load(user);
+            if (summary == null)
+                summary = buildSummary();
+            return summary;
+        }
+    }
+
+    /**
+     * Be sent the summary each time it changes, changes less than rest.events.summary.pushDelay
+     * ms apart are sent together
+     * @param subscriber
+     */
+    public void subscribe(Consumer<List<EventLevelSummaryModel>> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Consumer<List<EventLevelSummaryModel>> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Load all the active events again, the events of the user are used if the user the index
+     * listens for has been disabled or its permissions have changed
+     */
+    private void load(User user) {
+        if (listener != null && !listener.isValid()) {
+            Common.eventManager.removeUserEventListener(listener);
+            listener = null;
+        }
+        if (listener == null) {
+            listener = new Listener(user.getId());
+            Common.eventManager.addUserEventListener(listener);
+        }
+
+        events.clear();
+        for (TreeSet<EventInstance> set : byLevel.values())
+            set.clear();
+        for (EventInstance event : Common.eventManager.getAllActiveUserEvents(listener.userId)) {
+            if (!event.isAcknowledged())
+                put(event);
+        }
+        loaded = Common.timer.currentTimeMillis();
+
+        List<EventLevelSummaryModel> previous = summary;
+        summary = buildSummary();
+        if (previous != null && !sameSummary(previous, summary))
+            schedulePush();
+    }
+
+    private List<EventLevelSummaryModel> buildSummary() {
+        List<EventLevelSummaryModel> list = new ArrayList<>(LEVELS.length);
+        for (AlarmLevels level : LEVELS) {
+            TreeSet<EventInstance> set = byLevel.get(level);
+            EventInstanceModel model = set.isEmpty() ? null : new EventInstanceModel(set.last());
+            list.add(new EventLevelSummaryModel(level, set.size(), model));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    private static boolean sameSummary(List<EventLevelSummaryModel> a, List<EventLevelSummaryModel> b) {
+        for (int i = 0; i < a.size(); i++) {
+            EventInstanceModel ma = a.get(i).getMostRecentUnsilenced();
+            EventInstanceModel mb = b.get(i).getMostRecentUnsilenced();
+            if (a.get(i).getUnsilencedCount() != b.get(i).getUnsilencedCount())
+                return false;
+            if (ma == null ? mb != null : mb == null || ma.getId() != mb.getId())
+                return false;
+        }
+        return true;
+    }
+
+    private void put(EventInstance event) {
+        remove(event.getId());
+        TreeSet<EventInstance> set = byLevel.get(event.getAlarmLevel());
+        if (set == null)
+            return;
+        events.put(event.getId(), event);
+        set.add(event);
+    }
+
+    private void remove(int id) {
+        EventInstance existing = events.remove(id);
+        if (existing != null)
+            byLevel.get(existing.getAlarmLevel()).remove(existing);
+    }
+
+    private synchronized void changed() {
+        summary = null;
+        schedulePush();
+    }
+
+    private synchronized void schedulePush() {
+        if (subscribers.isEmpty() || pushTask != null)
+            return;
+        pushTask = new TimeoutTask(pushDelay, new TimeoutClient() {
+            @Override
+            public void scheduleTimeout(long fireTime) {
+                List<EventLevelSummaryModel> current;
+                synchronized (ActiveEventSummaryIndex.this) {
+                    pushTask = null;
+                    if (summary == null)
+                        summary = buildSummary();
+                    current = summary;
+                }
+                for (Consumer<List<EventLevelSummaryModel>> subscriber : subscribers)
+                    subscriber.accept(current);
+            }
+
+            @Override
+            public String getThreadName() {
+                return "Active event summary push";
+            }
+        });
+    }
+
+    /**
+     * Remove the index if it is idle
+     * @param idleSince
+     * @return true if removed
+     */
+    private synchronized boolean expire(long idleSince) {
+        if (!subscribers.isEmpty() || lastRead > idleSince)
+            return false;
+        if (listener != null)
+            Common.eventManager.removeUserEventListener(listener);
+        listener = null;
+        if (pushTask != null)
+            pushTask.cancel();
+        pushTask = null;
+        return true;
+    }
+
+    /**
+     * Receives the events for one of the users with the permissions of the index
+     */
+    private class Listener implements UserEventListener {
+        private final int userId;
+
+        Listener(int userId) {
+            this.userId = userId;
+        }
+
+        boolean isValid() {
+            User user = UserDao.getInstance().get(userId);
+            return user != null && !user.isDisabled() && key.equals(key(user));
+        }
+
+        @Override
+        public int getUserId() {
+            return userId;
+        }
+
+        @Override
+        public void raised(EventInstance evt) {
+            synchronized (ActiveEventSummaryIndex.this) {
+                put(evt);
+            }
+            changed();
+        }
+
+        @Override
+        public void returnToNormal(EventInstance evt) {
+            updated(evt);
+        }
+
+        @Override
+        public void deactivated(EventInstance evt) {
+            updated(evt);
+        }
+
+        @Override
+        public void acknowledged(EventInstance evt) {
+            synchronized (ActiveEventSummaryIndex.this) {
+                remove(evt.getId());
+            }
+            changed();
+        }
+
+        /**
+         * Replace the event if it is still unacknowledged
+         */
+        private void updated(EventInstance evt) {
+            synchronized (ActiveEventSummaryIndex.this) {
+                if (!events.containsKey(evt.getId()))
+                    return;
+                put(evt);
+            }
+            changed();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * A sparse index of the time of the events in a log file by their position in the file,
+ * there is an entry about every rest.logging.index.interval bytes.  Each entry is at the
+ * start of an event so reading can start from any entry.
+ *
+ * The index is brought up to date with the file before each query so only the part of
+ * the file written since the last query is read.  If the file is rolled over the index is
+ * built again.
+ *
+ * @author Terry Packer
+ */
+public class LogFileIndex {
+
+    private static final Map<String, LogFileIndex> INDEXES = new ConcurrentHashMap<>();
+    //Bytes at the start of the file that tell us the file has been replaced
+    private static final int HEAD_LENGTH = 128;
+
+    private final File file;
+    private final long interval;
+
+    private long[] times = new long[64];
+    private long[] offsets = new long[64];
+    private int size;
+    //Everything before this has been indexed, always the end of a line
+    private long indexedLength;
+    private byte[] head = new byte[0];
+
+    private LogFileIndex(File file, long interval) {
+        this.file = file;
+        this.interval = interval;
+    }
+
+    /**
+     * Get the index of a file, up to date with the file
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static LogFileIndex get(File file) throws IOException {
+        //Forget the files that have been removed
+        INDEXES.keySet().removeIf(path -> !new File(path).exists());
+
+        LogFileIndex index = INDEXES.computeIfAbsent(file.getAbsolutePath(),
+                k -> new LogFileIndex(file, Common.envProps.getLong("rest.logging.index.interval", 64 * 1024)));
+        index.update();
+        return index;
+    }
+
+    /**
+     * Index the part of the file written since the last update
+     * @throws IOException
+     */
+    public synchronized void update() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            byte[] currentHead = new byte[(int) Math.min(HEAD_LENGTH, length)];
+            raf.readFully(currentHead);
+
+            //Rolled over or truncated
+            int compare = Math.min(head.length, currentHead.length);
+            if (length < indexedLength
+                    || !Arrays.equals(Arrays.copyOf(head, compare), Arrays.copyOf(currentHead, compare))) {
+                size = 0;
+                indexedLength = 0;
+            }
+            head = currentHead;
+
+            if (length > indexedLength)
+                scan(raf, length);
+        }
+    }
+
+    private void scan(RandomAccessFile raf, long length) throws IOException {
+        raf.seek(indexedLength);
+        byte[] buffer = new byte[64 * 1024];
+        //Start of the line being read, its first bytes
+        long lineStart = indexedLength;
+        byte[] lineHead = new byte[LogFileQuery.HEADER_LENGTH];
+        int lineHeadLength = 0;
+        long lastEntry = size == 0 ? -interval : offsets[size - 1];
+
+        long position = indexedLength;
+        int read;
+        while (position < length && (read = raf.read(buffer, 0, (int) Math.min(buffer.length, length - position))) > 0) {
+            for (int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                if (b == '\n') {
+                    if (lineStart - lastEntry >= interval) {
+                        long time = LogFileQuery.parseTime(new String(lineHead, 0, lineHeadLength, StandardCharsets.ISO_8859_1));
+                        if (time != -1) {
+                            add(time, lineStart);
+                            lastEntry = lineStart;
+                        }
+                    }
+                    lineStart = position + i + 1;
+                    lineHeadLength = 0;
+                } else if (lineHeadLength < lineHead.length) {
+                    lineHead[lineHeadLength++] = b;
+                }
+            }
+            position += read;
+        }
+        //Leave the line that is still being written for the next update
+        indexedLength = lineStart;
+    }
+
+    private void add(long time, long offset) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        times[size] = time;
+        offsets[size] = offset;
+        size++;
+    }
+
+    /**
+     * @return the length of the file that has been indexed, the end of the last complete line
+     */
+    public synchronized long getIndexedLength() {
+        return indexedLength;
+    }
+
+    /**
+     * Find where to start reading for events at or after a time
+     * @param time
+     * @return offset of an event before the time, 0 if there is none
+     */
+    public synchronized long seek(long time) {
+        int low = 0;
+        int high = size - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found < 0 ? 0 : offsets[found];
+    }
+
+    /**
+     * The file split at the index entries, each segment starts at the start of an event
+     * except for the first which starts at the start of the file
+     * @return segments in file order
+     */
+    public synchronized Segment[] getSegments() {
+        int first = size > 0 && offsets[0] == 0 ? 0 : 1;
+        Segment[] segments = new Segment[size + first];
+        if (first == 1)
+            segments[0] = new Segment(0, size > 0 ? offsets[0] : indexedLength, Long.MIN_VALUE);
+        for (int i = 0; i < size; i++) {
+            long end = i + 1 < size ? offsets[i + 1] : indexedLength;
+            segments[i + first] = new Segment(offsets[i], end, times[i]);
+        }
+        return segments;
+    }
+
+    public static class Segment {
+        private final long start;
+        private final long end;
+        private final long startTime;
+
+        Segment(long start, long end, long startTime) {
+            this.start = start;
+            this.end = end;
+            this.startTime = startTime;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return the time of the first event, Long.MIN_VALUE if not known
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+    }
+}
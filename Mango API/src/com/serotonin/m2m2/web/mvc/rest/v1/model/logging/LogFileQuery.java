@@ -0,0 +1,373 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.logging;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.logging.LogFileIndex.Segment;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.logging.MangoLogFilePatternReceiver.EventSink;
+
+/**
+ * Queries a Mango log file using its {@link LogFileIndex}.  Reading starts at the index entry
+ * before the start of the query's time range and stops after its end, and sort(-time) queries
+ * read the file backwards in fixed size chunks from the index entry after the end of the range
+ * until the limit or the start of the range is reached.
+ *
+ * The level, time, classname and method of each event are checked from its first line before
+ * the event is parsed with the log format's regular expression, so events that don't match
+ * are skipped without being parsed.
+ *
+ * @author Terry Packer
+ */
+public class LogFileQuery {
+
+    //Bytes at the start of a line that hold the level and timestamp
+    static final int HEADER_LENGTH = 64;
+    //"%-5p %d{ISO8601} (%C.%M:%L) - %m %n"
+    static final String LOG_FORMAT = "LEVEL TIMESTAMP (CLASS.METHOD:LINE) - MESSAGE";
+    //Events can be written slightly out of order by different threads
+    private static final long TIME_SLACK = 1000;
+    //Bytes read at a time when reading backwards
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final File file;
+    private final LogQueryFilter filter;
+    private final Charset charset = Charset.defaultCharset();
+
+    public LogFileQuery(File file, LogQueryFilter filter) {
+        this.file = file;
+        this.filter = filter;
+    }
+
+    /**
+     * Write the matching events
+     * @param jgen
+     * @throws IOException
+     */
+    public void streamData(JsonGenerator jgen) throws IOException {
+        LogFileIndex index = LogFileIndex.get(file);
+        if (filter.isLatestFirst())
+            readBackwards(index, jgen);
+        else
+            readForwards(index, jgen);
+    }
+
+    private void readForwards(LogFileIndex index, JsonGenerator jgen) throws IOException {
+        Long startTime = filter.getStartTime();
+        Long endTime = filter.getEndTime();
+        Integer limit = filter.getLimit();
+        long start = startTime == null ? 0 : index.seek(startTime - TIME_SLACK);
+
+        int[] count = new int[1];
+        MangoLogFilePatternReceiver receiver = createReceiver(model -> {
+            jgen.writeObject(model);
+            count[0]++;
+        });
+
+        try (FileInputStream in = new FileInputStream(file)) {
+            in.getChannel().position(start);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, charset));
+            EventReader events = new EventReader(reader);
+            if (endTime != null)
+                events.stopTime = endTime + TIME_SLACK;
+            List<String> event;
+            while ((limit == null || count[0] < limit) && (event = events.next()) != null)
+                receiver.processEvent(event);
+        }
+    }
+
+    private void readBackwards(LogFileIndex index, JsonGenerator jgen) throws IOException {
+        Long startTime = filter.getStartTime();
+        Long endTime = filter.getEndTime();
+        Integer limit = filter.getLimit();
+        Segment[] segments = index.getSegments();
+
+        //Start at the end of the last segment that starts before the end time
+        long end = -1;
+        for (int i = segments.length - 1; i >= 0 && end < 0; i--) {
+            if (endTime == null || segments[i].getStartTime() <= endTime + TIME_SLACK)
+                end = segments[i].getEnd();
+        }
+        if (end <= 0)
+            return;
+
+        int[] count = new int[1];
+        MangoLogFilePatternReceiver receiver = createReceiver(model -> {
+            jgen.writeObject(model);
+            count[0]++;
+        });
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            ReverseLineReader reader = new ReverseLineReader(raf, end);
+            //The lines after an event's first line, last line first
+            List<String> following = new ArrayList<>();
+            String line;
+            while ((limit == null || count[0] < limit) && (line = reader.readLine()) != null) {
+                Header parsed = Header.parse(line);
+                if (parsed == null) {
+                    following.add(line);
+                    continue;
+                }
+                if (startTime != null && parsed.time < startTime - TIME_SLACK)
+                    break;
+
+                if (filter.acceptsHeader(parsed.level, parsed.time, parsed.classname, parsed.method)) {
+                    List<String> event = new ArrayList<>(following.size() + 1);
+                    event.add(line);
+                    for (int i = following.size() - 1; i >= 0; i--)
+                        event.add(following.get(i));
+                    receiver.processEvent(event);
+                }
+                following.clear();
+            }
+        }
+    }
+
+    /**
+     * Create a receiver that parses events in the Mango log format
+     * @param sink
+     * @return
+     * @throws IOException
+     */
+    private MangoLogFilePatternReceiver createReceiver(EventSink sink) throws IOException {
+        MangoLogFilePatternReceiver receiver = new MangoLogFilePatternReceiver(filter, sink);
+        receiver.setLogFormat(LOG_FORMAT);
+        receiver.setFileURL(file.toURI().toURL().toExternalForm());
+        receiver.prepare();
+        return receiver;
+    }
+
+    /**
+     * Groups the lines of a file into events and skips the events that the filter rejects
+     * from their first line
+     */
+    private class EventReader {
+        private final BufferedReader reader;
+        private String nextHeader;
+        //Stop at the first event after this time
+        private long stopTime = Long.MAX_VALUE;
+
+        EventReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return the lines of the next event that may match, null at the end of the file
+         * @throws IOException
+         */
+        List<String> next() throws IOException {
+            while (true) {
+                String header = nextHeader;
+                nextHeader = null;
+                //Lines before the first event don't belong to one
+                while (header == null) {
+                    String line = reader.readLine();
+                    if (line == null)
+                        return null;
+                    if (parseTime(line) != -1)
+                        header = line;
+                }
+
+                Header parsed = Header.parse(header);
+                if (parsed != null && parsed.time > stopTime)
+                    return null;
+                boolean accepted = parsed == null || filter.acceptsHeader(parsed.level, parsed.time, parsed.classname, parsed.method);
+
+                List<String> lines = accepted ? new ArrayList<>() : null;
+                if (accepted)
+                    lines.add(header);
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (parseTime(line) != -1) {
+                        nextHeader = line;
+                        break;
+                    }
+                    if (accepted)
+                        lines.add(line);
+                }
+                if (accepted)
+                    return lines;
+                if (nextHeader == null)
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Reads the lines of a file from an offset back to its start, a chunk at a time.  Only the
+     * chunk and the part of the line that continues into the previous chunk are held in memory.
+     */
+    private class ReverseLineReader {
+        private final RandomAccessFile raf;
+        //Offset of the first byte in the buffer
+        private long position;
+        //The bytes that have not been returned as lines yet
+        private byte[] buffer = new byte[CHUNK_SIZE * 2];
+        private int length;
+
+        ReverseLineReader(RandomAccessFile raf, long end) {
+            this.raf = raf;
+            this.position = end;
+        }
+
+        /**
+         * @return the line before the last line returned, null at the start of the file
+         * @throws IOException
+         */
+        String readLine() throws IOException {
+            if (length == 0 && !readChunk())
+                return null;
+            //The end of the line being read
+            if (buffer[length - 1] == '\n')
+                length--;
+            int searched = length;
+            while (true) {
+                for (int i = searched - 1; i >= 0; i--) {
+                    if (buffer[i] == '\n') {
+                        String line = toLine(i + 1, length);
+                        length = i + 1;
+                        return line;
+                    }
+                }
+                int before = length;
+                if (!readChunk()) {
+                    String line = toLine(0, length);
+                    length = 0;
+                    return line;
+                }
+                //Only the bytes just read need searching
+                searched = length - before;
+            }
+        }
+
+        private String toLine(int start, int end) {
+            if (end > start && buffer[end - 1] == '\r')
+                end--;
+            return new String(buffer, start, end - start, charset);
+        }
+
+        /**
+         * Read the chunk before the buffer into the start of it
+         * @return false at the start of the file
+         * @throws IOException
+         */
+        private boolean readChunk() throws IOException {
+            if (position == 0)
+                return false;
+            int read = (int) Math.min(CHUNK_SIZE, position);
+            if (length + read > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(length + read, buffer.length * 2));
+            System.arraycopy(buffer, 0, buffer, read, length);
+            position -= read;
+            raf.seek(position);
+            raf.readFully(buffer, 0, read);
+            length += read;
+            return true;
+        }
+    }
+
+    /**
+     * The parts of the first line of an event in the format
+     * LEVEL yyyy-MM-ddTHH:mm:ss,SSS (CLASS.METHOD:LINE) - MESSAGE
+     */
+    private static class Header {
+        private final Level level;
+        private final long time;
+        private final String classname;
+        private final String method;
+
+        Header(Level level, long time, String classname, String method) {
+            this.level = level;
+            this.time = time;
+            this.classname = classname;
+            this.method = method;
+        }
+
+        static Header parse(String line) {
+            long time = parseTime(line);
+            if (time == -1)
+                return null;
+            int levelEnd = levelEnd(line);
+            Level level = Level.toLevel(line.substring(0, levelEnd));
+
+            String classname = null;
+            String method = null;
+            int open = line.indexOf(" (", levelEnd);
+            int colon = open < 0 ? -1 : line.indexOf(':', open);
+            if (colon > 0) {
+                int dot = line.lastIndexOf('.', colon);
+                if (dot > open) {
+                    classname = line.substring(open + 2, dot);
+                    method = line.substring(dot + 1, colon);
+                }
+            }
+            return new Header(level, time, classname, method);
+        }
+    }
+
+    private static int levelEnd(String line) {
+        int i = 0;
+        while (i < line.length() && Character.isUpperCase(line.charAt(i)))
+            i++;
+        return i;
+    }
+
+    /**
+     * Parse the time of a line that starts an event
+     * @param line
+     * @return the time, -1 if the line does not start an event
+     */
+    static long parseTime(String line) {
+        int levelEnd = levelEnd(line);
+        if (levelEnd == 0 || levelEnd > 5)
+            return -1;
+        int i = levelEnd;
+        while (i < line.length() && line.charAt(i) == ' ')
+            i++;
+        if (i == levelEnd || line.length() < i + 23)
+            return -1;
+        if (line.charAt(i + 4) != '-' || line.charAt(i + 7) != '-' || line.charAt(i + 10) != 'T'
+                || line.charAt(i + 13) != ':' || line.charAt(i + 16) != ':' || line.charAt(i + 19) != ',')
+            return -1;
+        try {
+            int year = digits(line, i, 4);
+            int month = digits(line, i + 5, 2);
+            int day = digits(line, i + 8, 2);
+            int hour = digits(line, i + 11, 2);
+            int minute = digits(line, i + 14, 2);
+            int second = digits(line, i + 17, 2);
+            int millis = digits(line, i + 20, 3);
+            return LocalDateTime.of(year, month, day, hour, minute, second, millis * 1000000)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static int digits(String line, int start, int length) {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9')
+                throw new NumberFormatException();
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -6,7 +6,6 @@ package com.serotonin.m2m2.web.mvc.rest.v1.model.logging;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.serotonin.m2m2.Common;
@@ -55,25 +54,12 @@ public class LogQueryArrayStream implements QueryArrayStream<LogMessageModel>{
 	 * @throws IOException 
 	 */
 	private void processLog4j(JsonGenerator jgen) throws IOException {
-		MangoLogFilePatternReceiver receiver = new MangoLogFilePatternReceiver(query, jgen);
-
-		try {
-			File logsDir = Common.getLogsDir();
-			File logFile = new File(logsDir, filename);
-			if(!logFile.exists())
-				return;
-			
-		    receiver.setLogFormat("LEVEL TIMESTAMP (CLASS.METHOD:LINE) - MESSAGE"); //"%-5p %d{ISO8601} (%C.%M:%L) - %m %n"
-		    receiver.setFileURL(logFile.toURI().toURL().toExternalForm());
-		    receiver.setUseCurrentThread(true);
+		File logsDir = Common.getLogsDir();
+		File logFile = new File(logsDir, filename);
+		if(!logFile.exists())
+			return;
 
-		    //Start the parsing
-		    receiver.activateOptions();
-	    } catch (MalformedURLException e) {
-			throw new IOException(e);
-		} finally {
-	        receiver.shutdown();
-	    }
+		new LogFileQuery(logFile, new LogQueryFilter(query)).streamData(jgen);
 	}
 
 	/* (non-Javadoc)
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.logging;
+
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+import org.joda.time.DateTime;
+
+import com.infiniteautomation.mango.db.query.QueryComparison;
+import com.infiniteautomation.mango.db.query.RQLToLimitVisitor;
+import com.infiniteautomation.mango.db.query.pojo.RQLToQueryComparisonVisitor;
+
+import net.jazdw.rql.parser.ASTNode;
+
+/**
+ * The level, classname, method, time and message filters of a log query.  The level, time,
+ * classname and method can be checked from the first line of an event so events can be
+ * skipped before they are parsed.
+ *
+ * @author Terry Packer
+ */
+public class LogQueryFilter {
+
+    private Integer limit;
+    private boolean latestFirst;
+
+    private QueryComparison classComparison;
+    private QueryComparison methodComparison;
+    private QueryComparison levelComparison;
+    private QueryComparison timeComparison;
+    private QueryComparison messageComparison;
+
+    private long timeValue;
+    private Level thresholdLevel;
+
+    public LogQueryFilter(ASTNode query) {
+        if (query != null) {
+            this.limit = query.accept(new RQLToLimitVisitor());
+
+            this.levelComparison = query.accept(new RQLToQueryComparisonVisitor(), "level");
+            if (levelComparison != null) {
+                this.thresholdLevel = Level.toLevel((String) levelComparison.getArgument(0));
+            }
+
+            this.classComparison = query.accept(new RQLToQueryComparisonVisitor(), "classname");
+            this.methodComparison = query.accept(new RQLToQueryComparisonVisitor(), "method");
+            this.timeComparison = query.accept(new RQLToQueryComparisonVisitor(), "time");
+            if (this.timeComparison != null) {
+                this.timeValue = ((DateTime) this.timeComparison.getArgument(0)).getMillis();
+            }
+
+            this.messageComparison = query.accept(new RQLToQueryComparisonVisitor(), "message");
+            this.latestFirst = isSortedByTimeDescending(query);
+        }
+    }
+
+    /**
+     * @return the maximum number of events to return, null for all
+     */
+    public Integer getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return true if the query has sort(-time)
+     */
+    public boolean isLatestFirst() {
+        return latestFirst;
+    }
+
+    /**
+     * @return the earliest time an event can have, null if there is no lower bound
+     */
+    public Long getStartTime() {
+        if (timeComparison == null)
+            return null;
+        switch (timeComparison.getComparison()) {
+            case GREATER_THAN:
+            case GREATER_THAN_EQUAL_TO:
+            case EQUAL_TO:
+                return timeValue;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the latest time an event can have, null if there is no upper bound
+     */
+    public Long getEndTime() {
+        if (timeComparison == null)
+            return null;
+        switch (timeComparison.getComparison()) {
+            case LESS_THAN:
+            case LESS_THAN_EQUAL_TO:
+            case EQUAL_TO:
+                return timeValue;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Check the parts of an event that are on its first line
+     * @param level
+     * @param time
+     * @param classname null if the event has no location
+     * @param method null if the event has no location
+     * @return false if the event can be skipped
+     */
+    public boolean acceptsHeader(Level level, long time, String classname, String method) {
+        if (!acceptsLevel(level) || !acceptsTime(time))
+            return false;
+        if (classname != null && method != null)
+            return acceptsLocation(classname, method);
+        return true;
+    }
+
+    /**
+     * @param event
+     * @return true if the event matches the query
+     */
+    public boolean accepts(LoggingEvent event) {
+        if (!acceptsLevel(event.getLevel()) || !acceptsTime(event.getTimeStamp()))
+            return false;
+        if (event.hasLocationInformation()) {
+            if (!acceptsLocation(event.getClassName(), event.getMethodName()))
+                return false;
+            if (!acceptsMessage(event.getMessage().toString()))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean acceptsLevel(Level level) {
+        if (levelComparison != null) {
+            switch (levelComparison.getComparison()) {
+                case GREATER_THAN:
+                    if (level.isLessSpecificThan(thresholdLevel) || level.equals(thresholdLevel))
+                        return false;
+                case GREATER_THAN_EQUAL_TO:
+                    if (level.isLessSpecificThan(thresholdLevel) && !level.equals(thresholdLevel))
+                        return false;
+                    break;
+                case EQUAL_TO:
+                    if (!level.equals(thresholdLevel))
+                        return false;
+                    break;
+                case NOT_EQUAL_TO:
+                    if (level.equals(thresholdLevel))
+                        return false;
+                    break;
+                case LESS_THAN:
+                    if (level.isMoreSpecificThan(thresholdLevel) || level.equals(thresholdLevel))
+                        return false;
+                case LESS_THAN_EQUAL_TO:
+                    if (level.isMoreSpecificThan(thresholdLevel) && !level.equals(thresholdLevel))
+                        return false;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private boolean acceptsTime(long time) {
+        if (timeComparison != null) {
+            switch (timeComparison.getComparison()) {
+                case GREATER_THAN:
+                    return time > timeValue;
+                case GREATER_THAN_EQUAL_TO:
+                    return time >= timeValue;
+                case EQUAL_TO:
+                    return time == timeValue;
+                case NOT_EQUAL_TO:
+                    return time != timeValue;
+                case LESS_THAN:
+                    return time < timeValue;
+                case LESS_THAN_EQUAL_TO:
+                    return time <= timeValue;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private boolean acceptsLocation(String classname, String method) {
+        if (classComparison != null) {
+            switch (classComparison.getComparison()) {
+                case EQUAL_TO:
+                    if (!classname.equals((String) classComparison.getArgument(0)))
+                        return false;
+                    break;
+                case NOT_EQUAL_TO:
+                    if (classname.equals((String) classComparison.getArgument(0)))
+                        return false;
+                    break;
+                case LIKE:
+                    if (!classname.matches((String) classComparison.getArgument(0)))
+                        return false;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (methodComparison != null) {
+            switch (methodComparison.getComparison()) {
+                case EQUAL_TO:
+                    return method.equals(methodComparison.getArgument(0));
+                case NOT_EQUAL_TO:
+                    return !method.equals(methodComparison.getArgument(0));
+                case LIKE:
+                    return method.matches((String) methodComparison.getArgument(0));
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean acceptsMessage(String message) {
+        if (messageComparison != null) {
+            switch (messageComparison.getComparison()) {
+                case EQUAL_TO:
+                    return message.equals(messageComparison.getArgument(0));
+                case NOT_EQUAL_TO:
+                    return !message.equals(messageComparison.getArgument(0));
+                case LIKE:
+                    return message.matches((String) messageComparison.getArgument(0));
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSortedByTimeDescending(ASTNode node) {
+        if ("sort".equals(node.getName())) {
+            List<Object> args = node.getArguments();
+            return !args.isEmpty() && "-time".equals(args.get(0));
+        }
+        for (Object arg : node.getArguments()) {
+            if (arg instanceof ASTNode && isSortedByTimeDescending((ASTNode) arg))
+                return true;
+        }
+        return false;
+    }
+}
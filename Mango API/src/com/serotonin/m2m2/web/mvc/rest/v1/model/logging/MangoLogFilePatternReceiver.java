@@ -27,12 +27,8 @@ import java.util.regex.PatternSyntaxException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.logging.log4j.Level;
-import org.joda.time.DateTime;
 
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.infiniteautomation.mango.db.query.QueryComparison;
-import com.infiniteautomation.mango.db.query.RQLToLimitVisitor;
-import com.infiniteautomation.mango.db.query.pojo.RQLToQueryComparisonVisitor;
 import com.serotonin.ShouldNeverHappenException;
 
 import net.jazdw.rql.parser.ASTNode;
@@ -57,41 +53,26 @@ public class MangoLogFilePatternReceiver {
     private long waitMillis = 100; // 2000; //default 2 seconds
 
 
-    private JsonGenerator jgen;
+    private final EventSink sink;
     // Filtering
-    private QueryComparison classComparison;
-    private QueryComparison methodComparison;
-    private QueryComparison levelComparison;
-    private QueryComparison timeComparison;
-    private QueryComparison messageComparison;
+    private final LogQueryFilter filter;
 
-    private long timeValue;
-
-    private Level thresholdLevel;
     boolean active;
 
     public MangoLogFilePatternReceiver(ASTNode query, JsonGenerator jgen) {
+        this(new LogQueryFilter(query), model -> jgen.writeObject(model));
+        this.limit = filter.getLimit();
+    }
 
-        this.jgen = jgen;
-
-        if (query != null) {
-            this.limit = query.accept(new RQLToLimitVisitor());
-
-
-            this.levelComparison = query.accept(new RQLToQueryComparisonVisitor(), "level");
-            if (levelComparison != null) {
-                this.thresholdLevel = Level.toLevel((String) levelComparison.getArgument(0));
-            }
-
-            this.classComparison = query.accept(new RQLToQueryComparisonVisitor(), "classname");
-            this.methodComparison = query.accept(new RQLToQueryComparisonVisitor(), "method");
-            this.timeComparison = query.accept(new RQLToQueryComparisonVisitor(), "time");
-            if (this.timeComparison != null) {
-                this.timeValue = ((DateTime) this.timeComparison.getArgument(0)).getMillis();
-            }
-
-            this.messageComparison = query.accept(new RQLToQueryComparisonVisitor(), "message");
-        }
+    /**
+     * Receiver for events that have been found by a {@link LogFileQuery}, the limit is
+     * left to the query
+     * @param filter
+     * @param sink
+     */
+    MangoLogFilePatternReceiver(LogQueryFilter filter, EventSink sink) {
+        this.filter = filter;
+        this.sink = sink;
 
         // setup
         keywords.add(TIMESTAMP);
@@ -118,65 +99,8 @@ public class MangoLogFilePatternReceiver {
      */
     public void doPost(final LoggingEvent event) {
 
-        if (levelComparison != null) {
-            switch (levelComparison.getComparison()) {
-                case GREATER_THAN:
-                    if (event.getLevel().isLessSpecificThan(thresholdLevel)  || event.getLevel().equals(thresholdLevel))
-                        return;
-                case GREATER_THAN_EQUAL_TO:
-                    if (event.getLevel().isLessSpecificThan(thresholdLevel) && !event.getLevel().equals(thresholdLevel))
-                        return;
-                    break;
-                case EQUAL_TO:
-                    if (!event.getLevel().equals(thresholdLevel))
-                        return;
-                    break;
-                case NOT_EQUAL_TO:
-                    if (event.getLevel().equals(thresholdLevel))
-                        return;
-                    break;
-                case LESS_THAN:
-                    if (event.getLevel().isMoreSpecificThan(thresholdLevel)  || event.getLevel().equals(thresholdLevel))
-                        return;
-                case LESS_THAN_EQUAL_TO:
-                    if (event.getLevel().isMoreSpecificThan(thresholdLevel) && !event.getLevel().equals(thresholdLevel))
-                        return;
-                    break;
-                default:
-                    break;
-            }
-        }
-
-        if (timeComparison != null) {
-            switch (timeComparison.getComparison()) {
-                case GREATER_THAN:
-                    if (event.getTimeStamp() <= timeValue)
-                        return;
-                    break;
-                case GREATER_THAN_EQUAL_TO:
-                    if (event.getTimeStamp() < timeValue)
-                        return;
-                    break;
-                case EQUAL_TO:
-                    if (event.getTimeStamp() != timeValue)
-                        return;
-                    break;
-                case NOT_EQUAL_TO:
-                    if (event.getTimeStamp() == timeValue)
-                        return;
-                    break;
-                case LESS_THAN:
-                    if (event.getTimeStamp() >= timeValue)
-                        return;
-                    break;
-                case LESS_THAN_EQUAL_TO:
-                    if (event.getTimeStamp() > timeValue)
-                        return;
-                    break;
-                default:
-                    break;
-            }
-        }
+        if (!filter.accepts(event))
+            return;
 
         String classname = null;
         String method = null;
@@ -187,72 +111,12 @@ public class MangoLogFilePatternReceiver {
             method = event.getMethodName();
             classname = event.getClassName();
             lineNumber = Integer.parseInt(event.getLineNumber());
-
-
-            if (classComparison != null) {
-                switch (classComparison.getComparison()) {
-                    case EQUAL_TO:
-                        if (!classname.equals((String) classComparison.getArgument(0)))
-                            return;
-                        break;
-                    case NOT_EQUAL_TO:
-                        if (classname.equals((String) classComparison.getArgument(0)))
-                            return;
-                        break;
-                    case LIKE:
-                        if (!classname.matches((String) classComparison.getArgument(0)))
-                            return;
-                        break;
-                    default:
-                        break;
-
-                }
-            }
-
-            if (methodComparison != null) {
-                switch (methodComparison.getComparison()) {
-                    case EQUAL_TO:
-                        if (!method.equals(methodComparison.getArgument(0)))
-                            return;
-                        break;
-                    case NOT_EQUAL_TO:
-                        if (method.equals(methodComparison.getArgument(0)))
-                            return;
-                        break;
-                    case LIKE:
-                        if (!method.matches((String) methodComparison.getArgument(0)))
-                            return;
-                        break;
-                    default:
-                        return;
-                }
-            }
-
-            if (messageComparison != null) {
-                switch (messageComparison.getComparison()) {
-                    case EQUAL_TO:
-                        if (!message.equals(messageComparison.getArgument(0)))
-                            return;
-                        break;
-                    case NOT_EQUAL_TO:
-                        if (message.equals(messageComparison.getArgument(0)))
-                            return;
-                        break;
-                    case LIKE:
-                        if (!message.matches((String) messageComparison.getArgument(0)))
-                            return;
-                        break;
-                    default:
-                        return;
-                }
-            }
-
         }
 
         String[] stackTrace = event.getStackTrace();
 
         try {
-            jgen.writeObject(new LogMessageModel(event.getLevel().toString(), classname, method,
+            sink.write(new LogMessageModel(event.getLevel().toString(), classname, method,
                     lineNumber, message, stackTrace, event.getTimestamp()));
         } catch (IOException e) {
             LOG.error(e.getMessage(), e);
@@ -260,6 +124,13 @@ public class MangoLogFilePatternReceiver {
         this.count++;
     }
 
+    /**
+     * Receives the events that match the query
+     */
+    @FunctionalInterface
+    interface EventSink {
+        void write(LogMessageModel model) throws IOException;
+    }
 
     private final List<String> keywords = new ArrayList<String>();
 
@@ -579,8 +450,6 @@ public class MangoLogFilePatternReceiver {
      * @throws IOException
      */
     protected void process(BufferedReader bufferedReader) throws IOException {
-        Matcher eventMatcher;
-        Matcher exceptionMatcher;
         String line;
 
         while ((line = bufferedReader.readLine()) != null) {
@@ -589,50 +458,7 @@ public class MangoLogFilePatternReceiver {
             if ((this.limit != null) && (this.count >= this.limit))
                 return;
 
-            // skip empty line entries
-            if (line.trim().equals("")) {
-                continue;
-            }
-
-            eventMatcher = regexpPattern.matcher(line);
-            exceptionMatcher = exceptionPattern.matcher(line);
-
-            if (eventMatcher.matches()) {
-                // build an event from the previous match (held in current map)
-                LoggingEvent event = buildEvent();
-                if (event != null) {
-                    doPost(event);
-                }
-                currentMap.putAll(processEvent(eventMatcher.toMatchResult()));
-            } else if (exceptionMatcher.matches()) {
-                // an exception line
-                additionalLines.add(line);
-            } else {
-                // neither...either post an event with the line or append as additional lines
-                // if this was a logging event with multiple lines, each line will show up as its
-                // own event instead of being
-                // appended as multiple lines on the same event..
-                // choice is to have each non-matching line show up as its own line, or append them
-                // all to a previous event
-                if (appendNonMatches) {
-                    // hold on to the previous time, so we can do our best to preserve time-based
-                    // ordering if the event is a non-match
-                    String lastTime = (String) currentMap.get(TIMESTAMP);
-                    // build an event from the previous match (held in current map)
-                    if (currentMap.size() > 0) {
-                        LoggingEvent event = buildEvent();
-                        if (event != null) {
-                            doPost(event);
-                        }
-                    }
-                    if (lastTime != null) {
-                        currentMap.put(TIMESTAMP, lastTime);
-                    }
-                    currentMap.put(MESSAGE, line);
-                } else {
-                    additionalLines.add(line);
-                }
-            }
+            processLine(line);
         }
 
         // process last event if one exists
@@ -642,6 +468,74 @@ public class MangoLogFilePatternReceiver {
         }
     }
 
+    /**
+     * Prepare to parse events with {@link #processEvent(List)} instead of reading the file
+     */
+    void prepare() {
+        initialize();
+        createPattern();
+    }
+
+    /**
+     * Parse the lines of one event and post it
+     * @param lines the first line of the event and its message and exception lines
+     */
+    void processEvent(List<String> lines) {
+        for (String line : lines)
+            processLine(line);
+        LoggingEvent event = buildEvent();
+        if (event != null) {
+            doPost(event);
+        }
+    }
+
+    private void processLine(String line) {
+        // skip empty line entries
+        if (line.trim().equals("")) {
+            return;
+        }
+
+        Matcher eventMatcher = regexpPattern.matcher(line);
+        Matcher exceptionMatcher = exceptionPattern.matcher(line);
+
+        if (eventMatcher.matches()) {
+            // build an event from the previous match (held in current map)
+            LoggingEvent event = buildEvent();
+            if (event != null) {
+                doPost(event);
+            }
+            currentMap.putAll(processEvent(eventMatcher.toMatchResult()));
+        } else if (exceptionMatcher.matches()) {
+            // an exception line
+            additionalLines.add(line);
+        } else {
+            // neither...either post an event with the line or append as additional lines
+            // if this was a logging event with multiple lines, each line will show up as its
+            // own event instead of being
+            // appended as multiple lines on the same event..
+            // choice is to have each non-matching line show up as its own line, or append them
+            // all to a previous event
+            if (appendNonMatches) {
+                // hold on to the previous time, so we can do our best to preserve time-based
+                // ordering if the event is a non-match
+                String lastTime = (String) currentMap.get(TIMESTAMP);
+                // build an event from the previous match (held in current map)
+                if (currentMap.size() > 0) {
+                    LoggingEvent event = buildEvent();
+                    if (event != null) {
+                        doPost(event);
+                    }
+                }
+                if (lastTime != null) {
+                    currentMap.put(TIMESTAMP, lastTime);
+                }
+                currentMap.put(MESSAGE, line);
+            } else {
+                additionalLines.add(line);
+            }
+        }
+    }
+
     protected void createPattern() {
         regexpPattern = Pattern.compile(regexp);
     }
@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.thread;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * Samples the stacks of the running threads at a fixed period and counts the samples of each stack
+ * in the collapsed format used to draw flame graphs, one line per stack of the form
+ * "pool;outermost frame;...;innermost frame count".  Only runnable threads are counted.  The CPU
+ * time used by each thread pool between samples is also recorded.  Threads are grouped into pools
+ * by their name with the numbers removed.
+ *
+ * Samples are kept in buckets of rest.threads.sampler.bucketPeriod ms, only the last
+ * rest.threads.sampler.maxBuckets buckets are kept and each bucket holds at most
+ * rest.threads.sampler.maxStacks different stacks so the memory used is bounded.
+ *
+ * @author Terry Packer
+ */
+public class ThreadSampler {
+
+    private static final Log LOG = LogFactory.getLog(ThreadSampler.class);
+    private static final Pattern NUMBERS = Pattern.compile("\\d+");
+    //Samples of stacks that did not fit in a full bucket
+    public static final String TRUNCATED_STACK = "[truncated]";
+    //Shortest period between samples, sampling takes a safepoint of every thread
+    public static final long MIN_PERIOD = 10;
+
+    private final ThreadMXBean manager = ManagementFactory.getThreadMXBean();
+    private final long bucketPeriod;
+    private final int maxBuckets;
+    private final int maxStacks;
+
+    private final ArrayDeque<Bucket> buckets = new ArrayDeque<>();
+    private Map<Long, Long> lastCpuTimes = new HashMap<>();
+    private ScheduledExecutorService executor;
+    private long period;
+    private int stackDepth;
+
+    public ThreadSampler() {
+        this.bucketPeriod = Common.envProps.getLong("rest.threads.sampler.bucketPeriod", 10000);
+        this.maxBuckets = Common.envProps.getInt("rest.threads.sampler.maxBuckets", 360);
+        this.maxStacks = Common.envProps.getInt("rest.threads.sampler.maxStacks", 10000);
+    }
+
+    /**
+     * Start sampling, restarts with the new settings if already running
+     * @param period ms between samples
+     * @param stackDepth maximum frames of each stack
+     */
+    public synchronized void start(long period, int stackDepth) {
+        stop();
+        this.period = period;
+        this.stackDepth = stackDepth;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Thread sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.scheduleAtFixedRate(this::sample, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop sampling, the samples taken are kept
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        lastCpuTimes = new HashMap<>();
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    public synchronized long getPeriod() {
+        return period;
+    }
+
+    public synchronized int getStackDepth() {
+        return stackDepth;
+    }
+
+    private void sample() {
+        try {
+            long[] ids = manager.getAllThreadIds();
+            ThreadInfo[] infos = manager.getThreadInfo(ids, stackDepth);
+            long[] cpuTimes = getCpuTimes(ids);
+            long self = Thread.currentThread().getId();
+            long now = Common.timer.currentTimeMillis();
+
+            synchronized (this) {
+                Bucket bucket = getBucket(now);
+                bucket.samples++;
+                Map<Long, Long> current = new HashMap<>(ids.length * 2);
+                for (int i = 0; i < ids.length; i++) {
+                    ThreadInfo info = infos[i];
+                    if (info == null || ids[i] == self)
+                        continue;
+                    String pool = poolName(info.getThreadName());
+                    if (cpuTimes[i] >= 0) {
+                        Long last = lastCpuTimes.get(ids[i]);
+                        if (last != null && cpuTimes[i] > last)
+                            bucket.addCpuTime(pool, cpuTimes[i] - last);
+                        current.put(ids[i], cpuTimes[i]);
+                    }
+                    if (info.getThreadState() == Thread.State.RUNNABLE)
+                        bucket.addStack(collapse(pool, info.getStackTrace()));
+                }
+                lastCpuTimes = current;
+            }
+        } catch (Exception e) {
+            LOG.error("Failed to sample threads", e);
+        }
+    }
+
+    /**
+     * Get the CPU time of the threads in one call where the JVM supports it
+     * @return nanoseconds, -1 for threads that have died or if not supported
+     */
+    private long[] getCpuTimes(long[] ids) {
+        if (manager instanceof com.sun.management.ThreadMXBean && manager.isThreadCpuTimeEnabled())
+            return ((com.sun.management.ThreadMXBean) manager).getThreadCpuTime(ids);
+        long[] times = new long[ids.length];
+        for (int i = 0; i < ids.length; i++)
+            times[i] = manager.isThreadCpuTimeEnabled() ? manager.getThreadCpuTime(ids[i]) : -1;
+        return times;
+    }
+
+    /**
+     * The name of a thread with the numbers replaced by # and no characters that have a
+     * meaning in the collapsed format
+     */
+    private static String poolName(String threadName) {
+        return NUMBERS.matcher(threadName).replaceAll("#").replace(';', ':').replace(' ', '_');
+    }
+
+    private static String collapse(String pool, StackTraceElement[] stack) {
+        StringBuilder builder = new StringBuilder(pool);
+        for (int i = stack.length - 1; i >= 0; i--)
+            builder.append(';').append(stack[i].getClassName()).append('.').append(stack[i].getMethodName());
+        return builder.toString();
+    }
+
+    private Bucket getBucket(long time) {
+        Bucket last = buckets.peekLast();
+        if (last != null && time < last.start + bucketPeriod)
+            return last;
+        Bucket bucket = new Bucket(time - time % bucketPeriod);
+        buckets.addLast(bucket);
+        while (buckets.size() > maxBuckets)
+            buckets.removeFirst();
+        return bucket;
+    }
+
+    /**
+     * Add up the samples taken in a time range, the range is widened to whole buckets
+     * @param from
+     * @param to
+     * @return
+     */
+    public synchronized ThreadSamplerModel getSummary(long from, long to) {
+        ThreadSamplerModel model = new ThreadSamplerModel();
+        model.setRunning(executor != null);
+        model.setPeriod(period);
+        model.setStackDepth(stackDepth);
+        Map<String, Long> cpuTime = new TreeMap<>();
+        for (Bucket bucket : buckets) {
+            if (!bucket.overlaps(from, to))
+                continue;
+            if (model.getFrom() == null)
+                model.setFrom(bucket.start);
+            model.setTo(bucket.start + bucketPeriod);
+            model.setSamples(model.getSamples() + bucket.samples);
+            model.setTruncatedStacks(model.getTruncatedStacks() || bucket.truncated);
+            for (Map.Entry<String, long[]> entry : bucket.cpuTimes.entrySet())
+                cpuTime.merge(entry.getKey(), entry.getValue()[0], Long::sum);
+        }
+        model.setCpuTime(cpuTime);
+        return model;
+    }
+
+    /**
+     * Write the stacks sampled in a time range in the collapsed format
+     * @param from
+     * @param to
+     * @param pool only the stacks of this pool, null for all
+     * @param writer
+     * @throws IOException
+     */
+    public void writeCollapsed(long from, long to, String pool, Writer writer) throws IOException {
+        Map<String, Long> counts = new TreeMap<>();
+        synchronized (this) {
+            for (Bucket bucket : buckets) {
+                if (!bucket.overlaps(from, to))
+                    continue;
+                for (Map.Entry<String, int[]> entry : bucket.stacks.entrySet()) {
+                    if (pool == null || entry.getKey().startsWith(pool + ";"))
+                        counts.merge(entry.getKey(), (long) entry.getValue()[0], Long::sum);
+                }
+            }
+        }
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            writer.write(entry.getKey());
+            writer.write(' ');
+            writer.write(Long.toString(entry.getValue()));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    private class Bucket {
+        private final long start;
+        private final Map<String, int[]> stacks = new HashMap<>();
+        private final Map<String, long[]> cpuTimes = new HashMap<>();
+        private int samples;
+        private boolean truncated;
+
+        Bucket(long start) {
+            this.start = start;
+        }
+
+        boolean overlaps(long from, long to) {
+            return start < to && start + bucketPeriod > from;
+        }
+
+        void addStack(String stack) {
+            int[] count = stacks.get(stack);
+            if (count == null) {
+                if (stacks.size() >= maxStacks) {
+                    truncated = true;
+                    stack = TRUNCATED_STACK;
+                    count = stacks.get(stack);
+                }
+                if (count == null) {
+                    count = new int[1];
+                    stacks.put(stack, count);
+                }
+            }
+            count[0]++;
+        }
+
+        void addCpuTime(String pool, long nanos) {
+            cpuTimes.computeIfAbsent(pool, k -> new long[1])[0] += nanos;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.model.thread;
+
+import java.util.Map;
+
+/**
+ * The state of the thread sampler and the samples taken in a time range
+ *
+ * @author Terry Packer
+ */
+public class ThreadSamplerModel {
+
+    private boolean running;
+    private long period;
+    private int stackDepth;
+    private Long from;
+    private Long to;
+    private int samples;
+    private boolean truncatedStacks;
+    private Map<String, Long> cpuTime;
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+
+    /**
+     * @return ms between samples
+     */
+    public long getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(long period) {
+        this.period = period;
+    }
+
+    public int getStackDepth() {
+        return stackDepth;
+    }
+
+    public void setStackDepth(int stackDepth) {
+        this.stackDepth = stackDepth;
+    }
+
+    /**
+     * @return start of the first bucket of samples in the range, null if there are none
+     */
+    public Long getFrom() {
+        return from;
+    }
+
+    public void setFrom(Long from) {
+        this.from = from;
+    }
+
+    public Long getTo() {
+        return to;
+    }
+
+    public void setTo(Long to) {
+        this.to = to;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    public void setSamples(int samples) {
+        this.samples = samples;
+    }
+
+    /**
+     * @return true if some stacks were counted as [truncated] because a bucket was full
+     */
+    public boolean getTruncatedStacks() {
+        return truncatedStacks;
+    }
+
+    public void setTruncatedStacks(boolean truncatedStacks) {
+        this.truncatedStacks = truncatedStacks;
+    }
+
+    /**
+     * @return CPU time in nanoseconds used by each pool of threads
+     */
+    public Map<String, Long> getCpuTime() {
+        return cpuTime;
+    }
+
+    public void setCpuTime(Map<String, Long> cpuTime) {
+        this.cpuTime = cpuTime;
+    }
+}
@@ -80,7 +80,7 @@ public abstract class DaoNotificationWebSocketHandler<T extends AbstractBasicVO>
                     }
                 }
 
-                notify(session, userJsonMessage);
+                notify(session, userJsonMessage, "update".equals(action) ? vo.getId() : null);
             }
         }
     }
@@ -130,8 +130,17 @@ public abstract class DaoNotificationWebSocketHandler<T extends AbstractBasicVO>
     }
 
     protected void notify(WebSocketSession session, String jsonMessage) {
+        notify(session, jsonMessage, null);
+    }
+
+    /**
+     * @param session
+     * @param jsonMessage
+     * @param coalesceKey updates to the same vo that have not been sent yet are replaced by the latest one
+     */
+    protected void notify(WebSocketSession session, String jsonMessage, Object coalesceKey) {
         try {
-            this.sendStringMessageAsync(session, jsonMessage);
+            this.sendStringMessageAsync(session, jsonMessage, coalesceKey);
         } catch(WebSocketSendException e) {
             log.warn("Error notifying websocket", e);
         } catch (Exception e) {
@@ -5,6 +5,7 @@
 package com.serotonin.m2m2.web.mvc.rest.v1.websockets;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -13,7 +14,6 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.adapter.jetty.JettyWebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -122,25 +122,73 @@ public abstract class MangoWebSocketHandler extends TextWebSocketHandler {
     }
 
     /**
-     * WebSocketSession.sendMessage() is blocking and will throw exceptions on concurrent sends, this method uses the aysnc RemoteEndpoint.sendStringByFuture() method instead
+     * WebSocketSession.sendMessage() is blocking and will throw exceptions on concurrent sends, this method queues the message and writes it with the async RemoteEndpoint.sendString() method instead
      *
      * @param session
      * @param message
      * @throws IOException
      */
     protected void sendStringMessageAsync(WebSocketSession session, String message) {
+        sendStringMessageAsync(session, message, null);
+    }
+
+    /**
+     * Queue a message on the session's {@link WebSocketSendQueue}, the queue is limited so
+     * messages to a client that can't keep up are coalesced or dropped
+     *
+     * @param session
+     * @param message
+     * @param coalesceKey a message with the same key that is still waiting to be sent is replaced by this one, null to never replace
+     */
+    protected void sendStringMessageAsync(WebSocketSession session, String message, Object coalesceKey) {
+        if (!session.isOpen()) {
+            throw new WebSocketClosedException();
+        }
+
+        try {
+            WebSocketSendQueue.get(session, this::createDroppedMessage).send(message, coalesceKey);
+        } catch (WebSocketClosedException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new WebSocketSendException(e);
+        }
+    }
+
+    /**
+     * Queue a binary message on the session's {@link WebSocketSendQueue}
+     *
+     * @param session
+     * @param message
+     * @param coalesceKey a message with the same key that is still waiting to be sent is replaced by this one, null to never replace
+     */
+    protected void sendBinaryMessageAsync(WebSocketSession session, ByteBuffer message, Object coalesceKey) {
         if (!session.isOpen()) {
             throw new WebSocketClosedException();
         }
 
         try {
-            JettyWebSocketSession jettySession = (JettyWebSocketSession) session;
-            jettySession.getNativeSession().getRemote().sendStringByFuture(message);
+            WebSocketSendQueue.get(session, this::createDroppedMessage).sendBinary(message, coalesceKey);
+        } catch (WebSocketClosedException e) {
+            throw e;
         } catch (Exception e) {
             throw new WebSocketSendException(e);
         }
     }
 
+    /**
+     * Tell the client that messages were dropped because it could not keep up
+     */
+    protected String createDroppedMessage(int dropped, int coalesced) {
+        TranslatableMessage message = new TranslatableMessage("rest.websocket.messagesDropped", dropped, coalesced);
+        MangoWebSocketErrorModel error = new MangoWebSocketErrorModel(MangoWebSocketErrorType.MESSAGES_DROPPED, message.translate(Common.getTranslations()));
+        try {
+            return this.jacksonMapper.writeValueAsString(new MangoWebSocketResponseModel(MangoWebSocketResponseStatus.ERROR, error));
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to write object as JSON", e);
+            return null;
+        }
+    }
+
     protected void closeSession(WebSocketSession session, CloseStatus closeStaus) {
         try {
             session.close(closeStaus);
@@ -0,0 +1,298 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.websockets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.jetty.JettyWebSocketSession;
+
+import com.serotonin.m2m2.Common;
+
+/**
+ * Outbound messages of a web socket session, only one message is written at a time and
+ * the rest wait here up to a limit on their number and size so a client that can't keep up
+ * can't use up the server's memory.
+ *
+ * A message sent with a coalesce key replaces the waiting message with the same key, so
+ * a slow client gets the latest value of a point instead of every value.  Messages that
+ * don't fit are dropped and the client is told how many were dropped once the queue drains,
+ * or the session is closed if web.websocket.sendQueue.closeOnOverflow is set.
+ *
+ * @author Terry Packer
+ */
+public class WebSocketSendQueue implements WriteCallback {
+    private static final Log LOG = LogFactory.getLog(WebSocketSendQueue.class);
+
+    public static final String SEND_QUEUE_ATTRIBUTE = "MangoWebSocketSendQueue";
+
+    private final WebSocketSession session;
+    private final RemoteEndpoint remote;
+    private final StatusMessageFactory statusMessageFactory;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final boolean closeOnOverflow;
+
+    private final ArrayDeque<Pending> waiting = new ArrayDeque<>();
+    private final Map<Object, Pending> waitingByKey = new HashMap<>();
+    private long waitingBytes;
+    private boolean writing;
+    private boolean closed;
+    private int dropped;
+    private int coalesced;
+
+    //Jetty may complete a write before the send call returns, on any thread, so whichever of
+    // the writer and the callback finishes second carries on with the next message
+    private WriteState writeState = WriteState.IDLE;
+
+    public WebSocketSendQueue(WebSocketSession session, StatusMessageFactory statusMessageFactory) {
+        this.session = session;
+        this.remote = ((JettyWebSocketSession) session).getNativeSession().getRemote();
+        this.statusMessageFactory = statusMessageFactory;
+        this.maxMessages = Common.envProps.getInt("web.websocket.sendQueue.maxMessages", 1000);
+        this.maxBytes = Common.envProps.getLong("web.websocket.sendQueue.maxBytes", 4 * 1024 * 1024);
+        this.closeOnOverflow = Common.envProps.getBoolean("web.websocket.sendQueue.closeOnOverflow", false);
+    }
+
+    /**
+     * Get the queue of a session, creating it on the first send
+     * @param session
+     * @param statusMessageFactory
+     * @return
+     */
+    public static WebSocketSendQueue get(WebSocketSession session, StatusMessageFactory statusMessageFactory) {
+        synchronized (session) {
+            Object queue = session.getAttributes().get(SEND_QUEUE_ATTRIBUTE);
+            if (queue instanceof WebSocketSendQueue)
+                return (WebSocketSendQueue) queue;
+            WebSocketSendQueue created = new WebSocketSendQueue(session, statusMessageFactory);
+            session.getAttributes().put(SEND_QUEUE_ATTRIBUTE, created);
+            return created;
+        }
+    }
+
+    /**
+     * Send a message once the messages before it have been written
+     * @param message
+     * @param coalesceKey a waiting message with the same key is replaced by this one, null to always send
+     */
+    public void send(String message, Object coalesceKey) {
+        enqueue(message, utf8Length(message), coalesceKey);
+    }
+
+    /**
+     * Send a binary message once the messages before it have been written
+     * @param message
+     * @param coalesceKey a waiting message with the same key is replaced by this one, null to always send
+     */
+    public void sendBinary(ByteBuffer message, Object coalesceKey) {
+        enqueue(message, message.remaining(), coalesceKey);
+    }
+
+    /**
+     * @param message String or ByteBuffer
+     * @param size
+     * @param coalesceKey
+     */
+    private void enqueue(Object message, int size, Object coalesceKey) {
+        boolean overflow = false;
+        synchronized (this) {
+            if (closed)
+                throw new WebSocketClosedException();
+
+            if (!writing) {
+                writing = true;
+            } else {
+                Pending pending = coalesceKey == null ? null : waitingByKey.get(coalesceKey);
+                if (pending != null) {
+                    waitingBytes += size - pending.size;
+                    pending.message = message;
+                    pending.size = size;
+                    coalesced++;
+                } else if (waiting.size() >= maxMessages || waitingBytes + size > maxBytes) {
+                    dropped++;
+                    overflow = true;
+                } else {
+                    pending = new Pending(message, size, coalesceKey);
+                    waiting.add(pending);
+                    if (coalesceKey != null)
+                        waitingByKey.put(coalesceKey, pending);
+                    waitingBytes += size;
+                }
+                message = null;
+            }
+        }
+
+        if (overflow && closeOnOverflow)
+            close();
+        else if (message != null)
+            write(message);
+    }
+
+    /**
+     * Write messages until one does not complete before its send call returns, its callback carries on
+     */
+    private void write(Object message) {
+        while (message != null) {
+            synchronized (this) {
+                writeState = WriteState.SENDING;
+            }
+            try {
+                if (message instanceof ByteBuffer)
+                    remote.sendBytes((ByteBuffer) message, this);
+                else
+                    remote.sendString((String) message, this);
+            } catch (Exception e) {
+                writeFailed(e);
+                return;
+            }
+            synchronized (this) {
+                if (writeState != WriteState.COMPLETED) {
+                    //Still being written or failed
+                    if (writeState == WriteState.SENDING)
+                        writeState = WriteState.AWAITING_CALLBACK;
+                    return;
+                }
+            }
+            message = next();
+        }
+    }
+
+    @Override
+    public void writeSuccess() {
+        synchronized (this) {
+            if (writeState == WriteState.SENDING) {
+                //The writer carries on once the send call returns
+                writeState = WriteState.COMPLETED;
+                return;
+            }
+        }
+        write(next());
+    }
+
+    @Override
+    public void writeFailed(Throwable x) {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Websocket write failed", x);
+        synchronized (this) {
+            writeState = WriteState.IDLE;
+            closed = true;
+            writing = false;
+            clear();
+        }
+    }
+
+    /**
+     * Take the next message to write, tells the client about dropped messages once the queue is empty
+     * @return null if there is nothing to write
+     */
+    private synchronized Object next() {
+        Pending pending = waiting.poll();
+        if (pending != null) {
+            waitingBytes -= pending.size;
+            if (pending.coalesceKey != null)
+                waitingByKey.remove(pending.coalesceKey);
+            return pending.message;
+        }
+        if (dropped > 0 && !closed) {
+            String status = statusMessageFactory.create(dropped, coalesced);
+            dropped = 0;
+            coalesced = 0;
+            if (status != null)
+                return status;
+        }
+        writing = false;
+        writeState = WriteState.IDLE;
+        return null;
+    }
+
+    private void close() {
+        synchronized (this) {
+            closed = true;
+            clear();
+        }
+        try {
+            session.close(CloseStatus.SERVICE_OVERLOAD);
+        } catch (IOException e) {
+            LOG.warn("Error closing websocket session", e);
+        }
+    }
+
+    private void clear() {
+        waiting.clear();
+        waitingByKey.clear();
+        waitingBytes = 0;
+    }
+
+    /**
+     * The number of bytes a message takes when encoded as UTF-8 for a text frame
+     */
+    static int utf8Length(String message) {
+        int length = message.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            if (c < 0x80)
+                continue;
+            if (c < 0x800) {
+                bytes++;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(message.charAt(i + 1))) {
+                //4 bytes for the pair
+                bytes += 2;
+                i++;
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return number of messages waiting to be written
+     */
+    public synchronized int size() {
+        return waiting.size();
+    }
+
+    /**
+     * Creates the message telling a client that messages were dropped
+     */
+    @FunctionalInterface
+    public interface StatusMessageFactory {
+        /**
+         * @param dropped messages dropped since the last status
+         * @param coalesced messages replaced by a later message since the last status
+         * @return the JSON message, null to not send one
+         */
+        String create(int dropped, int coalesced);
+    }
+
+    private enum WriteState {
+        IDLE,
+        SENDING, //In the send call
+        COMPLETED, //Completed before the send call returned
+        AWAITING_CALLBACK //The send call returned first
+    }
+
+    private static class Pending {
+        private Object message;
+        private int size;
+        private final Object coalesceKey;
+
+        Pending(Object message, int size, Object coalesceKey) {
+            this.message = message;
+            this.size = size;
+            this.coalesceKey = coalesceKey;
+        }
+    }
+}
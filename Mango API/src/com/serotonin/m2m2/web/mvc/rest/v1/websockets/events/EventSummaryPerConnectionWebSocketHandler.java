@@ -0,0 +1,22 @@
+/*
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.websockets.events;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.handler.PerConnectionWebSocketHandler;
+
+import com.serotonin.m2m2.web.mvc.rest.v1.WebSocketMapping;
+
+/**
+ * @author Terry Packer
+ */
+@Component
+@WebSocketMapping("/websocket/event-summary")
+public class EventSummaryPerConnectionWebSocketHandler extends PerConnectionWebSocketHandler {
+
+    public EventSummaryPerConnectionWebSocketHandler() {
+        super(EventSummaryWebSocketHandler.class);
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.websockets.events;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.events.ActiveEventSummaryIndex;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.events.EventLevelSummaryModel;
+import com.serotonin.m2m2.web.mvc.rest.v1.websockets.MangoWebSocketErrorType;
+import com.serotonin.m2m2.web.mvc.rest.v1.websockets.MangoWebSocketHandler;
+
+/**
+ * Sends the active events summary when the connection is opened and each time it changes.
+ * Any message received is answered with the current summary.
+ *
+ * @author Terry Packer
+ */
+class EventSummaryWebSocketHandler extends MangoWebSocketHandler {
+
+    private final Object lock = new Object();
+    private ActiveEventSummaryIndex index;
+    private Consumer<List<EventLevelSummaryModel>> subscriber;
+    private boolean connectionClosed = false;
+
+    EventSummaryWebSocketHandler() {
+        super();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        super.afterConnectionEstablished(session);
+
+        User user = this.getUser(session);
+        if (user == null) {
+            return;
+        }
+
+        synchronized(this.lock) {
+            if (this.connectionClosed) {
+                return;
+            }
+            this.index = ActiveEventSummaryIndex.get(user);
+            this.subscriber = summary -> send(session, summary);
+            this.index.subscribe(this.subscriber);
+        }
+        send(session, this.index.getSummary(user));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        super.afterConnectionClosed(session, status);
+
+        synchronized(this.lock) {
+            if (this.index != null) {
+                this.index.unsubscribe(this.subscriber);
+                this.index = null;
+            }
+            this.connectionClosed = true;
+        }
+    }
+
+    @Override
+    public void handleTextMessage(WebSocketSession session, TextMessage message) {
+        try {
+            User user = this.getUser(session);
+            ActiveEventSummaryIndex index;
+            synchronized(this.lock) {
+                index = this.index;
+            }
+            if (user != null && index != null) {
+                send(session, index.getSummary(user));
+            }
+        } catch (Exception e) {
+            try {
+                this.sendErrorMessage(session, MangoWebSocketErrorType.SERVER_ERROR, new TranslatableMessage("rest.error.serverError", e.getMessage()));
+            } catch (Exception e1) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void send(WebSocketSession session, List<EventLevelSummaryModel> summary) {
+        if (!session.isOpen()) {
+            return;
+        }
+        try {
+            this.sendMessage(session, summary);
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error sending active event summary", e);
+            }
+        }
+    }
+}
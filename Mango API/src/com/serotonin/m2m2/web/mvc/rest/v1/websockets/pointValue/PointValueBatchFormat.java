@@ -0,0 +1,16 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.websockets.pointValue;
+
+/**
+ * How batched point value events are sent
+ *
+ * @author Terry Packer
+ */
+public enum PointValueBatchFormat {
+
+	JSON, //A text frame with a JSON array of the events
+	BINARY //Values of numeric, binary and multistate points in a binary frame, other events as JSON
+
+}
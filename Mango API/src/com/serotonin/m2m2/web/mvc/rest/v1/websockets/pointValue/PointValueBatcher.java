@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.websockets.pointValue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.util.timeout.TimeoutClient;
+import com.serotonin.m2m2.util.timeout.TimeoutTask;
+import com.serotonin.m2m2.web.mvc.rest.v1.websockets.pointValue.PointValueBroadcastHub.BroadcastEvent;
+
+/**
+ * Collects the point value events of a web socket session for a period and sends them
+ * in a single frame.  Within a period only the latest value of each point and event type
+ * is kept.
+ *
+ * In JSON format the frame is a JSON array of the usual event messages.  In BINARY format
+ * the values of numeric, binary and multistate points are sent as a big endian binary
+ * frame with columns instead of rows:
+ * <pre>
+ * int count
+ * int[count] point index, from the index message sent when the point was registered
+ * long[count] timestamp in ms
+ * double[count] value
+ * byte[count] event type, the ordinal of {@link PointValueEventType}
+ * </pre>
+ * and all other events are sent in a JSON array before the binary frame.  Values collected before
+ * a registration or life cycle event are sent before it, so a period can produce several pairs of frames.
+ *
+ * @author Terry Packer
+ */
+public class PointValueBatcher extends TimeoutClient {
+
+    private final int period;
+    private final PointValueBatchFormat format;
+    private final Sender sender;
+
+    //The events of the period split at the life cycle events that follow binary values
+    private List<Segment> segments = new ArrayList<>();
+    private long uncoalescedCount;
+    private boolean scheduled;
+
+    /**
+     * @param period ms to collect events for
+     * @param format
+     * @param sender
+     */
+    public PointValueBatcher(int period, PointValueBatchFormat format, Sender sender) {
+        this.period = period;
+        this.format = format;
+        this.sender = sender;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public PointValueBatchFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Add an event to the next batch, must be called on the thread broadcasting the event
+     * @param event
+     * @param pointIndex index of the point in the session
+     * @throws JsonProcessingException
+     */
+    public void add(BroadcastEvent event, int pointIndex) throws JsonProcessingException {
+        PointValueEventType eventType = event.getEventType();
+        PointValueTime value = event.getValue();
+        boolean binary = format == PointValueBatchFormat.BINARY && value != null
+                && eventType.isCoalesced() && isBinaryType(event.getDataTypeId());
+        //Write the JSON before taking the lock, it is shared with the other sessions
+        String json = binary ? null : event.getJson();
+
+        boolean schedule;
+        synchronized (this) {
+            Object key;
+            if (eventType.isCoalesced())
+                key = event.getDataPointId() + ":" + eventType;
+            else
+                key = uncoalescedCount++;
+
+            //The binary values collected so far must be sent before a life cycle event
+            Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (segment == null || (!eventType.isCoalesced() && !segment.binaryValues.isEmpty())) {
+                segment = new Segment();
+                segments.add(segment);
+            }
+
+            if (binary) {
+                segment.binaryValues.put(key, new BinaryValue(pointIndex, eventType, value.getTime(), value.getDoubleValue()));
+            } else {
+                //Keep the order of the events that replace each other
+                segment.jsonEvents.remove(key);
+                segment.jsonEvents.put(key, json);
+            }
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule)
+            new TimeoutTask(period, this);
+    }
+
+    @Override
+    public void scheduleTimeout(long fireTime) {
+        flush();
+    }
+
+    /**
+     * Send what has been collected
+     */
+    public void flush() {
+        List<Segment> segments;
+        synchronized (this) {
+            segments = this.segments;
+            this.segments = new ArrayList<>();
+            scheduled = false;
+        }
+
+        for (Segment segment : segments)
+            send(new ArrayList<>(segment.jsonEvents.values()), new ArrayList<>(segment.binaryValues.values()));
+    }
+
+    private void send(List<String> json, List<BinaryValue> values) {
+        if (!json.isEmpty()) {
+            StringBuilder builder = new StringBuilder();
+            builder.append('[');
+            for (int i = 0; i < json.size(); i++) {
+                if (i > 0)
+                    builder.append(',');
+                builder.append(json.get(i));
+            }
+            builder.append(']');
+            sender.sendText(builder.toString());
+        }
+
+        if (!values.isEmpty()) {
+            int count = values.size();
+            ByteBuffer buffer = ByteBuffer.allocate(4 + count * (4 + 8 + 8 + 1));
+            buffer.putInt(count);
+            for (BinaryValue value : values)
+                buffer.putInt(value.pointIndex);
+            for (BinaryValue value : values)
+                buffer.putLong(value.time);
+            for (BinaryValue value : values)
+                buffer.putDouble(value.value);
+            for (BinaryValue value : values)
+                buffer.put((byte) value.eventType.ordinal());
+            buffer.flip();
+            sender.sendBinary(buffer);
+        }
+    }
+
+    @Override
+    public String getThreadName() {
+        return "Point value websocket batch";
+    }
+
+    private static boolean isBinaryType(int dataTypeId) {
+        return dataTypeId == DataTypes.NUMERIC || dataTypeId == DataTypes.BINARY || dataTypeId == DataTypes.MULTISTATE;
+    }
+
+    /**
+     * Writes the frames to the session
+     */
+    public interface Sender {
+        void sendText(String message);
+        void sendBinary(ByteBuffer message);
+    }
+
+    private static class Segment {
+        private final Map<Object, String> jsonEvents = new LinkedHashMap<>();
+        private final Map<Object, BinaryValue> binaryValues = new LinkedHashMap<>();
+    }
+
+    private static class BinaryValue {
+        private final int pointIndex;
+        private final PointValueEventType eventType;
+        private final long time;
+        private final double value;
+
+        BinaryValue(int pointIndex, PointValueEventType eventType, long time, double value) {
+            this.pointIndex = pointIndex;
+            this.eventType = eventType;
+            this.time = time;
+            this.value = value;
+        }
+    }
+}
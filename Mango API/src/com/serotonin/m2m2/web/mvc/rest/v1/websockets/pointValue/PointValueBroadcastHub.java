@@ -0,0 +1,354 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.web.mvc.rest.v1.websockets.pointValue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.monitor.AtomicIntegerMonitor;
+import com.infiniteautomation.mango.monitor.ValueMonitorOwner;
+import com.infiniteautomation.mango.spring.MangoRuntimeContextConfiguration;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeModel;
+import com.serotonin.m2m2.web.mvc.rest.v1.websockets.MangoWebSocketResponseModel;
+import com.serotonin.m2m2.web.mvc.rest.v1.websockets.MangoWebSocketResponseStatus;
+import com.serotonin.m2m2.web.taglib.Functions;
+
+/**
+ * Listens to each data point once for all the point value web sockets subscribed to it.
+ *
+ * The event model is built and written as JSON at most once per event and the same message is
+ * sent to every subscriber that wants that event type, the message does not depend on the user
+ * as read permission is checked when a subscription is made.
+ *
+ * Subscribing and unsubscribing lock only the broadcaster of the point, the initial status is
+ * sent to a new subscriber after the lock is released.
+ *
+ * @author Terry Packer
+ */
+@Component
+public class PointValueBroadcastHub {
+    private static final Log LOG = LogFactory.getLog(PointValueBroadcastHub.class);
+
+    public static final String SERIALIZED_MONITOR_ID = "com.serotonin.m2m2.web.mvc.rest.v1.websockets.pointValue.PointValueBroadcastHub.SERIALIZED";
+    public static final String SENT_MONITOR_ID = "com.serotonin.m2m2.web.mvc.rest.v1.websockets.pointValue.PointValueBroadcastHub.SENT";
+    public static final String SUBSCRIPTIONS_MONITOR_ID = "com.serotonin.m2m2.web.mvc.rest.v1.websockets.pointValue.PointValueBroadcastHub.SUBSCRIPTIONS";
+
+    private final ObjectMapper jacksonMapper;
+    private final Map<Integer, PointBroadcaster> broadcasters = new ConcurrentHashMap<>();
+    private final AtomicIntegerMonitor serializedMonitor;
+    private final AtomicIntegerMonitor sentMonitor;
+    private final AtomicIntegerMonitor subscriptionsMonitor;
+
+    @Autowired
+    public PointValueBroadcastHub(@Qualifier(MangoRuntimeContextConfiguration.REST_OBJECT_MAPPER_NAME) ObjectMapper jacksonMapper) {
+        this.jacksonMapper = jacksonMapper;
+        this.serializedMonitor = createMonitor(SERIALIZED_MONITOR_ID, new TranslatableMessage("internal.monitor.POINT_VALUE_WEBSOCKET_SERIALIZED"));
+        this.sentMonitor = createMonitor(SENT_MONITOR_ID, new TranslatableMessage("internal.monitor.POINT_VALUE_WEBSOCKET_SENT"));
+        this.subscriptionsMonitor = createMonitor(SUBSCRIPTIONS_MONITOR_ID, new TranslatableMessage("internal.monitor.POINT_VALUE_WEBSOCKET_SUBSCRIPTIONS"));
+    }
+
+    /**
+     * Start sending the events of a point to a subscriber and send it the current status of the point
+     * @param vo
+     * @param subscriber
+     */
+    public void subscribe(DataPointVO vo, Subscriber subscriber) {
+        PointBroadcaster broadcaster;
+        while (true) {
+            broadcaster = broadcasters.computeIfAbsent(vo.getId(), id -> new PointBroadcaster(vo));
+            synchronized (broadcaster) {
+                //The last subscriber unsubscribed since it was got, get a new one
+                if (broadcaster.removed)
+                    continue;
+                if (broadcaster.subscribers.isEmpty())
+                    Common.runtimeManager.addDataPointListener(vo.getId(), broadcaster);
+                broadcaster.subscribers.add(subscriber);
+            }
+            break;
+        }
+        subscriptionsMonitor.addValue(1);
+        broadcaster.sendPointStatus(subscriber);
+    }
+
+    /**
+     * Stop sending the events of a point to a subscriber
+     * @param dataPointId
+     * @param subscriber
+     */
+    public void unsubscribe(int dataPointId, Subscriber subscriber) {
+        PointBroadcaster broadcaster = broadcasters.get(dataPointId);
+        if (broadcaster == null)
+            return;
+        synchronized (broadcaster) {
+            if (!broadcaster.subscribers.remove(subscriber))
+                return;
+            if (broadcaster.subscribers.isEmpty()) {
+                broadcaster.removed = true;
+                broadcasters.remove(dataPointId, broadcaster);
+                Common.runtimeManager.removeDataPointListener(dataPointId, broadcaster);
+            }
+        }
+        subscriptionsMonitor.addValue(-1);
+    }
+
+    private AtomicIntegerMonitor createMonitor(String id, TranslatableMessage name) {
+        AtomicIntegerMonitor monitor = new AtomicIntegerMonitor(id, name, monitorOwner, false);
+        Common.MONITORED_VALUES.addIfMissingStatMonitor(monitor);
+        return monitor;
+    }
+
+    private final ValueMonitorOwner monitorOwner = new ValueMonitorOwner() {
+        @Override
+        public void reset(String monitorId) {
+            if (SERIALIZED_MONITOR_ID.equals(monitorId)) {
+                serializedMonitor.setValue(0);
+            } else if (SENT_MONITOR_ID.equals(monitorId)) {
+                sentMonitor.setValue(0);
+            } else if (SUBSCRIPTIONS_MONITOR_ID.equals(monitorId)) {
+                int count = 0;
+                for (PointBroadcaster broadcaster : broadcasters.values())
+                    count += broadcaster.subscribers.size();
+                subscriptionsMonitor.setValue(count);
+            }
+        }
+    };
+
+    /**
+     * A web socket subscribed to the events of a point
+     */
+    public interface Subscriber {
+        /**
+         * @return the event types to send
+         */
+        Set<PointValueEventType> getEventTypes();
+
+        /**
+         * Send an event, the JSON of the event is shared by all subscribers
+         * @param event
+         */
+        void send(BroadcastEvent event);
+    }
+
+    /**
+     * An event of a point that is written as JSON the first time a subscriber needs it,
+     * only to be used on the thread that sends it to the subscribers
+     */
+    public class BroadcastEvent {
+        private final DataPointVO vo;
+        private final PointValueEventType eventType;
+        private final PointValueTime value;
+        private final ModelFactory factory;
+        private String json;
+
+        BroadcastEvent(DataPointVO vo, PointValueEventType eventType, PointValueTime value, ModelFactory factory) {
+            this.vo = vo;
+            this.eventType = eventType;
+            this.value = value;
+            this.factory = factory;
+        }
+
+        public int getDataPointId() {
+            return vo.getId();
+        }
+
+        public int getDataTypeId() {
+            return vo.getPointLocator().getDataTypeId();
+        }
+
+        public PointValueEventType getEventType() {
+            return eventType;
+        }
+
+        /**
+         * @return the value of the event, null for events that don't carry one
+         */
+        public PointValueTime getValue() {
+            return value;
+        }
+
+        /**
+         * @return the event as a JSON message
+         * @throws JsonProcessingException
+         */
+        public String getJson() throws JsonProcessingException {
+            if (json == null) {
+                json = jacksonMapper.writeValueAsString(new MangoWebSocketResponseModel(MangoWebSocketResponseStatus.OK, factory.create()));
+                serializedMonitor.addValue(1);
+            }
+            return json;
+        }
+    }
+
+    /**
+     * The single listener for a point
+     */
+    class PointBroadcaster implements DataPointListener {
+        //Replaced when the point is saved and restarted
+        private volatile DataPointVO vo;
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        private volatile DataPointRT rt;
+        //Set under the broadcaster's lock when the last subscriber leaves
+        private boolean removed;
+
+        PointBroadcaster(DataPointVO vo) {
+            this.vo = vo;
+        }
+
+        /**
+         * Initial response upon new registration, only sent to the new subscriber
+         */
+        void sendPointStatus(Subscriber subscriber) {
+            try {
+                setRuntime(Common.runtimeManager.getDataPoint(vo.getId())); //Set us up
+                DataPointVO vo = this.vo;
+                subscriber.send(new BroadcastEvent(vo, PointValueEventType.REGISTERED, null,
+                        () -> createNotification(vo, PointValueEventType.REGISTERED, null)));
+                sentMonitor.addValue(1);
+            } catch (Exception e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+
+        private void setRuntime(DataPointRT rt) {
+            if (rt != null)
+                this.vo = rt.getVO();
+            this.rt = rt;
+        }
+
+        private PointValueEventModel createNotification(DataPointVO vo, PointValueEventType eventType, PointValueTime pvt) {
+            boolean enabled = false;
+            boolean pointEnabled = false;
+            Map<String,Object> attributes = null;
+            Double convertedValue = null;
+            String renderedValue = null;
+            DataPointRT dprt = rt;
+            if (dprt != null) {
+                enabled = true; //We are enabled
+                pointEnabled = true; //Must be if we are running
+                if (pvt == null) {
+                    pvt = dprt.getPointValue(); //Get the value
+                }
+                attributes = new HashMap<>(dprt.getAttributes());
+                renderedValue = Functions.getRenderedText(vo, pvt);
+                if (vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC && (pvt != null)) {
+                    convertedValue = vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(pvt.getValue().getDoubleValue());
+                }
+            }else {
+                pointEnabled = DataPointDao.getInstance().isEnabled(vo.getId());
+            }
+
+            PointValueTimeModel pvtModel = null;
+            if (pvt != null) {
+                pvtModel = new PointValueTimeModel(pvt);
+                //If we are an image type we should build the URLS
+                if (vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE) {
+                    pvtModel.setValue(UriComponentsBuilder.fromPath("/imageValue/{ts}_{id}.jpg").buildAndExpand(pvt.getTime(), vo.getId()).toUri().toString());
+                }
+            }
+            return new PointValueEventModel(vo.getXid(), enabled, pointEnabled, attributes, eventType, pvtModel, renderedValue, convertedValue);
+        }
+
+        /**
+         * Build the message once and send it to every subscriber that wants the event type
+         */
+        private void broadcast(PointValueEventType eventType, PointValueTime pvt) {
+            DataPointVO vo = this.vo;
+            broadcastModel(vo, eventType, pvt, () -> createNotification(vo, eventType, pvt));
+        }
+
+        private void broadcastModel(DataPointVO vo, PointValueEventType eventType, PointValueTime pvt, ModelFactory factory) {
+            BroadcastEvent event = new BroadcastEvent(vo, eventType, pvt, factory);
+            int sent = 0;
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.getEventTypes().contains(eventType))
+                    continue;
+                try {
+                    subscriber.send(event);
+                    sent++;
+                } catch (Exception e) {
+                    LOG.error(e.getMessage(), e);
+                }
+            }
+            if (sent > 0)
+                sentMonitor.addValue(sent);
+        }
+
+        @Override
+        public void pointInitialized() {
+            setRuntime(Common.runtimeManager.getDataPoint(vo.getId())); //Set us up
+            broadcast(PointValueEventType.INITIALIZE, null);
+        }
+
+        @Override
+        public void pointUpdated(PointValueTime newValue) {
+            broadcast(PointValueEventType.UPDATE, newValue);
+        }
+
+        @Override
+        public void pointChanged(PointValueTime oldValue, PointValueTime newValue) {
+            broadcast(PointValueEventType.CHANGE, newValue);
+        }
+
+        @Override
+        public void pointSet(PointValueTime oldValue, PointValueTime newValue) {
+            broadcast(PointValueEventType.SET, newValue);
+        }
+
+        @Override
+        public void pointBackdated(PointValueTime value) {
+            broadcast(PointValueEventType.BACKDATE, value);
+        }
+
+        @Override
+        public void pointLogged(PointValueTime value) {
+            broadcast(PointValueEventType.LOGGED, value);
+        }
+
+        @Override
+        public void attributeChanged(Map<String, Object> attributes) {
+            DataPointVO vo = this.vo;
+            broadcastModel(vo, PointValueEventType.ATTRIBUTE_CHANGE, null, () -> new PointValueEventModel(vo.getXid(), true, true, attributes,
+                    PointValueEventType.ATTRIBUTE_CHANGE, null, null, null));
+        }
+
+        @Override
+        public void pointTerminated(DataPointVO dp) {
+            this.rt = null;
+            this.vo = dp;
+            broadcastModel(dp, PointValueEventType.TERMINATE, null, () -> new PointValueEventModel(dp.getXid(), false, dp.isEnabled(), null,
+                    PointValueEventType.TERMINATE, null, null, null));
+        }
+
+        @Override
+        public String getListenerName() {
+            return "Websocket broadcast for DP " + this.vo.getXid() + "'s point values.";
+        }
+    }
+
+    @FunctionalInterface
+    interface ModelFactory {
+        PointValueEventModel create();
+    }
+}
@@ -9,15 +9,31 @@ package com.serotonin.m2m2.web.mvc.rest.v1.websockets.pointValue;
  *
  */
 public enum PointValueEventType {
+	//The ordinal is the event type of the binary batch format, new types must be added at the end
 	
-	INITIALIZE,
-	UPDATE, //Value was updated to possibly the same value
-	CHANGE, //Value has changed
-	SET,
-	BACKDATE,
-	TERMINATE,
-	REGISTERED, //We registered and this is our first response
-	ATTRIBUTE_CHANGE,
-	LOGGED
+	INITIALIZE(false),
+	UPDATE(true), //Value was updated to possibly the same value
+	CHANGE(true), //Value has changed
+	SET(true),
+	BACKDATE(true),
+	TERMINATE(false),
+	REGISTERED(false), //We registered and this is our first response
+	ATTRIBUTE_CHANGE(true),
+	LOGGED(true);
+
+	private final boolean coalesced;
+
+	private PointValueEventType(boolean coalesced) {
+		this.coalesced = coalesced;
+	}
+
+	/**
+	 * Events that carry a value or attributes, only the latest waiting event of a point is sent.
+	 * Registration and life cycle events are always sent.
+	 * @return
+	 */
+	public boolean isCoalesced() {
+		return coalesced;
+	}
 
 }
@@ -21,6 +21,12 @@ public class PointValueRegistrationModel {
 	@JsonProperty("eventTypes")
 	private Set<PointValueEventType> eventTypes; //Events to listen for
 
+	@JsonProperty("batchPeriod")
+	private Integer batchPeriod; //ms to collect events for before sending them together, 0 to send each event, null to leave as is
+
+	@JsonProperty("batchFormat")
+	private PointValueBatchFormat batchFormat; //Format of the batches, JSON by default
+
 	
 	public PointValueRegistrationModel(){
 	}
@@ -41,4 +47,20 @@ public class PointValueRegistrationModel {
 		this.eventTypes = eventTypes;
 	}
 
+	public Integer getBatchPeriod() {
+		return batchPeriod;
+	}
+
+	public void setBatchPeriod(Integer batchPeriod) {
+		this.batchPeriod = batchPeriod;
+	}
+
+	public PointValueBatchFormat getBatchFormat() {
+		return batchFormat == null ? PointValueBatchFormat.JSON : batchFormat;
+	}
+
+	public void setBatchFormat(PointValueBatchFormat batchFormat) {
+		this.batchFormat = batchFormat;
+	}
+
 }
@@ -3,33 +3,30 @@
  */
 package com.serotonin.m2m2.web.mvc.rest.v1.websockets.pointValue;
 
+import java.nio.ByteBuffer;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.util.UriComponentsBuilder;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.serotonin.m2m2.Common;
-import com.serotonin.m2m2.DataTypes;
 import com.serotonin.m2m2.db.dao.DataPointDao;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
-import com.serotonin.m2m2.rt.dataImage.DataPointListener;
-import com.serotonin.m2m2.rt.dataImage.DataPointRT;
-import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.vo.User;
 import com.serotonin.m2m2.vo.permission.Permissions;
-import com.serotonin.m2m2.web.mvc.rest.v1.model.pointValue.PointValueTimeModel;
 import com.serotonin.m2m2.web.mvc.rest.v1.websockets.MangoWebSocketErrorType;
 import com.serotonin.m2m2.web.mvc.rest.v1.websockets.MangoWebSocketHandler;
+import com.serotonin.m2m2.web.mvc.rest.v1.websockets.WebSocketClosedException;
 import com.serotonin.m2m2.web.mvc.rest.v1.websockets.WebSocketSendException;
-import com.serotonin.m2m2.web.taglib.Functions;
+import com.serotonin.m2m2.web.mvc.rest.v1.websockets.pointValue.PointValueBroadcastHub.BroadcastEvent;
 
 /**
  * Event handler for single web socket session to publish events for multiple data points
@@ -39,9 +36,15 @@ import com.serotonin.m2m2.web.taglib.Functions;
  */
 public class PointValueWebSocketHandler extends MangoWebSocketHandler {
 
+    @Autowired
+    private PointValueBroadcastHub broadcastHub;
+
     private final Map<Integer, PointValueWebSocketListener> pointIdToListenerMap = new HashMap<>();
     private boolean connectionClosed = false;
     private WebSocketSession session;
+    //Collects the events to send them together, null to send each event as it happens
+    private volatile PointValueBatcher batcher;
+    private int nextPointIndex;
 
     public PointValueWebSocketHandler(){
         super();
@@ -60,6 +63,7 @@ public class PointValueWebSocketHandler extends MangoWebSocketHandler {
         synchronized(pointIdToListenerMap) {
             if (!this.connectionClosed) {
                 this.connectionClosed = true;
+                this.batcher = null;
                 for (Entry<Integer, PointValueWebSocketListener> entry : pointIdToListenerMap.entrySet()) {
                     PointValueWebSocketListener pub = entry.getValue();
                     pub.terminate();
@@ -83,6 +87,13 @@ public class PointValueWebSocketHandler extends MangoWebSocketHandler {
             }
             PointValueRegistrationModel model = this.jacksonMapper.readValue(message.getPayload(), PointValueRegistrationModel.class);
 
+            if (model.getBatchPeriod() != null) {
+                configureBatching(model.getBatchPeriod(), model.getBatchFormat());
+                if (model.getDataPointXid() == null) {
+                    return;
+                }
+            }
+
             // Handle message.getPayload() here
             DataPointVO vo = DataPointDao.getInstance().getByXid(model.getDataPointXid());
             if (vo == null) {
@@ -116,11 +127,14 @@ public class PointValueWebSocketHandler extends MangoWebSocketHandler {
                         publisher.setEventTypes(eventsTypes);
                     }
                 } else if (!eventsTypes.isEmpty()) {
-                    publisher = new PointValueWebSocketListener(vo, eventsTypes);
-                    publisher.initialize();
-                    //Immediately send the most recent Point Value and the status of the data point
-                    publisher.sendPointStatus();
+                    publisher = new PointValueWebSocketListener(vo, eventsTypes, nextPointIndex++);
                     pointIdToListenerMap.put(dataPointId, publisher);
+                    PointValueBatcher batcher = this.batcher;
+                    if (batcher != null && batcher.getFormat() == PointValueBatchFormat.BINARY) {
+                        sendPointIndex(publisher);
+                    }
+                    //Immediately sends the most recent Point Value and the status of the data point
+                    publisher.initialize();
                 }
             }
 
@@ -139,195 +153,115 @@ public class PointValueWebSocketHandler extends MangoWebSocketHandler {
         }
     }
 
-    protected void sendMessage(Object payload) throws JsonProcessingException, Exception {
-        super.sendMessage(session, payload);
-    }
-
     /**
-     * @author Terry Packer
-     * @author Jared Wiltshire
+     * Change how events are batched for this session
+     * @param period ms to collect events for, 0 to send each event
+     * @param format
      */
-    public class PointValueWebSocketListener implements DataPointListener {
-        private DataPointVO vo;
-        private DataPointRT rt;
-        private UriComponentsBuilder imageServletBuilder;
-        private volatile EnumSet<PointValueEventType> eventTypes;
-
-        public PointValueWebSocketListener(DataPointVO vo,  Set<PointValueEventType> eventTypes) {
-            this.vo = vo;
-
-            //If we are an image type we should build the URLS
-            if(vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE)
-                imageServletBuilder = UriComponentsBuilder.fromPath("/imageValue/{ts}_{id}.jpg");
-
-            this.setEventTypes(eventTypes);
-        }
-
-        private void sendNotification(PointValueEventType eventType, PointValueTime pvt) throws JsonProcessingException, Exception {
-            boolean enabled = false;
-            boolean pointEnabled = false;
-            Map<String,Object> attributes = null;
-            Double convertedValue = null;
-            String renderedValue = null;
-            DataPointRT dprt = rt;
-            if (dprt != null) {
-                enabled = true; //We are enabled
-                pointEnabled = true; //Must be if we are running
-                if (pvt == null) {
-                    pvt = dprt.getPointValue(); //Get the value
-                }
-                attributes = new HashMap<>(dprt.getAttributes());
-                renderedValue = Functions.getRenderedText(vo, pvt);
-                if (vo.getPointLocator().getDataTypeId() == DataTypes.NUMERIC && (pvt != null)) {
-                    convertedValue = vo.getUnit().getConverterTo(vo.getRenderedUnit()).convert(pvt.getValue().getDoubleValue());
-                }
-            }else {
-              pointEnabled = DataPointDao.getInstance().isEnabled(vo.getId());
+    private void configureBatching(int period, PointValueBatchFormat format) throws JsonProcessingException {
+        synchronized(pointIdToListenerMap) {
+            PointValueBatcher old = this.batcher;
+            if (old == null ? period <= 0 : old.getPeriod() == period && old.getFormat() == format) {
+                return;
             }
 
-            PointValueTimeModel pvtModel = null;
-            if (pvt != null) {
-                pvtModel = new PointValueTimeModel(pvt);
-                if (vo.getPointLocator().getDataTypeId() == DataTypes.IMAGE) {
-                    pvtModel.setValue(imageServletBuilder.buildAndExpand(pvt.getTime(), vo.getId()).toUri().toString());
-                }
+            this.batcher = period > 0 ? new PointValueBatcher(period, format, batchSender) : null;
+            if (old != null) {
+                old.flush();
             }
-            sendMessage(new PointValueEventModel(vo.getXid(), enabled, pointEnabled, attributes, eventType, pvtModel, renderedValue, convertedValue));
-        }
 
-        /**
-         * Initial response upon new registration
-         */
-        public void sendPointStatus() {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
+            //Tell the client the index of the points already registered
+            if (this.batcher != null && format == PointValueBatchFormat.BINARY
+                    && (old == null || old.getFormat() != PointValueBatchFormat.BINARY)) {
+                for (PointValueWebSocketListener listener : pointIdToListenerMap.values()) {
+                    sendPointIndex(listener);
                 }
-
-                rt = Common.runtimeManager.getDataPoint(vo.getId()); //Set us up
-                sendNotification(PointValueEventType.REGISTERED, null);
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
             }
         }
+    }
 
-        @Override
-        public void pointInitialized() {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
-
-                rt = Common.runtimeManager.getDataPoint(vo.getId()); //Set us up
-
-                if (this.eventTypes.contains(PointValueEventType.INITIALIZE)) {
-                    sendNotification(PointValueEventType.INITIALIZE, null);
-                }
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
-            }
-        }
+    /**
+     * Send the index used for the point in binary batches
+     */
+    private void sendPointIndex(PointValueWebSocketListener listener) throws JsonProcessingException {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("xid", listener.vo.getXid());
+        payload.put("index", listener.index);
+        sendMessage(session, payload);
+    }
 
+    private final PointValueBatcher.Sender batchSender = new PointValueBatcher.Sender() {
         @Override
-        public void pointUpdated(PointValueTime newValue) {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
-
-                if (this.eventTypes.contains(PointValueEventType.UPDATE)) {
-                    sendNotification(PointValueEventType.UPDATE, newValue);
-                }
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
+        public void sendText(String message) {
+            if (!session.isOpen()) {
+                return;
             }
-        }
-
-        @Override
-        public void pointChanged(PointValueTime oldValue, PointValueTime newValue) {
             try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
-
-                if (this.eventTypes.contains(PointValueEventType.CHANGE)) {
-                    sendNotification(PointValueEventType.CHANGE, newValue);
-                }
-            } catch (WebSocketSendException e) {
+                sendStringMessageAsync(session, message);
+            } catch (WebSocketSendException | WebSocketClosedException e) {
                 log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
             }
         }
 
         @Override
-        public void pointSet(PointValueTime oldValue, PointValueTime newValue) {
+        public void sendBinary(ByteBuffer message) {
+            if (!session.isOpen()) {
+                return;
+            }
             try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
-
-                if (this.eventTypes.contains(PointValueEventType.SET)) {
-                    sendNotification(PointValueEventType.SET, newValue);
-                }
-            } catch (WebSocketSendException e) {
+                sendBinaryMessageAsync(session, message, null);
+            } catch (WebSocketSendException | WebSocketClosedException e) {
                 log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
             }
         }
+    };
 
-        @Override
-        public void pointBackdated(PointValueTime value) {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
+    protected void sendMessage(Object payload) throws JsonProcessingException, Exception {
+        super.sendMessage(session, payload);
+    }
 
-                if (this.eventTypes.contains(PointValueEventType.BACKDATE)) {
-                    sendNotification(PointValueEventType.BACKDATE, value);
-                }
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
-            }
+    /**
+     * Subscription of this session to the events of one point, the events are
+     * rendered once for every session by the {@link PointValueBroadcastHub}
+     *
+     * @author Terry Packer
+     * @author Jared Wiltshire
+     */
+    public class PointValueWebSocketListener implements PointValueBroadcastHub.Subscriber {
+        private DataPointVO vo;
+        private final int index;
+        private volatile EnumSet<PointValueEventType> eventTypes;
+
+        public PointValueWebSocketListener(DataPointVO vo,  Set<PointValueEventType> eventTypes, int index) {
+            this.vo = vo;
+            this.index = index;
+            this.setEventTypes(eventTypes);
         }
 
         @Override
-        public void attributeChanged(Map<String, Object> attributes) {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
-
-                if (this.eventTypes.contains(PointValueEventType.ATTRIBUTE_CHANGE)) {
-                    sendMessage(new PointValueEventModel(vo.getXid(), true, true, attributes, PointValueEventType.ATTRIBUTE_CHANGE, null, null, null));
-                }
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
-            }
+        public Set<PointValueEventType> getEventTypes() {
+            return eventTypes;
         }
 
         @Override
-        public void pointTerminated(DataPointVO dp) {
+        public void send(BroadcastEvent event) {
             try {
                 if (!session.isOpen() || getUser(session) == null) {
                     this.terminate();
+                    return;
                 }
 
-                this.rt = null;
-                if (this.eventTypes.contains(PointValueEventType.TERMINATE)){
-                    sendMessage(new PointValueEventModel(vo.getXid(), false, dp.isEnabled(), null, PointValueEventType.TERMINATE, null, null, null));
+                PointValueBatcher batcher = PointValueWebSocketHandler.this.batcher;
+                if (batcher != null) {
+                    batcher.add(event, index);
+                    return;
                 }
+
+                //Only keep the latest waiting value of the point for a slow client
+                Object coalesceKey = null;
+                if (event.getEventType().isCoalesced())
+                    coalesceKey = event.getDataPointId() + ":" + event.getEventType();
+                sendStringMessageAsync(session, event.getJson(), coalesceKey);
             } catch (WebSocketSendException e) {
                 log.warn("Error sending websocket message", e);
             } catch (Exception e) {
@@ -343,34 +277,15 @@ public class PointValueWebSocketHandler extends MangoWebSocketHandler {
             this.eventTypes = EnumSet.copyOf(eventTypes);
         }
 
+        /**
+         * Subscribe to the point, immediately sends the most recent Point Value and the status of the data point
+         */
         public void initialize() {
-            Common.runtimeManager.addDataPointListener(vo.getId(), this);
+            broadcastHub.subscribe(vo, this);
         }
 
         public void terminate() {
-            Common.runtimeManager.removeDataPointListener(vo.getId(), this);
-        }
-
-        @Override
-        public void pointLogged(PointValueTime value) {
-            try {
-                if (!session.isOpen() || getUser(session) == null) {
-                    this.terminate();
-                }
-
-                if (this.eventTypes.contains(PointValueEventType.LOGGED)) {
-                    sendNotification(PointValueEventType.LOGGED, value);
-                }
-            } catch (WebSocketSendException e) {
-                log.warn("Error sending websocket message", e);
-            } catch (Exception e) {
-                log.error(e);
-            }
-        }
-
-        @Override
-        public String getListenerName() {
-            return "Websocket for DP " + this.vo.getXid() + "'s point values.";
+            broadcastHub.unsubscribe(vo.getId(), this);
         }
     }
 }
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.dataImport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.dataImport.CsvImportJob.Status;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.MockPointLocatorVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+import com.serotonin.m2m2.vo.export.ExportCsvStreamer;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Import a file in the export format on the job's thread and with workers
+ *
+ * @author Terry Packer
+ */
+public class CsvImportJobTest extends MangoTestBase {
+
+    private final List<DataPointVO> points = new ArrayList<>();
+    private final List<String[]> rows = new ArrayList<>();
+    private ExecutorService executor;
+    private File file;
+
+    @Before
+    public void createPoints() throws IOException {
+        MockDataSourceVO ds = new MockDataSourceVO();
+        ds.setXid(DataSourceDao.getInstance().generateUniqueXid());
+        ds.setName("Test DS");
+        DataSourceDao.getInstance().save(ds);
+        for (int i = 0; i < 3; i++) {
+            DataPointVO vo = new DataPointVO();
+            vo.setId(Common.NEW_ID);
+            vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+            vo.setXid("DP_import_" + i);
+            vo.setName(vo.getXid());
+            vo.setDataSourceId(ds.getId());
+            DataPointDao.getInstance().saveDataPoint(vo);
+            points.add(vo);
+        }
+        file = File.createTempFile("dataImport", ".csv");
+    }
+
+    @After
+    public void cleanup() {
+        if (executor != null)
+            executor.shutdownNow();
+        file.delete();
+    }
+
+    @Test
+    public void testImport() throws IOException {
+        add(points.get(0).getXid(), 3000, "3");
+        add(points.get(0).getXid(), 1000, "1");
+        add(points.get(1).getXid(), 2000, "2");
+        add("DP_missing", 1000, "1");
+        add("", 1000, "1");
+        rows.add(new String[] {points.get(1).getXid(), "short row"});
+
+        CsvImportJob job = run(null, 1);
+        assertEquals(Status.SUCCESS, job.getStatus());
+        assertEquals(3, job.getRowsImported());
+        assertEquals(3, job.getRowsRejected());
+        assertEquals(3, job.getErrorMessages().size());
+        assertFalse(file.exists());
+
+        List<PointValueTime> values = values(points.get(0));
+        assertEquals(2, values.size());
+        assertEquals(1000, values.get(0).getTime());
+        assertEquals(1d, values.get(0).getDoubleValue(), 0);
+        assertEquals(3000, values.get(1).getTime());
+        assertEquals(1, values(points.get(1)).size());
+    }
+
+    @Test
+    public void testWorkers() throws IOException {
+        for (int i = 0; i < 1000; i++) {
+            for (DataPointVO vo : points)
+                add(vo.getXid(), 1000 + i * 1000L, Integer.toString(i));
+        }
+        add("DP_missing", 1000, "1");
+
+        executor = Executors.newFixedThreadPool(2);
+        CsvImportJob job = run(executor, 2);
+        assertEquals(Status.SUCCESS, job.getStatus());
+        assertEquals(3000, job.getRowsImported());
+        assertEquals(1, job.getRowsRejected());
+        for (DataPointVO vo : points) {
+            List<PointValueTime> values = values(vo);
+            assertEquals(1000, values.size());
+            assertEquals(999d, values.get(999).getDoubleValue(), 0);
+        }
+    }
+
+    @Test
+    public void testCancelled() throws IOException {
+        add(points.get(0).getXid(), 1000, "1");
+        CsvImportJob job = new CsvImportJob(write(), 1, Common.getTranslations(), null, 1);
+        job.cancel();
+        job.run();
+        assertEquals(Status.CANCELLED, job.getStatus());
+        assertEquals(0, job.getRowsImported());
+        assertEquals(0, values(points.get(0)).size());
+        assertFalse(file.exists());
+    }
+
+    private CsvImportJob run(ExecutorService executor, int workers) throws IOException {
+        CsvImportJob job = new CsvImportJob(write(), 1, Common.getTranslations(), executor, workers);
+        job.run();
+        return job;
+    }
+
+    private void add(String xid, long time, String value) {
+        String[] row = new String[ExportCsvStreamer.columns];
+        row[0] = xid;
+        row[3] = ExportCsvStreamer.dtf.print(time);
+        row[4] = value;
+        row[7] = "add";
+        rows.add(row);
+    }
+
+    /**
+     * Write the header and rows to the file
+     */
+    private File write() throws IOException {
+        try (CSVWriter writer = new CSVWriter(new FileWriter(file))) {
+            String[] header = new String[ExportCsvStreamer.columns];
+            for (int i = 0; i < header.length; i++)
+                header[i] = "column" + i;
+            writer.writeNext(header);
+            for (String[] row : rows)
+                writer.writeNext(row);
+        }
+        return file;
+    }
+
+    private static List<PointValueTime> values(DataPointVO vo) {
+        return Common.databaseProxy.newPointValueDao().getPointValuesBetween(vo.getId(), 0, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.infiniteautomation.mango.rest.v2.dataImport;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.infiniteautomation.mango.rest.v2.exception.AbstractRestV2Exception;
+import com.infiniteautomation.mango.rest.v2.exception.AccessDeniedException;
+import com.infiniteautomation.mango.rest.v2.exception.BadRequestException;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.TemporaryResourceStatus;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResourceStatusUpdate;
+import com.infiniteautomation.mango.util.exception.NotFoundException;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.dataImport.CsvImportJob;
+import com.serotonin.m2m2.dataImport.CsvImportManager;
+import com.serotonin.m2m2.dataImport.CsvImportResponseModel;
+import com.serotonin.m2m2.dataImport.DataImportPermissionDefinition;
+import com.serotonin.m2m2.db.dao.SystemSettingsDao;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.permission.Permissions;
+import com.serotonin.m2m2.web.MediaTypes;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+
+/**
+ * Start, follow, cancel and remove the background CSV imports of the data import page
+ *
+ * @author Terry Packer
+ */
+@Api(value="CSV data import")
+@RestController
+@RequestMapping("/data-import/csv")
+public class CsvImportRestController {
+
+    @ApiOperation(
+            value = "Import a CSV file in the format of the point value export",
+            notes = "Values are imported in the background, use created header to track progress/cancel. " +
+                    "User must have the data import permission"
+            )
+    @RequestMapping(method = RequestMethod.POST, consumes=MediaTypes.CSV_VALUE)
+    public ResponseEntity<TemporaryResource<CsvImportResponseModel, AbstractRestV2Exception>> importCsv(
+            HttpServletRequest request,
+
+            @ApiParam(value = "Time to allow the import to run for (ms)", required = false, allowMultiple = false)
+            @RequestParam(value = "timeout", required = false)
+            Long timeout,
+
+            @AuthenticationPrincipal User user,
+            UriComponentsBuilder builder) throws IOException {
+
+        ensureImportPermission(user);
+        CsvImportManager manager = getManager();
+
+        File file = File.createTempFile("csvDataImport", ".csv");
+        try (OutputStream out = new FileOutputStream(file)) {
+            StreamUtils.copy(request.getInputStream(), out);
+        } catch(IOException e) {
+            file.delete();
+            throw e;
+        }
+
+        CsvImportJob job = manager.createJob(file, user, Common.getTranslations());
+        TemporaryResource<CsvImportResponseModel, AbstractRestV2Exception> response = manager.submit(job, user, timeout);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(builder.path("/data-import/csv/{id}").buildAndExpand(response.getId()).toUri());
+        return new ResponseEntity<>(response, headers, HttpStatus.CREATED);
+    }
+
+    @ApiOperation(value = "Get the status of an import using its id",
+            notes = "User can only get their own status unless they are an admin")
+    @RequestMapping(method = RequestMethod.GET, value="/{id}")
+    public TemporaryResource<CsvImportResponseModel, AbstractRestV2Exception> getImportStatus(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+
+            @AuthenticationPrincipal
+            User user) {
+
+        return getResource(id, user);
+    }
+
+    @ApiOperation(value = "Update an import using its id",
+            notes = "Only allowed operation is to change the status to CANCELLED. " +
+            "User can only update their own import unless they are an admin.")
+    @RequestMapping(method = RequestMethod.PUT, value="/{id}")
+    public TemporaryResource<CsvImportResponseModel, AbstractRestV2Exception> updateImport(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+
+            @RequestBody
+            TemporaryResourceStatusUpdate body,
+
+            @AuthenticationPrincipal
+            User user) {
+
+        TemporaryResource<CsvImportResponseModel, AbstractRestV2Exception> resource = getResource(id, user);
+
+        if (body.getStatus() == TemporaryResourceStatus.CANCELLED) {
+            resource.cancel();
+        } else {
+            throw new BadRequestException(new TranslatableMessage("rest.error.onlyCancel"));
+        }
+
+        return resource;
+    }
+
+    @ApiOperation(value = "Remove an import using its id",
+            notes = "Will only remove an import if it is complete. " +
+            "User can only remove their own import unless they are an admin.")
+    @RequestMapping(method = RequestMethod.DELETE, value="/{id}")
+    public void removeImport(
+            @ApiParam(value = "Temporary resource id", required = true, allowMultiple = false)
+            @PathVariable String id,
+
+            @AuthenticationPrincipal
+            User user) {
+
+        getResource(id, user).remove();
+    }
+
+    private TemporaryResource<CsvImportResponseModel, AbstractRestV2Exception> getResource(String id, User user) {
+        TemporaryResource<CsvImportResponseModel, AbstractRestV2Exception> resource = getManager().getResourceManager().get(id);
+
+        if (!user.hasAdminPermission() && user.getId() != resource.getUserId()) {
+            throw new AccessDeniedException();
+        }
+        return resource;
+    }
+
+    private CsvImportManager getManager() {
+        CsvImportManager manager = CsvImportManager.getInstance();
+        if (manager == null) {
+            throw new NotFoundException();
+        }
+        return manager;
+    }
+
+    private void ensureImportPermission(User user) {
+        if (!Permissions.hasPermission(user, SystemSettingsDao.instance.getValue(DataImportPermissionDefinition.PERMISSION))) {
+            throw new AccessDeniedException(new TranslatableMessage("common.default", "No " + DataImportPermissionDefinition.PERMISSION + " permission"));
+        }
+    }
+}
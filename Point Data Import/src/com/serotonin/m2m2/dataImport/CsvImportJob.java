@@ -0,0 +1,478 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.dataImport;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.infiniteautomation.mango.rest.v2.exception.AbstractRestV2Exception;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource.StatusUpdateException;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.i18n.TranslatableException;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.i18n.Translations;
+import com.serotonin.m2m2.rt.dataImage.AnnotatedPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.export.ExportCsvStreamer;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Imports a CSV file of point values in the export format.  The file is read on the
+ * job's thread and the rows are handed out in chunks to workers by point XID, so each
+ * point is handled by one worker and its values stay in order.  The workers parse the
+ * rows in parallel and save each point's values in time ordered batches.
+ *
+ * The chunk queues of the workers are bounded so the reader waits for the workers and
+ * values are saved synchronously so the database can't be flooded, the memory used
+ * doesn't depend on the size of the file.
+ *
+ * When run for a temporary resource the progress is reported to the resource about
+ * once a second and cancelling the resource cancels the import.
+ *
+ * @author Terry Packer
+ */
+public class CsvImportJob implements Runnable {
+    private static final Log LOG = LogFactory.getLog(CsvImportJob.class);
+
+    public enum Status {
+        WAITING, RUNNING, SUCCESS, CANCELLED, ERROR
+    }
+
+    //Tells a worker there are no more rows
+    private static final List<Row> END = new ArrayList<>();
+    //How often to update the progress of the resource
+    private static final long PROGRESS_PERIOD = 1000;
+
+    private final File file;
+    private final int userId;
+    private final Translations translations;
+    private final ExecutorService workerExecutor;
+    private final int workerCount;
+    private final int chunkSize;
+    private final int batchSize;
+    private final int maxWaiting;
+    private final int maxErrorMessages;
+
+    private volatile Status status = Status.WAITING;
+    private volatile boolean cancelled;
+    private volatile long started;
+    private volatile long finished;
+    private volatile CountingInputStream counter;
+    private final long fileSize;
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong rowsImported = new AtomicLong();
+    private final AtomicLong rowsDeleted = new AtomicLong();
+    private final AtomicLong rowsRejected = new AtomicLong();
+    private final List<String> errorMessages = new ArrayList<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private TemporaryResource<CsvImportResponseModel, AbstractRestV2Exception> resource;
+    private int maximum;
+    private long lastProgress;
+
+    /**
+     * @param file to import, deleted once the import is done
+     * @param userId
+     * @param translations for the error messages
+     * @param workerExecutor to run the workers on, null to parse and save on the job's thread
+     * @param workerCount
+     */
+    public CsvImportJob(File file, int userId, Translations translations, ExecutorService workerExecutor, int workerCount) {
+        this.file = file;
+        this.fileSize = file.length();
+        this.userId = userId;
+        this.translations = translations;
+        this.workerExecutor = workerExecutor;
+        this.workerCount = workerExecutor == null ? 1 : Math.max(1, workerCount);
+        this.chunkSize = Common.envProps.getInt("dataImport.csv.chunkSize", 1000);
+        this.batchSize = Common.envProps.getInt("dataImport.csv.batchSize", 1000);
+        this.maxWaiting = Common.envProps.getInt("dataImport.csv.maxWaitingValues", 100000);
+        this.maxErrorMessages = Common.envProps.getInt("dataImport.csv.maxErrorMessages", 1000);
+    }
+
+    /**
+     * Import the file for a resource, the resource is completed with the result unless it was
+     * cancelled or timed out
+     * @param resource
+     */
+    public void run(TemporaryResource<CsvImportResponseModel, AbstractRestV2Exception> resource) {
+        this.resource = resource;
+        //Progress is in kB so large files fit
+        this.maximum = (int) Math.max(1, fileSize / 1024);
+        try {
+            resource.progress(createResponse(), 0, maximum);
+        } catch (StatusUpdateException e) {
+            cancelled = true;
+        }
+        run();
+        try {
+            if (!resource.isComplete())
+                resource.success(createResponse());
+        } catch (StatusUpdateException e) {
+            //Cancelled or timed out as it finished
+        }
+    }
+
+    @Override
+    public void run() {
+        started = Common.timer.currentTimeMillis();
+        status = Status.RUNNING;
+        try (CountingInputStream input = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+                CSVReader csvReader = new CSVReader(new InputStreamReader(input))) {
+            counter = input;
+            importCsv(csvReader);
+            status = cancelled ? Status.CANCELLED : Status.SUCCESS;
+        } catch (Exception e) {
+            LOG.error("CSV import failed", e);
+            if (e instanceof TranslatableException)
+                addError(((TranslatableException) e).getTranslatableMessage());
+            else
+                addError(new TranslatableMessage("common.default", e.getMessage()));
+            status = Status.ERROR;
+        } finally {
+            finished = Common.timer.currentTimeMillis();
+            file.delete();
+            done.countDown();
+        }
+    }
+
+    private void importCsv(CSVReader csvReader) throws IOException, InterruptedException {
+        // Basic validation of header
+        String[] nextLine = csvReader.readNext();
+        if (nextLine == null) {
+            addError(new TranslatableMessage("dataImport.import.noData"));
+            return;
+        }
+        if (nextLine.length != ExportCsvStreamer.columns) {
+            addError(new TranslatableMessage("dataImport.import.invalidHeaders", nextLine.length, ExportCsvStreamer.columns));
+            return;
+        }
+
+        List<Worker> workers = new ArrayList<>(workerCount);
+        CountDownLatch workersDone = new CountDownLatch(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            Worker worker = new Worker(workersDone);
+            workers.add(worker);
+            if (workerExecutor != null)
+                workerExecutor.execute(worker);
+        }
+
+        List<List<Row>> chunks = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++)
+            chunks.add(new ArrayList<>(chunkSize));
+
+        try {
+            int row = 1;
+            while (!cancelled && (nextLine = csvReader.readNext()) != null) {
+                rowsRead.incrementAndGet();
+                updateProgress();
+                if (nextLine.length != ExportCsvStreamer.columns) {
+                    reject(new TranslatableMessage("dataImport.import.invalidLength", row));
+                } else if (StringUtils.isBlank(nextLine[0])) {
+                    reject(new TranslatableMessage("dataImport.import.badXid", nextLine[0], row));
+                } else {
+                    int index = (nextLine[0].hashCode() & Integer.MAX_VALUE) % workerCount;
+                    List<Row> chunk = chunks.get(index);
+                    chunk.add(new Row(row, nextLine));
+                    if (chunk.size() >= chunkSize) {
+                        workers.get(index).submit(chunk);
+                        chunks.set(index, new ArrayList<>(chunkSize));
+                    }
+                }
+                row++;
+            }
+
+            for (int i = 0; i < workerCount && !cancelled; i++) {
+                if (!chunks.get(i).isEmpty())
+                    workers.get(i).submit(chunks.get(i));
+            }
+        } finally {
+            for (Worker worker : workers)
+                worker.submit(END);
+            if (workerExecutor != null)
+                workersDone.await();
+        }
+    }
+
+    /**
+     * Report the progress to the resource, the import is cancelled once the resource is complete
+     */
+    private void updateProgress() {
+        if (resource == null)
+            return;
+        long now = Common.timer.currentTimeMillis();
+        if (now - lastProgress < PROGRESS_PERIOD)
+            return;
+        lastProgress = now;
+        CountingInputStream counter = this.counter;
+        int position = (int) Math.min(maximum, counter == null ? 0 : counter.getByteCount() / 1024);
+        try {
+            if (resource.isComplete())
+                cancelled = true;
+            else
+                resource.progress(createResponse(), position, maximum);
+        } catch (StatusUpdateException e) {
+            cancelled = true;
+        }
+    }
+
+    private void reject(TranslatableMessage message) {
+        rowsRejected.incrementAndGet();
+        addError(message);
+    }
+
+    private void addError(TranslatableMessage message) {
+        synchronized (errorMessages) {
+            if (errorMessages.size() < maxErrorMessages)
+                errorMessages.add(message.translate(translations));
+        }
+    }
+
+    /**
+     * Stop the import soon, the values of the rows the workers have already processed are saved
+     * and the rows waiting for a worker and the rest of the file are skipped
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Wait for the import to finish
+     * @param timeout ms
+     * @return true if the import is done
+     * @throws InterruptedException
+     */
+    public boolean await(long timeout) throws InterruptedException {
+        return done.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getRowsImported() {
+        return rowsImported.get();
+    }
+
+    public long getRowsDeleted() {
+        return rowsDeleted.get();
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected.get();
+    }
+
+    public List<String> getErrorMessages() {
+        synchronized (errorMessages) {
+            return new ArrayList<>(errorMessages);
+        }
+    }
+
+    /**
+     * @return the progress and results of the import
+     */
+    public CsvImportResponseModel createResponse() {
+        long end = isDone() ? finished : Common.timer.currentTimeMillis();
+        long elapsed = started == 0 ? 0 : end - started;
+        CountingInputStream counter = this.counter;
+        CsvImportResponseModel model = new CsvImportResponseModel();
+        model.setStatus(status);
+        model.setBytesRead(counter == null ? 0 : counter.getByteCount());
+        model.setFileSize(fileSize);
+        model.setRowsRead(rowsRead.get());
+        model.setRowsImported(rowsImported.get());
+        model.setRowsDeleted(rowsDeleted.get());
+        model.setRowsWithErrors(rowsRejected.get());
+        model.setRowsPerSecond(elapsed > 0 ? rowsRead.get() * 1000 / elapsed : 0);
+        model.setErrorMessages(getErrorMessages());
+        return model;
+    }
+
+    private static class Row {
+        private final int number;
+        private final String[] line;
+
+        Row(int number, String[] line) {
+            this.number = number;
+            this.line = line;
+        }
+    }
+
+    private static class PointEntry {
+        private final DataPointVO vo;
+        private final DataPointRT rt;
+        private List<PointValueTime> waiting = new ArrayList<>();
+
+        PointEntry(DataPointVO vo, DataPointRT rt) {
+            this.vo = vo;
+            this.rt = rt;
+        }
+    }
+
+    /**
+     * Parses and saves the rows of the points it was given
+     */
+    private class Worker implements Runnable {
+        private final BlockingQueue<List<Row>> chunks = new ArrayBlockingQueue<>(Common.envProps.getInt("dataImport.csv.workerQueueSize", 4));
+        private final CountDownLatch workersDone;
+        private final PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
+        private final Map<String, PointEntry> points = new HashMap<>();
+        //Points that don't exist
+        private final Map<String, Boolean> missing = new HashMap<>();
+        private int waitingCount;
+
+        Worker(CountDownLatch workersDone) {
+            this.workersDone = workersDone;
+        }
+
+        void submit(List<Row> chunk) throws InterruptedException {
+            if (workerExecutor == null) {
+                if (chunk == END)
+                    flushAll();
+                else
+                    process(chunk);
+            } else {
+                chunks.put(chunk);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<Row> chunk;
+                while ((chunk = chunks.take()) != END) {
+                    //Keep taking chunks when cancelled so the reader is never stuck
+                    if (!cancelled)
+                        process(chunk);
+                }
+                flushAll();
+            } catch (InterruptedException e) {
+                LOG.warn("CSV import worker interrupted");
+            } finally {
+                workersDone.countDown();
+            }
+        }
+
+        private void process(List<Row> chunk) {
+            for (Row row : chunk) {
+                try {
+                    process(row);
+                } catch (Exception e) {
+                    reject(new TranslatableMessage("dataImport.import.invalidRow", row.number, e.getMessage()));
+                }
+            }
+        }
+
+        private void process(Row row) {
+            String xid = row.line[0];
+            PointEntry point = points.get(xid);
+            if (point == null) {
+                if (missing.containsKey(xid)) {
+                    reject(new TranslatableMessage("dataImport.import.xidNotFound", xid, row.number));
+                    return;
+                }
+                DataPointVO vo = DataPointDao.getInstance().getDataPoint(xid);
+                if (vo == null) {
+                    missing.put(xid, Boolean.TRUE);
+                    reject(new TranslatableMessage("dataImport.import.xidNotFound", xid, row.number));
+                    return;
+                }
+                point = new PointEntry(vo, Common.runtimeManager.getDataPoint(vo.getId()));
+                points.put(xid, point);
+            }
+
+            //Add or delete or nothing
+            String modify = row.line[7];
+            if (StringUtils.equalsIgnoreCase("add", modify)) {
+                long time = ExportCsvStreamer.dtf.parseDateTime(row.line[3]).getMillis();
+                DataValue value = DataValue.stringToValue(row.line[4], point.vo.getPointLocator().getDataTypeId());
+                String annotation = row.line[6];
+                PointValueTime pvt;
+                if (annotation != null)
+                    pvt = new AnnotatedPointValueTime(value, time, new TranslatableMessage("common.default", annotation));
+                else
+                    pvt = new PointValueTime(value, time);
+
+                point.waiting.add(pvt);
+                waitingCount++;
+                if (point.waiting.size() >= batchSize)
+                    flush(point);
+                else if (waitingCount >= maxWaiting / workerCount)
+                    flushAll();
+            } else if (StringUtils.equalsIgnoreCase("delete", modify)) {
+                //Save the values before it so the delete applies to them
+                flush(point);
+                long time = ExportCsvStreamer.dtf.parseDateTime(row.line[3]).getMillis();
+                rowsDeleted.addAndGet(Common.runtimeManager.purgeDataPointValue(point.vo.getId(), time));
+            }
+        }
+
+        /**
+         * Save a point's waiting values in time order
+         */
+        private void flush(PointEntry point) {
+            List<PointValueTime> values = point.waiting;
+            if (values.isEmpty())
+                return;
+            point.waiting = new ArrayList<>();
+            waitingCount -= values.size();
+
+            values.sort((a, b) -> Long.compare(a.getTime(), b.getTime()));
+            int saved = 0;
+            try {
+                for (PointValueTime pvt : values) {
+                    if (point.rt == null)
+                        pointValueDao.savePointValueSync(point.vo.getId(), pvt, null);
+                    else
+                        point.rt.savePointValueDirectToCache(pvt, null, true, false);
+                    saved++;
+                }
+            } catch (Exception e) {
+                LOG.warn("Failed to save imported values for " + point.vo.getXid(), e);
+                rowsRejected.addAndGet(values.size() - saved);
+                addError(new TranslatableMessage("common.default", e.getMessage()));
+            } finally {
+                rowsImported.addAndGet(saved);
+            }
+        }
+
+        private void flushAll() {
+            for (PointEntry point : points.values())
+                flush(point);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.dataImport;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+import com.infiniteautomation.mango.rest.v2.exception.AbstractRestV2Exception;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.MangoTaskTemporaryResourceManager;
+import com.infiniteautomation.mango.rest.v2.temporaryResource.TemporaryResource;
+import com.infiniteautomation.mango.rest.v2.util.ModuleThreadPools;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.i18n.Translations;
+import com.serotonin.m2m2.vo.User;
+
+/**
+ * Runs CSV imports in the background as temporary resources so they can be followed,
+ * cancelled and removed at /rest/v2/data-import/csv/{id}.  Only dataImport.csv.jobs
+ * imports run at once, each with dataImport.csv.workers workers, the others wait their
+ * turn.  Imports are cancelled after dataImport.csv.timeout ms and finished imports
+ * are kept for dataImport.csv.expiration ms so their results can be read.
+ *
+ * @author Terry Packer
+ */
+public class CsvImportManager {
+
+    public static final String RESOURCE_TYPE = "CSV_DATA_IMPORT";
+
+    private static volatile CsvImportManager instance;
+
+    private final int workers;
+    private final long expiration;
+    private final long timeout;
+    private final Semaphore running;
+    private final ExecutorService workerExecutor;
+    private final MangoTaskTemporaryResourceManager<CsvImportResponseModel> resourceManager = new MangoTaskTemporaryResourceManager<>();
+
+    public CsvImportManager(int maxJobs, int workers, long expiration, long timeout) {
+        this.workers = workers;
+        this.expiration = expiration;
+        this.timeout = timeout;
+        this.running = new Semaphore(maxJobs, true);
+        //Enough workers for every job that can run at once
+        this.workerExecutor = ModuleThreadPools.newFixedThreadPool("CSV import worker", maxJobs * workers);
+    }
+
+    /**
+     * @return the manager, null if the module is not running
+     */
+    public static CsvImportManager getInstance() {
+        return instance;
+    }
+
+    public static void start() {
+        int maxJobs = Math.max(1, Common.envProps.getInt("dataImport.csv.jobs", 1));
+        int workers = Math.max(1, Common.envProps.getInt("dataImport.csv.workers", Runtime.getRuntime().availableProcessors()));
+        long expiration = Common.envProps.getLong("dataImport.csv.expiration", 60 * 60 * 1000);
+        long timeout = Common.envProps.getLong("dataImport.csv.timeout", 24 * 60 * 60 * 1000);
+        instance = new CsvImportManager(maxJobs, workers, expiration, timeout);
+    }
+
+    /**
+     * Cancel the imports and stop the threads
+     */
+    public static void stop() {
+        CsvImportManager manager = instance;
+        instance = null;
+        if (manager != null)
+            manager.shutdown();
+    }
+
+    /**
+     * @param file to import, deleted once imported
+     * @param user
+     * @param translations
+     * @return a job that uses the manager's workers
+     */
+    public CsvImportJob createJob(File file, User user, Translations translations) {
+        return new CsvImportJob(file, user.getId(), translations, workerExecutor, workers);
+    }
+
+    /**
+     * Queue a job to be run
+     * @param job
+     * @param user
+     * @param timeout time to allow the import to run for, null for dataImport.csv.timeout
+     * @return the resource to follow the import
+     */
+    public TemporaryResource<CsvImportResponseModel, AbstractRestV2Exception> submit(CsvImportJob job, User user, Long timeout) {
+        return resourceManager.newTemporaryResource(RESOURCE_TYPE, null, user.getId(), expiration,
+                timeout == null ? this.timeout : timeout,
+                (resource, taskUser) -> {
+                    running.acquire();
+                    try {
+                        job.run(resource);
+                    } finally {
+                        running.release();
+                    }
+                    return null;
+                });
+    }
+
+    public MangoTaskTemporaryResourceManager<CsvImportResponseModel> getResourceManager() {
+        return resourceManager;
+    }
+
+    private void shutdown() {
+        for (TemporaryResource<CsvImportResponseModel, AbstractRestV2Exception> resource : resourceManager.list()) {
+            if (!resource.isComplete())
+                resource.cancel();
+        }
+        workerExecutor.shutdown();
+    }
+}
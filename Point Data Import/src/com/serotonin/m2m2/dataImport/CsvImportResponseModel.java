@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.dataImport;
+
+import java.util.List;
+
+/**
+ * Progress and results of a CSV import
+ *
+ * @author Terry Packer
+ */
+public class CsvImportResponseModel {
+
+    private CsvImportJob.Status status;
+    private long bytesRead;
+    private long fileSize;
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsDeleted;
+    private long rowsWithErrors;
+    private long rowsPerSecond;
+    private List<String> errorMessages;
+
+    /**
+     * @return the status of the import
+     */
+    public CsvImportJob.Status getStatus() {
+        return status;
+    }
+    /**
+     * @param status the status to set
+     */
+    public void setStatus(CsvImportJob.Status status) {
+        this.status = status;
+    }
+    /**
+     * @return the number of bytes of the file read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    /**
+     * @param bytesRead the bytesRead to set
+     */
+    public void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+    /**
+     * @return the size of the file
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+    /**
+     * @param fileSize the fileSize to set
+     */
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+    /**
+     * @return the number of rows read
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+    /**
+     * @param rowsRead the rowsRead to set
+     */
+    public void setRowsRead(long rowsRead) {
+        this.rowsRead = rowsRead;
+    }
+    /**
+     * @return the number of values saved
+     */
+    public long getRowsImported() {
+        return rowsImported;
+    }
+    /**
+     * @param rowsImported the rowsImported to set
+     */
+    public void setRowsImported(long rowsImported) {
+        this.rowsImported = rowsImported;
+    }
+    /**
+     * @return the number of values deleted
+     */
+    public long getRowsDeleted() {
+        return rowsDeleted;
+    }
+    /**
+     * @param rowsDeleted the rowsDeleted to set
+     */
+    public void setRowsDeleted(long rowsDeleted) {
+        this.rowsDeleted = rowsDeleted;
+    }
+    /**
+     * @return the number of rows that could not be imported
+     */
+    public long getRowsWithErrors() {
+        return rowsWithErrors;
+    }
+    /**
+     * @param rowsWithErrors the rowsWithErrors to set
+     */
+    public void setRowsWithErrors(long rowsWithErrors) {
+        this.rowsWithErrors = rowsWithErrors;
+    }
+    /**
+     * @return the rowsPerSecond
+     */
+    public long getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+    /**
+     * @param rowsPerSecond the rowsPerSecond to set
+     */
+    public void setRowsPerSecond(long rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+    /**
+     * @return the translated errors, limited to dataImport.csv.maxErrorMessages
+     */
+    public List<String> getErrorMessages() {
+        return errorMessages;
+    }
+    /**
+     * @param errorMessages the errorMessages to set
+     */
+    public void setErrorMessages(List<String> errorMessages) {
+        this.errorMessages = errorMessages;
+    }
+
+}
@@ -1,8 +1,9 @@
 package com.serotonin.m2m2.dataImport;
 
-import java.io.IOException;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -10,30 +11,20 @@ import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
-import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.StreamUtils;
 
 import com.serotonin.m2m2.Common;
-import com.serotonin.m2m2.db.dao.DataPointDao;
 import com.serotonin.m2m2.db.dao.DataSourceDao;
-import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.db.dao.SystemSettingsDao;
 import com.serotonin.m2m2.i18n.TranslatableException;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.i18n.Translations;
-import com.serotonin.m2m2.rt.dataImage.AnnotatedPointValueTime;
-import com.serotonin.m2m2.rt.dataImage.DataPointRT;
-import com.serotonin.m2m2.rt.dataImage.PointValueTime;
-import com.serotonin.m2m2.rt.dataImage.types.DataValue;
-import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.vo.User;
 import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
-import com.serotonin.m2m2.vo.export.ExportCsvStreamer;
 import com.serotonin.m2m2.vo.permission.PermissionException;
 import com.serotonin.m2m2.vo.permission.Permissions;
 import com.serotonin.m2m2.web.mvc.controller.FileUploadController;
 
-import au.com.bytecode.opencsv.CSVReader;
-
 
 
 public class DataImportController extends FileUploadController {
@@ -59,143 +50,49 @@ public class DataImportController extends FileUploadController {
 		List<String> errorMessages = new ArrayList<String>();
 		model.put("errorMessages", errorMessages);
 		
-		CSVReader csvReader = new CSVReader(new InputStreamReader(input));
+		File file = null;
 		try {
-            importCsv(csvReader, model, translations, errorMessages);
-        }
-        catch (Exception e) {
-        	if(e instanceof TranslatableException)
-        		errorMessages.add(((TranslatableException)e).getTranslatableMessage().translate(translations));
-        	else
-        		errorMessages.add(e.getMessage());
-        }finally{
-        	model.put("hasImportErrors", errorMessages.size() > 0);
-        	try {
-				csvReader.close();
-			} catch (IOException e) {
-				errorMessages.add(e.getMessage());
-			}
-        }
+		    //Copy the upload so it can be imported after the request is done
+		    file = File.createTempFile("csvDataImport", ".csv");
+		    try (OutputStream out = new FileOutputStream(file)) {
+		        StreamUtils.copy(input, out);
+		    }
+		    
+		    CsvImportJob job;
+		    String importId = null;
+		    CsvImportManager manager = CsvImportManager.getInstance();
+		    if (manager == null) {
+		        job = new CsvImportJob(file, Common.getUser(request).getId(), translations, null, 1);
+		        job.run();
+		    } else {
+		        User user = Common.getUser(request);
+		        job = manager.createJob(file, user, translations);
+		        importId = manager.submit(job, user, null).getId();
+		        job.await(Common.envProps.getLong("dataImport.csv.waitMs", 10000));
+		    }
+		    file = null;
+		    
+		    //Setup results
+		    model.put("importId", importId);
+		    model.put("rowsImported", job.getRowsImported());
+		    model.put("rowsDeleted", job.getRowsDeleted());
+		    model.put("rowsWithErrors", job.getRowsRejected());
+		    errorMessages.addAll(job.getErrorMessages());
+		    if (!job.isDone())
+		        model.put("importRunning", new TranslatableMessage("dataImport.import.running", importId).translate(translations));
+		}
+		catch (Exception e) {
+		    if(e instanceof TranslatableException)
+		        errorMessages.add(((TranslatableException)e).getTranslatableMessage().translate(translations));
+		    else
+		        errorMessages.add(e.getMessage());
+		}finally{
+		    model.put("hasImportErrors", errorMessages.size() > 0);
+		    if (file != null)
+		        file.delete();
+		}
 	}
- 
-
-    /**
-     * The file needs to be in the format:
-     * 
-     * Data Point XID, Device Name, Point name, Time, Value, Rendered, Annotation, Modify(Not used yet)
-     * 
-     * 
-     * @param reader
-     * @param model
-     * @return
-     * @throws IOException
-     * @throws TranslatableException
-     */
-    private void importCsv(CSVReader csvReader, Map<String, Object> model, Translations translations, List<String> errorMessages) throws IOException, TranslatableException {
-    	
-        DataPointDao dataPointDao = DataPointDao.getInstance();
-        PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
-        
-        int rowErrors = 0;
-        int rowsImported = 0;
-        int rowsDeleted = 0;
-        
-        // Basic validation of header
-        String[] nextLine = csvReader.readNext();
-        if (nextLine == null){
-        	errorMessages.add(new TranslatableMessage("dataImport.import.noData").translate(translations));
-        	return;
-        }
-        if (nextLine.length != ExportCsvStreamer.columns){
-        	errorMessages.add(new TranslatableMessage("dataImport.import.invalidHeaders", nextLine.length, ExportCsvStreamer.columns).translate(translations));
-        	return;
-        }
-
-        //Map of XIDs to non-running data points
-        Map<String, DataPointVO> voMap = new HashMap<String, DataPointVO>();
-        //Map of XIDs to running data points
-        Map<String, DataPointRT> rtMap = new HashMap<String, DataPointRT>();
-        
-        //Read in all the rows
-        int row = 1;
-        String xid;
-        DataPointVO vo;
-        DataPointRT rt;
-        long time;
-        DataValue value;
-        PointValueTime pvt;
-
-        while ((nextLine = csvReader.readNext()) != null) {
-
-        	if(nextLine.length != ExportCsvStreamer.columns){
-        		errorMessages.add(new TranslatableMessage("dataImport.import.invalidLength", row).translate(translations));
-        		rowErrors++;
-        		row++;
-        		continue;
-        	}
-        	
-        	//Check XID
-        	xid = nextLine[0];
-        	if (StringUtils.isBlank(xid)){
-        		errorMessages.add(new TranslatableMessage("dataImport.import.badXid", xid, row).translate(translations));
-        		rowErrors++;
-        		row++;
-        		continue;
-        	}
-        	//First Check to see if we already have a point
-        	vo = voMap.get(xid);
-        	rt = rtMap.get(xid);
-        	
-        	//We will always have the vo in the map but the RT may be null if the point isn't running
-        	if(vo == null){
-        		vo = dataPointDao.getDataPoint(xid);
-	            if (vo == null){
-	            	errorMessages.add(new TranslatableMessage("dataImport.import.xidNotFound", xid, row).translate(translations));
-	            	rowErrors++;
-	            	row++;
-	            	continue;
-	            }
-	        	rt = Common.runtimeManager.getDataPoint(vo.getId());
 	
-        		rtMap.put(xid, rt);
-        		voMap.put(xid, vo);
-        	}
-            //Add or delete or nothing
-        	String modify = nextLine[7];
-        	if(StringUtils.equalsIgnoreCase("add", modify)){
-	        	//Going to insert some data
-	            time = ExportCsvStreamer.dtf.parseDateTime(nextLine[3]).getMillis();
-	            value = DataValue.stringToValue(nextLine[4], vo.getPointLocator().getDataTypeId());
-	            //Get Annotation
-	            String annotation = nextLine[6];
-	            if(annotation != null)
-	            	pvt = new AnnotatedPointValueTime(value, time, new TranslatableMessage("common.default", annotation));
-	            else
-	            	pvt = new PointValueTime(value, time);
-	            
-	        	if(rt == null){
-	        		//Insert Via DAO
-	        		pointValueDao.savePointValueAsync(vo.getId(), pvt, null);
-	        	}else{
-	        		//Insert Via RT
-	        		rt.savePointValueDirectToCache(pvt, null, true, true);
-	        	}
-	        	rowsImported++;
-        	}else if(StringUtils.equalsIgnoreCase("delete", modify)){
-        		//Delete this entry
-	            time = ExportCsvStreamer.dtf.parseDateTime(nextLine[3]).getMillis();
-	            rowsDeleted += Common.runtimeManager.purgeDataPointValue(vo.getId(), time);
-        	}
-        	row++;
-        }
- 
-        //Setup results
-        model.put("rowsImported", rowsImported);
-        model.put("rowsDeleted", rowsDeleted);
-        model.put("rowsWithErrors", rowErrors);
-        
-    }
-    
     Map<Integer, DataSourceVO<?>> cachedDataSources = new HashMap<>();
     
     DataSourceVO<?> getDataSource(int dataSourceId) {
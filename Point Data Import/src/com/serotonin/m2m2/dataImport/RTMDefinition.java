@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.dataImport;
+
+import com.serotonin.m2m2.module.RuntimeManagerDefinition;
+
+/**
+ * Starts and stops the background CSV imports
+ *
+ * @author Terry Packer
+ */
+public class RTMDefinition extends RuntimeManagerDefinition {
+
+    @Override
+    public int getInitializationPriority() {
+        return 10;
+    }
+
+    @Override
+    public void initialize(boolean safe) {
+        CsvImportManager.start();
+    }
+
+    @Override
+    public void terminate() {
+        CsvImportManager.stop();
+    }
+}
@@ -8,9 +8,15 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.infiniteautomation.mango.monitor.AtomicIntegerMonitor;
+import com.infiniteautomation.mango.monitor.ValueMonitorOwner;
 import com.infiniteautomation.mango.spring.service.MangoJavaScriptService;
 import com.infiniteautomation.mango.util.script.CompiledMangoJavaScript;
 import com.infiniteautomation.mango.util.script.MangoJavaScriptResult;
@@ -45,6 +51,8 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
     public static final String LOG_FILE_PREFIX = "pointLinkScript-";
     public static final String CONTEXT_SOURCE_VAR_NAME = "source";
     public static final String CONTEXT_TARGET_VAR_NAME = "target";
+    public static final String EXECUTION_TIME_MONITOR_PREFIX = "com.serotonin.m2m2.pointLinks.PointLinkRT.EXECUTION_TIME.";
+    public static final String COALESCED_MONITOR_PREFIX = "com.serotonin.m2m2.pointLinks.PointLinkRT.COALESCED.";
     private final PointLinkVO vo;
     private final SystemEventType eventType;
     private final SystemEventType alreadyRunningEvent;
@@ -56,8 +64,30 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
     //Added to stop excessive point link calls
     private volatile Boolean ready;
 
-    public PointLinkRT(PointLinkVO vo) {
+    //Executor to run the link on, values that arrive while busy replace the pending value
+    private final ExecutorService executor;
+    private final AtomicReference<PendingValue> pending = new AtomicReference<>();
+    private final AtomicBoolean busy = new AtomicBoolean();
+    private final AtomicIntegerMonitor executionTimeMonitor;
+    private final AtomicIntegerMonitor coalescedMonitor;
+    private volatile int lastExecutionTime;
+    private final PointLinkSetPointBatcher batcher;
+
+    //Points the script context was initialized with, re-bound when they are restarted
+    private volatile boolean contextBound;
+    private DataPointRT boundSource;
+    private DataPointRT boundTarget;
+
+    /**
+     * @param vo
+     * @param executor to run the link on with updates coalesced while it is busy,
+     *  null to run it on the notifying thread and reject updates while busy
+     * @param batcher to write the target point with the other sets to its data source
+     */
+    public PointLinkRT(PointLinkVO vo, ExecutorService executor, PointLinkSetPointBatcher batcher) {
         this.vo = vo;
+        this.executor = executor;
+        this.batcher = batcher;
         eventType = new SystemEventType(SystemEvent.TYPE_NAME, vo.getId(),
                 DuplicateHandling.IGNORE_SAME_MESSAGE);
         alreadyRunningEvent = new SystemEventType(PointLinkAlreadyRunningEvent.TYPE_NAME, vo.getId(),
@@ -73,6 +103,8 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
 			}
         });
         this.service = Common.getBean(MangoJavaScriptService.class);
+        this.executionTimeMonitor = createMonitor(EXECUTION_TIME_MONITOR_PREFIX + vo.getXid(), new TranslatableMessage("internal.monitor.POINT_LINK_EXECUTION_TIME", vo.getXid()));
+        this.coalescedMonitor = createMonitor(COALESCED_MONITOR_PREFIX + vo.getXid(), new TranslatableMessage("internal.monitor.POINT_LINK_COALESCED", vo.getXid()));
     }
 
     public void initialize() {
@@ -103,6 +135,9 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
 
     public void terminate() {
         Common.runtimeManager.removeDataPointListener(vo.getSourcePointId(), this);
+        pending.set(null);
+        Common.MONITORED_VALUES.removeStatMonitor(executionTimeMonitor.getId());
+        Common.MONITORED_VALUES.removeStatMonitor(coalescedMonitor.getId());
         returnToNormal();
         if(scriptLog != null)
             scriptLog.close();
@@ -135,7 +170,16 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
     }
 
     private void execute(PointValueTime newValue) {
-    	
+        //Links that led to this update, captured here as the link may run on another thread
+        List<Integer> chain = PointLinkSetPointWorkItem.currentChain();
+        if(executor != null) {
+            //Latest value wins, count the values that were replaced before they ran
+            if(pending.getAndSet(new PendingValue(newValue, chain)) != null)
+                coalescedMonitor.addValue(1);
+            schedule();
+            return;
+        }
+
     	//Bail out if already running a point link operation
 	    synchronized(ready){
 	    	if(!ready){
@@ -146,18 +190,69 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
 	    		SystemEventType.returnToNormal(alreadyRunningEvent, System.currentTimeMillis());
 	    	}
     	}
+	    if(!link(newValue, chain))
+	        ready = true;
+    }
+
+    /**
+     * Submit the link to the executor unless it is already running or setting its target
+     */
+    private void schedule() {
+        if(pending.get() == null || !busy.compareAndSet(false, true))
+            return;
+        try {
+            executor.execute(() -> {
+                PendingValue value = pending.getAndSet(null);
+                boolean setting = false;
+                try {
+                    if(value != null)
+                        setting = link(value.value, value.chain);
+                } finally {
+                    if(!setting)
+                        finished();
+                }
+            });
+        }catch(RejectedExecutionException e) {
+            //Shutting down
+            busy.set(false);
+        }
+    }
+
+    /**
+     * The link is done with its value, run it again if a value arrived in the meantime
+     */
+    private void finished() {
+        busy.set(false);
+        schedule();
+    }
+
+    /**
+     * Run the script and queue the set of the target point
+     * @param newValue
+     * @param chain ids of the links that led to the update of the source point
+     * @return true if the target point is being set
+     */
+    private boolean link(PointValueTime newValue, List<Integer> chain) {
+        long start = System.nanoTime();
+        try {
+            return linkImpl(newValue, chain);
+        } finally {
+            lastExecutionTime = (int)((System.nanoTime() - start) / 1000000L);
+            executionTimeMonitor.setValue(lastExecutionTime);
+        }
+    }
+
+    private boolean linkImpl(PointValueTime newValue, List<Integer> chain) {
         // Propagate the update to the target point. Validate that the target point is available.
         DataPointRT targetPoint = Common.runtimeManager.getDataPoint(vo.getTargetPointId());
         if (targetPoint == null) {
             raiseFailureEvent(newValue.getTime(), new TranslatableMessage("event.pointLink.targetUnavailable"));
-            ready = true;
-            return;
+            return false;
         }
 
         if (!targetPoint.getPointLocator().isSettable()) {
             raiseFailureEvent(newValue.getTime(), new TranslatableMessage("event.pointLink.targetNotSettable"));
-            ready = true;
-            return;
+            return false;
         }
 
         int targetDataType = targetPoint.getVO().getPointLocator().getDataTypeId();
@@ -166,63 +261,101 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
             try {
             	if(!compiledScript.isCompiled()) {
             		compiledScript.compile(vo.getScript(), true);
+            		contextBound = false;
             	}
-                Map<String, IDataPointValueSource> context = new HashMap<String, IDataPointValueSource>();
-                context.put(CONTEXT_SOURCE_VAR_NAME, Common.runtimeManager.getDataPoint(vo.getSourcePointId()));
-                context.put(CONTEXT_TARGET_VAR_NAME, Common.runtimeManager.getDataPoint(vo.getTargetPointId()));
-                //TODO could make the context points listeners and update context map only, not bothering unless we make the HTML5 UI for this module
-                compiledScript.initialize(context);
+            	bindContext(targetPoint);
                 MangoJavaScriptResult result = compiledScript.execute(Common.timer.currentTimeMillis(), newValue.getTime(), targetDataType);
                 
                 PointValueTime pvt = (PointValueTime)result.getResult();
                 if (pvt == null) {
                     raiseFailureEvent(newValue.getTime(), new TranslatableMessage("event.pointLink.nullResult"));
-                    ready = true;
-                    return; 
+                    return false;
                 }else if(pvt.getValue() == null) {
                     raiseFailureEvent(newValue.getTime(), new TranslatableMessage("event.pointLink.nullResult"));
-                    ready = true;
-                    return;
+                    return false;
                 } else if(pvt.getValue() == MangoJavaScriptService.UNCHANGED) {
-                    ready = true;
-                    return;
+                    return false;
                 }
                 newValue = pvt;
             }
             catch (ScriptError e) {
                 raiseFailureEvent(newValue.getTime(), new TranslatableMessage("pointLinks.validate.scriptError", e.getTranslatableMessage()));
-                ready = true;
-                return;
+                return false;
             }
             catch (ResultTypeException e) {
                 raiseFailureEvent(newValue.getTime(), e.getTranslatableMessage());
-                ready = true;
-                return;
+                return false;
             }
         }
 
         if (DataTypes.getDataType(newValue.getValue()) != targetDataType) {
             raiseFailureEvent(newValue.getTime(), new TranslatableMessage("event.pointLink.convertError"));
-            ready = true;
-            return;
+            return false;
         }
 
-        // Queue a work item to perform the update.
-        Common.backgroundProcessing.addWorkItem(new PointLinkSetPointWorkItem(vo.getTargetPointId(), newValue, this));
+        // Queue a work item to perform the update with the other sets to the target's data source.
+        batcher.submit(targetPoint.getDataSourceId(), new PointLinkSetPointWorkItem(vo.getTargetPointId(), newValue, this, chain));
         returnToNormal();
+        return true;
+    }
+
+    /**
+     * Initialize the script context with the source and target points, only done again
+     *  when the script is re-compiled or either point has been restarted
+     * @param targetPoint
+     */
+    private void bindContext(DataPointRT targetPoint) {
+        DataPointRT sourcePoint = Common.runtimeManager.getDataPoint(vo.getSourcePointId());
+        if(contextBound && sourcePoint == boundSource && targetPoint == boundTarget)
+            return;
+        Map<String, IDataPointValueSource> context = new HashMap<String, IDataPointValueSource>();
+        context.put(CONTEXT_SOURCE_VAR_NAME, sourcePoint);
+        context.put(CONTEXT_TARGET_VAR_NAME, targetPoint);
+        compiledScript.initialize(context);
+        boundSource = sourcePoint;
+        boundTarget = targetPoint;
+        contextBound = true;
+    }
+
+    private static class PendingValue {
+        final PointValueTime value;
+        final List<Integer> chain;
+
+        PendingValue(PointValueTime value, List<Integer> chain) {
+            this.value = value;
+            this.chain = chain;
+        }
+    }
+
+    private AtomicIntegerMonitor createMonitor(String id, TranslatableMessage name) {
+        AtomicIntegerMonitor monitor = new AtomicIntegerMonitor(id, name, monitorOwner, false);
+        Common.MONITORED_VALUES.addIfMissingStatMonitor(monitor);
+        return monitor;
     }
 
+    private final ValueMonitorOwner monitorOwner = new ValueMonitorOwner() {
+        @Override
+        public void reset(String monitorId) {
+            if(monitorId.equals(executionTimeMonitor.getId()))
+                executionTimeMonitor.setValue(lastExecutionTime);
+            else if(monitorId.equals(coalescedMonitor.getId()))
+                coalescedMonitor.setValue(0);
+        }
+    };
+
     //
     //
     // DataPointListener
     //
     @Override
     public void pointInitialized() {
+        contextBound = false;
         checkSource();
     }
 
     @Override
     public void pointTerminated(DataPointVO vo) {
+        contextBound = false;
         checkSource();
     }
 
@@ -293,6 +426,8 @@ public class PointLinkRT implements DataPointListener, PointLinkSetPointSource {
 	@Override
 	public void pointSetComplete() {
 		this.ready = true;
+		if(executor != null)
+		    finished();
 	}
 
 	/* (non-Javadoc)
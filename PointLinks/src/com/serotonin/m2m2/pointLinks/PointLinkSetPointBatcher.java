@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.pointLinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.infiniteautomation.mango.monitor.AtomicIntegerMonitor;
+import com.infiniteautomation.mango.monitor.ValueMonitorOwner;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.maint.work.WorkItem;
+import com.serotonin.m2m2.util.timeout.TimeoutClient;
+import com.serotonin.m2m2.util.timeout.TimeoutTask;
+import com.serotonin.timer.RejectedTaskReason;
+
+/**
+ * Collects the sets of point links by target data source so a burst of links into
+ * one data source is written by a single work item instead of one per link.
+ *
+ * Only one batch per data source is queued or running at a time, sets that arrive
+ * meanwhile go into the next batch so the order of sets to a point is kept.  Each set
+ * is still executed as a {@link PointLinkSetPointWorkItem} so its recursion
+ * checks are unchanged.
+ *
+ * @author Terry Packer
+ */
+public class PointLinkSetPointBatcher {
+
+    private static final Log LOG = LogFactory.getLog(PointLinkSetPointBatcher.class);
+
+    public static final String BATCH_COUNT_MONITOR_ID = "com.serotonin.m2m2.pointLinks.PointLinkSetPointBatcher.BATCH_COUNT";
+    public static final String BATCH_SIZE_MONITOR_ID = "com.serotonin.m2m2.pointLinks.PointLinkSetPointBatcher.BATCH_SIZE";
+
+    private final long windowMs;
+    private final Map<Integer, TargetQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicIntegerMonitor batchCountMonitor;
+    private final AtomicIntegerMonitor batchSizeMonitor;
+
+    /**
+     * @param windowMs how long to collect sets before writing them, 0 to only batch
+     *  the sets that arrive while a batch is waiting to run
+     */
+    public PointLinkSetPointBatcher(long windowMs) {
+        this.windowMs = windowMs;
+        this.batchCountMonitor = createMonitor(BATCH_COUNT_MONITOR_ID, new TranslatableMessage("internal.monitor.POINT_LINK_BATCH_COUNT"));
+        this.batchSizeMonitor = createMonitor(BATCH_SIZE_MONITOR_ID, new TranslatableMessage("internal.monitor.POINT_LINK_BATCH_SIZE"));
+    }
+
+    /**
+     * Remove the monitors, sets that are still queued are written
+     */
+    public void terminate() {
+        Common.MONITORED_VALUES.removeStatMonitor(BATCH_COUNT_MONITOR_ID);
+        Common.MONITORED_VALUES.removeStatMonitor(BATCH_SIZE_MONITOR_ID);
+    }
+
+    /**
+     * Queue a set to be written with the other sets to the same data source
+     * @param dataSourceId of the target point
+     * @param item
+     */
+    public void submit(int dataSourceId, PointLinkSetPointWorkItem item) {
+        while (true) {
+            TargetQueue queue = queues.computeIfAbsent(dataSourceId, TargetQueue::new);
+            boolean schedule;
+            synchronized (queue) {
+                //Removed by a batch that just finished, use a new one
+                if (queue.removed)
+                    continue;
+                queue.pending.add(item);
+                schedule = !queue.scheduled;
+                queue.scheduled = true;
+            }
+            if (schedule)
+                schedule(queue);
+            return;
+        }
+    }
+
+    /**
+     * The batch is done, stay scheduled if more sets arrived while it ran or
+     * remove the queue if it is empty
+     * @return true if another batch needs to run
+     */
+    private boolean finished(TargetQueue queue) {
+        synchronized (queue) {
+            queue.scheduled = !queue.pending.isEmpty();
+            if (!queue.scheduled) {
+                queue.removed = true;
+                queues.remove(queue.dataSourceId, queue);
+            }
+            return queue.scheduled;
+        }
+    }
+
+    private void schedule(TargetQueue queue) {
+        if (windowMs > 0)
+            new TimeoutTask(windowMs, new WindowClient(queue));
+        else
+            Common.backgroundProcessing.addWorkItem(new BatchWorkItem(queue));
+    }
+
+    private AtomicIntegerMonitor createMonitor(String id, TranslatableMessage name) {
+        AtomicIntegerMonitor monitor = new AtomicIntegerMonitor(id, name, monitorOwner, false);
+        Common.MONITORED_VALUES.addIfMissingStatMonitor(monitor);
+        return monitor;
+    }
+
+    private final ValueMonitorOwner monitorOwner = new ValueMonitorOwner() {
+        @Override
+        public void reset(String monitorId) {
+            //The batch size is the size of the last batch
+            if (BATCH_COUNT_MONITOR_ID.equals(monitorId))
+                batchCountMonitor.setValue(0);
+        }
+    };
+
+    private static class TargetQueue {
+        private final int dataSourceId;
+        private List<PointLinkSetPointWorkItem> pending = new ArrayList<>();
+        //A batch is waiting or running
+        private boolean scheduled;
+        //No longer in the map of queues
+        private boolean removed;
+
+        TargetQueue(int dataSourceId) {
+            this.dataSourceId = dataSourceId;
+        }
+
+        /**
+         * Take the sets for the next batch
+         */
+        synchronized List<PointLinkSetPointWorkItem> take() {
+            List<PointLinkSetPointWorkItem> items = pending;
+            pending = new ArrayList<>();
+            return items;
+        }
+    }
+
+    class WindowClient extends TimeoutClient {
+        private final TargetQueue queue;
+
+        WindowClient(TargetQueue queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void scheduleTimeout(long fireTime) {
+            Common.backgroundProcessing.addWorkItem(new BatchWorkItem(queue));
+        }
+
+        @Override
+        public String getThreadName() {
+            return "Point link batch window for data source " + queue.dataSourceId;
+        }
+    }
+
+    class BatchWorkItem implements WorkItem {
+        private final TargetQueue queue;
+
+        BatchWorkItem(TargetQueue queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public int getPriority() {
+            return WorkItem.PRIORITY_HIGH;
+        }
+
+        @Override
+        public void execute() {
+            List<PointLinkSetPointWorkItem> items = queue.take();
+            try {
+                //One failed set must not keep the rest of the batch from being written
+                for (PointLinkSetPointWorkItem item : items) {
+                    try {
+                        item.execute();
+                    } catch (Exception e) {
+                        LOG.error("Point link set failed for data source " + queue.dataSourceId, e);
+                    }
+                }
+            } finally {
+                batchCountMonitor.addValue(1);
+                batchSizeMonitor.setValue(items.size());
+                if (finished(queue))
+                    schedule(queue);
+            }
+        }
+
+        @Override
+        public String getDescription() {
+            return "Point link sets for data source " + queue.dataSourceId;
+        }
+
+        @Override
+        public String getTaskId() {
+            return null;
+        }
+
+        @Override
+        public int getQueueSize() {
+            return 0;
+        }
+
+        @Override
+        public void rejected(RejectedTaskReason reason) {
+            //Release the links waiting on these sets
+            for (PointLinkSetPointWorkItem item : queue.take())
+                item.rejected(reason);
+            if (finished(queue))
+                schedule(queue);
+        }
+    }
+}
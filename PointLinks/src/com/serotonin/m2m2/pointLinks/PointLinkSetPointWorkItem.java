@@ -4,33 +4,83 @@
  */
 package com.serotonin.m2m2.pointLinks;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.rt.dataImage.SetPointSource;
 import com.serotonin.m2m2.rt.maint.work.SetPointWorkItem;
+import com.serotonin.timer.RejectedTaskReason;
 
 /**
+ * Sets the target of a point link.  The ids of the links that led to the set are carried with it
+ * rather than found on the current thread, as links run on their own executor, so that links
+ * setting each other's source points are stopped.
+ *
  * @author Terry Packer
  *
  */
 public class PointLinkSetPointWorkItem extends SetPointWorkItem{
 
+    static final int MAX_RECURSION = 10;
+    //Ids of the links that led to the set being made on this thread
+    private static final ThreadLocal<List<Integer>> CHAIN = new ThreadLocal<>();
+
 	private PointLinkSetPointSource plSource;
+	private final List<Integer> chain;
 	
 	/**
 	 * @param targetPointId
 	 * @param pvt
 	 * @param source
+	 * @param chain ids of the links that led to this set, from {@link #currentChain()} on the thread the source point was updated on
 	 */
 	public PointLinkSetPointWorkItem(int targetPointId, PointValueTime pvt,
-			PointLinkSetPointSource source) {
+			PointLinkSetPointSource source, List<Integer> chain) {
 		super(targetPointId, pvt, (SetPointSource)source);
 		this.plSource = source;
+		this.chain = chain;
+	}
+
+	/**
+	 * The ids of the links whose sets are being made on this thread
+	 * @return
+	 */
+	public static List<Integer> currentChain() {
+	    List<Integer> chain = CHAIN.get();
+	    return chain == null ? Collections.emptyList() : chain;
 	}
-	
 	
 	@Override
     public void execute() {
-		super.execute();
+		try {
+		    int id = plSource.getSetPointSourceId();
+		    if(Collections.frequency(chain, id) > MAX_RECURSION) {
+		        plSource.raiseRecursionFailureEvent();
+		        return;
+		    }
+		    List<Integer> next = new ArrayList<>(chain.size() + 1);
+		    next.addAll(chain);
+		    next.add(id);
+		    List<Integer> previous = CHAIN.get();
+		    CHAIN.set(next);
+		    try {
+		        super.execute();
+		    } finally {
+		        if(previous == null)
+		            CHAIN.remove();
+		        else
+		            CHAIN.set(previous);
+		    }
+		} finally {
+			plSource.pointSetComplete();
+		}
+	}
+	
+	@Override
+	public void rejected(RejectedTaskReason reason) {
+		super.rejected(reason);
 		plSource.pointSetComplete();
 	}
 	
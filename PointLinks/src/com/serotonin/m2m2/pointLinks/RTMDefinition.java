@@ -6,15 +6,22 @@ package com.serotonin.m2m2.pointLinks;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 
 import org.springframework.util.Assert;
 
+import com.infiniteautomation.mango.rest.v2.util.ModuleThreadPools;
+import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.module.RuntimeManagerDefinition;
 
 public class RTMDefinition extends RuntimeManagerDefinition {
     public static RTMDefinition instance;
 
     private final List<PointLinkRT> pointLinks = new CopyOnWriteArrayList<PointLinkRT>();
+    //Runs the point link scripts, null to run them on the listener's thread and reject updates while busy
+    private volatile ExecutorService executor;
+    //Groups the sets of the point links by target data source
+    private volatile PointLinkSetPointBatcher batcher;
 
     public RTMDefinition() {
         instance = this;
@@ -27,6 +34,11 @@ public class RTMDefinition extends RuntimeManagerDefinition {
 
     @Override
     public void initialize(boolean safe) {
+        int threads = Common.envProps.getInt("pointLinks.executor.threads", 0);
+        if (threads > 0)
+            executor = ModuleThreadPools.newFixedThreadPool("Point link executor", threads);
+        batcher = new PointLinkSetPointBatcher(Common.envProps.getLong("pointLinks.batch.windowMs", 0));
+
         // Set up point links.
         PointLinkDao pointLinkDao = PointLinkDao.getInstance();
         for (PointLinkVO vo : pointLinkDao.getAll()) {
@@ -45,6 +57,14 @@ public class RTMDefinition extends RuntimeManagerDefinition {
     public void terminate() {
         while (!pointLinks.isEmpty())
             stopPointLink(pointLinks.get(0).getId());
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        if (batcher != null) {
+            batcher.terminate();
+            batcher = null;
+        }
     }
 
     //
@@ -89,7 +109,7 @@ public class RTMDefinition extends RuntimeManagerDefinition {
             Assert.isTrue(!vo.isDisabled());
 
             // Create and start the runtime version of the point link.
-            PointLinkRT pointLink = new PointLinkRT(vo);
+            PointLinkRT pointLink = new PointLinkRT(vo, executor, batcher);
             pointLink.initialize();
 
             // Add it to the list of running point links.
@@ -6,13 +6,17 @@ package com.infiniteautomation.mango.rest.v1.reports;
 
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
 
 import com.infiniteautomation.mango.spring.events.DaoEvent;
 import com.serotonin.m2m2.reports.vo.ReportModel;
 import com.serotonin.m2m2.reports.vo.ReportVO;
 import com.serotonin.m2m2.reports.web.ReportCommon;
+import com.serotonin.m2m2.reports.web.ReportQueueEvent;
 import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.permission.Permissions;
 import com.serotonin.m2m2.web.mvc.rest.v1.WebSocketMapping;
+import com.serotonin.m2m2.web.mvc.rest.v1.websockets.DaoNotificationModel;
 import com.serotonin.m2m2.web.mvc.rest.v1.websockets.DaoNotificationWebSocketHandler;
 
 /**
@@ -43,4 +47,25 @@ public class ReportWebSocketHandler extends DaoNotificationWebSocketHandler<Repo
         this.notify(event);
     }
 
+    /**
+     * Send the depth and latency of the report queue to admins, the action is queueStatus
+     * @param event
+     */
+    @EventListener
+    protected void handleQueueEvent(ReportQueueEvent event) {
+        if (sessions.isEmpty()) return;
+
+        DaoNotificationModel payload = new DaoNotificationModel("queueStatus", event.getStatus(), null, null);
+        for (WebSocketSession session : sessions) {
+            User user = getUser(session);
+            if (user != null && Permissions.hasAdminPermission(user)) {
+                try {
+                    sendMessage(session, payload);
+                } catch (Exception e) {
+                    log.warn("Error notifying websocket of report queue status", e);
+                }
+            }
+        }
+    }
+
 }
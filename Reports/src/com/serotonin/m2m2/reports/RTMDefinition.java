@@ -16,6 +16,7 @@ import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.module.RuntimeManagerDefinition;
 import com.serotonin.m2m2.reports.vo.ReportVO;
 import com.serotonin.m2m2.reports.web.ReportJob;
+import com.serotonin.m2m2.reports.web.ReportQueue;
 
 public class RTMDefinition extends RuntimeManagerDefinition {
     private static final Log LOG = LogFactory.getLog(RTMDefinition.class);
@@ -27,6 +28,8 @@ public class RTMDefinition extends RuntimeManagerDefinition {
 
     @Override
     public void initialize(boolean safe) {
+        ReportQueue.start();
+
         List<ReportVO> reports = ReportDao.getInstance().getReports();
         for (ReportVO report : reports) {
             try {
@@ -43,6 +46,7 @@ public class RTMDefinition extends RuntimeManagerDefinition {
 
     @Override
     public void terminate() {
-        // no op
+        ReportQueue.stop();
+        ReportDao.getInstance().terminate();
     }
 }
@@ -8,10 +8,16 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.measure.unit.Unit;
@@ -22,6 +28,7 @@ import org.springframework.stereotype.Repository;
 
 import com.infiniteautomation.mango.monitor.AtomicIntegerMonitor;
 import com.infiniteautomation.mango.monitor.ValueMonitorOwner;
+import com.infiniteautomation.mango.rest.v2.util.ModuleThreadPools;
 import com.infiniteautomation.mango.spring.events.DaoEvent;
 import com.infiniteautomation.mango.spring.events.DaoEventType;
 import com.infiniteautomation.mango.util.LazyInitSupplier;
@@ -84,9 +91,15 @@ public class ReportDao extends AbstractDao<ReportVO> {
         return (ReportDao)o;
     });
 
+    //Shared by all report runs so reports.sql.groupThreads bounds the parallel copies, null to copy on the calling thread
+    private final ExecutorService copyExecutor;
+
     private ReportDao(){
         super(ReportAuditEvent.TYPE_NAME, "rpt", new String[0], false, new TranslatableMessage("internal.monitor.REPORT_COUNT"));
 
+        int copyThreads = Common.envProps.getInt("reports.sql.groupThreads", 1);
+        this.copyExecutor = copyThreads > 1 ? ModuleThreadPools.newFixedThreadPool("Report value copy", copyThreads) : null;
+
         this.instanceCountMonitor = new AtomicIntegerMonitor("com.serotonin.m2m2.reports.ReportInstanceDao.COUNT", new TranslatableMessage("internal.monitor.REPORT_INSTANCE_COUNT"), instanceCountMonitorOwner, true);
         this.instanceCountMonitor.setValue(this.countInstances());
         Common.MONITORED_VALUES.addIfMissingStatMonitor(this.instanceCountMonitor);
@@ -100,6 +113,14 @@ public class ReportDao extends AbstractDao<ReportVO> {
         return springInstance.get();
     }
 
+    /**
+     * Stop the threads that copy report values
+     */
+    public void terminate() {
+        if (copyExecutor != null)
+            copyExecutor.shutdownNow();
+    }
+
     //
     //
     // Report Templates
@@ -397,8 +418,21 @@ public class ReportDao extends AbstractDao<ReportVO> {
      * @return
      */
     public int runReportSQL(final ReportInstance instance, List<PointInfo> points) {
+        return runReportSQL(instance, points, true);
+    }
+
+    /**
+     * SQL Database Report, the data of all points is copied with a set based insert per group of points
+     *  instead of one per point.
+     *
+     * @param instance
+     * @param points
+     * @param materializeData false to only save the points, events and comments of the instance,
+     *  the values are then read with streamReportInstanceData
+     * @return number of values saved
+     */
+    public int runReportSQL(final ReportInstance instance, List<PointInfo> points, boolean materializeData) {
         PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
-        int count = 0;
 
         // The timestamp selection code is used multiple times for different tables
         String timestampSql;
@@ -420,101 +454,57 @@ public class ReportDao extends AbstractDao<ReportVO> {
             timestampParams = new Object[] { instance.getReportStartTime(), instance.getReportEndTime() };
         }
 
-        // For each point.
-        for (PointInfo pointInfo : points) {
-            DataPointVO point = pointInfo.getPoint();
-            int dataType = point.getPointLocator().getDataTypeId();
+        // Insert the reportInstancePoints records
+        List<Integer> reportPointIds = new ArrayList<>(points.size());
+        for (PointInfo pointInfo : points)
+            reportPointIds.add(insertReportInstancePoint(instance, pointInfo, pointValueDao));
 
-            DataValue startValue = null;
-            if (!instance.isFromInception()) {
-                // Get the value just before the start of the report
-                PointValueTime pvt = pointValueDao.getPointValueBefore(point.getId(), instance.getReportStartTime());
-                if (pvt != null)
-                    startValue = pvt.getValue();
-
-                // Make sure the data types match
-                if (DataTypes.getDataType(startValue) != dataType)
-                    startValue = null;
-            }
-
-            // Insert the reportInstancePoints record
-            String name = Functions.truncate(point.getName(), 100);
-            String unit = null;
-            String renderedUnit = null;
-            
-            if (point.getTextRenderer() instanceof ConvertingRenderer) {
-                ConvertingRenderer cr = (ConvertingRenderer) point.getTextRenderer();
-                unit = UnitUtil.formatLocal(cr.getUnit());
-                renderedUnit = UnitUtil.formatLocal(cr.getRenderedUnit());
-            }
-            
-            int reportPointId = doInsert(
-                    REPORT_INSTANCE_POINTS_INSERT,
-                    new Object[] { instance.getId(), point.getDeviceName(), name, pointInfo.getPoint().getXid(), dataType,
-                            DataTypes.valueToString(startValue),
-                            SerializationHelper.writeObject(point.getTextRenderer()), unit, renderedUnit, pointInfo.getColour(),
-                            pointInfo.getWeight(), boolToChar(pointInfo.isConsolidatedChart()), pointInfo.getPlotType() },
-                    new int[] { Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.BLOB,
-                            Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.FLOAT, Types.CHAR, Types.INTEGER });
-
-            // Insert the reportInstanceData records
-            String insertSQL = "insert into reportInstanceData " //
-                    + "  select id, " + reportPointId + ", pointValue, ts from pointValues " //
-                    + "    where dataPointId=? and dataType=? " //
-                    + StringUtils.replaceMacro(timestampSql, "field", "ts");
-            count += ejt.update(insertSQL, appendParameters(timestampParams, point.getId(), dataType));
-
-            // Insert the reportInstanceDataAnnotations records
+        int count = 0;
+        if (materializeData)
+            count = copyPointValues(instance, reportPointIds, timestampSql, timestampParams);
+
+        // Insert the reportInstanceEvents records for all points.
+        if (instance.getIncludeEvents() != ReportVO.EVENTS_NONE) {
+            String eventSQL = "insert into reportInstanceEvents " //
+                    + "  (eventId, reportInstanceId, typeName, subtypeName, typeRef1, typeRef2, activeTs, " //
+                    + "   rtnApplicable, rtnTs, rtnCause, alarmLevel, message, ackTs, ackUsername, " //
+                    + "   alternateAckSource)" //
+                    + "  select e.id, " + instance.getId() + ", e.typeName, e.subtypeName, e.typeRef1, " //
+                    + "    e.typeRef2, e.activeTs, e.rtnApplicable, e.rtnTs, e.rtnCause, e.alarmLevel, " //
+                    + "    e.message, e.ackTs, u.username, e.alternateAckSource " //
+                    + "  from events e join userEvents ue on ue.eventId=e.id " //
+                    + "    left join users u on e.ackUserId=u.id " //
+                    + "  where ue.userId=? " //
+                    + "    and e.typeName=? " //
+                    + "    and e.typeRef1 in (select dp.id from dataPoints dp " //
+                    + "      join reportInstancePoints rp on rp.xid=dp.xid where rp.reportInstanceId=?) ";
+
+            if (instance.getIncludeEvents() == ReportVO.EVENTS_ALARMS)
+                eventSQL += "and e.alarmLevel > 0 ";
+
+            eventSQL += StringUtils.replaceMacro(timestampSql, "field", "e.activeTs");
             ejt.update(
-                    "insert into reportInstanceDataAnnotations " //
-                    + "  (pointValueId, reportInstancePointId, textPointValueShort, textPointValueLong, sourceMessage) " //
-                    + "  select rd.pointValueId, rd.reportInstancePointId, pva.textPointValueShort, " //
-                    + "    pva.textPointValueLong, pva.sourceMessage " //
-                    + "  from reportInstanceData rd " //
-                    + "    join reportInstancePoints rp on rd.reportInstancePointId = rp.id " //
-                    + "    join pointValueAnnotations pva on rd.pointValueId = pva.pointValueId " //
-                    + "  where rp.id = ?", new Object[] { reportPointId });
-
-            // Insert the reportInstanceEvents records for the point.
-            if (instance.getIncludeEvents() != ReportVO.EVENTS_NONE) {
-                String eventSQL = "insert into reportInstanceEvents " //
-                        + "  (eventId, reportInstanceId, typeName, subtypeName, typeRef1, typeRef2, activeTs, " //
-                        + "   rtnApplicable, rtnTs, rtnCause, alarmLevel, message, ackTs, ackUsername, " //
-                        + "   alternateAckSource)" //
-                        + "  select e.id, " + instance.getId() + ", e.typeName, e.subtypeName, e.typeRef1, " //
-                        + "    e.typeRef2, e.activeTs, e.rtnApplicable, e.rtnTs, e.rtnCause, e.alarmLevel, " //
-                        + "    e.message, e.ackTs, u.username, e.alternateAckSource " //
-                        + "  from events e join userEvents ue on ue.eventId=e.id " //
-                        + "    left join users u on e.ackUserId=u.id " //
-                        + "  where ue.userId=? " //
-                        + "    and e.typeName=? " //
-                        + "    and e.typeRef1=? ";
-
-                if (instance.getIncludeEvents() == ReportVO.EVENTS_ALARMS)
-                    eventSQL += "and e.alarmLevel > 0 ";
-
-                eventSQL += StringUtils.replaceMacro(timestampSql, "field", "e.activeTs");
-                ejt.update(
-                        eventSQL,
-                        appendParameters(timestampParams, instance.getUserId(), EventType.EventTypeNames.DATA_POINT,
-                                point.getId()));
-            }
+                    eventSQL,
+                    appendParameters(timestampParams, instance.getUserId(), EventType.EventTypeNames.DATA_POINT,
+                            instance.getId()));
+        }
 
-            // Insert the reportInstanceUserComments records for the point.
-            if (instance.isIncludeUserComments()) {
-                String commentSQL = "insert into reportInstanceUserComments " //
-                        + "  (reportInstanceId, username, commentType, typeKey, ts, commentText)" //
-                        + "  select " + instance.getId() + ", u.username, " + UserCommentVO.TYPE_POINT + ", " //
-                        + reportPointId + ", uc.ts, uc.commentText " //
-                        + "  from userComments uc " //
-                        + "    left join users u on uc.userId=u.id " //
-                        + "  where uc.commentType=" + UserCommentVO.TYPE_POINT //
-                        + "    and uc.typeKey=? ";
+        // Insert the reportInstanceUserComments records for all points.
+        if (instance.isIncludeUserComments()) {
+            String commentSQL = "insert into reportInstanceUserComments " //
+                    + "  (reportInstanceId, username, commentType, typeKey, ts, commentText)" //
+                    + "  select " + instance.getId() + ", u.username, " + UserCommentVO.TYPE_POINT + ", " //
+                    + "    rp.id, uc.ts, uc.commentText " //
+                    + "  from userComments uc " //
+                    + "    join dataPoints dp on uc.typeKey=dp.id " //
+                    + "    join reportInstancePoints rp on rp.xid=dp.xid " //
+                    + "    left join users u on uc.userId=u.id " //
+                    + "  where uc.commentType=" + UserCommentVO.TYPE_POINT //
+                    + "    and rp.reportInstanceId=? ";
 
-                // Only include comments made in the duration of the report.
-                commentSQL += StringUtils.replaceMacro(timestampSql, "field", "uc.ts");
-                ejt.update(commentSQL, appendParameters(timestampParams, point.getId()));
-            }
+            // Only include comments made in the duration of the report.
+            commentSQL += StringUtils.replaceMacro(timestampSql, "field", "uc.ts");
+            ejt.update(commentSQL, appendParameters(timestampParams, instance.getId()));
         }
 
         // Insert the reportInstanceUserComments records for the selected events
@@ -532,7 +522,7 @@ public class ReportDao extends AbstractDao<ReportVO> {
         }
 
         // If the report had undefined start or end times, update them with values from the data.
-        if (instance.isFromInception() || instance.isToNow()) {
+        if (materializeData && (instance.isFromInception() || instance.isToNow())) {
             ejt.query(
                     "select min(rd.ts), max(rd.ts) " //
                     + "from reportInstancePoints rp "
@@ -552,6 +542,150 @@ public class ReportDao extends AbstractDao<ReportVO> {
         return count;
     }
 
+    /**
+     * Insert the reportInstancePoints record with the value of the point just before the report starts
+     * @return the id of the report point
+     */
+    private int insertReportInstancePoint(ReportInstance instance, PointInfo pointInfo, PointValueDao pointValueDao) {
+        DataPointVO point = pointInfo.getPoint();
+        int dataType = point.getPointLocator().getDataTypeId();
+
+        DataValue startValue = null;
+        if (!instance.isFromInception()) {
+            // Get the value just before the start of the report
+            PointValueTime pvt = pointValueDao.getPointValueBefore(point.getId(), instance.getReportStartTime());
+            if (pvt != null)
+                startValue = pvt.getValue();
+
+            // Make sure the data types match
+            if (DataTypes.getDataType(startValue) != dataType)
+                startValue = null;
+        }
+
+        String name = Functions.truncate(point.getName(), 100);
+        String unit = null;
+        String renderedUnit = null;
+
+        if (point.getTextRenderer() instanceof ConvertingRenderer) {
+            ConvertingRenderer cr = (ConvertingRenderer) point.getTextRenderer();
+            unit = UnitUtil.formatLocal(cr.getUnit());
+            renderedUnit = UnitUtil.formatLocal(cr.getRenderedUnit());
+        }
+
+        return doInsert(
+                REPORT_INSTANCE_POINTS_INSERT,
+                new Object[] { instance.getId(), point.getDeviceName(), name, pointInfo.getPoint().getXid(), dataType,
+                        DataTypes.valueToString(startValue),
+                        SerializationHelper.writeObject(point.getTextRenderer()), unit, renderedUnit, pointInfo.getColour(),
+                        pointInfo.getWeight(), boolToChar(pointInfo.isConsolidatedChart()), pointInfo.getPlotType() },
+                new int[] { Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.BLOB,
+                        Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.FLOAT, Types.CHAR, Types.INTEGER });
+    }
+
+    /**
+     * Copy the values and annotations of the report points in groups, each group is copied with
+     *  one insert for the values and one for the annotations.  Groups are run on
+     *  a pool of reports.sql.groupThreads threads shared by all report runs.
+     *
+     * @return the number of values copied
+     */
+    private int copyPointValues(ReportInstance instance, List<Integer> reportPointIds, String timestampSql, Object[] timestampParams) {
+        String dataSQL = "insert into reportInstanceData " //
+                + "  select pv.id, rp.id, pv.pointValue, pv.ts from reportInstancePoints rp " //
+                + "    join dataPoints dp on dp.xid=rp.xid " //
+                + "    join pointValues pv on pv.dataPointId=dp.id and pv.dataType=rp.dataType " //
+                + "  where rp.reportInstanceId=? and rp.id>=? and rp.id<=? " //
+                + StringUtils.replaceMacro(timestampSql, "field", "pv.ts");
+        String annotationSQL = "insert into reportInstanceDataAnnotations " //
+                + "  (pointValueId, reportInstancePointId, textPointValueShort, textPointValueLong, sourceMessage) " //
+                + "  select rd.pointValueId, rd.reportInstancePointId, pva.textPointValueShort, " //
+                + "    pva.textPointValueLong, pva.sourceMessage " //
+                + "  from reportInstanceData rd " //
+                + "    join reportInstancePoints rp on rd.reportInstancePointId = rp.id " //
+                + "    join pointValueAnnotations pva on rd.pointValueId = pva.pointValueId " //
+                + "  where rp.reportInstanceId=? and rp.id>=? and rp.id<=?";
+
+        int groupSize = Math.max(1, Common.envProps.getInt("reports.sql.groupSize", 100));
+        List<Callable<Integer>> groups = new ArrayList<>();
+        for (int i = 0; i < reportPointIds.size(); i += groupSize) {
+            List<Integer> group = reportPointIds.subList(i, Math.min(i + groupSize, reportPointIds.size()));
+            final int first = Collections.min(group);
+            final int last = Collections.max(group);
+            groups.add(() -> {
+                int copied = ejt.update(dataSQL, appendParameters(timestampParams, instance.getId(), first, last));
+                ejt.update(annotationSQL, new Object[] { instance.getId(), first, last });
+                return copied;
+            });
+        }
+
+        int count = 0;
+        try {
+            if (copyExecutor == null || groups.size() <= 1) {
+                for (Callable<Integer> group : groups)
+                    count += group.call();
+            } else {
+                for (Future<Integer> result : copyExecutor.invokeAll(groups))
+                    count += result.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new ShouldNeverHappenException(e.getCause());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ShouldNeverHappenException(e);
+        }
+        return count;
+    }
+
+    /**
+     * Stream the values of the points of a report instance from the point value store
+     *  instead of from the report tables, used when the values were not saved with the instance.
+     *
+     * @param instance
+     * @param points the points the instance was run with
+     * @param handler
+     * @return number of values streamed
+     */
+    public int streamReportInstanceData(ReportInstance instance, List<PointInfo> points, final ExportDataStreamHandler handler) {
+        PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
+        Map<String, DataPointVO> byXid = new HashMap<>();
+        for (PointInfo pointInfo : points)
+            byXid.put(pointInfo.getPoint().getXid(), pointInfo.getPoint());
+
+        final AtomicInteger count = new AtomicInteger();
+        final ExportDataValue edv = new ExportDataValue();
+        for (final ExportPointInfo point : getReportInstancePoints(instance.getId())) {
+            DataPointVO vo = byXid.get(point.getXid());
+            if (vo == null)
+                continue;
+            point.setDataPointId(vo.getId());
+            handler.startPoint(point);
+
+            edv.setReportPointId(point.getReportPointId());
+            final int dataType = point.getDataType();
+            pointValueDao.getPointValuesBetween(vo.getId(), instance.getReportStartTime(), instance.getReportEndTime(),
+                    new MappedRowCallback<PointValueTime>() {
+                @Override
+                public void row(PointValueTime pvt, int rowId) {
+                    if (DataTypes.getDataType(pvt.getValue()) != dataType)
+                        return;
+                    edv.setValue(pvt.getValue());
+                    edv.setTime(pvt.getTime());
+                    if (pvt instanceof AnnotatedPointValueTime)
+                        edv.setAnnotation(((AnnotatedPointValueTime) pvt).getSourceMessage());
+                    else
+                        edv.setAnnotation(null);
+                    handler.pointData(edv);
+                    count.incrementAndGet();
+                }
+            });
+        }
+        handler.done();
+        return count.get();
+    }
+
     private Object[] appendParameters(Object[] toAppend, Object... params) {
         if (toAppend.length == 0)
             return params;
@@ -871,6 +1005,18 @@ public class ReportDao extends AbstractDao<ReportVO> {
      * @return
      */
     public int runReportNoSQL(final ReportInstance instance, List<PointInfo> points) {
+        return runReportNoSQL(instance, points, true);
+    }
+
+    /**
+     * Generate a report using the NoSQL DB for point value storage
+     * @param instance
+     * @param points
+     * @param materializeData false to only save the points, events and comments of the instance,
+     *  the values are then read with streamReportInstanceData
+     * @return
+     */
+    public int runReportNoSQL(final ReportInstance instance, List<PointInfo> points, boolean materializeData) {
         PointValueDao pointValueDao = Common.databaseProxy.newPointValueDao();
         final MappedCallbackCounter count = new MappedCallbackCounter();
         final NoSQLDao dao = Common.databaseProxy.getNoSQLProxy().createNoSQLDao(ReportPointValueTimeSerializer.get(), "reports");
@@ -1011,17 +1157,19 @@ public class ReportDao extends AbstractDao<ReportVO> {
         final AtomicLong firstPointTime = new AtomicLong(Long.MAX_VALUE);
         final AtomicLong lastPointTime = new AtomicLong(-1l);
         final String reportId = Integer.toString(instance.getId()) + "_";
-        pointValueDao.getPointValuesBetween(pointIds, startTime, endTime, new MappedRowCallback<IdPointValueTime>(){
-            @Override
-            public void row(final IdPointValueTime ipvt, int rowId) {
-                dao.storeData( reportId + Integer.toString(pointIdMap.get(ipvt.getId())),ipvt);
-                count.increment();
-                if(ipvt.getTime() < firstPointTime.get())
-                    firstPointTime.set(ipvt.getTime());
-                if(ipvt.getTime() > lastPointTime.get())
-                    lastPointTime.set(ipvt.getTime());
-            }
-        });
+        if (materializeData) {
+            pointValueDao.getPointValuesBetween(pointIds, startTime, endTime, new MappedRowCallback<IdPointValueTime>(){
+                @Override
+                public void row(final IdPointValueTime ipvt, int rowId) {
+                    dao.storeData( reportId + Integer.toString(pointIdMap.get(ipvt.getId())),ipvt);
+                    count.increment();
+                    if(ipvt.getTime() < firstPointTime.get())
+                        firstPointTime.set(ipvt.getTime());
+                    if(ipvt.getTime() > lastPointTime.get())
+                        lastPointTime.set(ipvt.getTime());
+                }
+            });
+        }
 
         // Insert the reportInstanceUserComments records for the selected events
         if (instance.isIncludeUserComments()) {
@@ -1038,7 +1186,7 @@ public class ReportDao extends AbstractDao<ReportVO> {
         }
 
         // If the report had undefined start or end times, update them with values from the data.
-        if (instance.isFromInception() || instance.isToNow()) {
+        if (materializeData && (instance.isFromInception() || instance.isToNow())) {
             if(instance.isFromInception()){
                 if(firstPointTime.get() != Long.MAX_VALUE)
                     instance.setReportStartTime(firstPointTime.get());
@@ -100,6 +100,7 @@ public class ReportChartCreator {
     private File eventFile;
     private File commentFile;
     private List<PointStatistics> pointStatistics;
+    private int streamedRecordCount;
 	private HashMap<String, HashMap<String, PointStatistics>> devices;
 	private HashMap<String, PointStatistics> pointMap;
 
@@ -125,6 +126,24 @@ public class ReportChartCreator {
      */
     public void createContent(String host, int port, ReportInstance reportInstance, ReportDao reportDao, String inlinePrefix,
             boolean createExportFile) {
+        createContent(host, port, reportInstance, reportDao, inlinePrefix, createExportFile, null);
+    }
+
+    /**
+     * Create the content, reading the values straight from the point value store in one pass
+     * if the points are provided.
+     *
+     * @param host - Mango's hostname
+     * @param port - Mango's port
+     * @param reportInstance
+     * @param reportDao
+     * @param inlinePrefix
+     *            if this is non-null, it implies that the content should be inline.
+     * @param createExportFile
+     * @param streamPoints points to stream the values of, null to read the values saved with the instance
+     */
+    public void createContent(String host, int port, ReportInstance reportInstance, ReportDao reportDao, String inlinePrefix,
+            boolean createExportFile, List<ReportDao.PointInfo> streamPoints) {
         this.inlinePrefix = inlinePrefix;
 
         reportInstance.setTranslations(translations);
@@ -133,7 +152,9 @@ public class ReportChartCreator {
         StreamHandler handler = new StreamHandler(host, port, reportInstance.getXidMap(), reportInstance.getReportStartTime(), 
                 reportInstance.getReportEndTime(), IMAGE_WIDTH, createExportFile, translations);
         // Process the report content with the handler.
-        if(Common.databaseProxy.getNoSQLProxy() == null)
+        if(streamPoints != null)
+            streamedRecordCount = reportDao.streamReportInstanceData(reportInstance, streamPoints, handler);
+        else if(Common.databaseProxy.getNoSQLProxy() == null)
         	reportDao.reportInstanceDataSQL(reportInstance.getId(), handler);
         else
         	reportDao.reportInstanceDataNoSQL(reportInstance.getId(), handler);
@@ -306,6 +327,13 @@ public class ReportChartCreator {
         return html;
     }
 
+    /**
+     * @return the number of values read from the point value store when streaming
+     */
+    public int getStreamedRecordCount() {
+        return streamedRecordCount;
+    }
+
     public String getSubject() {
         return subject;
     }
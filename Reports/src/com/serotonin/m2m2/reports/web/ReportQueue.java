@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.reports.web;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.infiniteautomation.mango.monitor.AtomicIntegerMonitor;
+import com.infiniteautomation.mango.monitor.ValueMonitorOwner;
+import com.infiniteautomation.mango.rest.v2.util.ModuleThreadPools;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+
+/**
+ * Runs reports on their own threads so a burst of scheduled reports can't hold up the
+ * rest of the background work, and limits how many run at once.
+ *
+ * Waiting reports are kept per user and the users take turns, so one user scheduling
+ * many reports for the same moment doesn't delay everyone else's.  A report that is
+ * queued for the same time range as a report that is still waiting is dropped.
+ *
+ * The queue depth, number running and how long the last report waited are published
+ * as monitors and to the reports web socket.
+ *
+ * @author Terry Packer
+ */
+public class ReportQueue {
+    private static final Log LOG = LogFactory.getLog(ReportQueue.class);
+
+    public static final String QUEUE_DEPTH_MONITOR_ID = "com.serotonin.m2m2.reports.web.ReportQueue.QUEUE_DEPTH";
+    public static final String RUNNING_MONITOR_ID = "com.serotonin.m2m2.reports.web.ReportQueue.RUNNING";
+    public static final String LATENCY_MONITOR_ID = "com.serotonin.m2m2.reports.web.ReportQueue.LATENCY";
+
+    private static volatile ReportQueue instance;
+
+    private final int maxRunning;
+    private final ExecutorService executor;
+    //Waiting reports by user id, the first user is the next to run a report
+    private final Map<Integer, Deque<QueuedReport>> waiting = new LinkedHashMap<>();
+    private final Set<String> waitingKeys = new HashSet<>();
+    private int depth;
+    private int running;
+    private long lastLatency;
+
+    private final AtomicIntegerMonitor depthMonitor;
+    private final AtomicIntegerMonitor runningMonitor;
+    private final AtomicIntegerMonitor latencyMonitor;
+
+    /**
+     * @param maxRunning how many reports can run at once
+     */
+    public ReportQueue(int maxRunning) {
+        this.maxRunning = maxRunning;
+        this.executor = ModuleThreadPools.newFixedThreadPool("Report runner", maxRunning);
+        this.depthMonitor = createMonitor(QUEUE_DEPTH_MONITOR_ID, new TranslatableMessage("internal.monitor.REPORT_QUEUE_DEPTH"));
+        this.runningMonitor = createMonitor(RUNNING_MONITOR_ID, new TranslatableMessage("internal.monitor.REPORT_QUEUE_RUNNING"));
+        this.latencyMonitor = createMonitor(LATENCY_MONITOR_ID, new TranslatableMessage("internal.monitor.REPORT_QUEUE_LATENCY"));
+    }
+
+    /**
+     * @return the queue reports run on, null if they are run by the background processing queue
+     */
+    public static ReportQueue getInstance() {
+        return instance;
+    }
+
+    /**
+     * Create the queue, only if reports.queue.threads is greater than 0
+     */
+    public static void start() {
+        int threads = Common.envProps.getInt("reports.queue.threads", 2);
+        if (threads > 0)
+            instance = new ReportQueue(threads);
+    }
+
+    /**
+     * Stop the queue, reports that are still waiting are not run
+     */
+    public static void stop() {
+        ReportQueue queue = instance;
+        instance = null;
+        if (queue != null)
+            queue.shutdown();
+    }
+
+    /**
+     * Save the report's instance and queue it to be run
+     * @param item
+     * @return false if the same report is already waiting to run for the same time range
+     */
+    public boolean add(ReportWorkItem item) {
+        String key = getKey(item);
+        synchronized (this) {
+            if (!waitingKeys.add(key))
+                return false;
+        }
+        //Save the instance outside the lock, the key keeps out duplicates meanwhile
+        try {
+            item.saveReportInstance();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                waitingKeys.remove(key);
+            }
+            throw e;
+        }
+        synchronized (this) {
+            waiting.computeIfAbsent(item.getUserId(), k -> new ArrayDeque<>())
+                    .add(new QueuedReport(item, key, Common.timer.currentTimeMillis()));
+            depth++;
+            dispatch();
+        }
+        publishStatus();
+        return true;
+    }
+
+    /**
+     * Start the next reports while there is room, users take turns
+     */
+    private void dispatch() {
+        while (running < maxRunning && depth > 0) {
+            Iterator<Map.Entry<Integer, Deque<QueuedReport>>> it = waiting.entrySet().iterator();
+            Map.Entry<Integer, Deque<QueuedReport>> entry = it.next();
+            it.remove();
+            QueuedReport next = entry.getValue().poll();
+            //Move the user to the back of the line
+            if (!entry.getValue().isEmpty())
+                waiting.put(entry.getKey(), entry.getValue());
+
+            waitingKeys.remove(next.key);
+            depth--;
+            running++;
+            try {
+                executor.execute(() -> run(next));
+            } catch (RejectedExecutionException e) {
+                //Shutting down
+                running--;
+                LOG.warn("Report " + next.item.getDescription() + " not run, the report queue is stopped");
+            }
+        }
+        depthMonitor.setValue(depth);
+        runningMonitor.setValue(running);
+    }
+
+    private void run(QueuedReport report) {
+        long latency = Common.timer.currentTimeMillis() - report.queued;
+        synchronized (this) {
+            lastLatency = latency;
+        }
+        latencyMonitor.setValue((int) Math.min(Integer.MAX_VALUE, latency));
+        publishStatus();
+        try {
+            report.item.execute();
+        } catch (Exception e) {
+            LOG.error("Error running " + report.item.getDescription(), e);
+        } finally {
+            synchronized (this) {
+                running--;
+                dispatch();
+            }
+            publishStatus();
+        }
+    }
+
+    private void shutdown() {
+        synchronized (this) {
+            waiting.clear();
+            waitingKeys.clear();
+            depth = 0;
+            depthMonitor.setValue(0);
+        }
+        executor.shutdown();
+        Common.MONITORED_VALUES.removeStatMonitor(QUEUE_DEPTH_MONITOR_ID);
+        Common.MONITORED_VALUES.removeStatMonitor(RUNNING_MONITOR_ID);
+        Common.MONITORED_VALUES.removeStatMonitor(LATENCY_MONITOR_ID);
+    }
+
+    /**
+     * @return the current state of the queue
+     */
+    public synchronized ReportQueueStatus getStatus() {
+        return new ReportQueueStatus(depth, running, maxRunning, lastLatency);
+    }
+
+    private void publishStatus() {
+        try {
+            Common.getRuntimeContext().publishEvent(new ReportQueueEvent(this, getStatus()));
+        } catch (Exception e) {
+            LOG.warn("Failed to publish report queue status", e);
+        }
+    }
+
+    /**
+     * Reports are the same run when they are for the same report and the same computed time range
+     */
+    private static String getKey(ReportWorkItem item) {
+        return item.reportConfig.getId() + ":" + item.getReportStartTime() + ":" + item.getReportEndTime();
+    }
+
+    private AtomicIntegerMonitor createMonitor(String id, TranslatableMessage name) {
+        AtomicIntegerMonitor monitor = new AtomicIntegerMonitor(id, name, monitorOwner, false);
+        Common.MONITORED_VALUES.addIfMissingStatMonitor(monitor);
+        return monitor;
+    }
+
+    private final ValueMonitorOwner monitorOwner = new ValueMonitorOwner() {
+        @Override
+        public void reset(String monitorId) {
+            synchronized (ReportQueue.this) {
+                depthMonitor.setValue(depth);
+                runningMonitor.setValue(running);
+                latencyMonitor.setValue((int) Math.min(Integer.MAX_VALUE, lastLatency));
+            }
+        }
+    };
+
+    private static class QueuedReport {
+        private final ReportWorkItem item;
+        private final String key;
+        private final long queued;
+
+        QueuedReport(ReportWorkItem item, String key, long queued) {
+            this.item = item;
+            this.key = key;
+            this.queued = queued;
+        }
+    }
+}
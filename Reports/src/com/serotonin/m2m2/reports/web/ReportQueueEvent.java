@@ -0,0 +1,27 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.reports.web;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when reports are queued, started or finished
+ *
+ * @author Terry Packer
+ */
+public class ReportQueueEvent extends ApplicationEvent {
+    private static final long serialVersionUID = 1L;
+
+    private final ReportQueueStatus status;
+
+    public ReportQueueEvent(ReportQueue source, ReportQueueStatus status) {
+        super(source);
+        this.status = status;
+    }
+
+    public ReportQueueStatus getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.serotonin.m2m2.reports.web;
+
+/**
+ * Snapshot of the report queue sent to the reports web socket
+ *
+ * @author Terry Packer
+ */
+public class ReportQueueStatus {
+
+    private final int queueDepth;
+    private final int running;
+    private final int maxRunning;
+    private final long lastLatency;
+
+    public ReportQueueStatus(int queueDepth, int running, int maxRunning, long lastLatency) {
+        this.queueDepth = queueDepth;
+        this.running = running;
+        this.maxRunning = maxRunning;
+        this.lastLatency = lastLatency;
+    }
+
+    /**
+     * @return number of reports waiting to run
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getRunning() {
+        return running;
+    }
+
+    public int getMaxRunning() {
+        return maxRunning;
+    }
+
+    /**
+     * @return how long in ms the last report to start waited in the queue
+     */
+    public long getLastLatency() {
+        return lastLatency;
+    }
+}
@@ -95,15 +95,43 @@ public class ReportWorkItem implements WorkItem {
 
         item.user = user;
         item.reportDao = ReportDao.getInstance();
-        item.reportDao.saveReportInstance(reportInstance);
+        item.reportInstance = reportInstance;
 
         // Start the report work item out of process.
-        item.reportInstance = reportInstance;
-        Common.backgroundProcessing.addWorkItem(item);
+        ReportQueue queue = ReportQueue.getInstance();
+        if (queue != null) {
+            if (!queue.add(item)) {
+                LOG.info("Report with id " + report.getId() + " is already queued for the same time range");
+                return;
+            }
+        }
+        else {
+            item.saveReportInstance();
+            Common.backgroundProcessing.addWorkItem(item);
+        }
 
         LOG.debug("Queued report with id " + report.getId() + ", instance id " + reportInstance.getId());
     }
 
+    /**
+     * Create the database record of the instance before it is run
+     */
+    void saveReportInstance() {
+        reportDao.saveReportInstance(reportInstance);
+    }
+
+    int getUserId() {
+        return user.getId();
+    }
+
+    long getReportStartTime() {
+        return reportInstance.getReportStartTime();
+    }
+
+    long getReportEndTime() {
+        return reportInstance.getReportEndTime();
+    }
+
     ReportVO reportConfig;
     private User user;
     private ReportDao reportDao;
@@ -149,13 +177,17 @@ public class ReportWorkItem implements WorkItem {
             }
         }
 
+        //Scheduled emails are deleted once sent so don't save their values, stream them into the email instead
+        boolean streamData = reportConfig.isEmail() && reportConfig.isSchedule()
+                && !reportInstance.isFromInception() && !reportInstance.isToNow();
+
         int recordCount = 0;
         try {
             if (!points.isEmpty()){
                 if(Common.databaseProxy.getNoSQLProxy() == null)
-                	recordCount = reportDao.runReportSQL(reportInstance, points);
+                	recordCount = reportDao.runReportSQL(reportInstance, points, !streamData);
                 else
-                	recordCount = reportDao.runReportNoSQL(reportInstance, points);
+                	recordCount = reportDao.runReportNoSQL(reportInstance, points, !streamData);
             }
         }
         catch (RuntimeException e) {
@@ -179,7 +211,12 @@ public class ReportWorkItem implements WorkItem {
 
             // We are creating an email from the result. Create the content.
             final ReportChartCreator creator = new ReportChartCreator(translations, TimeZone.getDefault());
-            creator.createContent(host, port, reportInstance, reportDao, inlinePrefix, reportConfig.isIncludeData());
+            creator.createContent(host, port, reportInstance, reportDao, inlinePrefix, reportConfig.isIncludeData(),
+                    streamData ? points : null);
+            if (streamData) {
+                reportInstance.setRecordCount(creator.getStreamedRecordCount());
+                reportDao.saveReportInstance(reportInstance);
+            }
 
             // Create the to list
             Set<String> addresses = MailingListDao.getInstance().getRecipientAddresses(reportConfig.getRecipients(),
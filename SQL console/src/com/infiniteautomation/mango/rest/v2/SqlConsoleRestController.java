@@ -3,20 +3,21 @@
  */
 package com.infiniteautomation.mango.rest.v2;
 
-import java.sql.Blob;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Types;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -25,14 +26,16 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.infiniteautomation.mango.spring.MangoRuntimeContextConfiguration;
 import com.serotonin.db.spring.ConnectionCallbackVoid;
 import com.serotonin.db.spring.ExtendedJdbcTemplate;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.vo.User;
 import com.serotonin.m2m2.web.MediaTypes;
-import com.serotonin.util.SerializationHelper;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -48,6 +51,13 @@ import io.swagger.annotations.ApiParam;
 @RequestMapping("/sql-console")
 public class SqlConsoleRestController {
 
+    private final ObjectMapper mapper;
+
+    @Autowired
+    public SqlConsoleRestController(@Qualifier(MangoRuntimeContextConfiguration.REST_OBJECT_MAPPER_NAME) ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
     @ApiOperation(
             value = "List Tables",
             notes = "List all tables in the Mango database, Admin Only",
@@ -59,50 +69,52 @@ public class SqlConsoleRestController {
             @ApiParam(value="User", required=true)
             @AuthenticationPrincipal User user,
             UriComponentsBuilder builder) {
-        return ResponseEntity.ok(query(Common.databaseProxy.getTableListQuery(), getSerializedDataMessage(user)));
+        return ResponseEntity.ok(query(Common.databaseProxy.getTableListQuery()));
     }
 
     @ApiOperation(
             value = "Query",
-            notes = "Submit a query to the Mango database, Admin Only",
+            notes = "Submit a query to the Mango database, Admin Only. Rows are streamed as they are read, " +
+                    "up to the limit or sqlConsole.maxRows and for at most sqlConsole.timeout ms, truncated is true if rows were left out",
             response=SqlQueryResult.class
             )
     @PreAuthorize("isAdmin()")
     @RequestMapping(method = RequestMethod.GET)
-    public ResponseEntity<SqlQueryResult> query(
+    public void query(
             @RequestParam(value="query", required=true) String query,
+            @ApiParam(value="Maximum number of rows", required=false)
+            @RequestParam(value="limit", required=false) Integer limit,
             @ApiParam(value="User", required=true)
             @AuthenticationPrincipal User user,
-            UriComponentsBuilder builder) {
-        return ResponseEntity.ok(query(query, getSerializedDataMessage(user)));
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        // don't let the ETag filter buffer the results
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        new SqlQueryStream(query, getSerializedDataMessage(user), limit).writeJson(response.getOutputStream(), mapper);
     }
 
     @ApiOperation(
             value = "Query",
-            notes = "Submit a query to the Mango database, Admin Only",
+            notes = "Submit a query to the Mango database, Admin Only. Rows are streamed as they are read, " +
+                    "up to the limit or sqlConsole.maxRows and for at most sqlConsole.timeout ms",
             response=SqlQueryResult.class
             )
     @PreAuthorize("isAdmin()")
     @RequestMapping(method = RequestMethod.GET, produces = MediaTypes.CSV_VALUE)
-    public List<Map<String, Object>> queryCsv(
+    public void queryCsv(
             @RequestParam(value="query", required=true) String query,
+            @ApiParam(value="Maximum number of rows", required=false)
+            @RequestParam(value="limit", required=false) Integer limit,
             @ApiParam(value="User", required=true)
             @AuthenticationPrincipal User user,
-            UriComponentsBuilder builder) {
-
-        SqlQueryResult result = query(query, getSerializedDataMessage(user));
-        List<String> headers = result.getHeaders();
-        List<List<Object>> rows = result.getData();
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
-        return rows.stream().map(row -> {
-            Map<String, Object> resultRow = new LinkedHashMap<>(row.size());
-            for (int i = 0; i < row.size(); i++) {
-                Object value = row.get(i);
-                String header = headers.get(i);
-                resultRow.put(header, value);
-            }
-            return resultRow;
-        }).collect(Collectors.toList());
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        response.setContentType(MediaTypes.CSV_VALUE);
+        new SqlQueryStream(query, getSerializedDataMessage(user), limit).writeCsv(response.getOutputStream());
     }
 
     @ApiOperation(
@@ -132,51 +144,34 @@ public class SqlConsoleRestController {
     }
 
     /**
-     *
+     * Read a small result, the table list, into memory
      * @param sqlString
-     * @param serializedDataMsg
-     * @param model
+     * @return
      */
-    private SqlQueryResult query(final String sqlString, final String serializedDataMsg) {
+    private SqlQueryResult query(final String sqlString) {
 
         SqlQueryResult result = new SqlQueryResult();
         Common.databaseProxy.doInConnection(new ConnectionCallbackVoid() {
             @Override
             public void doInConnection(Connection conn) throws SQLException {
-                Statement stmt = conn.createStatement();
-                ResultSet rs = stmt.executeQuery(sqlString);
-
-                ResultSetMetaData meta = rs.getMetaData();
-                int columns = meta.getColumnCount();
-                List<String> headers = new ArrayList<String>(columns);
-                for (int i = 0; i < columns; i++)
-                    headers.add(meta.getColumnLabel(i + 1));
-
-                List<List<Object>> data = new LinkedList<List<Object>>();
-                List<Object> row;
-                while (rs.next()) {
-                    row = new ArrayList<Object>(columns);
-                    data.add(row);
-                    for (int i = 0; i < columns; i++) {
-                        if (meta.getColumnType(i + 1) == Types.CLOB)
-                            row.add(rs.getString(i + 1));
-                        else if (meta.getColumnType(i + 1) == Types.LONGVARBINARY
-                                || meta.getColumnType(i + 1) == Types.BLOB) {
-                            Blob blob = rs.getBlob(i + 1);
-                            Object o;
-                            if (blob == null)
-                                o = null;
-                            else
-                                o = SerializationHelper.readObjectInContext(blob.getBinaryStream());
-                            row.add(serializedDataMsg + "(" + o + ")");
-                        }
-                        else
+                try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sqlString)) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    int columns = meta.getColumnCount();
+                    List<String> headers = new ArrayList<String>(columns);
+                    for (int i = 0; i < columns; i++)
+                        headers.add(meta.getColumnLabel(i + 1));
+
+                    List<List<Object>> data = new ArrayList<List<Object>>();
+                    while (rs.next()) {
+                        List<Object> row = new ArrayList<Object>(columns);
+                        for (int i = 0; i < columns; i++)
                             row.add(rs.getObject(i + 1));
+                        data.add(row);
                     }
-                }
 
-                result.setHeaders(headers);
-                result.setData(data);
+                    result.setHeaders(headers);
+                    result.setData(data);
+                }
             }
         });
         return result;
@@ -13,6 +13,7 @@ public class SqlQueryResult {
 
     private List<String> headers;
     private List<List<Object>> data;
+    private boolean truncated;
     
     public SqlQueryResult(List<String> headers, List<List<Object>> data) {
         this.headers = headers;
@@ -33,4 +34,10 @@ public class SqlQueryResult {
     public void setData(List<List<Object>> data) {
         this.data = data;
     }
+    public boolean isTruncated() {
+        return truncated;
+    }
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
 }
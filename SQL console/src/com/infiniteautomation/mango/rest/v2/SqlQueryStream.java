@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.rest.v2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serotonin.db.spring.ConnectionCallbackVoid;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.DatabaseProxy;
+import com.serotonin.m2m2.util.timeout.TimeoutClient;
+import com.serotonin.m2m2.util.timeout.TimeoutTask;
+import com.serotonin.util.SerializationHelper;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Writes the rows of a query to a stream as they are read from the result set so the
+ * results are never held in memory.  The rows are limited to sqlConsole.maxRows and the
+ * query to sqlConsole.timeout ms, the statement is cancelled if the time runs out or the
+ * client goes away.  Rows are fetched sqlConsole.fetchSize at a time.
+ *
+ * @author Terry Packer
+ */
+public class SqlQueryStream {
+
+    private static final Log LOG = LogFactory.getLog(SqlQueryStream.class);
+
+    private final String sql;
+    private final String serializedDataMsg;
+    private final int maxRows;
+    private final long timeout;
+    private final int fetchSize;
+
+    private volatile boolean timedOut;
+
+    /**
+     * @param sql
+     * @param serializedDataMsg
+     * @param limit maximum rows to return, null for sqlConsole.maxRows
+     */
+    public SqlQueryStream(String sql, String serializedDataMsg, Integer limit) {
+        this.sql = sql;
+        this.serializedDataMsg = serializedDataMsg;
+        int max = Common.envProps.getInt("sqlConsole.maxRows", 100000);
+        this.maxRows = limit == null || limit <= 0 ? max : Math.min(limit, max);
+        this.timeout = Common.envProps.getLong("sqlConsole.timeout", 60000);
+        this.fetchSize = Common.envProps.getInt("sqlConsole.fetchSize", 1000);
+    }
+
+    /**
+     * Write the results as an object with the headers, the rows as arrays
+     * and whether the rows were truncated by the row or time limit
+     * @param out
+     * @param mapper
+     */
+    public void writeJson(OutputStream out, ObjectMapper mapper) {
+        stream(new RowWriter() {
+            private JsonGenerator jgen;
+
+            @Override
+            public void start(List<String> headers) throws IOException {
+                jgen = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+                jgen.writeStartObject();
+                jgen.writeObjectField("headers", headers);
+                jgen.writeArrayFieldStart("data");
+            }
+
+            @Override
+            public void row(Object[] row) throws IOException {
+                jgen.writeStartArray();
+                for (Object value : row)
+                    jgen.writeObject(value);
+                jgen.writeEndArray();
+            }
+
+            @Override
+            public void finish(boolean truncated) throws IOException {
+                jgen.writeEndArray();
+                jgen.writeBooleanField("truncated", truncated);
+                jgen.writeEndObject();
+                jgen.flush();
+            }
+        });
+    }
+
+    /**
+     * Write the results as CSV with a header row
+     * @param out
+     */
+    public void writeCsv(OutputStream out) {
+        stream(new RowWriter() {
+            private Writer writer;
+            private CSVWriter csv;
+            private String[] line;
+
+            @Override
+            public void start(List<String> headers) throws IOException {
+                writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                csv = new CSVWriter(writer);
+                csv.writeNext(headers.toArray(new String[headers.size()]));
+                line = new String[headers.size()];
+            }
+
+            @Override
+            public void row(Object[] row) throws IOException {
+                for (int i = 0; i < row.length; i++)
+                    line[i] = row[i] == null ? "" : row[i].toString();
+                csv.writeNext(line);
+                if (csv.checkError())
+                    throw new IOException("Failed to write CSV row");
+            }
+
+            @Override
+            public void finish(boolean truncated) throws IOException {
+                csv.flush();
+            }
+        });
+    }
+
+    private void stream(RowWriter writer) {
+        Common.databaseProxy.doInConnection(new ConnectionCallbackVoid() {
+            @Override
+            public void doInConnection(Connection conn) throws SQLException {
+                try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    //MySQL only streams rows with this fetch size
+                    stmt.setFetchSize(Common.databaseProxy.getType() == DatabaseProxy.DatabaseType.MYSQL ? Integer.MIN_VALUE : fetchSize);
+                    //One more to know if there were more rows
+                    stmt.setMaxRows(maxRows + 1);
+
+                    long deadline = System.currentTimeMillis() + timeout;
+                    TimeoutTask cancelTask = new TimeoutTask(timeout, new TimeoutClient() {
+                        @Override
+                        public void scheduleTimeout(long fireTime) {
+                            timedOut = true;
+                            cancel(stmt);
+                        }
+
+                        @Override
+                        public String getThreadName() {
+                            return "SQL console query timeout";
+                        }
+                    });
+
+                    try (ResultSet rs = stmt.executeQuery(sql)) {
+                        ResultSetMetaData meta = rs.getMetaData();
+                        int columns = meta.getColumnCount();
+                        List<String> headers = new ArrayList<String>(columns);
+                        int[] types = new int[columns];
+                        for (int i = 0; i < columns; i++) {
+                            headers.add(meta.getColumnLabel(i + 1));
+                            types[i] = meta.getColumnType(i + 1);
+                        }
+
+                        writer.start(headers);
+                        boolean truncated = false;
+                        int count = 0;
+                        Object[] row = new Object[columns];
+                        while (true) {
+                            boolean next;
+                            try {
+                                next = rs.next();
+                            } catch (SQLException e) {
+                                //Cancelled by the timeout, return what we have
+                                if (timedOut) {
+                                    truncated = true;
+                                    break;
+                                }
+                                throw e;
+                            }
+                            if (!next)
+                                break;
+                            if (count == maxRows || System.currentTimeMillis() > deadline) {
+                                truncated = true;
+                                break;
+                            }
+                            for (int i = 0; i < columns; i++)
+                                row[i] = getValue(rs, i + 1, types[i]);
+                            writer.row(row);
+                            count++;
+                        }
+                        writer.finish(truncated);
+                    } catch (IOException e) {
+                        //Client went away, stop the database doing any more work
+                        cancel(stmt);
+                        LOG.debug("SQL console query cancelled, client disconnected", e);
+                    } finally {
+                        cancelTask.cancel();
+                    }
+                }
+            }
+        });
+    }
+
+    private Object getValue(ResultSet rs, int column, int type) throws SQLException {
+        if (type == Types.CLOB)
+            return rs.getString(column);
+        if (type == Types.LONGVARBINARY || type == Types.BLOB) {
+            Blob blob = rs.getBlob(column);
+            Object o;
+            if (blob == null)
+                o = null;
+            else
+                o = SerializationHelper.readObjectInContext(blob.getBinaryStream());
+            return serializedDataMsg + "(" + o + ")";
+        }
+        return rs.getObject(column);
+    }
+
+    private static void cancel(Statement stmt) {
+        try {
+            stmt.cancel();
+        } catch (SQLException e) {
+            LOG.warn("Failed to cancel SQL console query", e);
+        }
+    }
+
+    private interface RowWriter {
+        void start(List<String> headers) throws IOException;
+        void row(Object[] row) throws IOException;
+        void finish(boolean truncated) throws IOException;
+    }
+}
@@ -50,6 +50,7 @@ class SqlConsoleController {
         this.maSqlConsole.getTables().then(response => {
             this.tableHeaders = response.headers;
             this.rows = response.data;
+            this.truncated = false;
         }).finally(() => {
             delete this.disableButtons;
             delete this.gettingTables;
@@ -75,6 +76,7 @@ class SqlConsoleController {
         this.maSqlConsole.query(queryString).then(response => {
             this.tableHeaders = response.headers;
             this.rows = response.data;
+            this.truncated = response.truncated;
             this.csvUrl = this.maSqlConsole.queryCsvUrl(queryString);
         }, error => {
             this.maDialogHelper.toastOptions({
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.infiniteautomation.serial.rt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Test framing messages that arrive over several reads and wrap around the end of the buffer
+ *
+ * @author Terry Packer
+ */
+public class ByteRingBufferTest {
+
+    private static final byte[] TERMINATOR = bytes(";");
+
+    @Test
+    public void testFrameAcrossReads() throws IOException {
+        ByteRingBuffer buffer = new ByteRingBuffer(16);
+        read(buffer, "ab");
+        assertEquals(-1, buffer.nextFrame(TERMINATOR));
+
+        read(buffer, "c;d;e");
+        assertEquals(4, buffer.nextFrame(TERMINATOR));
+        assertArrayEquals(bytes("abc;"), buffer.pop(4));
+        assertEquals(2, buffer.nextFrame(TERMINATOR));
+        assertArrayEquals(bytes("d;"), buffer.pop(2));
+        assertEquals(-1, buffer.nextFrame(TERMINATOR));
+        assertArrayEquals(bytes("e"), buffer.peekAll());
+    }
+
+    @Test
+    public void testTerminatorSplitAcrossReads() throws IOException {
+        ByteRingBuffer buffer = new ByteRingBuffer(16);
+        byte[] terminator = bytes("\r\n");
+        read(buffer, "abc\r");
+        assertEquals(-1, buffer.nextFrame(terminator));
+
+        read(buffer, "\ndef");
+        assertEquals(5, buffer.nextFrame(terminator));
+        assertArrayEquals(bytes("abc\r\n"), buffer.pop(5));
+        assertEquals(-1, buffer.nextFrame(terminator));
+        assertEquals(3, buffer.size());
+    }
+
+    @Test
+    public void testPartialPopKeepsScannedBytes() throws IOException {
+        ByteRingBuffer buffer = new ByteRingBuffer(16);
+        read(buffer, "abcdef");
+        assertEquals(-1, buffer.nextFrame(TERMINATOR));
+        //The rest of the bytes have been searched but must still be found once the terminator arrives
+        buffer.pop(2);
+        read(buffer, ";");
+        assertEquals(5, buffer.nextFrame(TERMINATOR));
+        assertArrayEquals(bytes("cdef;"), buffer.pop(5));
+    }
+
+    @Test
+    public void testWrapAround() throws IOException {
+        ByteRingBuffer buffer = new ByteRingBuffer(8);
+        read(buffer, "12345;78");
+        assertTrue(buffer.isFull());
+        assertEquals(0, buffer.readFrom(new ByteArrayInputStream(bytes("x"))));
+        assertEquals(6, buffer.nextFrame(TERMINATOR));
+        assertArrayEquals(bytes("12345;"), buffer.pop(6));
+
+        //Written at the start of the array
+        read(buffer, "9;");
+        assertEquals(4, buffer.nextFrame(TERMINATOR));
+        assertArrayEquals(bytes("789;"), buffer.pop(4));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        ByteRingBuffer buffer = new ByteRingBuffer(8);
+        read(buffer, "abc");
+        assertEquals(-1, buffer.nextFrame(TERMINATOR));
+        buffer.clear();
+        read(buffer, "d;");
+        assertEquals(2, buffer.nextFrame(TERMINATOR));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPopTooMuch() throws IOException {
+        ByteRingBuffer buffer = new ByteRingBuffer(8);
+        read(buffer, "abc");
+        buffer.pop(4);
+    }
+
+    private static void read(ByteRingBuffer buffer, String data) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes(data));
+        while (buffer.readFrom(in) > 0)
+            ;
+    }
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ * @author Terry Packer
+ */
+package com.infiniteautomation.serial.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.infiniteautomation.mango.io.serial.DataBits;
+import com.infiniteautomation.mango.io.serial.FlowControl;
+import com.infiniteautomation.mango.io.serial.Parity;
+import com.infiniteautomation.mango.io.serial.SerialPortException;
+import com.infiniteautomation.mango.io.serial.SerialPortProxy;
+import com.infiniteautomation.mango.io.serial.SerialPortProxyEvent;
+import com.infiniteautomation.mango.io.serial.StopBits;
+import com.infiniteautomation.mango.regex.MatchCallback;
+import com.infiniteautomation.serial.SerialDataSourceTestData;
+import com.infiniteautomation.serial.TestSerialPortInputStream;
+import com.infiniteautomation.serial.TestSerialPortOutputStream;
+import com.infiniteautomation.serial.TestSerialPortProxy;
+import com.infiniteautomation.serial.vo.SerialDataSourceVO;
+import com.infiniteautomation.serial.vo.SerialPointLocatorVO;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockSerialPortManager;
+import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+
+/**
+ * Compare reading messages through the data source against the previous
+ * approach of decoding the whole buffer on every event and compiling the
+ * message and value patterns for every point on every message.
+ *
+ * The timings are only logged, they never fail the build.  The benchmark is
+ * skipped unless it is run with -Dserial.benchmark=true
+ *
+ * @author Terry Packer
+ *
+ */
+public class SerialDataSourceBenchmark extends MangoTestBase {
+
+    private static final Log LOG = LogFactory.getLog(SerialDataSourceBenchmark.class);
+
+    private static final int POINTS = 50;
+    private static final int EVENTS = 200;
+    private static final int MESSAGES_PER_EVENT = 10;
+    private static final String MESSAGE_REGEX = "!([A-Z0-9]{3,3})(.*);";
+
+    protected TestSerialPortProxy proxy;
+    protected SerialDataSourceVO vo;
+    protected SerialDataSourceRT rt;
+    protected List<DataPointRT> points;
+    protected List<String> chunks;
+
+    @Before
+    public void setup() {
+        assumeTrue(Boolean.getBoolean("serial.benchmark"));
+        this.proxy = new TestSerialPortProxy(new TestSerialPortInputStream(), new TestSerialPortOutputStream());
+        Common.serialPortManager = new BenchmarkSerialPortManager(proxy);
+
+        vo = SerialDataSourceTestData.getStandardDataSourceVO();
+        vo.setMessageRegex(MESSAGE_REGEX);
+        vo.setPointIdentifierIndex(1);
+        vo.setMessageTerminator(";");
+        vo.setMaxMessageSize(4096);
+        rt = (SerialDataSourceRT) vo.createDataSourceRT();
+
+        points = new ArrayList<>();
+        for(int i = 0; i < POINTS; i++) {
+            DataPointRT dp = SerialDataSourceTestData.getCustomPoint("p" + i, "p" + i,
+                    "![A-Z0-9]{3,3}(.*);", 1, identifier(i), vo);
+            points.add(dp);
+            rt.addDataPoint(dp);
+        }
+
+        chunks = new ArrayList<>();
+        int message = 0;
+        for(int e = 0; e < EVENTS; e++) {
+            StringBuilder chunk = new StringBuilder();
+            for(int m = 0; m < MESSAGES_PER_EVENT; m++) {
+                chunk.append('!').append(identifier(message % POINTS)).append(message).append(';');
+                message++;
+            }
+            chunks.add(chunk.toString());
+        }
+    }
+
+    @Test
+    public void benchmarkReadPointValues() throws Exception {
+        assertTrue(rt.connect());
+
+        //Warm up both paths
+        runDataSource();
+        runLegacy();
+
+        long start = System.nanoTime();
+        runDataSource();
+        long dataSourceNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int legacyMatches = runLegacy();
+        long legacyNanos = System.nanoTime() - start;
+
+        int messages = EVENTS * MESSAGES_PER_EVENT;
+        assertEquals(messages, legacyMatches);
+        for(DataPointRT dp : points) {
+            PointValueTime pvt = dp.getPointValue();
+            assertTrue("No value for " + dp.getVO().getXid(), pvt != null);
+        }
+
+        LOG.info(String.format("Serial framing and matching of %d messages for %d points: data source %.2fms, legacy %.2fms",
+                messages, POINTS, dataSourceNanos / 1e6, legacyNanos / 1e6));
+    }
+
+    private void runDataSource() {
+        for(String chunk : chunks) {
+            proxy.getTestInputStream().pushToMockStream(chunk);
+            rt.serialEvent(new SerialPortProxyEvent(timer.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * The framing and matching done before the ring buffer and cached patterns
+     * @return number of values matched
+     * @throws Exception
+     */
+    private int runLegacy() throws Exception {
+        final AtomicInteger matches = new AtomicInteger();
+        MatchCallback callback = new MatchCallback() {
+            @Override
+            public void onMatch(String pointIdentifier, PointValueTime value) {
+                matches.incrementAndGet();
+            }
+            @Override
+            public void pointPatternMismatch(String message, String pointValueRegex) { }
+            @Override
+            public void messagePatternMismatch(String message, String messageRegex) { }
+            @Override
+            public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) { }
+            @Override
+            public void matchGeneralFailure(Exception e) { }
+        };
+
+        for(String chunk : chunks) {
+            String buffered = new String(chunk.getBytes(Common.UTF8_CS), Common.UTF8_CS);
+            for(String message : SerialDataSourceRT.splitMessages(buffered, vo.getMessageTerminator())) {
+                if(!SerialDataSourceRT.canProcessTerminatedMessage(message, vo.getMessageTerminator()))
+                    continue;
+                for(DataPointRT dp : points) {
+                    SerialPointLocatorVO plVo = dp.getVO().getPointLocator();
+                    SerialDataSourceRT.matchPointValue(message, vo.getMessageRegex(), vo.getPointIdentifierIndex(),
+                            plVo, vo.isHex(), LOG, callback);
+                }
+            }
+        }
+        return matches.get();
+    }
+
+    private static String identifier(int i) {
+        return String.format("%03d", i);
+    }
+
+    class BenchmarkSerialPortManager extends MockSerialPortManager {
+
+        protected SerialPortProxy proxy;
+
+        public BenchmarkSerialPortManager(SerialPortProxy proxy) {
+            this.proxy = proxy;
+        }
+
+        @Override
+        public SerialPortProxy open(String ownerName, String commPortId, int baudRate,
+                FlowControl flowControlIn, FlowControl flowControlOut, DataBits dataBits,
+                StopBits stopBits, Parity parity) throws SerialPortException {
+            return this.proxy;
+        }
+    }
+}
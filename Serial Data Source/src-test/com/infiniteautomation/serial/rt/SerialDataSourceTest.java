@@ -4,6 +4,7 @@
  */
 package com.infiniteautomation.serial.rt;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -221,6 +222,33 @@ public class SerialDataSourceTest extends MangoTestBase{
 		}
 	}
 	
+	@Test
+	public void testRouteByIdentifier(){
+		vo.setMessageRegex("!([A-Z]{3,3})(.*);");
+		vo.setPointIdentifierIndex(1);
+		vo.setMessageTerminator(";");
+		assertTrue(rt.connect());
+		
+		DataPointRT abc = SerialDataSourceTestData.getCustomPoint("abc", "abc", "![A-Z]{3,3}(.*);", 1, "ABC", vo);
+		DataPointRT xyz = SerialDataSourceTestData.getCustomPoint("xyz", "xyz", "![A-Z]{3,3}(.*);", 1, "XYZ", vo);
+		rt.addDataPoint(abc);
+		rt.addDataPoint(xyz);
+		
+		proxy.getTestInputStream().pushToMockStream("!ABC1;!XYZ2;!QRS3;junk;");
+		rt.serialEvent(new SerialPortProxyEvent(timer.currentTimeMillis()));
+		
+		assertEquals("1", abc.getPointValue().getStringValue());
+		assertEquals("2", xyz.getPointValue().getStringValue());
+		assertEquals(1, rt.getUnidentifiedMessageCount());
+		assertEquals(1, rt.getUnmatchedMessageCount());
+		
+		//Index is rebuilt when the points change
+		rt.removeDataPoint(xyz);
+		proxy.getTestInputStream().pushToMockStream("!XYZ4;");
+		rt.serialEvent(new SerialPortProxyEvent(timer.currentTimeMillis()));
+		assertEquals("2", xyz.getPointValue().getStringValue());
+		assertEquals(2, rt.getUnidentifiedMessageCount());
+	}
 	
 	class SerialDataSourceSerialPortManager extends MockSerialPortManager {
 	    
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2019 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.serial.rt;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fixed capacity byte ring buffer that is filled straight from an input stream
+ * and framed on a terminator without decoding its contents.
+ *
+ * The search position for the terminator is remembered so bytes are only
+ * scanned once no matter how many reads it takes to receive a message.
+ *
+ * Not thread safe, the data source synchronizes on the buffer.
+ *
+ * @author Terry Packer
+ */
+public class ByteRingBuffer {
+
+    private final byte[] data;
+    private int head; //Index of the first byte
+    private int size;
+    private int scanned; //Bytes from head already searched for the terminator
+
+    public ByteRingBuffer(int capacity) {
+        this.data = new byte[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    public boolean isFull() {
+        return size == data.length;
+    }
+
+    /**
+     * Read as much as is available into the free space of the buffer
+     *
+     * @param in
+     * @return number of bytes read, 0 if the buffer is full, -1 if there was nothing to read
+     * @throws IOException
+     */
+    public int readFrom(InputStream in) throws IOException {
+        if(isFull())
+            return 0;
+        int tail = (head + size) % data.length;
+        //Only read up to the end of the array or the head, whichever is first
+        int length = tail >= head ? data.length - tail : head - tail;
+        if(size == 0) {
+            head = tail = 0;
+            length = data.length;
+        }
+        int read = in.read(data, tail, length);
+        if(read > 0)
+            size += read;
+        return read;
+    }
+
+    /**
+     * Find the next complete message
+     *
+     * @param terminator
+     * @return the length of the message including its terminator or -1 if there is no complete message
+     */
+    public int nextFrame(byte[] terminator) {
+        if(terminator.length == 0)
+            return -1;
+        int start = Math.max(0, scanned - terminator.length + 1);
+        for(int i = start; i + terminator.length <= size; i++) {
+            if(matches(i, terminator))
+                return i + terminator.length;
+        }
+        scanned = size;
+        return -1;
+    }
+
+    private boolean matches(int offset, byte[] terminator) {
+        for(int j = 0; j < terminator.length; j++) {
+            if(data[(head + offset + j) % data.length] != terminator[j])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remove the first bytes from the buffer
+     * @param length
+     * @return
+     */
+    public byte[] pop(int length) {
+        byte[] result = peek(length);
+        head = (head + length) % data.length;
+        size -= length;
+        scanned = Math.max(0, scanned - length);
+        return result;
+    }
+
+    public byte[] popAll() {
+        return pop(size);
+    }
+
+    public byte[] peekAll() {
+        return peek(size);
+    }
+
+    private byte[] peek(int length) {
+        if(length > size)
+            throw new IllegalArgumentException("Requested " + length + " bytes but only " + size + " available");
+        byte[] result = new byte[length];
+        int first = Math.min(length, data.length - head);
+        System.arraycopy(data, head, result, 0, first);
+        if(first < length)
+            System.arraycopy(data, 0, result, first, length - first);
+        return result;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        scanned = 0;
+    }
+}
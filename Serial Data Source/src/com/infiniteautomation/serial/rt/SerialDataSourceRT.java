@@ -4,7 +4,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,7 +38,6 @@ import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
 import com.serotonin.m2m2.rt.dataSource.EventDataSource;
 import com.serotonin.m2m2.util.timeout.TimeoutClient;
 import com.serotonin.m2m2.util.timeout.TimeoutTask;
-import com.serotonin.util.queue.ByteQueue;
 
 public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> implements SerialPortProxyEventListener{
 	private final Log LOG = LogFactory.getLog(SerialDataSourceRT.class);
@@ -45,16 +47,28 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
     public static final int POINT_READ_PATTERN_MISMATCH_EVENT = 4;
     
     private static final String HEX_REGEX = "^[0-9A-Fa-f]*$";
+    private static final long UNROUTED_SAMPLE_PERIOD = 60000; //Log unrouted messages at most once a minute
     
 	private SerialPortProxy port; //Serial Communication Port
-	private ByteQueue buffer; //Max size is Max Message Size
+	private final ByteRingBuffer buffer; //Max size is Max Message Size
 	private TimeoutTask timeoutTask; //Task to retrieve buffer contents after timeout
+	//Cached compiled settings, only accessed while synchronized on the buffer
+	private Pattern messagePattern;
+	private String terminator;
+	private boolean terminatorHex;
+	private byte[] terminatorBytes;
+	//Points by identifier, null when the point list has changed
+	private volatile Map<String, List<DataPointRT>> pointIndex;
+	//Messages not routed to a point, only accessed while synchronized on the buffer
+	private long unmatchedMessages;
+	private long unidentifiedMessages;
+	private long lastUnroutedSample;
 	
 	private RollingIOLog ioLog;
 	
 	public SerialDataSourceRT(SerialDataSourceVO vo) {
 		super(vo);
-		buffer = new ByteQueue(vo.getMaxMessageSize());
+		buffer = new ByteRingBuffer(vo.getMaxMessageSize());
 	}
 
 
@@ -260,26 +274,23 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
 				return;
 			}
 			
-			//String msg = null;
 			try{
 				//Read the data in from the port
 				//Don't read during timeout events as there could be no data and this would block till there is
 				if(!(evt instanceof TimeoutSerialEvent)){
 					InputStream in = this.port.getInputStream();
-		            int data;
-		            //Read in all the data we can from the InputStream
+		            //Read in all the data we can from the InputStream straight into the buffer
 		            // this may not be the full message, or may read multiple messages
-		            while (( data = in.read()) > -1 ){
-		            	if(buffer.size() >= this.vo.getMaxMessageSize()){
-		            		buffer.popAll();
+		            while (buffer.readFrom(in) > 0){
+		            	if(buffer.isFull() && in.read() > -1){
+		            		buffer.clear();
 		    				raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", "Max message size reached!"));
 		    				return; //Give up
 		            	}
-		            	buffer.push(data);
 		            }
 		            //Log our buffer contents 
-	            	byte[] logMsg = buffer.peekAll();
 	            	if(this.vo.isLogIO()) {
+	            		byte[] logMsg = buffer.peekAll();
 	            		if(this.vo.isHex())
 	            			this.ioLog.log(true, logMsg);
 	            		else
@@ -295,193 +306,257 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
 	            	}
 				}
 	            
-	            
 	            //We either use a terminator and timeout OR just a Timeout
 	            if(vo.getUseTerminator()) {
+	            	//Frame complete messages on the terminator bytes and process them,
+	            	// the only data left in the buffer will potentially be one incomplete message.
+	            	byte[] terminator = getTerminatorBytes();
+	            	if(terminator != null) {
+	            		int length;
+	            		while((length = buffer.nextFrame(terminator)) > -1) {
+	            			processMessage(decodeMessage(buffer.pop(length)));
+	            		}
+	            	}else {
+	            		processHexTextMessages();
+	            	}
 	            	
-	            	//If timeout then process the buffer
-	            	//If serial event then read input and process buffer
-	            	
-	                String messageRegex = vo.getMessageRegex(); //"!([A-Z0-9]{3,3})([a-zA-Z])(.*);";
-	                //DS Information
-	                int pointIdentifierIndex = vo.getPointIdentifierIndex();
-	            	
-	            	//Create a String so we can use Regex and matching
-	                String msg = null;
-        			if(this.vo.isHex()){
-        				msg = convertFromHex(buffer.peekAll());
-            		}else{
-            			msg = new String(buffer.peekAll(), Common.UTF8_CS);
-            		}
-            		
-            		//Now we have a string that contains the entire contents of the buffer,
-            		// split on terminator, keep it on the end of the message and process any full messages
-            		// and pop them from the buffer
-            		String[] messages = splitMessages(msg, this.vo.getMessageTerminator());
-            		for(String message : messages) {
-            			//Does our message contain the terminator?
-            			//It should be impossible to have a non-terminated message
-            			// that is before a message with a terminator in the buffer
-            			// so it is assumed here that popping from the buffer will 
-            			// not cause any issues. As the only data left in the buffer will 
-            			// potentially be one incomplete message.
-            			if(canProcessTerminatedMessage(message, this.vo.getMessageTerminator())){
-            				//Pop off this message
-                   			this.buffer.pop(message.length());
-                			if(LOG.isDebugEnabled())
-                    			LOG.debug("Matching will use String: " + message);
-                			final AtomicBoolean matcherFailed = new AtomicBoolean(false);
-                			pointListChangeLock.readLock().lock();
-                			try {
-	                			for(final DataPointRT dp: this.dataPoints){
-	                        		SerialPointLocatorVO plVo = dp.getVO().getPointLocator();
-	                        		MatchCallback callback = new MatchCallback(){
-	                        			
-										@Override
-										public void onMatch(String pointIdentifier, PointValueTime value) {
-											if(!updatePointValue(value, dp)){
-												matcherFailed.set(true);
-									        	raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.invalidValue", dp.getVO().getXid()));
-											}
-										}
-	
-										@Override
-										public void pointPatternMismatch(String message, String messageRegex) {
-											//Ignore as this just isn't a message we care about
-										}
-										
-										@Override
-										public void messagePatternMismatch(String message, String messageRegex) { 
-							            	raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch",messageRegex, message));
-											matcherFailed.set(true);
-										}
-	
-										@Override
-										public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
-											//Don't Care
-										}
-										
-										@Override
-										public void matchGeneralFailure(Exception e) {
-							            	raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", e.getMessage()));
-											matcherFailed.set(true);
-										}
-	                        		};
-	                        		
-	                        		try{
-	                        			matchPointValue(message, messageRegex, pointIdentifierIndex, plVo, vo.isHex(), LOG, callback);
-	                        		}catch(Exception e){
-	                        			callback.matchGeneralFailure(e);
-	                        		}
-	                			}
-                			} finally {
-                			    pointListChangeLock.readLock().unlock();
-                			}
-                			
-                			//Did we have a failure?
-                			//If no failures...
-                			if(!matcherFailed.get())
-                				returnToNormal(POINT_READ_PATTERN_MISMATCH_EVENT, System.currentTimeMillis());
-                			returnToNormal(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis());	
-            			}
-            			
-            			if(evt instanceof TimeoutSerialEvent){
-            				//Clear the buffer
-            				this.buffer.popAll();
-            			}else{
-            				//Check to see if we have remaining data, if not cancel timeout
-            				if(this.buffer.size() == 0)
-            				    if(this.timeoutTask != null)
-            				        this.timeoutTask.cancel();
-            			}
-            			
-            		}
-	            	return;
+	            	if(evt instanceof TimeoutSerialEvent){
+	            		//Clear the buffer
+	            		this.buffer.clear();
+	            	}else{
+	            		//Check to see if we have remaining data, if not cancel timeout
+	            		if(this.buffer.size() == 0)
+	            			if(this.timeoutTask != null)
+	            				this.timeoutTask.cancel();
+	            	}
 	            }else{
 	            	//No Terminator case
 	            	//Do we have a timeout generated message?
 	            	if(evt instanceof TimeoutSerialEvent){
-	            		String msg = null;
 	            		//We are a timeout event so we have a timeout, pop everything into the message and assume its a message
-		    			if(this.vo.isHex()){
-		    				msg = convertFromHex(buffer.popAll());
-		        		}else{
-		        			msg = new String(buffer.popAll(), Common.UTF8_CS);
-		        		}
-		            	//Just do a match on the Entire Message because we are not using Terminator
-		            	//String messageRegex = ".*"; //Match everything
-		            	//int pointIdentifierIndex = 0; //Whole message
-		            	String messageRegex = vo.getMessageRegex(); //"!([A-Z0-9]{3,3})([a-zA-Z])(.*);";
-		                //DS Information
-		                int pointIdentifierIndex = vo.getPointIdentifierIndex();
-		            	
-		            	if(LOG.isDebugEnabled())
-                			LOG.debug("Matching will use String: " + msg);
-            			final AtomicBoolean matcherFailed = new AtomicBoolean(false);
-            			pointListChangeLock.readLock().lock();
-            			try {
-	            			for(final DataPointRT dp: this.dataPoints){
-	                    		SerialPointLocatorVO plVo = dp.getVO().getPointLocator();
-	                    		MatchCallback callback = new MatchCallback(){
-	                    			
-									@Override
-									public void onMatch(String pointIdentifier, PointValueTime pvt) {
-										if(!updatePointValue(pvt, dp)){
-											matcherFailed.set(true);
-								        	raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.invalidValue", dp.getVO().getXid()));
-										}
-										buffer.popAll(); //Ensure we clear out the buffer...
-									}
-	
-									@Override
-									public void pointPatternMismatch(String message, String messageRegex) {
-										//Ignore as this just isn't a message we care about
-									}
-									
-									@Override
-									public void messagePatternMismatch(String message, String messageRegex) { 
-						            	raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch",messageRegex, message));
-										matcherFailed.set(true);
-									}
-									
-									@Override
-									public void pointNotIdentified(String message, String messageRegex, int pointIdentifierIndex) {
-										//Don't Care
-									}
-
-									@Override
-									public void matchGeneralFailure(Exception e) {
-						            	raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", e.getMessage()));
-										matcherFailed.set(true);
-									}
-	                    			
-	                    		};
-	                    		try{
-	                    			matchPointValue(msg, messageRegex, pointIdentifierIndex, plVo, vo.isHex(), LOG, callback);
-	                    		}catch(Exception e){
-	                    			callback.matchGeneralFailure(e);
-	                    		}
-	            			}
-            			} finally {
-            			    pointListChangeLock.readLock().unlock();
-            			}
-            			
-            			//Did we have a failure?
-            			//If no failures...
-            			if(!matcherFailed.get())
-            				returnToNormal(POINT_READ_PATTERN_MISMATCH_EVENT, System.currentTimeMillis());
-            			returnToNormal(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis());
+	            		processMessage(decodeMessage(buffer.popAll()));
 	            	}
 	            }
 			}catch(Exception e){
 				LOG.error(e.getMessage(),e);
-	        	this.buffer.popAll(); //Ensure we clear out the buffer...
+	        	this.buffer.clear(); //Ensure we clear out the buffer...
 				raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed",e.getMessage()));
 				
 			}
 		}//End synch
 	}
 	
+	/**
+	 * Match a complete message against the points with the identifier it contains.
+	 * 
+	 * The message regex is shared by all points so it is matched once and the identifier
+	 * group is used to look the points up in the index, only their value patterns are run.
+	 * @param msg
+	 */
+	private void processMessage(String msg) {
+		//Use the cached patterns for regex and matching
+		Pattern messagePattern = getMessagePattern();
+		int pointIdentifierIndex = vo.getPointIdentifierIndex();
+		
+		if(LOG.isDebugEnabled())
+			LOG.debug("Matching will use String: " + msg);
+		boolean matcherFailed = false;
+		pointListChangeLock.readLock().lock();
+		try {
+			if(!this.dataPoints.isEmpty())
+				matcherFailed = !routeMessage(msg, messagePattern, pointIdentifierIndex);
+		} finally {
+			pointListChangeLock.readLock().unlock();
+		}
+		
+		//Did we have a failure?
+		//If no failures...
+		if(!matcherFailed)
+			returnToNormal(POINT_READ_PATTERN_MISMATCH_EVENT, System.currentTimeMillis());
+		returnToNormal(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Route a message to the points with its identifier
+	 * @param msg
+	 * @param messagePattern
+	 * @param pointIdentifierIndex
+	 * @return false if the message could not be matched or a value could not be read
+	 */
+	private boolean routeMessage(String msg, Pattern messagePattern, int pointIdentifierIndex) {
+		Matcher messageMatcher = messagePattern.matcher(msg);
+		if(!messageMatcher.find()) {
+			sampleUnrouted(msg, true);
+			raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.patternMismatch",messagePattern.pattern(), msg));
+			return false;
+		}
+		if(LOG.isDebugEnabled())
+			LOG.debug("Message matched regex: " + messagePattern.pattern());
+		
+		List<DataPointRT> points = null;
+		String pointIdentifier = null;
+		if(pointIdentifierIndex <= messageMatcher.groupCount()) {
+			pointIdentifier = messageMatcher.group(pointIdentifierIndex);
+			points = getPointIndex().get(pointIdentifier);
+		}
+		if(points == null) {
+			sampleUnrouted(msg, false);
+			return true;
+		}
+		
+		if(LOG.isDebugEnabled())
+			LOG.debug("Point Identified: " + pointIdentifier);
+		boolean success = true;
+		for(DataPointRT dp : points) {
+			if(!matchPointValue(msg, dp))
+				success = false;
+		}
+		return success;
+	}
+	
+	/**
+	 * Extract and save the value of an identified point
+	 * @param msg
+	 * @param dp
+	 * @return false if the value could not be read
+	 */
+	private boolean matchPointValue(String msg, DataPointRT dp) {
+		SerialPointLocatorRT pl = dp.getPointLocator();
+		SerialPointLocatorVO plVo = pl.getVo();
+		try {
+			Matcher pointValueMatcher = pl.getPattern().matcher(msg);
+			if(!pointValueMatcher.find())
+				return true; //Ignore as this just isn't a message we care about
+			String value = pointValueMatcher.group(plVo.getValueIndex());
+			if(LOG.isDebugEnabled())
+				LOG.debug("Point Value matched regex: " + plVo.getValueRegex() + " and extracted value " + value);
+			if(!updatePointValue(convertToPointValue(value, plVo.getDataTypeId(), vo.isHex()), dp)){
+				raiseEvent(POINT_READ_PATTERN_MISMATCH_EVENT,System.currentTimeMillis(), true, new TranslatableMessage("event.serial.invalidValue", dp.getVO().getXid()));
+				return false;
+			}
+			return true;
+		}catch(Exception e) {
+			raiseEvent(POINT_READ_EXCEPTION_EVENT, System.currentTimeMillis(), true, new TranslatableMessage("event.serial.readFailed", e.getMessage()));
+			return false;
+		}
+	}
+	
+	/**
+	 * Get the points by identifier, rebuilt after the point list changes.
+	 *  Must hold the point list read lock.
+	 * @return
+	 */
+	private Map<String, List<DataPointRT>> getPointIndex() {
+		if(this.pointIndex == null) {
+			Map<String, List<DataPointRT>> index = new HashMap<>();
+			for(DataPointRT dp : this.dataPoints) {
+				SerialPointLocatorRT pl = dp.getPointLocator();
+				index.computeIfAbsent(pl.getVo().getPointIdentifier(), k -> new ArrayList<>(1)).add(dp);
+			}
+			this.pointIndex = index;
+		}
+		return this.pointIndex;
+	}
+	
+	@Override
+	public void addDataPoint(DataPointRT dataPoint) {
+		super.addDataPoint(dataPoint);
+		this.pointIndex = null;
+	}
+	
+	@Override
+	public void removeDataPoint(DataPointRT dataPoint) {
+		super.removeDataPoint(dataPoint);
+		this.pointIndex = null;
+	}
+	
+	/**
+	 * Count a message that was not routed to any point and periodically log a sample of them
+	 * @param msg
+	 * @param mismatch true if the message regex did not match, false if no point has its identifier
+	 */
+	private void sampleUnrouted(String msg, boolean mismatch) {
+		if(mismatch)
+			unmatchedMessages++;
+		else
+			unidentifiedMessages++;
+		long now = Common.timer.currentTimeMillis();
+		if(now - lastUnroutedSample >= UNROUTED_SAMPLE_PERIOD) {
+			lastUnroutedSample = now;
+			if(LOG.isInfoEnabled())
+				LOG.info("Serial data source " + vo.getXid() + " has received " + unmatchedMessages + " messages not matching the message regex and "
+						+ unidentifiedMessages + " messages for no point, most recent: " + msg);
+		}
+	}
+	
+	/**
+	 * @return the number of messages that did not match the message regex
+	 */
+	public long getUnmatchedMessageCount() {
+		return unmatchedMessages;
+	}
+	
+	/**
+	 * @return the number of messages whose identifier did not belong to any point
+	 */
+	public long getUnidentifiedMessageCount() {
+		return unidentifiedMessages;
+	}
+	
+	private String decodeMessage(byte[] message) {
+		if(this.vo.isHex())
+			return convertFromHex(message);
+		else
+			return new String(message, Common.UTF8_CS);
+	}
+	
+	/**
+	 * Get the compiled message regex, only re-compiled if the setting changes
+	 * @return
+	 */
+	private Pattern getMessagePattern() {
+		String messageRegex = vo.getMessageRegex();
+		if(this.messagePattern == null || !this.messagePattern.pattern().equals(messageRegex))
+			this.messagePattern = Pattern.compile(messageRegex);
+		return this.messagePattern;
+	}
+	
+	/**
+	 * Get the bytes of the message terminator as they arrive on the wire,
+	 *  only re-computed if the setting changes
+	 * @return null if the terminator is hex that is not whole bytes
+	 * @throws ConvertHexException
+	 */
+	private byte[] getTerminatorBytes() throws ConvertHexException {
+		String messageTerminator = vo.getMessageTerminator();
+		if(this.terminator == null || !messageTerminator.equals(this.terminator) || this.terminatorHex != vo.isHex()) {
+			if(vo.isHex() && !messageTerminator.matches("([0-9A-Fa-f]{2})+")) {
+				//Saved before terminators had to be whole bytes, frame on the hex text as before
+				LOG.warn("Hex message terminator " + messageTerminator + " of data source " + vo.getXid()
+					+ " is not whole bytes, messages are framed on the hex text");
+				this.terminatorBytes = null;
+			}else {
+				this.terminatorBytes = vo.isHex() ? convertToHex(messageTerminator) : messageTerminator.getBytes(Common.UTF8_CS);
+			}
+			this.terminator = messageTerminator;
+			this.terminatorHex = vo.isHex();
+		}
+		return this.terminatorBytes;
+	}
+	
+	/**
+	 * Frame messages on a hex terminator that is not whole bytes by searching the hex text
+	 *  of the buffer, a message ending part way through a byte includes the whole byte
+	 */
+	private void processHexTextMessages() {
+		String terminator = vo.getMessageTerminator().toUpperCase();
+		int end;
+		while(buffer.size() > 0 && (end = convertFromHex(buffer.peekAll()).toUpperCase().indexOf(terminator)) > -1) {
+			int length = (end + terminator.length() + 1) / 2;
+			processMessage(decodeMessage(buffer.pop(length)));
+		}
+	}
+	
 	/**
 	 * Convert to a point value time or NULL if not possible
 	 * @param value
@@ -633,7 +708,23 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
      * @param log
      */
     public static void matchPointValue(String msg, String messageRegex, int pointIdentifierIndex, SerialPointLocatorVO plVo, boolean isHex, Log log, MatchCallback callback) throws Exception{
-    	    Pattern messagePattern = Pattern.compile(messageRegex);
+    	matchPointValue(msg, Pattern.compile(messageRegex), pointIdentifierIndex, plVo, Pattern.compile(plVo.getValueRegex()), isHex, log, callback);
+    }
+    
+    /**
+     * Match for 1 point using already compiled patterns
+     * @param msg
+     * @param messagePattern
+     * @param pointIdentifierIndex
+     * @param plVo
+     * @param pointValuePattern compiled value regex of the point
+     * @param isHex
+     * @param log
+     * @param callback
+     * @throws Exception
+     */
+    public static void matchPointValue(String msg, Pattern messagePattern, int pointIdentifierIndex, SerialPointLocatorVO plVo, Pattern pointValuePattern, boolean isHex, Log log, MatchCallback callback) throws Exception{
+    	    String messageRegex = messagePattern.pattern();
     	    Matcher messageMatcher = messagePattern.matcher(msg);
     	    if(messageMatcher.find()){
     	        if(log.isDebugEnabled())
@@ -651,7 +742,6 @@ public class SerialDataSourceRT extends EventDataSource<SerialDataSourceVO> impl
             	if(plVo.getPointIdentifier().equals(pointIdentifier)){
             		if(log.isDebugEnabled())
                 		log.debug("Point Identified: " + pointIdentifier);
-            		Pattern pointValuePattern = Pattern.compile(plVo.getValueRegex());
             		Matcher pointValueMatcher = pointValuePattern.matcher(msg); //Use the index from the above message
             		if(pointValueMatcher.find()){
             			String value = pointValueMatcher.group(plVo.getValueIndex());
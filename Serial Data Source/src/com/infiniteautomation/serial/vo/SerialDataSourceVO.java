@@ -313,7 +313,8 @@ public class SerialDataSourceVO extends DataSourceVO<SerialDataSourceVO>{
              	response.addContextualMessage("pointIdentifierIndex", "validate.invalidValue");
         	 
         	 if(hex){
-        		 if(!messageTerminator.matches("[0-9A-Fa-f]+")){
+        		 //Terminators are framed on whole bytes
+        		 if(!messageTerminator.matches("([0-9A-Fa-f]{2})+")){
         			 response.addContextualMessage("messageTerminator", "serial.validate.notHex");
         		 }
         	 }